@@ -0,0 +1,65 @@
+package com.example.chitchatapp.network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Collects the host's acknowledgements for one client and sends them as a single ACKS frame, so a burst of
+// messages costs one control line instead of one per frame:
+//   ACKS:<frameType>:<uniqueId>\t<frameType>:<uniqueId>...
+// A batch goes out FLUSH_DELAY_MS after its first ack, or immediately once it holds MAX_BATCH entries.
+public class AckBatcher {
+
+    public static final long FLUSH_DELAY_MS = 20;
+    public static final int MAX_BATCH = 32;
+    private static final String SEPARATOR = "\t"; // Can't appear in a frame; usernames (part of ids) may contain ','
+
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMs);
+    }
+
+    private final LaneWriter writer;
+    private final Scheduler scheduler;
+    private final List<String> pending = new ArrayList<>();
+    private boolean flushScheduled = false;
+
+    public AckBatcher(LaneWriter writer, Scheduler scheduler) {
+        this.writer = writer;
+        this.scheduler = scheduler;
+    }
+
+    public void add(String frameType, String uniqueId) {
+        boolean full;
+        boolean schedule = false;
+        synchronized (pending) {
+            pending.add(frameType + ":" + uniqueId);
+            full = pending.size() >= MAX_BATCH;
+            if (!full && !flushScheduled) {
+                flushScheduled = true;
+                schedule = true;
+            }
+        }
+        if (full) flush();
+        else if (schedule) scheduler.schedule(this::flush, FLUSH_DELAY_MS);
+    }
+
+    public void flush() {
+        String frame;
+        synchronized (pending) {
+            flushScheduled = false;
+            if (pending.isEmpty()) return;
+            frame = "ACKS:" + String.join(SEPARATOR, pending);
+            pending.clear();
+        }
+        writer.send(frame, LaneWriter.Lane.CONTROL);
+    }
+
+    // ACKS payload -> {frameType, uniqueId} pairs; malformed entries are skipped
+    public static List<String[]> parse(String payload) {
+        List<String[]> acks = new ArrayList<>();
+        for (String entry : payload.split(SEPARATOR)) {
+            String[] parts = entry.split(":", 2);
+            if (parts.length == 2 && !parts[1].isEmpty()) acks.add(parts);
+        }
+        return acks;
+    }
+}
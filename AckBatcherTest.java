@@ -0,0 +1,105 @@
+package com.example.chitchatapp.network;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The host's acks for one client: a burst goes out as one ACKS frame, when the batch is full or when the flush
+ * timer fires, and parses back on the client. The timer is a list of tasks the test runs by hand.
+ */
+public class AckBatcherTest {
+
+    // Completed lines, as the client would read them
+    private static final class Link extends OutputStream {
+        final List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+        @Override
+        public synchronized void write(int b) {
+            if (b != '\n') {
+                pending.write(b);
+                return;
+            }
+            lines.add(new String(pending.toByteArray(), StandardCharsets.UTF_8));
+            pending.reset();
+        }
+    }
+
+    private final Link link = new Link();
+    private final LaneWriter writer = new LaneWriter(link, "acks", () -> { });
+    private final List<Runnable> timers = new ArrayList<>();
+    private final List<Long> delays = new ArrayList<>();
+    private final AckBatcher batcher = new AckBatcher(writer, (task, delayMs) -> {
+        timers.add(task);
+        delays.add(delayMs);
+    });
+
+    @After
+    public void tearDown() {
+        writer.close();
+    }
+
+    private List<String> awaitLines(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (link.lines.size() < count) {
+            if (System.currentTimeMillis() > deadline) fail("Timed out waiting for " + count + " line(s), got " + link.lines);
+            Thread.sleep(5);
+        }
+        return new ArrayList<>(link.lines);
+    }
+
+    @Test
+    public void aBurstGoesOutWhenTheTimerFires() throws Exception {
+        batcher.add("MSG", "alice_1");
+        batcher.add("MSG", "alice_2");
+        batcher.add("EDIT", "alice_1");
+        // One timer for the whole batch, started by its first ack
+        assertEquals(Collections.singletonList(AckBatcher.FLUSH_DELAY_MS), delays);
+        Thread.sleep(50);
+        assertTrue(link.lines.isEmpty());
+
+        timers.get(0).run();
+        assertEquals(Collections.singletonList("ACKS:MSG:alice_1\tMSG:alice_2\tEDIT:alice_1"), awaitLines(1));
+
+        // The next ack starts a new batch with its own timer
+        batcher.add("MSG", "alice_3");
+        assertEquals(2, timers.size());
+        timers.get(1).run();
+        assertEquals("ACKS:MSG:alice_3", awaitLines(2).get(1));
+    }
+
+    @Test
+    public void aFullBatchGoesOutWithoutWaitingForTheTimer() throws Exception {
+        for (int i = 0; i < AckBatcher.MAX_BATCH; i++) batcher.add("MSG", "bob_" + i);
+        List<String> lines = awaitLines(1);
+        assertEquals(AckBatcher.MAX_BATCH, AckBatcher.parse(lines.get(0).substring("ACKS:".length())).size());
+
+        // The timer started by the first ack finds nothing left to send
+        assertEquals(1, timers.size());
+        timers.get(0).run();
+        batcher.add("MSG", "bob_last"); // And a later ack is not stuck behind a timer that already fired
+        assertEquals(2, timers.size());
+        timers.get(1).run();
+        assertEquals(Arrays.asList(lines.get(0), "ACKS:MSG:bob_last"), awaitLines(2));
+    }
+
+    @Test
+    public void parseSkipsMalformedEntries() {
+        List<String[]> acks = AckBatcher.parse("MSG:carol_1\tgarbage\tIMG:\t\tBATCH:carol,2_5\tEDIT:carol_3:extra");
+        assertEquals(3, acks.size());
+        assertArrayEquals(new String[]{"MSG", "carol_1"}, acks.get(0));
+        assertArrayEquals(new String[]{"BATCH", "carol,2_5"}, acks.get(1)); // ',' is fine inside an id
+        assertArrayEquals(new String[]{"EDIT", "carol_3:extra"}, acks.get(2));
+        assertTrue(AckBatcher.parse("").isEmpty());
+    }
+}
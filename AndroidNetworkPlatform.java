@@ -0,0 +1,114 @@
+package com.example.chitchatapp.network;
+
+import android.content.Context;
+import android.net.wifi.WifiManager;
+import android.os.Handler;
+import android.os.PowerManager;
+import android.text.format.Formatter;
+import android.util.Log;
+import android.widget.Toast;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.io.File;
+import java.util.List;
+
+// Wi-Fi address, wake/Wi-Fi/multicast locks, toasts, logcat and the LiveData the screens observe, for
+// NetworkManager on a phone
+public class AndroidNetworkPlatform implements NetworkPlatform {
+
+    private static final String TAG = "AndroidNetworkPlatform";
+
+    private final Context context;
+    private final PowerManager.WakeLock wakeLock;
+    private final WifiManager.WifiLock wifiLock;
+    private final WifiManager.MulticastLock multicastLock;
+    private final MutableLiveData<String> hostIpAddress = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> connectionStatus = new MutableLiveData<>();
+    private final MutableLiveData<List<RoomBrowser.Room>> nearbyRooms = new MutableLiveData<>();
+
+    public AndroidNetworkPlatform(Context context) {
+        this.context = context.getApplicationContext();
+        PowerManager pm = (PowerManager) this.context.getSystemService(Context.POWER_SERVICE);
+        wakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "ChitChatApp::CpuWakeLock");
+        WifiManager wm = (WifiManager) this.context.getSystemService(Context.WIFI_SERVICE);
+        wifiLock = wm.createWifiLock(WifiManager.WIFI_MODE_FULL_HIGH_PERF, "ChitChatApp::WifiWakeLock");
+        multicastLock = wm.createMulticastLock("ChitChatApp::MulticastLock");
+        // Counted: the room browser and a MulticastReceiver can each hold it, and one letting go must not
+        // cut the other off
+        multicastLock.setReferenceCounted(true);
+    }
+
+    @Override
+    public String getLocalAddress() {
+        try {
+            WifiManager wm = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+            if (wm != null) {
+                int ip = wm.getConnectionInfo().getIpAddress();
+                if (ip == 0) return null;
+                return Formatter.formatIpAddress(ip);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "IP fetch error", e);
+        }
+        return null;
+    }
+
+    @Override
+    public File getCacheDir() {
+        return context.getCacheDir();
+    }
+
+    @Override
+    public void acquireLocks() {
+        if (!wakeLock.isHeld()) wakeLock.acquire();
+        if (!wifiLock.isHeld()) wifiLock.acquire();
+    }
+
+    @Override
+    public void releaseLocks() {
+        if (wakeLock.isHeld()) wakeLock.release();
+        if (wifiLock.isHeld()) wifiLock.release();
+    }
+
+    // Costs battery (the radio wakes for every group packet), so only held while a MulticastReceiver or
+    // RoomBrowser is open
+    @Override
+    public void setMulticastReceive(boolean enabled) {
+        if (enabled) multicastLock.acquire();
+        else if (multicastLock.isHeld()) multicastLock.release();
+    }
+
+    @Override
+    public void onConnectFailed(String hostAddress) {
+        new Handler(context.getMainLooper()).post(() ->
+                Toast.makeText(context, "Connection failed. Check IP and Wi-Fi.", Toast.LENGTH_LONG).show());
+    }
+
+    @Override
+    public void onHostStatus(String status) {
+        hostIpAddress.postValue(status);
+    }
+
+    @Override
+    public void onConnectionChanged(boolean connected) {
+        connectionStatus.postValue(connected);
+    }
+
+    @Override
+    public void onNearbyRooms(List<RoomBrowser.Room> rooms) {
+        nearbyRooms.postValue(rooms);
+    }
+
+    @Override
+    public void log(int priority, String tag, String message, Throwable error) {
+        if (priority >= ERROR) Log.e(tag, message, error);
+        else if (priority >= WARN) Log.w(tag, message, error);
+        else Log.d(tag, message, error);
+    }
+
+    public LiveData<String> getHostIpAddress() { return hostIpAddress; }
+    public LiveData<Boolean> getConnectionStatus() { return connectionStatus; }
+    public LiveData<List<RoomBrowser.Room>> getNearbyRooms() { return nearbyRooms; }
+}
@@ -11,11 +11,13 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 // Defines the database structure and version number
-@Database(entities = {Message.class}, version = 4, exportSchema = false)
+@Database(entities = {Message.class, OutboxEntry.class, PendingReactions.class}, version = 12, exportSchema = false)
 public abstract class AppDatabase extends RoomDatabase {
 
     public abstract MessageDao messageDao();
 
+    public abstract OutboxDao outboxDao();
+
     // Singleton instance to prevent multiple database instances running concurrently
     private static volatile AppDatabase INSTANCE;
     private static final int NUMBER_OF_THREADS = 4;
@@ -24,6 +26,10 @@ public abstract class AppDatabase extends RoomDatabase {
     public static final ExecutorService databaseWriteExecutor =
             Executors.newFixedThreadPool(NUMBER_OF_THREADS);
 
+    // Per-message commands (likes, edits, deletes) on the same pool: in order for one uniqueId, parallel across ids
+    public static final StripedExecutor messageCommandExecutor =
+            new StripedExecutor(databaseWriteExecutor, 64);
+
     public static AppDatabase getInstance(final Context context) {
         if (INSTANCE == null) {
             synchronized (AppDatabase.class) {
@@ -0,0 +1,101 @@
+package com.example.chitchatapp.network;
+
+import com.example.chitchatapp.db.Message;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Named rooms on one host. Frames for a channel other than the default travel wrapped:
+//   CH:<channel>:<frame>
+// Unwrapped frames belong to DEFAULT, so peers that predate channels keep talking in it.
+// Clients subscribe with JOIN:<channel> / LEAVE:<channel>; every client starts in DEFAULT. The host only
+// forwards a channel's frames to its subscribers, and remembers which channel each message id was posted
+// in so likes, edits and deletes for it go to the same people.
+public class ChannelRouter {
+
+    public static final String DEFAULT = Message.DEFAULT_CHANNEL;
+    private static final int MAX_NAME_LENGTH = 32;
+    private static final int MAX_REMEMBERED_MESSAGES = 4096;
+
+    // Host: client -> channels it joined
+    private final Map<LaneWriter, Set<String>> subscriptions = new ConcurrentHashMap<>();
+
+    // Host: uniqueId -> channel, most recent MAX_REMEMBERED_MESSAGES only
+    private final Map<String, String> messageChannels = Collections.synchronizedMap(
+            new LinkedHashMap<String, String>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > MAX_REMEMBERED_MESSAGES;
+                }
+            });
+
+    public void addClient(LaneWriter writer) {
+        Set<String> channels = ConcurrentHashMap.newKeySet();
+        channels.add(DEFAULT);
+        subscriptions.put(writer, channels);
+    }
+
+    public void removeClient(LaneWriter writer) {
+        subscriptions.remove(writer);
+    }
+
+    // false if the client was already in it
+    public boolean join(LaneWriter writer, String channel) {
+        Set<String> channels = subscriptions.get(writer);
+        return channels != null && channels.add(channel);
+    }
+
+    public void leave(LaneWriter writer, String channel) {
+        Set<String> channels = subscriptions.get(writer);
+        if (channels != null) channels.remove(channel);
+    }
+
+    public boolean isSubscribed(LaneWriter writer, String channel) {
+        Set<String> channels = subscriptions.get(writer);
+        return channels != null && channels.contains(channel);
+    }
+
+    public void rememberMessage(String uniqueId, String channel) {
+        if (uniqueId != null && !uniqueId.isEmpty()) messageChannels.put(uniqueId, channel);
+    }
+
+    // Channel a message was posted in, or null if the host never saw it (then its commands go to everyone)
+    public String channelOfMessage(String uniqueId) {
+        return messageChannels.get(uniqueId);
+    }
+
+    public void clear() {
+        subscriptions.clear();
+        messageChannels.clear();
+    }
+
+    // ---- WIRE FORMAT ----
+
+    public static String wrap(String channel, String frame) {
+        return DEFAULT.equals(channel) ? frame : "CH:" + channel + ":" + frame;
+    }
+
+    // {channel, frame}; frames without a wrapper (or with a malformed one) are in DEFAULT
+    public static String[] unwrap(String line) {
+        if (line.startsWith("CH:")) {
+            int end = line.indexOf(':', 3);
+            if (end > 3) {
+                String channel = normalize(line.substring(3, end));
+                if (channel != null) return new String[]{channel, line.substring(end + 1)};
+            }
+        }
+        return new String[]{DEFAULT, line};
+    }
+
+    // Lower-case letters, digits, '-' and '_' only (so a name can never contain the ':' separator);
+    // null if nothing usable is left
+    public static String normalize(String name) {
+        if (name == null) return null;
+        String cleaned = name.trim().toLowerCase(java.util.Locale.ROOT).replaceAll("[^a-z0-9_-]", "");
+        if (cleaned.length() > MAX_NAME_LENGTH) cleaned = cleaned.substring(0, MAX_NAME_LENGTH);
+        return cleaned.isEmpty() ? null : cleaned;
+    }
+}
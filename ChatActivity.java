@@ -3,33 +3,36 @@ package com.example.chitchatapp;
 import android.app.AlertDialog;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.MediaStore;
 import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.ProgressBar;
+import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.app.AppCompatDelegate;
+import androidx.appcompat.view.ActionMode;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.chitchatapp.adapter.ChatAdapter;
+import com.example.chitchatapp.db.Message;
+import com.example.chitchatapp.media.MediaIngestor;
 import com.example.chitchatapp.viewmodel.ChatViewModel;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.Objects;
 
 public class ChatActivity extends AppCompatActivity {
@@ -42,9 +45,14 @@ public class ChatActivity extends AppCompatActivity {
     private EditText messageInput;
     private ImageButton sendButton, attachButton;
     private TextView statusText;
+    private MediaIngestor mediaIngestor;
+    private MediaIngestor.Task activeIngest;
+    private ActionMode selectionMode;
 
     private static final int REQUEST_IMAGE_PICK = 1001;
     private static final int REQUEST_DOCUMENT_PICK = 1002;
+    private static final int MENU_EDIT_SELECTED = 1;
+    private static final int MENU_DELETE_SELECTED = 2;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -67,6 +75,8 @@ public class ChatActivity extends AppCompatActivity {
         attachButton = findViewById(R.id.button_attach);
         statusText = findViewById(R.id.text_status);
 
+        mediaIngestor = new MediaIngestor(this);
+
         // --- Setup ViewModel ---
         chatViewModel = new ViewModelProvider(this).get(ChatViewModel.class);
 
@@ -103,6 +113,27 @@ public class ChatActivity extends AppCompatActivity {
             public void onLikesViewClicked(int messageId, java.util.List<String> likedByList) {
                 showLikesDialog(likedByList);
             }
+
+            @Override
+            public void onMediaNeeded(int messageId) {
+                chatViewModel.fetchMedia(messageId);
+            }
+
+            @Override
+            public void onOriginalRequested(int messageId) {
+                chatViewModel.requestOriginalImage(messageId);
+                Toast.makeText(ChatActivity.this, "Requesting full quality...", Toast.LENGTH_SHORT).show();
+            }
+
+            @Override
+            public void onSelectionChanged(int count) {
+                if (count == 0) {
+                    if (selectionMode != null) selectionMode.finish();
+                    return;
+                }
+                if (selectionMode == null) selectionMode = startSupportActionMode(selectionCallback);
+                if (selectionMode != null) selectionMode.setTitle(count + " selected");
+            }
         });
 
         LinearLayoutManager layoutManager = new LinearLayoutManager(this);
@@ -159,10 +190,99 @@ public class ChatActivity extends AppCompatActivity {
             }
         });
 
+        // --- Host options (lazy media, multicast text): long-press the status line ---
+        if (Objects.equals(intent.getStringExtra("MODE"), "HOST")) {
+            SharedPreferences prefs = getSharedPreferences("settings", MODE_PRIVATE);
+            chatViewModel.setLazyMediaMode(prefs.getBoolean("lazy_media", false));
+            chatViewModel.setMulticastEnabled(prefs.getBoolean("multicast", false));
+            statusText.setOnLongClickListener(v -> {
+                showHostOptions(prefs);
+                return true;
+            });
+        }
+
+        // --- Channels: restore the rooms we were in, tap the status line to switch ---
+        SharedPreferences channelPrefs = getSharedPreferences("settings", MODE_PRIVATE);
+        for (String channel : channelPrefs.getStringSet("channels", new java.util.HashSet<>())) {
+            chatViewModel.joinChannel(channel);
+        }
+        chatViewModel.switchChannel(channelPrefs.getString("current_channel", "general"));
+        chatViewModel.getCurrentChannel().observe(this, channel -> setTitle("#" + channel));
+        statusText.setOnClickListener(v -> showChannelOptions());
+
         // --- Attach Button ---
         attachButton.setOnClickListener(v -> showAttachmentOptions());
     }
 
+    private void showHostOptions(SharedPreferences prefs) {
+        String[] options = {"Lazy media: clients download media only when they view it",
+                "Multicast text: one send per message for every client on the Wi-Fi"};
+        boolean[] checked = {prefs.getBoolean("lazy_media", false), prefs.getBoolean("multicast", false)};
+        new AlertDialog.Builder(this)
+                .setTitle("Host options")
+                .setMultiChoiceItems(options, checked, (dialog, which, enabled) -> {
+                    if (which == 0) {
+                        prefs.edit().putBoolean("lazy_media", enabled).apply();
+                        chatViewModel.setLazyMediaMode(enabled);
+                    } else {
+                        prefs.edit().putBoolean("multicast", enabled).apply();
+                        chatViewModel.setMulticastEnabled(enabled);
+                    }
+                })
+                .setPositiveButton("Done", null)
+                .show();
+    }
+
+    private void showChannelOptions() {
+        java.util.List<String> joined = new java.util.ArrayList<>(chatViewModel.getJoinedChannels());
+        String current = chatViewModel.getCurrentChannel().getValue();
+        java.util.List<String> options = new java.util.ArrayList<>();
+        for (String channel : joined) options.add(channel.equals(current) ? "#" + channel + "  ✓" : "#" + channel);
+        options.add("+ Join channel...");
+        if (current != null && !current.equals("general")) options.add("Leave #" + current);
+
+        new AlertDialog.Builder(this)
+                .setTitle("Channels")
+                .setItems(options.toArray(new String[0]), (dialog, which) -> {
+                    if (which < joined.size()) {
+                        switchToChannel(joined.get(which));
+                    } else if (which == joined.size()) {
+                        showJoinChannelDialog();
+                    } else {
+                        chatViewModel.leaveChannel(current);
+                        saveChannels("general");
+                    }
+                })
+                .show();
+    }
+
+    private void showJoinChannelDialog() {
+        EditText input = new EditText(this);
+        input.setHint("channel-name");
+        new AlertDialog.Builder(this)
+                .setTitle("Join Channel")
+                .setView(input)
+                .setPositiveButton("Join", (dialog, which) -> switchToChannel(input.getText().toString()))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void switchToChannel(String name) {
+        String channel = chatViewModel.switchChannel(name);
+        if (channel == null) {
+            Toast.makeText(this, "Use letters, digits, '-' or '_'", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        saveChannels(channel);
+    }
+
+    private void saveChannels(String currentChannel) {
+        getSharedPreferences("settings", MODE_PRIVATE).edit()
+                .putStringSet("channels", new java.util.HashSet<>(chatViewModel.getJoinedChannels()))
+                .putString("current_channel", currentChannel)
+                .apply();
+    }
+
     private void showAttachmentOptions() {
         String[] options = {"Send Image", "Send Document"};
         new AlertDialog.Builder(this)
@@ -217,73 +337,57 @@ public class ChatActivity extends AppCompatActivity {
     }
 
     private void handleImageSelection(Uri imageUri) {
-        try {
-            InputStream inputStream = getContentResolver().openInputStream(imageUri);
-            Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-            if (inputStream != null) inputStream.close();
-
-            File imageFile = saveImageToStorage(bitmap);
-            if (imageFile != null) {
-                String caption = messageInput.getText().toString().trim();
-                chatViewModel.sendImageMessage(imageFile.getAbsolutePath(), caption);
-                messageInput.setText("");
-            } else {
-                Toast.makeText(this, "Failed to process image", Toast.LENGTH_SHORT).show();
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error handling image selection", e);
-        }
+        String caption = messageInput.getText().toString().trim();
+        messageInput.setText("");
+        runIngest("Preparing image...", callback -> mediaIngestor.ingestImage(imageUri, callback),
+                file -> chatViewModel.sendImageMessage(file.getAbsolutePath(), caption));
     }
 
     private void handleDocumentSelection(Uri documentUri) {
-        try {
-            String fileName = getFileName(documentUri);
-            File documentFile = saveDocumentToStorage(documentUri, fileName);
-            if (documentFile != null) {
-                chatViewModel.sendDocumentMessage(documentFile.getAbsolutePath(), fileName, documentFile.length());
-                messageInput.setText("");
-            } else {
-                Toast.makeText(this, "Failed to process document", Toast.LENGTH_SHORT).show();
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error handling document selection", e);
-        }
+        String fileName = getFileName(documentUri);
+        runIngest("Preparing " + fileName + "...", callback -> mediaIngestor.ingestDocument(documentUri, fileName, callback),
+                file -> chatViewModel.sendDocumentMessage(file.getAbsolutePath(), fileName, file.length()));
     }
 
-    private File saveImageToStorage(Bitmap bitmap) {
-        try {
-            File imagesDir = new File(getFilesDir(), "images");
-            if (!imagesDir.exists()) imagesDir.mkdirs();
-            File imageFile = new File(imagesDir, "img_" + System.currentTimeMillis() + ".jpg");
-            FileOutputStream fos = new FileOutputStream(imageFile);
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 85, fos);
-            fos.close();
-            return imageFile;
-        } catch (Exception e) {
-            Log.e(TAG, "Error saving image", e);
-            return null;
-        }
-    }
+    // Shows a cancellable progress dialog while the ingestor copies the file in the background
+    private void runIngest(String title,
+                           java.util.function.Function<MediaIngestor.Callback, MediaIngestor.Task> start,
+                           java.util.function.Consumer<File> onReady) {
+        ProgressBar progressBar = new ProgressBar(this, null, android.R.attr.progressBarStyleHorizontal);
+        progressBar.setMax(100);
+        int padding = (int) (24 * getResources().getDisplayMetrics().density);
+        progressBar.setPadding(padding, padding / 2, padding, 0);
+
+        AlertDialog dialog = new AlertDialog.Builder(this)
+                .setTitle(title)
+                .setView(progressBar)
+                .setCancelable(false)
+                .setNegativeButton("Cancel", (d, which) -> {
+                    if (activeIngest != null) activeIngest.cancel();
+                    activeIngest = null;
+                })
+                .show();
 
-    private File saveDocumentToStorage(Uri documentUri, String fileName) {
-        try {
-            File docsDir = new File(getFilesDir(), "documents");
-            if (!docsDir.exists()) docsDir.mkdirs();
-            File docFile = new File(docsDir, fileName);
-            InputStream inputStream = getContentResolver().openInputStream(documentUri);
-            OutputStream outputStream = new FileOutputStream(docFile);
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
+        activeIngest = start.apply(new MediaIngestor.Callback() {
+            @Override
+            public void onProgress(int percent) {
+                progressBar.setProgress(percent);
             }
-            inputStream.close();
-            outputStream.close();
-            return docFile;
-        } catch (Exception e) {
-            Log.e(TAG, "Error saving document", e);
-            return null;
-        }
+
+            @Override
+            public void onComplete(File file) {
+                dialog.dismiss();
+                activeIngest = null;
+                onReady.accept(file);
+            }
+
+            @Override
+            public void onError(String reason) {
+                dialog.dismiss();
+                activeIngest = null;
+                Toast.makeText(ChatActivity.this, reason, Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     private String getFileName(Uri uri) {
@@ -309,17 +413,18 @@ public class ChatActivity extends AppCompatActivity {
     }
 
     private void showImageFullScreen(String filePath) {
-        AlertDialog.Builder builder = new AlertDialog.Builder(this);
-        ImageView imageView = new ImageView(this);
-        Bitmap bitmap = BitmapFactory.decodeFile(filePath);
-        if (bitmap != null) {
-            imageView.setImageBitmap(bitmap);
-            imageView.setAdjustViewBounds(true);
-            imageView.setScaleType(ImageView.ScaleType.FIT_CENTER);
-            builder.setView(imageView);
-            builder.setPositiveButton("Close", null);
-            builder.show();
+        if (filePath == null || !new File(filePath).exists()) {
+            Toast.makeText(this, "Image not available", Toast.LENGTH_SHORT).show();
+            return;
         }
+        // Decoding happens inside the view (screen-sized sample first, tiles on zoom), never here
+        android.app.Dialog dialog = new android.app.Dialog(this, android.R.style.Theme_Black_NoTitleBar_Fullscreen);
+        TiledImageView imageView = new TiledImageView(this);
+        imageView.setOnTapListener(v -> dialog.dismiss());
+        dialog.setContentView(imageView);
+        dialog.setOnDismissListener(d -> imageView.release());
+        imageView.setImageFile(filePath);
+        dialog.show();
     }
 
     private void openDocument(String filePath, String fileName) {
@@ -394,6 +499,93 @@ public class ChatActivity extends AppCompatActivity {
         builder.show();
     }
 
+    // ---- MULTI-SELECT ----
+    // Contextual bar while messages are picked; its actions go out as one BATCH frame
+    private final ActionMode.Callback selectionCallback = new ActionMode.Callback() {
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            menu.add(Menu.NONE, MENU_EDIT_SELECTED, 0, "Edit").setShowAsAction(MenuItem.SHOW_AS_ACTION_IF_ROOM);
+            menu.add(Menu.NONE, MENU_DELETE_SELECTED, 1, "Delete").setShowAsAction(MenuItem.SHOW_AS_ACTION_IF_ROOM);
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            if (item.getItemId() == MENU_EDIT_SELECTED) {
+                showBatchEditDialog(adapter.getSelectedMessages());
+                return true;
+            }
+            if (item.getItemId() == MENU_DELETE_SELECTED) {
+                showBatchDeleteConfirmation(adapter.getSelectedMessages());
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            selectionMode = null;
+            adapter.clearSelection();
+        }
+    };
+
+    // One field per selected text message; only the ones actually changed are sent
+    private void showBatchEditDialog(java.util.List<Message> selected) {
+        java.util.List<Message> texts = new java.util.ArrayList<>();
+        for (Message m : selected) if ("text".equals(m.getMessageType())) texts.add(m);
+        if (texts.isEmpty()) {
+            Toast.makeText(this, "Only text messages can be edited", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        LinearLayout fields = new LinearLayout(this);
+        fields.setOrientation(LinearLayout.VERTICAL);
+        java.util.List<EditText> inputs = new java.util.ArrayList<>();
+        for (Message m : texts) {
+            EditText input = new EditText(this);
+            input.setText(m.getDisplayText());
+            fields.addView(input);
+            inputs.add(input);
+        }
+        ScrollView scroll = new ScrollView(this);
+        scroll.addView(fields);
+
+        new AlertDialog.Builder(this)
+                .setTitle("Edit " + texts.size() + " Messages")
+                .setView(scroll)
+                .setPositiveButton("Save", (dialog, which) -> {
+                    java.util.Map<Integer, String> newTexts = new java.util.LinkedHashMap<>();
+                    for (int i = 0; i < texts.size(); i++) {
+                        String newText = inputs.get(i).getText().toString().trim();
+                        if (!newText.isEmpty() && !newText.equals(texts.get(i).getDisplayText()))
+                            newTexts.put(texts.get(i).getId(), newText);
+                    }
+                    if (!newTexts.isEmpty()) chatViewModel.editMessages(newTexts);
+                    if (selectionMode != null) selectionMode.finish();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void showBatchDeleteConfirmation(java.util.List<Message> selected) {
+        java.util.List<Integer> ids = new java.util.ArrayList<>();
+        for (Message m : selected) ids.add(m.getId());
+        new AlertDialog.Builder(this)
+                .setTitle("Delete " + ids.size() + " Messages")
+                .setMessage("Are you sure you want to delete these messages?")
+                .setPositiveButton("Delete", (dialog, which) -> {
+                    chatViewModel.deleteMessages(ids);
+                    if (selectionMode != null) selectionMode.finish();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
     private void showDeleteConfirmation(int messageId) {
         new AlertDialog.Builder(this)
                 .setTitle("Delete Message")
@@ -406,6 +598,7 @@ public class ChatActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (activeIngest != null) activeIngest.cancel();
         chatViewModel.stopNetwork();
     }
 }
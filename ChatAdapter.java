@@ -3,6 +3,7 @@ package com.example.chitchatapp.adapter;
 import android.app.AlertDialog;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Color;
 import android.view.GestureDetector;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
@@ -26,8 +27,10 @@ import java.util.Locale;
 
 public class ChatAdapter extends ListAdapter<Message, RecyclerView.ViewHolder> {
 
-    private static final int VIEW_TYPE_SENT = 1;
-    private static final int VIEW_TYPE_RECEIVED = 2;
+    static final int VIEW_TYPE_SENT = 1;
+    static final int VIEW_TYPE_RECEIVED = 2;
+    // Payload for a row whose precomputed text just became ready: only the text is bound again
+    private static final Object PAYLOAD_TEXT = new Object();
     private final SimpleDateFormat timeFormat = new SimpleDateFormat("h:mm a", Locale.getDefault());
 
     public interface MessageActionListener {
@@ -37,9 +40,18 @@ public class ChatAdapter extends ListAdapter<Message, RecyclerView.ViewHolder> {
         void onImageClicked(String filePath);
         void onDocumentClicked(String filePath, String fileName);
         void onLikesViewClicked(int messageId, java.util.List<String> likedByList);
+        void onOriginalRequested(int messageId);
+        void onMediaNeeded(int messageId);
+        // Multi-select: count is 0 once nothing is selected any more
+        void onSelectionChanged(int count);
     }
 
+    private static final int SELECTED_COLOR = 0x3300AAFF;
+
     private MessageActionListener actionListener;
+    // Row ids of our own messages picked for a batch edit or delete, in the order they were picked
+    private final java.util.LinkedHashSet<Integer> selectedIds = new java.util.LinkedHashSet<>();
+    private final MessageTextPrecomputer textPrecomputer = new MessageTextPrecomputer();
 
     public ChatAdapter() {
         super(DIFF_CALLBACK);
@@ -49,24 +61,112 @@ public class ChatAdapter extends ListAdapter<Message, RecyclerView.ViewHolder> {
         this.actionListener = listener;
     }
 
+    // Text layout for the incoming page is measured in the background while DiffUtil runs
+    @Override
+    public void submitList(java.util.List<Message> list) {
+        textPrecomputer.precompute(list);
+        super.submitList(list);
+    }
+
+    @Override
+    public void submitList(java.util.List<Message> list, Runnable commitCallback) {
+        textPrecomputer.precompute(list);
+        super.submitList(list, commitCallback);
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        textPrecomputer.setListener(this::onTextReady);
+    }
+
+    // A rotation builds a new adapter; layouts still queued for this one would never be shown
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        textPrecomputer.setListener(null);
+    }
+
+    // Rows bound before their layout was ready fell back to setText(); bind them again with it
+    private void onTextReady(String uniqueId) {
+        java.util.List<Message> list = getCurrentList();
+        for (int i = 0; i < list.size(); i++) {
+            if (uniqueId.equals(list.get(i).getUniqueId())) {
+                notifyItemChanged(i, PAYLOAD_TEXT);
+                return;
+            }
+        }
+    }
+
+    // --- Multi-select ---
+    public boolean isSelecting() {
+        return !selectedIds.isEmpty();
+    }
+
+    // Only our own messages that aren't deleted can be picked
+    void toggleSelection(Message message) {
+        if (!message.isSentByUser() || message.isDeleted()) return;
+        boolean wasSelecting = isSelecting();
+        if (!selectedIds.remove(message.getId())) selectedIds.add(message.getId());
+        // Entering or leaving selection hides or shows every delete button, not just this row's
+        if (wasSelecting != isSelecting()) notifyItemRangeChanged(0, getItemCount());
+        else notifyMessageChanged(message.getId());
+        if (actionListener != null) actionListener.onSelectionChanged(selectedIds.size());
+    }
+
+    // The selected messages as the list currently shows them
+    public java.util.List<Message> getSelectedMessages() {
+        java.util.List<Message> selected = new java.util.ArrayList<>();
+        for (Message m : getCurrentList()) if (selectedIds.contains(m.getId())) selected.add(m);
+        return selected;
+    }
+
+    public void clearSelection() {
+        if (selectedIds.isEmpty()) return;
+        selectedIds.clear();
+        notifyItemRangeChanged(0, getItemCount());
+        if (actionListener != null) actionListener.onSelectionChanged(0);
+    }
+
+    private void notifyMessageChanged(int messageId) {
+        java.util.List<Message> list = getCurrentList();
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).getId() == messageId) {
+                notifyItemChanged(i);
+                return;
+            }
+        }
+    }
+
     // --- Gesture Listener ---
     private static class MessageGestureListener extends GestureDetector.SimpleOnGestureListener {
         private final View itemView;
         private final Message message;
         private final MessageActionListener listener;
+        private final ChatAdapter adapter;
 
         private static long lastDoubleTapTime = 0;
         private static int lastDoubleTapMessageId = -1;
         private static final long DOUBLE_TAP_DEBOUNCE = 400;
 
-        MessageGestureListener(View itemView, Message message, MessageActionListener listener) {
+        MessageGestureListener(View itemView, Message message, MessageActionListener listener, ChatAdapter adapter) {
             this.itemView = itemView;
             this.message = message;
             this.listener = listener;
+            this.adapter = adapter;
+        }
+
+        // While selecting, a tap picks or drops the message
+        @Override
+        public boolean onSingleTapConfirmed(MotionEvent e) {
+            if (adapter.isSelecting()) adapter.toggleSelection(message);
+            return true;
         }
 
         @Override
         public boolean onDoubleTap(MotionEvent e) {
+            if (adapter.isSelecting()) return true;
+
             long currentTime = System.currentTimeMillis();
             int messageId = message.getId();
 
@@ -86,19 +186,37 @@ public class ChatAdapter extends ListAdapter<Message, RecyclerView.ViewHolder> {
 
         @Override
         public void onLongPress(MotionEvent e) {
-            // Allow edit only for own text messages
-            if (listener == null || !message.isSentByUser() || message.isDeleted()) return;
-
-            if ("text".equals(message.getMessageType())) {
-                new AlertDialog.Builder(itemView.getContext())
-                        .setTitle("Edit Message")
-                        .setMessage("Do you want to edit this message?")
-                        .setPositiveButton("Edit", (dialog, which) -> {
-                            listener.onEditClicked(message.getId(), message.getDisplayText());
-                        })
-                        .setNegativeButton("Cancel", null)
-                        .show();
+            if (listener == null || message.isDeleted()) return;
+
+            // Received images may have been reduced for the link; offer the sender's original
+            if (!message.isSentByUser()) {
+                if ("image".equals(message.getMessageType())) {
+                    new AlertDialog.Builder(itemView.getContext())
+                            .setTitle("Full Quality")
+                            .setMessage("Download the original image from the sender?")
+                            .setPositiveButton("Download", (dialog, which) ->
+                                    listener.onOriginalRequested(message.getId()))
+                            .setNegativeButton("Cancel", null)
+                            .show();
+                }
+                return;
+            }
+
+            // Own messages: start or extend a multi-select; a text message can still be edited on its own
+            if (adapter.isSelecting() || !"text".equals(message.getMessageType())) {
+                adapter.toggleSelection(message);
+                return;
             }
+
+            new AlertDialog.Builder(itemView.getContext())
+                    .setTitle("Edit Message")
+                    .setMessage("Do you want to edit this message?")
+                    .setPositiveButton("Edit", (dialog, which) -> {
+                        listener.onEditClicked(message.getId(), message.getDisplayText());
+                    })
+                    .setNeutralButton("Select", (dialog, which) -> adapter.toggleSelection(message))
+                    .setNegativeButton("Cancel", null)
+                    .show();
         }
     }
 
@@ -122,6 +240,21 @@ public class ChatAdapter extends ListAdapter<Message, RecyclerView.ViewHolder> {
         }
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position,
+                                 @NonNull java.util.List<Object> payloads) {
+        Message message = getItem(position);
+        boolean textOnly = !payloads.isEmpty();
+        for (Object payload : payloads) textOnly &= payload == PAYLOAD_TEXT;
+        if (message == null || !textOnly) {
+            onBindViewHolder(holder, position);
+        } else if (holder.getItemViewType() == VIEW_TYPE_SENT) {
+            ((SentMessageHolder) holder).bindText(message);
+        } else {
+            ((ReceivedMessageHolder) holder).bindText(message);
+        }
+    }
+
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
         Message message = getItem(position);
@@ -156,12 +289,19 @@ public class ChatAdapter extends ListAdapter<Message, RecyclerView.ViewHolder> {
             documentPreview = itemView.findViewById(R.id.document_preview);
             documentName = itemView.findViewById(R.id.document_name);
             documentSize = itemView.findViewById(R.id.document_size);
+            textPrecomputer.registerParams(VIEW_TYPE_SENT, messageText);
+        }
+
+        void bindText(Message message) {
+            if (!textPrecomputer.apply(messageText, message)) {
+                messageText.setText(message.getDisplayText());
+            }
         }
 
         void bind(Message message) {
-            messageText.setText(message.getDisplayText());
+            bindText(message);
             messageText.setAlpha(message.isDeleted() ? 0.5f : 1.0f);
-            timeText.setText(timeFormat.format(message.getTimestamp()));
+            timeText.setText(timeFormat.format(message.getTimestamp()) + deliveryMark(message.getDeliveryState()));
 
             if (message.isEdited()) {
                 editedText.setVisibility(View.VISIBLE);
@@ -188,6 +328,8 @@ public class ChatAdapter extends ListAdapter<Message, RecyclerView.ViewHolder> {
                 imagePreview.setVisibility(View.VISIBLE);
                 documentPreview.setVisibility(View.GONE);
                 loadImage(imagePreview, message.getFilePath());
+                // Preview frames are upscaled from a few dozen pixels; dim them until the full image lands
+                imagePreview.setAlpha(message.isPreviewOnly() ? 0.6f : 1.0f);
                 imagePreview.setOnClickListener(v -> {
                     if (actionListener != null)
                         actionListener.onImageClicked(message.getFilePath());
@@ -206,8 +348,11 @@ public class ChatAdapter extends ListAdapter<Message, RecyclerView.ViewHolder> {
                 documentPreview.setVisibility(View.GONE);
             }
 
-            // 🗑️ Delete button for own messages
-            if (message.isSentByUser() && !message.isDeleted()) {
+            // ☑️ Picked for a batch edit or delete
+            itemView.setBackgroundColor(selectedIds.contains(message.getId()) ? SELECTED_COLOR : Color.TRANSPARENT);
+
+            // 🗑️ Delete button for own messages, out of the way while selecting
+            if (message.isSentByUser() && !message.isDeleted() && !isSelecting()) {
                 deleteButton.setVisibility(View.VISIBLE);
                 deleteButton.setOnClickListener(v -> {
                     if (actionListener != null)
@@ -218,7 +363,7 @@ public class ChatAdapter extends ListAdapter<Message, RecyclerView.ViewHolder> {
             }
 
             gestureDetector = new GestureDetector(itemView.getContext(),
-                    new MessageGestureListener(bubbleContainer, message, actionListener));
+                    new MessageGestureListener(bubbleContainer, message, actionListener, ChatAdapter.this));
 
             bubbleContainer.setOnTouchListener((v, event) -> {
                 gestureDetector.onTouchEvent(event);
@@ -259,10 +404,17 @@ public class ChatAdapter extends ListAdapter<Message, RecyclerView.ViewHolder> {
             documentPreview = itemView.findViewById(R.id.document_preview);
             documentName = itemView.findViewById(R.id.document_name);
             documentSize = itemView.findViewById(R.id.document_size);
+            textPrecomputer.registerParams(VIEW_TYPE_RECEIVED, messageText);
+        }
+
+        void bindText(Message message) {
+            if (!textPrecomputer.apply(messageText, message)) {
+                messageText.setText(message.getDisplayText());
+            }
         }
 
         void bind(Message message) {
-            messageText.setText(message.getDisplayText());
+            bindText(message);
             messageText.setAlpha(message.isDeleted() ? 0.5f : 1.0f);
             timeText.setText(timeFormat.format(message.getTimestamp()));
             senderNameText.setText(message.getSenderName());
@@ -288,10 +440,17 @@ public class ChatAdapter extends ListAdapter<Message, RecyclerView.ViewHolder> {
             }
 
             // 📎 Handle media
+            // Lazy media: the bubble is about to be shown, so pull the image body from the host now
+            if (message.isRemoteOnly() && "image".equals(message.getMessageType()) && actionListener != null) {
+                actionListener.onMediaNeeded(message.getId());
+            }
+
             if ("image".equals(message.getMessageType()) && message.getFilePath() != null) {
                 imagePreview.setVisibility(View.VISIBLE);
                 documentPreview.setVisibility(View.GONE);
                 loadImage(imagePreview, message.getFilePath());
+                // Preview frames are upscaled from a few dozen pixels; dim them until the full image lands
+                imagePreview.setAlpha(message.isPreviewOnly() ? 0.6f : 1.0f);
                 imagePreview.setOnClickListener(v -> {
                     if (actionListener != null)
                         actionListener.onImageClicked(message.getFilePath());
@@ -300,10 +459,16 @@ public class ChatAdapter extends ListAdapter<Message, RecyclerView.ViewHolder> {
                 imagePreview.setVisibility(View.GONE);
                 documentPreview.setVisibility(View.VISIBLE);
                 documentName.setText(message.getFileName());
-                documentSize.setText(message.getFormattedFileSize());
+                documentSize.setText(message.isRemoteOnly()
+                        ? message.getFormattedFileSize() + " · tap to download"
+                        : message.getFormattedFileSize());
                 documentPreview.setOnClickListener(v -> {
-                    if (actionListener != null)
+                    if (actionListener == null) return;
+                    if (message.isRemoteOnly()) {
+                        actionListener.onMediaNeeded(message.getId());
+                    } else {
                         actionListener.onDocumentClicked(message.getFilePath(), message.getFileName());
+                    }
                 });
             } else {
                 imagePreview.setVisibility(View.GONE);
@@ -311,7 +476,7 @@ public class ChatAdapter extends ListAdapter<Message, RecyclerView.ViewHolder> {
             }
 
             gestureDetector = new GestureDetector(itemView.getContext(),
-                    new MessageGestureListener(bubbleContainer, message, actionListener));
+                    new MessageGestureListener(bubbleContainer, message, actionListener, ChatAdapter.this));
 
             bubbleContainer.setOnTouchListener((v, event) -> {
                 gestureDetector.onTouchEvent(event);
@@ -331,6 +496,16 @@ public class ChatAdapter extends ListAdapter<Message, RecyclerView.ViewHolder> {
         }
     }
 
+    // 🕓 waiting in the outbox, ✓ on its way to the host, ✓✓ host has it
+    private static String deliveryMark(int deliveryState) {
+        switch (deliveryState) {
+            case Message.DELIVERY_PENDING: return "  🕓";
+            case Message.DELIVERY_SENT: return "  ✓";
+            case Message.DELIVERY_ACKED: return "  ✓✓";
+            default: return "";
+        }
+    }
+
     // --- DiffUtil for Efficient Updates ---
     private static final DiffUtil.ItemCallback<Message> DIFF_CALLBACK = new DiffUtil.ItemCallback<Message>() {
         @Override
@@ -345,9 +520,13 @@ public class ChatAdapter extends ListAdapter<Message, RecyclerView.ViewHolder> {
                     oldItem.isSentByUser() == newItem.isSentByUser() &&
                     oldItem.getLikeCount() == newItem.getLikeCount() &&
                     oldItem.isEdited() == newItem.isEdited() &&
+                    oldItem.getEditVersion() == newItem.getEditVersion() &&
                     oldItem.isDeleted() == newItem.isDeleted() &&
                     java.util.Objects.equals(oldItem.getMessageType(), newItem.getMessageType()) &&
-                    java.util.Objects.equals(oldItem.getFilePath(), newItem.getFilePath());
+                    java.util.Objects.equals(oldItem.getFilePath(), newItem.getFilePath()) &&
+                    oldItem.isPreviewOnly() == newItem.isPreviewOnly() &&
+                    oldItem.isRemoteOnly() == newItem.isRemoteOnly() &&
+                    oldItem.getDeliveryState() == newItem.getDeliveryState();
         }
     };
 }
@@ -4,16 +4,35 @@ import android.app.Application;
 import android.util.Log;
 
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
 
 import com.example.chitchatapp.db.AppDatabase;
+import com.example.chitchatapp.db.CoalescedQueryLiveData;
+import com.example.chitchatapp.db.HybridLogicalClock;
 import com.example.chitchatapp.db.Message;
 import com.example.chitchatapp.db.MessageDao;
+import com.example.chitchatapp.db.ReactionSet;
+import com.example.chitchatapp.db.StripedExecutor;
+import com.example.chitchatapp.media.ImageTranscoder;
+import com.example.chitchatapp.network.AndroidNetworkPlatform;
+import com.example.chitchatapp.network.ChannelRouter;
+import com.example.chitchatapp.network.CommandBatch;
+import com.example.chitchatapp.network.LatencyHistogram;
+import com.example.chitchatapp.network.LazyMediaStore;
 import com.example.chitchatapp.network.NetworkManager;
+import com.example.chitchatapp.network.ReactionBatcher;
+import com.example.chitchatapp.network.RoomBrowser;
+import com.example.chitchatapp.network.TcpTransport;
 
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 // Manages data flow between UI (ViewModel), Database (Room), and Network (NetworkManager)
 public class ChatRepository implements NetworkManager.MessageReceiver {
@@ -22,12 +41,58 @@ public class ChatRepository implements NetworkManager.MessageReceiver {
 
     private static volatile ChatRepository INSTANCE;
 
+    // Message list refreshes are coalesced: at most one query per window, never older than the staleness bound
+    private static final long MESSAGE_REFRESH_WINDOW_MS = 100;
+    private static final long MESSAGE_MAX_STALENESS_MS = 400;
+
+    // Images are transcoded so they reach the slowest peer within this time on the measured link
+    private static final long DEFAULT_IMAGE_DELIVERY_TARGET_MS = 3000;
+
+    // After a reconnect (or a host failover) a client asks for everything since shortly before the newest
+    // message it has; the overlap absorbs clock skew between senders, duplicates are dropped by uniqueId
+    private static final long HISTORY_SYNC_OVERLAP_MS = 30_000;
+    private static final int HISTORY_SYNC_LIMIT = 500;
+    // What a client that joins mid-conversation gets from the host: the newest messages up to this many,
+    // from up to this long ago (see HistorySnapshot)
+    private static final int SNAPSHOT_LIMIT = 200;
+    private static final long SNAPSHOT_MAX_AGE_MS = 24 * 60 * 60 * 1000L;
+
     private final MessageDao messageDao;
     private final NetworkManager networkManager;
-    private final LiveData<List<Message>> allMessages;
+    // Logcat, locks and the connection LiveData the screens observe, on NetworkManager's behalf
+    private final AndroidNetworkPlatform platform;
+    private final CoalescedQueryLiveData<List<Message>> allMessages;
     private final android.content.Context context;
 
     private final ExecutorService databaseExecutor;
+    // Outgoing frames are persisted before they are sent and removed when the host acks them
+    private final Outbox outbox;
+    // Single thread: the outbox is written and flushed in message order
+    private final ExecutorService outboxExecutor = Executors.newSingleThreadExecutor();
+    // uniqueId -> future handed out by a send call, completed when the host acks the message
+    private final Map<String, CompletableFuture<Long>> deliveryFutures = new ConcurrentHashMap<>();
+    // uniqueId -> when its MSG/IMG/DOC frame was last written to the connection, for the round-trip time
+    private final Map<String, Long> sentAtMs = new ConcurrentHashMap<>();
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+    // Stamps outgoing messages and absorbs stamps from peers; see HybridLogicalClock
+    private final HybridLogicalClock clock = new HybridLogicalClock();
+    // Likes, edits and deletes for one message run in arrival order; different messages don't wait on each other
+    private final StripedExecutor commandExecutor;
+    // Row id -> uniqueId, refreshed with every message list query, so UI actions can pick their stripe without a lookup
+    private final Map<Integer, String> uniqueIdsByRowId = new ConcurrentHashMap<>();
+    private volatile long imageDeliveryTargetMs = DEFAULT_IMAGE_DELIVERY_TARGET_MS;
+    // The room on screen: new messages are posted here and the message list shows only this room
+    private volatile String currentChannel = Message.DEFAULT_CHANNEL;
+    private final MutableLiveData<String> currentChannelLive = new MutableLiveData<>(Message.DEFAULT_CHANNEL);
+    // Images whose full-quality original this device asked for; ORIG frames for anything else are ignored
+    private final Set<String> pendingOriginals = ConcurrentHashMap.newKeySet();
+    // Preview, metadata and full frames for the same uniqueId race on the executor; this keeps lookup+write atomic
+    private final Object mediaUpsertLock = new Object();
+    // Lazy media bodies already requested from the host, so rebinding a bubble doesn't refetch; cleared when a
+    // body arrives or fails and on every reconnect, so a lost FETCH is asked again
+    private final Set<String> requestedMedia = ConcurrentHashMap.newKeySet();
+    // Lazy media: sha256 of each announced body (from META), checked against the body when it is fetched
+    private final Map<String, String> announcedMediaHashes = new ConcurrentHashMap<>();
 
     private static String currentUsername = "User";
 
@@ -35,9 +100,14 @@ public class ChatRepository implements NetworkManager.MessageReceiver {
         this.context = application.getApplicationContext();
         AppDatabase db = AppDatabase.getInstance(application);
         messageDao = db.messageDao();
-        allMessages = messageDao.getAllMessages();
+        allMessages = new CoalescedQueryLiveData<>(db, new String[]{"messages"},
+                this::loadMessages, MESSAGE_REFRESH_WINDOW_MS, MESSAGE_MAX_STALENESS_MS);
         databaseExecutor = AppDatabase.databaseWriteExecutor;
-        networkManager = new NetworkManager(application, this);
+        commandExecutor = AppDatabase.messageCommandExecutor;
+        platform = new AndroidNetworkPlatform(application);
+        networkManager = new NetworkManager(this, new TcpTransport(), platform);
+        outbox = new Outbox(db.outboxDao(), new java.io.File(context.getFilesDir(), "outbox"), outboxLink(), outboxEvents());
+        recoverOutbox();
     }
 
     public static ChatRepository getInstance(Application application) {
@@ -55,12 +125,69 @@ public class ChatRepository implements NetworkManager.MessageReceiver {
         return allMessages;
     }
 
+    private List<Message> loadMessages() {
+        List<Message> messages = messageDao.getMessagesForChannelSync(currentChannel);
+        for (Message m : messages) {
+            if (m.getUniqueId() != null) uniqueIdsByRowId.put(m.getId(), m.getUniqueId());
+        }
+        return messages;
+    }
+
+    // Runs a UI action on the stripe of the message it targets. The row id is almost always in the map since the
+    // user tapped a bubble from the list; otherwise it is resolved on the pool first.
+    private void executeForMessage(int messageId, java.util.function.Consumer<String> action) {
+        String uniqueId = uniqueIdsByRowId.get(messageId);
+        if (uniqueId != null) {
+            commandExecutor.execute(uniqueId, () -> action.accept(uniqueId));
+            return;
+        }
+        databaseExecutor.execute(() -> {
+            Message message = messageDao.getMessageById(messageId);
+            if (message == null || message.getUniqueId() == null) return;
+            uniqueIdsByRowId.put(messageId, message.getUniqueId());
+            commandExecutor.execute(message.getUniqueId(), () -> action.accept(message.getUniqueId()));
+        });
+    }
+
+    // Tunes how aggressively bursts of DB writes are folded into one list refresh
+    public void configureMessageRefresh(long windowMs, long maxStalenessMs) {
+        allMessages.configure(windowMs, maxStalenessMs);
+    }
+
+    public long getMessageQueriesAvoided() {
+        return allMessages.getQueriesAvoided();
+    }
+
+    public long getMessageQueryCount() {
+        return allMessages.getQueryCount();
+    }
+
+    public void setImageDeliveryTarget(long targetMs) {
+        imageDeliveryTargetMs = targetMs;
+    }
+
     public LiveData<String> getHostIpAddress() {
-        return networkManager.getHostIpAddress();
+        return platform.getHostIpAddress();
     }
 
     public LiveData<Boolean> getConnectionStatus() {
-        return networkManager.getConnectionStatus();
+        return platform.getConnectionStatus();
+    }
+
+    public LiveData<List<RoomBrowser.Room>> getNearbyRooms() {
+        return platform.getNearbyRooms();
+    }
+
+    public void startRoomDiscovery() {
+        networkManager.startDiscovery();
+    }
+
+    public void stopRoomDiscovery() {
+        networkManager.stopDiscovery();
+    }
+
+    public RoomBrowser.Room getBestRoom() {
+        return networkManager.getBestRoom();
     }
 
     // ---------------- USER SETUP ----------------
@@ -73,14 +200,46 @@ public class ChatRepository implements NetworkManager.MessageReceiver {
         }
     }
 
+    // ---------------- CHANNELS ----------------
+
+    // Joins (if needed) and switches the message list to the channel; returns its normalized name or null
+    public String switchChannel(String name) {
+        String channel = networkManager.joinChannel(name);
+        if (channel == null) return null;
+        currentChannel = channel;
+        currentChannelLive.postValue(channel);
+        allMessages.refresh();
+        return channel;
+    }
+
+    public void joinChannel(String name) {
+        networkManager.joinChannel(name);
+    }
+
+    // Stops receiving the channel; if it was on screen, the list goes back to the default channel
+    public void leaveChannel(String name) {
+        String channel = ChannelRouter.normalize(name);
+        if (channel == null) return;
+        networkManager.leaveChannel(channel);
+        if (channel.equals(currentChannel)) switchChannel(Message.DEFAULT_CHANNEL);
+    }
+
+    public java.util.Set<String> getJoinedChannels() {
+        return networkManager.getJoinedChannels();
+    }
+
+    public LiveData<String> getCurrentChannel() {
+        return currentChannelLive;
+    }
+
     // ---------------- NETWORK COMMANDS ----------------
 
     public void hostChat() {
         networkManager.startHost(currentUsername);
     }
 
-    public void joinChat(String hostIp) {
-        networkManager.startClient(hostIp, currentUsername);
+    public void joinChat(String hostIp, int port) {
+        networkManager.startClient(hostIp, port, currentUsername);
     }
 
     public void stopNetwork() {
@@ -89,64 +248,280 @@ public class ChatRepository implements NetworkManager.MessageReceiver {
 
     // ---------------- SEND MESSAGES ----------------
 
-    public void sendMessage(String text) {
+    // Each send returns a future that completes with the round-trip time in ms once the host has acked the
+    // message (0 on the host itself, which has no one to wait for). Callbacks run on the outbox thread.
+    // It completes exceptionally if the message could not be encoded or persisted; it never times out, since
+    // the outbox keeps resending across reconnects.
+    public CompletableFuture<Long> sendMessage(String text) {
         long timestamp = new Date().getTime();
         Message message = new Message(currentUsername, text, timestamp, true);
-        insert(message);
+        return insertOutgoing(message);
+    }
 
+    public CompletableFuture<Long> sendImageMessage(String filePath, String caption) {
+        java.io.File imageFile = new java.io.File(filePath);
+        long timestamp = new Date().getTime();
+
+        Message message = new Message(currentUsername,
+                caption != null && !caption.isEmpty() ? caption : "📷 Image",
+                timestamp, true);
+        message.setMessageType("image");
+        message.setFilePath(filePath);
+        message.setFileName(imageFile.getName());
+        message.setFileSize(imageFile.length());
+        return insertOutgoing(message);
+    }
+
+    public CompletableFuture<Long> sendDocumentMessage(String filePath, String fileName, long fileSize) {
+        long timestamp = new Date().getTime();
+
+        Message message = new Message(currentUsername, "📎 " + fileName, timestamp, true);
+        message.setMessageType("document");
+        message.setFilePath(filePath);
+        message.setFileName(fileName);
+        message.setFileSize(fileSize);
+        return insertOutgoing(message);
+    }
+
+    // Round-trip times from writing a message to the host's ack, on this device since start
+    public LatencyHistogram getDeliveryLatency() {
+        return deliveryLatency;
+    }
+
+    // ---------------- OUTBOX ----------------
+
+    // Stores our message and queues its frames. Both happen on the outbox thread so the row exists before any
+    // ACK for it can try to update its delivery state.
+    private CompletableFuture<Long> insertOutgoing(Message message) {
+        message.setHlc(clock.now());
+        message.setChannel(currentChannel);
+        message.setDeliveryState(Message.DELIVERY_PENDING);
+        CompletableFuture<Long> delivered = new CompletableFuture<>();
+        deliveryFutures.put(message.getUniqueId(), delivered);
+        outboxExecutor.execute(() -> {
+            messageDao.insertMessage(message);
+            Log.d(TAG, "Database insert successful: " + message.getSenderName() + ": " + message.getText());
+            queueFrames(message);
+        });
+        return delivered;
+    }
+
+    // Builds the wire frames for one of our messages and puts them in the outbox. Also rebuilds frames for
+    // pending messages whose outbox rows were never written (see recoverOutbox).
+    private void queueFrames(Message message) {
         String uniqueId = message.getUniqueId();
-        networkManager.sendMessage("MSG:" + uniqueId + ":" + text);
+        long hlc = message.getHlc();
+        String channel = message.getChannel();
+
+        if ("image".equals(message.getMessageType()) && message.getFilePath() != null) {
+            java.io.File imageFile = new java.io.File(message.getFilePath());
+            String frameCaption = "📷 Image".equals(message.getText()) ? "" : message.getText();
+            // The local message keeps the original; peers get a copy sized for the current link
+            databaseExecutor.execute(() -> {
+                // A tiny preview goes out first so receivers have something on screen within one round trip
+                byte[] preview = ImageTranscoder.encodePreview(imageFile);
+                if (preview != null) {
+                    enqueue(uniqueId, "IMGP", ChannelRouter.wrap(channel, "IMGP:" + uniqueId + ":" + hlc + ":"
+                            + frameCaption + ":" + android.util.Base64.encodeToString(preview, android.util.Base64.NO_WRAP)));
+                }
+
+                java.io.File wireFile = ImageTranscoder.transcodeForLink(imageFile,
+                        networkManager.getEstimatedThroughput(), imageDeliveryTargetMs);
+                String base64Image = encodeFileToBase64(wireFile.getAbsolutePath());
+                if (wireFile != imageFile) wireFile.delete();
+                if (base64Image == null || base64Image.isEmpty()) {
+                    Log.e(TAG, "Failed to encode image, cannot send");
+                    failDelivery(uniqueId, new java.io.IOException("Failed to encode image"));
+                    return;
+                }
+                enqueue(uniqueId, "IMG", ChannelRouter.wrap(channel,
+                        "IMG:" + uniqueId + ":" + hlc + ":" + frameCaption + ":" + base64Image));
+            });
+        } else if ("document".equals(message.getMessageType()) && message.getFilePath() != null) {
+            databaseExecutor.execute(() -> {
+                String base64Doc = encodeFileToBase64(message.getFilePath());
+                if (base64Doc == null || base64Doc.isEmpty()) {
+                    Log.e(TAG, "Failed to encode document, cannot send");
+                    failDelivery(uniqueId, new java.io.IOException("Failed to encode document"));
+                    return;
+                }
+                enqueue(uniqueId, "DOC", ChannelRouter.wrap(channel, "DOC:" + uniqueId + ":" + hlc + ":"
+                        + message.getFileName() + ":" + message.getFileSize() + ":" + base64Doc));
+            });
+        } else {
+            enqueue(uniqueId, "MSG", ChannelRouter.wrap(channel, "MSG:" + uniqueId + ":" + hlc + ":" + message.getText()));
+        }
     }
 
-    public void sendImageMessage(String filePath, String caption) {
-        try {
-            java.io.File imageFile = new java.io.File(filePath);
-            long fileSize = imageFile.length();
-            String fileName = imageFile.getName();
-            long timestamp = new Date().getTime();
-
-            Message message = new Message(currentUsername,
-                    caption != null && !caption.isEmpty() ? caption : "📷 Image",
-                    timestamp, true);
-            message.setMessageType("image");
-            message.setFilePath(filePath);
-            message.setFileName(fileName);
-            message.setFileSize(fileSize);
-            insert(message);
-
-            String uniqueId = message.getUniqueId();
-            String base64Image = encodeFileToBase64(filePath);
-            if (base64Image == null || base64Image.isEmpty()) {
-                Log.e(TAG, "Failed to encode image, cannot send");
-                return;
+    private void enqueue(String uniqueId, String frameType, String frame) {
+        outboxExecutor.execute(() -> outbox.enqueue(uniqueId, frameType, frame));
+    }
+
+    // Rebuilds frames for our pending messages that never reached the outbox (app killed while encoding)
+    private void recoverOutbox() {
+        outboxExecutor.execute(() -> {
+            List<Message> orphans = messageDao.getPendingWithoutOutbox();
+            for (Message message : orphans) queueFrames(message);
+            if (!orphans.isEmpty()) Log.d(TAG, "Outbox: re-queued " + orphans.size() + " message(s)");
+        });
+    }
+
+    // Our edit, on the outbox thread behind the message's own frames (see Outbox.edit)
+    private void queueEdit(String uniqueId, String newText) {
+        outboxExecutor.execute(() -> outbox.edit(uniqueId, newText));
+    }
+
+    // Our delete, on the outbox thread (see Outbox.delete)
+    private void queueDelete(String uniqueId) {
+        outboxExecutor.execute(() -> outbox.delete(uniqueId));
+    }
+
+    // The same for a multi-select, as one BATCH where more than one command is left
+    private void queueBatch(List<String> deletedIds, Map<String, String> editedTexts) {
+        outboxExecutor.execute(() -> outbox.batch(deletedIds, editedTexts));
+    }
+
+    private Outbox.Link outboxLink() {
+        return new Outbox.Link() {
+            @Override
+            public boolean isConnected() {
+                return networkManager.isConnected();
             }
-            networkManager.sendMessage("IMG:" + uniqueId + ":" + (caption != null ? caption : "") + ":" + base64Image);
-        } catch (Exception e) {
-            Log.e(TAG, "Error sending image message", e);
-        }
+
+            @Override
+            public boolean isHost() {
+                return networkManager.isHost();
+            }
+
+            @Override
+            public boolean sendFrame(String frame) {
+                return networkManager.sendFrame(frame);
+            }
+
+            @Override
+            public void sendOnce(String frame) {
+                networkManager.sendMessage(frame);
+            }
+        };
     }
 
-    public void sendDocumentMessage(String filePath, String fileName, long fileSize) {
-        try {
-            long timestamp = new Date().getTime();
-
-            Message message = new Message(currentUsername, "📎 " + fileName, timestamp, true);
-            message.setMessageType("document");
-            message.setFilePath(filePath);
-            message.setFileName(fileName);
-            message.setFileSize(fileSize);
-            insert(message);
-
-            String uniqueId = message.getUniqueId();
-            String base64Doc = encodeFileToBase64(filePath);
-            if (base64Doc == null || base64Doc.isEmpty()) {
-                Log.e(TAG, "Failed to encode document, cannot send");
-                return;
+    // Outbox thread: what the outbox did to our messages, onto their rows and delivery futures
+    private Outbox.Events outboxEvents() {
+        return new Outbox.Events() {
+            @Override
+            public String messageFrame(String uniqueId, String newText) {
+                Message message = messageDao.getMessageByUniqueId(uniqueId);
+                if (message == null) return null;
+                return ChannelRouter.wrap(message.getChannel(), "MSG:" + uniqueId + ":" + message.getHlc() + ":" + newText);
             }
-            networkManager.sendMessage("DOC:" + uniqueId + ":" + fileName + ":" + fileSize + ":" + base64Doc);
-        } catch (Exception e) {
-            Log.e(TAG, "Error sending document message", e);
+
+            @Override
+            public void onWritten(String uniqueId) {
+                messageDao.advanceDeliveryState(uniqueId, Message.DELIVERY_SENT);
+                // A resend restarts the clock: the ack answers the copy that got through
+                sentAtMs.put(uniqueId, System.currentTimeMillis());
+            }
+
+            @Override
+            public void onRelayed(String uniqueId) {
+                messageDao.advanceDeliveryState(uniqueId, Message.DELIVERY_ACKED);
+                completeDelivery(uniqueId, 0);
+            }
+
+            @Override
+            public void onFailed(String uniqueId, Throwable cause) {
+                failDelivery(uniqueId, cause);
+            }
+        };
+    }
+
+    @Override
+    public void onConnected() {
+        outboxExecutor.execute(() -> {
+            // Frames written to a previous connection may not have made it; send everything unacked again
+            int resent = outbox.resetUnacknowledged();
+            messageDao.resetUnacknowledgedDelivery();
+            // FETCHes sent on the old connection may never be answered
+            requestedMedia.clear();
+            if (resent > 0) Log.d(TAG, "Outbox: " + resent + " unacknowledged frame(s) will be resent");
+            outbox.drain();
+
+            // Catch up on what others posted while we were away; a first join with no history skips this
+            long latest = messageDao.getLatestReceivedHlc(NetworkManager.JOIN_NOTICE);
+            if (latest > 0 && !networkManager.isHost())
+                networkManager.requestHistory(HybridLogicalClock.rewind(latest, HISTORY_SYNC_OVERLAP_MS));
+        });
+    }
+
+    @Override
+    public List<String> onHistoryRequested(long afterHlc) {
+        return historyFrames(messageDao.getTextMessagesAfter(afterHlc, HISTORY_SYNC_LIMIT));
+    }
+
+    @Override
+    public List<String> onSnapshotRequested() {
+        long since = HybridLogicalClock.rewind(clock.now(), SNAPSHOT_MAX_AGE_MS);
+        return historyFrames(messageDao.getRecentTextMessages(since, SNAPSHOT_LIMIT));
+    }
+
+    private static List<String> historyFrames(List<Message> messages) {
+        List<String> frames = new ArrayList<>();
+        for (Message m : messages) {
+            // Join notices are local to each device (their ids differ everywhere), so they would only duplicate
+            if (NetworkManager.JOIN_NOTICE.equals(m.getText())) continue;
+            frames.add(ChannelRouter.wrap(m.getChannel(), m.getSenderName() + ": MSG:" + m.getUniqueId() + ":"
+                    + m.getHlc() + ":" + m.getText()));
+            // Its likes follow it as the reaction frames that rebuild the set
+            List<String> reactions = new ArrayList<>();
+            for (ReactionSet.Change c : ReactionSet.parse(m.getReactions()).toChanges(m.getUniqueId()))
+                reactions.add(ReactionBatcher.frame(c));
+            if (!reactions.isEmpty()) frames.add(ChannelRouter.wrap(m.getChannel(), ReactionBatcher.encode(reactions)));
         }
+        return frames;
+    }
+
+    // A snapshot from the host: one transaction for the lot, anything we already have is skipped
+    @Override
+    public void onHistoryReceived(List<String[]> messages) {
+        List<Message> batch = new ArrayList<>(messages.size());
+        for (String[] m : messages) {
+            Message message = receivedMessage(m[0], m[1], m[2]);
+            // Shown with when it was sent rather than when the snapshot came in
+            if (message.getHlc() > 0) message.setTimestamp(HybridLogicalClock.physicalOf(message.getHlc()));
+            batch.add(message);
+        }
+        databaseExecutor.execute(() -> {
+            int added = messageDao.insertMissing(batch);
+            Log.d(TAG, "History snapshot: " + added + " of " + batch.size() + " message(s) were new");
+        });
+    }
+
+    @Override
+    public void onFrameAcknowledged(String frameType, String uniqueId) {
+        outboxExecutor.execute(() -> {
+            outbox.acknowledge(frameType, uniqueId);
+            if (!Outbox.isPrimaryFrame(frameType)) return;
+            messageDao.advanceDeliveryState(uniqueId, Message.DELIVERY_ACKED);
+
+            // Duplicate acks (for resent frames) and acks for messages sent before a restart have no send time
+            Long sentAt = sentAtMs.remove(uniqueId);
+            if (sentAt == null) return;
+            long roundTripMs = System.currentTimeMillis() - sentAt;
+            deliveryLatency.record(roundTripMs);
+            if (deliveryLatency.getCount() % 50 == 0) Log.d(TAG, "Delivery latency: " + deliveryLatency);
+            completeDelivery(uniqueId, roundTripMs);
+        });
+    }
+
+    private void completeDelivery(String uniqueId, long roundTripMs) {
+        CompletableFuture<Long> delivered = deliveryFutures.remove(uniqueId);
+        if (delivered != null) delivered.complete(roundTripMs);
+    }
+
+    private void failDelivery(String uniqueId, Throwable cause) {
+        sentAtMs.remove(uniqueId);
+        CompletableFuture<Long> delivered = deliveryFutures.remove(uniqueId);
+        if (delivered != null) delivered.completeExceptionally(cause);
     }
 
     private String encodeFileToBase64(String filePath) {
@@ -163,33 +538,34 @@ public class ChatRepository implements NetworkManager.MessageReceiver {
         }
     }
 
-    // ---------------- DATABASE ----------------
-
-    private void insert(Message message) {
-        databaseExecutor.execute(() -> {
-            messageDao.insertMessage(message);
-            Log.d(TAG, "Database insert successful: " + message.getSenderName() + ": " + message.getText());
-        });
-    }
-
     // ---------------- NETWORK CALLBACKS ----------------
 
     @Override
-    public void onMessageReceived(String sender, String text) {
-        if (sender != null && sender.equals(currentUsername)) {
-            Log.d(TAG, "Ignoring echo of own message: " + text);
-            return;
-        }
+    public void onMessageReceived(String channel, String sender, String text) {
+        // The host doesn't echo our own lines back; a multicast copy or an outbox retry after a reconnect
+        // still can, and carries the uniqueId we already stored
+        Message message = receivedMessage(channel, sender, text);
+        commandExecutor.execute(message.getUniqueId(), () -> {
+            if (messageDao.insertMissing(java.util.Collections.singletonList(message)) == 0) return;
+            Log.d(TAG, "Received message saved: " + message.getSenderName() + ": " + message.getText());
+        });
+    }
 
+    // A chat line from someone else as a row; MSG frames carry the sender's id and stamp
+    private Message receivedMessage(String channel, String sender, String text) {
         String uniqueId;
         String messageText = text;
         long timestamp = new Date().getTime();
+        long hlc = 0;
 
+        // MSG:<uniqueId>:<hlc>:<text>
         if (text.startsWith("MSG:")) {
-            String[] parts = text.substring(4).split(":", 2);
-            if (parts.length == 2) {
+            String[] parts = text.substring(4).split(":", 3);
+            if (parts.length >= 2) {
                 uniqueId = parts[0];
-                messageText = parts[1];
+                hlc = parts.length == 3 ? HybridLogicalClock.parse(parts[1]) : 0;
+                // No stamp (older sender): everything after the id is text
+                messageText = hlc > 0 ? parts[2] : text.substring(4 + uniqueId.length() + 1);
             } else {
                 uniqueId = sender + "_" + timestamp;
             }
@@ -198,54 +574,141 @@ public class ChatRepository implements NetworkManager.MessageReceiver {
         }
 
         Message message = new Message(sender, messageText, timestamp, false, uniqueId);
+        message.setHlc(receiveStamp(hlc));
+        message.setChannel(channel);
         message.setSentByUser(false); // ✅ safeguard
-        insert(message);
-        Log.d(TAG, "Received message saved: " + sender + ": " + messageText);
+        return message;
+    }
+
+    // Ordering key for a received message: the sender's stamp, merged into our clock so our replies sort after it.
+    // Frames without one (join notices, older peers) are ordered by when they arrived here.
+    private long receiveStamp(long remoteHlc) {
+        if (remoteHlc <= 0) return clock.now();
+        clock.update(remoteHlc);
+        return remoteHlc;
     }
 
     @Override
-    public void onImageReceived(String uniqueId, String caption, String base64Data) {
+    public void onImagePreviewReceived(String uniqueId, long hlc, String channel, String caption, String base64Data) {
         databaseExecutor.execute(() -> {
             try {
-                String[] idParts = uniqueId.split("_");
-                String sender = idParts.length > 0 ? idParts[0] : "Unknown";
-
+                String sender = senderOf(uniqueId);
                 if (sender.equals(currentUsername)) return;
 
-                byte[] imageBytes = android.util.Base64.decode(base64Data, android.util.Base64.NO_WRAP);
-                java.io.File imagesDir = new java.io.File(context.getFilesDir(), "images");
-                if (!imagesDir.exists()) imagesDir.mkdirs();
+                synchronized (mediaUpsertLock) {
+                    Message existing = messageDao.getMessageByUniqueId(uniqueId);
+                    if (existing != null) {
+                        // Lazy mode: META came first and left a placeholder without a file
+                        if (existing.getFilePath() == null) {
+                            messageDao.updatePreviewFile(uniqueId, writeImageFile("prev_", base64Data).getAbsolutePath());
+                        }
+                        // Otherwise the full image overtook its preview; nothing left to show
+                        return;
+                    }
 
-                java.io.File imageFile = new java.io.File(imagesDir, "img_" + System.currentTimeMillis() + ".jpg");
-                java.io.FileOutputStream fos = new java.io.FileOutputStream(imageFile);
-                fos.write(imageBytes);
-                fos.close();
+                    java.io.File previewFile = writeImageFile("prev_", base64Data);
+                    Message message = new Message(sender,
+                            caption != null && !caption.isEmpty() ? caption : "📷 Image",
+                            System.currentTimeMillis(), false, uniqueId);
+                    message.setMessageType("image");
+                    message.setFilePath(previewFile.getAbsolutePath());
+                    message.setFileName(previewFile.getName());
+                    message.setFileSize(previewFile.length());
+                    message.setPreviewOnly(true);
+                    message.setHlc(receiveStamp(hlc));
+                    message.setChannel(channel);
+                    message.setSentByUser(false);
+                    messageDao.insertReceived(message);
+                }
+                Log.d(TAG, "Received image preview: " + uniqueId);
+            } catch (Exception e) {
+                Log.e(TAG, "Error processing image preview", e);
+            }
+        });
+    }
 
-                long timestamp = System.currentTimeMillis();
-                Message message = new Message(sender,
-                        caption != null && !caption.isEmpty() ? caption : "📷 Image",
-                        timestamp, false, uniqueId);
-                message.setMessageType("image");
-                message.setFilePath(imageFile.getAbsolutePath());
-                message.setFileName(imageFile.getName());
-                message.setFileSize(imageFile.length());
-                message.setSentByUser(false); // ✅ fix
-                insert(message);
+    @Override
+    public void onImageReceived(String uniqueId, long hlc, String channel, String caption, String base64Data) {
+        databaseExecutor.execute(() -> {
+            try {
+                String sender = senderOf(uniqueId);
+                if (sender.equals(currentUsername)) return;
+                if (!matchesAnnouncedHash(uniqueId, base64Data)) return;
+
+                java.io.File imageFile = writeImageFile("img_", base64Data);
+
+                synchronized (mediaUpsertLock) {
+                    Message existing = messageDao.getMessageByUniqueId(uniqueId);
+                    if (existing != null) {
+                        // Swap the preview for the full image in place; the adapter rebinds on the new path
+                        messageDao.updateMediaFile(uniqueId, imageFile.getAbsolutePath(),
+                                imageFile.getName(), imageFile.length());
+                        if (existing.isPreviewOnly() && existing.getFilePath() != null) {
+                            new java.io.File(existing.getFilePath()).delete();
+                        }
+                    } else {
+                        long timestamp = System.currentTimeMillis();
+                        Message message = new Message(sender,
+                                caption != null && !caption.isEmpty() ? caption : "📷 Image",
+                                timestamp, false, uniqueId);
+                        message.setMessageType("image");
+                        message.setFilePath(imageFile.getAbsolutePath());
+                        message.setFileName(imageFile.getName());
+                        message.setFileSize(imageFile.length());
+                        message.setHlc(receiveStamp(hlc));
+                        message.setChannel(channel);
+                        message.setSentByUser(false); // ✅ fix
+                        messageDao.insertReceived(message);
+                    }
+                }
+                requestedMedia.remove(uniqueId);
                 Log.d(TAG, "Received and saved image message: " + uniqueId);
             } catch (Exception e) {
+                requestedMedia.remove(uniqueId);
                 Log.e(TAG, "Error processing received image", e);
             }
         });
     }
 
+    // Lazy media: a fetched body that doesn't hash to what its META announced is dropped, and the bubble
+    // may fetch it again. Bodies pushed eagerly were never announced and pass.
+    private boolean matchesAnnouncedHash(String uniqueId, String base64Data) {
+        String expected = announcedMediaHashes.get(uniqueId);
+        if (expected == null) return true;
+        if (!expected.equals(LazyMediaStore.hashOf(base64Data))) {
+            requestedMedia.remove(uniqueId);
+            Log.w(TAG, "Fetched media " + uniqueId + " does not match its announced sha256, dropped");
+            return false;
+        }
+        announcedMediaHashes.remove(uniqueId);
+        return true;
+    }
+
+    private static String senderOf(String uniqueId) {
+        String[] idParts = uniqueId.split("_");
+        return idParts.length > 0 ? idParts[0] : "Unknown";
+    }
+
+    private java.io.File writeImageFile(String prefix, String base64Data) throws java.io.IOException {
+        byte[] imageBytes = android.util.Base64.decode(base64Data, android.util.Base64.NO_WRAP);
+        java.io.File imagesDir = new java.io.File(context.getFilesDir(), "images");
+        if (!imagesDir.exists()) imagesDir.mkdirs();
+
+        java.io.File imageFile = new java.io.File(imagesDir, prefix + System.nanoTime() + ".jpg");
+        java.io.FileOutputStream fos = new java.io.FileOutputStream(imageFile);
+        fos.write(imageBytes);
+        fos.close();
+        return imageFile;
+    }
+
     @Override
-    public void onDocumentReceived(String uniqueId, String fileName, long fileSize, String base64Data) {
+    public void onDocumentReceived(String uniqueId, long hlc, String channel, String fileName, long fileSize, String base64Data) {
         databaseExecutor.execute(() -> {
             try {
-                String[] idParts = uniqueId.split("_");
-                String sender = idParts.length > 0 ? idParts[0] : "Unknown";
+                String sender = senderOf(uniqueId);
 
                 if (sender.equals(currentUsername)) return;
+                if (!matchesAnnouncedHash(uniqueId, base64Data)) return;
 
                 byte[] docBytes = android.util.Base64.decode(base64Data, android.util.Base64.NO_WRAP);
                 java.io.File docsDir = new java.io.File(context.getFilesDir(), "documents");
@@ -258,128 +721,262 @@ public class ChatRepository implements NetworkManager.MessageReceiver {
                 fos.write(docBytes);
                 fos.close();
 
-                long timestamp = System.currentTimeMillis();
-                Message message = new Message(sender, "📎 " + fileName, timestamp, false, uniqueId);
-                message.setMessageType("document");
-                message.setFilePath(docFile.getAbsolutePath());
-                message.setFileName(fileName);
-                message.setFileSize(fileSize);
-                message.setSentByUser(false); // ✅ fix
-                insert(message);
+                synchronized (mediaUpsertLock) {
+                    if (messageDao.getMessageByUniqueId(uniqueId) != null) {
+                        // Fetched body for a lazy-mode placeholder
+                        messageDao.updateMediaFile(uniqueId, docFile.getAbsolutePath(), fileName, fileSize);
+                    } else {
+                        long timestamp = System.currentTimeMillis();
+                        Message message = new Message(sender, "📎 " + fileName, timestamp, false, uniqueId);
+                        message.setMessageType("document");
+                        message.setFilePath(docFile.getAbsolutePath());
+                        message.setFileName(fileName);
+                        message.setFileSize(fileSize);
+                        message.setHlc(receiveStamp(hlc));
+                        message.setChannel(channel);
+                        message.setSentByUser(false); // ✅ fix
+                        messageDao.insertReceived(message);
+                    }
+                }
+                requestedMedia.remove(uniqueId);
                 Log.d(TAG, "Received and saved document message: " + uniqueId);
             } catch (Exception e) {
+                requestedMedia.remove(uniqueId);
                 Log.e(TAG, "Error processing received document", e);
             }
         });
     }
 
     @Override
-    public void onMessageLiked(String uniqueId, boolean isLiked) {
+    public void onMediaMetadataReceived(String uniqueId, long hlc, String channel, String type, long size, String hash, String name) {
         databaseExecutor.execute(() -> {
-            Message message = messageDao.getMessageByUniqueId(uniqueId);
-            if (message == null) return;
-
-            String likedBy = message.getLikedBy();
-            java.util.List<String> users = new java.util.ArrayList<>();
-            if (likedBy != null && !likedBy.isEmpty()) {
-                for (String u : likedBy.split(",")) {
-                    if (!u.trim().isEmpty()) users.add(u.trim());
+            String sender = senderOf(uniqueId);
+            if (sender.equals(currentUsername)) return;
+            if (hash != null && !hash.isEmpty()) announcedMediaHashes.put(uniqueId, hash);
+
+            synchronized (mediaUpsertLock) {
+                Message existing = messageDao.getMessageByUniqueId(uniqueId);
+                if (existing != null) {
+                    // The preview is already showing; the full image is fetched once the bubble is on screen
+                    messageDao.markRemoteOnly(uniqueId, size);
+                    return;
                 }
-            }
 
-            if (isLiked) {
-                if (!users.contains(currentUsername)) {
-                    users.add(currentUsername);
-                    messageDao.incrementLike(uniqueId);
-                }
-            } else {
-                if (users.remove(currentUsername)) {
-                    messageDao.decrementLike(uniqueId);
-                }
+                boolean isImage = "image".equals(type);
+                String text = isImage
+                        ? (name != null && !name.isEmpty() ? name : "📷 Image")
+                        : "📎 " + name;
+                Message message = new Message(sender, text, System.currentTimeMillis(), false, uniqueId);
+                message.setMessageType(isImage ? "image" : "document");
+                message.setFileName(isImage ? null : name);
+                message.setFileSize(size);
+                message.setRemoteOnly(true);
+                message.setHlc(receiveStamp(hlc));
+                message.setChannel(channel);
+                message.setSentByUser(false);
+                messageDao.insertReceived(message);
             }
+            Log.d(TAG, "Media announced (" + type + ", " + size + " bytes, sha256 " + hash + "): " + uniqueId);
+        });
+    }
 
-            String updated = users.isEmpty() ? null : String.join(",", users);
-            messageDao.updateLikedBy(uniqueId, updated);
+    @Override
+    public void onOriginalRequested(String uniqueId) {
+        databaseExecutor.execute(() -> {
+            Message message = messageDao.getMessageByUniqueId(uniqueId);
+            // Only the device that sent the image holds the untranscoded original
+            if (message == null || !message.isSentByUser() || !"image".equals(message.getMessageType())
+                    || message.getFilePath() == null) return;
+
+            String base64Image = encodeFileToBase64(message.getFilePath());
+            if (base64Image == null || base64Image.isEmpty()) return;
+            networkManager.sendMessage("ORIG:" + uniqueId + ":" + base64Image);
+            Log.d(TAG, "Sent original for " + uniqueId);
         });
     }
 
     @Override
-    public void onMessageEdited(String uniqueId, String newText) {
+    public void onOriginalReceived(String uniqueId, String base64Data) {
+        if (!pendingOriginals.remove(uniqueId)) return;
         databaseExecutor.execute(() -> {
-            messageDao.updateMessage(uniqueId, newText);
-            Log.d(TAG, "Edited message updated locally: " + uniqueId);
+            try {
+                Message message = messageDao.getMessageByUniqueId(uniqueId);
+                if (message == null) return;
+
+                byte[] imageBytes = android.util.Base64.decode(base64Data, android.util.Base64.NO_WRAP);
+                java.io.File imagesDir = new java.io.File(context.getFilesDir(), "images");
+                if (!imagesDir.exists()) imagesDir.mkdirs();
+
+                java.io.File originalFile = new java.io.File(imagesDir, "orig_" + System.currentTimeMillis() + ".jpg");
+                java.io.FileOutputStream fos = new java.io.FileOutputStream(originalFile);
+                fos.write(imageBytes);
+                fos.close();
+
+                String previousPath = message.getFilePath();
+                messageDao.updateMediaFile(uniqueId, originalFile.getAbsolutePath(),
+                        originalFile.getName(), originalFile.length());
+                if (previousPath != null) new java.io.File(previousPath).delete();
+                Log.d(TAG, "Replaced " + uniqueId + " with full-quality original");
+            } catch (Exception e) {
+                Log.e(TAG, "Error saving original image", e);
+            }
         });
     }
 
+    // Merged into each message's ReactionSet, one transaction per batch. Duplicates and our own echo don't
+    // matter, but the batch waits on the stripes of its messages so it lands after their MSG; reactions for a
+    // message that still isn't here are parked and merged when it arrives (see PendingReactions).
+    @Override
+    public void onReactionsReceived(List<ReactionSet.Change> changes) {
+        java.util.Set<String> ids = new java.util.LinkedHashSet<>();
+        for (ReactionSet.Change c : changes) ids.add(c.uniqueId);
+        commandExecutor.executeAll(ids, () -> {
+            int applied = messageDao.applyReactions(changes);
+            if (applied < changes.size())
+                Log.d(TAG, (changes.size() - applied) + " reaction(s) parked until their message arrives");
+        });
+    }
+
+    @Override
+    public void onMessageEdited(String uniqueId, String newText) {
+        commandExecutor.execute(uniqueId, () -> applyEdit(uniqueId, newText));
+    }
+
+    private void applyEdit(String uniqueId, String newText) {
+        messageDao.updateMessage(uniqueId, newText);
+        Log.d(TAG, "Edited message updated locally: " + uniqueId);
+    }
+
     @Override
     public void onMessageDeleted(String uniqueId) {
-        databaseExecutor.execute(() -> {
-            messageDao.deleteMessage(uniqueId);
-            Log.d(TAG, "Deleted message locally: " + uniqueId);
+        commandExecutor.execute(uniqueId, () -> applyDelete(uniqueId));
+    }
+
+    private void applyDelete(String uniqueId) {
+        messageDao.deleteMessage(uniqueId);
+        Log.d(TAG, "Deleted message locally: " + uniqueId);
+    }
+
+    // A BATCH waits its turn on the stripe of every message it touches, so it stays in order with single
+    // EDITs/DELETEs and other batches for them, and then goes in one transaction
+    @Override
+    public void onCommandsReceived(List<String> deletedIds, Map<String, String> editedTexts) {
+        commandExecutor.executeAll(touchedIds(deletedIds, editedTexts), () -> {
+            messageDao.applyCommands(deletedIds, editedTexts);
+            Log.d(TAG, "Batch applied: " + editedTexts.size() + " edited, " + deletedIds.size() + " deleted");
         });
     }
 
+    private static java.util.Set<String> touchedIds(List<String> deletedIds, Map<String, String> editedTexts) {
+        java.util.Set<String> ids = new java.util.LinkedHashSet<>(editedTexts.keySet());
+        ids.addAll(deletedIds);
+        return ids;
+    }
+
     // ---------------- PUBLIC ACTION METHODS ----------------
 
     public void likeMessage(int messageId, boolean dummy) { // dummy kept for compatibility
+        executeForMessage(messageId, uniqueId -> {
+            // Read on the stripe: an earlier like/unlike for this message may have just changed it
+            List<String> rows = messageDao.getReactions(uniqueId);
+            if (rows.isEmpty()) return;
+            ReactionSet current = ReactionSet.parse(rows.get(0));
+            // Liking adds a fresh tag; unliking removes exactly the tags we have seen for us, so a like from
+            // our other device that hasn't reached us yet is not undone
+            boolean willLike = !current.contains(currentUsername);
+            List<String> tags = willLike
+                    ? java.util.Collections.singletonList(ReactionSet.newTag(clock.now()))
+                    : current.observedTags(currentUsername);
+            messageDao.applyReaction(uniqueId, willLike, currentUsername, tags);
+            networkManager.sendLike(uniqueId, willLike, currentUsername, tags);
+            Log.d(TAG, "Toggled like for " + uniqueId + " → " + (willLike ? "liked" : "unliked"));
+        });
+    }
+
+    // Lazy media: called when a placeholder bubble becomes visible or a document is tapped
+    public void fetchMedia(int messageId) {
         databaseExecutor.execute(() -> {
             Message message = messageDao.getMessageById(messageId);
-            if (message != null && message.getUniqueId() != null) {
-                String uniqueId = message.getUniqueId();
-                String likedBy = message.getLikedBy();
-                List<String> likedByList = new ArrayList<>();
-
-                if (likedBy != null && !likedBy.isEmpty()) {
-                    String[] users = likedBy.split(",");
-                    for (String user : users) {
-                        if (user != null && !user.trim().isEmpty()) {
-                            likedByList.add(user.trim());
-                        }
-                    }
-                }
-
-                boolean alreadyLiked = likedByList.contains(currentUsername);
-                boolean willLike = !alreadyLiked; // toggle state
+            if (message != null && message.isRemoteOnly() && requestedMedia.add(message.getUniqueId())) {
+                networkManager.fetchMedia(message.getUniqueId());
+            }
+        });
+    }
 
-                if (willLike) {
-                    likedByList.add(currentUsername);
-                    messageDao.incrementLike(uniqueId);
-                } else {
-                    likedByList.remove(currentUsername);
-                    messageDao.decrementLike(uniqueId);
-                }
+    public void setLazyMediaMode(boolean enabled) {
+        networkManager.setLazyMediaMode(enabled);
+    }
 
-                String newLikedBy = likedByList.isEmpty() ? null : String.join(",", likedByList);
-                messageDao.updateLikedBy(uniqueId, newLikedBy);
+    public void setMulticastEnabled(boolean enabled) {
+        networkManager.setMulticastEnabled(enabled);
+    }
 
-                // Send over network with correct intent
-                networkManager.sendLike(uniqueId, willLike);
-                Log.d(TAG, "Toggled like for " + uniqueId + " → " + (willLike ? "liked" : "unliked"));
+    public void requestOriginalImage(int messageId) {
+        databaseExecutor.execute(() -> {
+            Message message = messageDao.getMessageById(messageId);
+            if (message != null && message.getUniqueId() != null && !message.isSentByUser()
+                    && "image".equals(message.getMessageType())) {
+                pendingOriginals.add(message.getUniqueId());
+                networkManager.requestOriginal(message.getUniqueId());
             }
         });
     }
 
+    public void editMessage(int messageId, String newText) {
+        executeForMessage(messageId, id -> {
+            applyEdit(id, newText);
+            queueEdit(id, newText);
+        });
+    }
 
+    public void deleteMessage(int messageId) {
+        executeForMessage(messageId, id -> {
+            applyDelete(id);
+            uniqueIdsByRowId.remove(messageId);
+            queueDelete(id);
+        });
+    }
 
-    public void editMessage(int messageId, String newText) {
+    // Multi-select: every edit and delete goes out as one BATCH frame and lands here in one transaction.
+    // Only our own messages; edits and deletes of anyone else's are ignored.
+    public void editMessages(Map<Integer, String> newTexts) {
         databaseExecutor.execute(() -> {
-            Message message = messageDao.getMessageById(messageId);
-            if (message != null && message.getUniqueId() != null) {
-                String id = message.getUniqueId();
-                onMessageEdited(id, newText);
-                networkManager.sendEdit(id, newText);
+            Map<String, String> edited = new java.util.LinkedHashMap<>();
+            for (Map.Entry<Integer, String> e : newTexts.entrySet()) {
+                String uniqueId = ownUniqueId(e.getKey());
+                if (uniqueId != null) edited.put(uniqueId, e.getValue());
             }
+            applyOwnBatch(java.util.Collections.emptyList(), edited);
         });
     }
 
-    public void deleteMessage(int messageId) {
+    public void deleteMessages(java.util.Collection<Integer> messageIds) {
         databaseExecutor.execute(() -> {
-            Message message = messageDao.getMessageById(messageId);
-            if (message != null && message.getUniqueId() != null) {
-                String id = message.getUniqueId();
-                onMessageDeleted(id);
-                networkManager.sendDelete(id);
+            List<String> deleted = new ArrayList<>();
+            for (int messageId : messageIds) {
+                String uniqueId = ownUniqueId(messageId);
+                if (uniqueId == null) continue;
+                deleted.add(uniqueId);
+                uniqueIdsByRowId.remove(messageId);
             }
+            applyOwnBatch(deleted, java.util.Collections.emptyMap());
         });
     }
+
+    // Our own batch: applied in order on the stripes like one from a peer, then through the outbox like a
+    // single edit or delete, so it is neither lost offline nor allowed to overtake the messages' own frames
+    private void applyOwnBatch(List<String> deletedIds, Map<String, String> editedTexts) {
+        if (deletedIds.isEmpty() && editedTexts.isEmpty()) return;
+        commandExecutor.executeAll(touchedIds(deletedIds, editedTexts), () -> {
+            messageDao.applyCommands(deletedIds, editedTexts);
+            queueBatch(deletedIds, editedTexts);
+        });
+    }
+
+    // uniqueId of one of our own messages that isn't deleted, null otherwise; on the database pool
+    private String ownUniqueId(int messageId) {
+        Message message = messageDao.getMessageById(messageId);
+        if (message == null || message.getUniqueId() == null || !message.isSentByUser() || message.isDeleted()) return null;
+        return message.getUniqueId();
+    }
 }
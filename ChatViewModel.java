@@ -7,9 +7,13 @@ import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 
 import com.example.chitchatapp.db.Message;
+import com.example.chitchatapp.network.LatencyHistogram;
+import com.example.chitchatapp.network.RoomBrowser;
 import com.example.chitchatapp.repository.ChatRepository;
 
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public class ChatViewModel extends AndroidViewModel {
 
@@ -40,6 +44,11 @@ public class ChatViewModel extends AndroidViewModel {
         return connectionStatus;
     }
 
+    // Rooms announcing themselves on the LAN, least loaded first
+    public LiveData<List<RoomBrowser.Room>> getNearbyRooms() {
+        return repository.getNearbyRooms();
+    }
+
     // ------------------- User Setup -------------------
 
     public void setUsername(String username) {
@@ -52,26 +61,66 @@ public class ChatViewModel extends AndroidViewModel {
         repository.hostChat();
     }
 
-    public void joinChat(String hostIp) {
-        repository.joinChat(hostIp);
+    public void joinChat(String hostIp, int port) {
+        repository.joinChat(hostIp, port);
+    }
+
+    public void startRoomDiscovery() {
+        repository.startRoomDiscovery();
+    }
+
+    public void stopRoomDiscovery() {
+        repository.stopRoomDiscovery();
+    }
+
+    // Least loaded compatible room heard so far, null if none
+    public RoomBrowser.Room getBestRoom() {
+        return repository.getBestRoom();
     }
 
     public void stopNetwork() {
         repository.stopNetwork();
     }
 
+    // ------------------- Channels -------------------
+
+    public String switchChannel(String name) {
+        return repository.switchChannel(name);
+    }
+
+    public void joinChannel(String name) {
+        repository.joinChannel(name);
+    }
+
+    public void leaveChannel(String name) {
+        repository.leaveChannel(name);
+    }
+
+    public Set<String> getJoinedChannels() {
+        return repository.getJoinedChannels();
+    }
+
+    public LiveData<String> getCurrentChannel() {
+        return repository.getCurrentChannel();
+    }
+
     // ------------------- Messaging Actions -------------------
 
-    public void sendMessage(String text) {
-        repository.sendMessage(text);
+    // The futures complete with the round-trip time in ms once the host acknowledges the message
+    public CompletableFuture<Long> sendMessage(String text) {
+        return repository.sendMessage(text);
+    }
+
+    public CompletableFuture<Long> sendImageMessage(String filePath, String caption) {
+        return repository.sendImageMessage(filePath, caption);
     }
 
-    public void sendImageMessage(String filePath, String caption) {
-        repository.sendImageMessage(filePath, caption);
+    public CompletableFuture<Long> sendDocumentMessage(String filePath, String fileName, long fileSize) {
+        return repository.sendDocumentMessage(filePath, fileName, fileSize);
     }
 
-    public void sendDocumentMessage(String filePath, String fileName, long fileSize) {
-        repository.sendDocumentMessage(filePath, fileName, fileSize);
+    public LatencyHistogram getDeliveryLatency() {
+        return repository.getDeliveryLatency();
     }
 
     // ------------------- Message Interaction -------------------
@@ -81,6 +130,22 @@ public class ChatViewModel extends AndroidViewModel {
         repository.likeMessage(messageId, isLiked);
     }
 
+    public void fetchMedia(int messageId) {
+        repository.fetchMedia(messageId);
+    }
+
+    public void setLazyMediaMode(boolean enabled) {
+        repository.setLazyMediaMode(enabled);
+    }
+
+    public void setMulticastEnabled(boolean enabled) {
+        repository.setMulticastEnabled(enabled);
+    }
+
+    public void requestOriginalImage(int messageId) {
+        repository.requestOriginalImage(messageId);
+    }
+
     public void editMessage(int messageId, String newText) {
         repository.editMessage(messageId, newText);
     }
@@ -89,6 +154,15 @@ public class ChatViewModel extends AndroidViewModel {
         repository.deleteMessage(messageId);
     }
 
+    // Multi-select: one BATCH frame for all of them
+    public void editMessages(java.util.Map<Integer, String> newTexts) {
+        repository.editMessages(newTexts);
+    }
+
+    public void deleteMessages(java.util.Collection<Integer> messageIds) {
+        repository.deleteMessages(messageIds);
+    }
+
     // ------------------- Lifecycle Cleanup -------------------
 
     @Override
@@ -0,0 +1,93 @@
+package com.example.chitchatapp.network;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+
+// Receiving side of LaneWriter's bulk lane: collects CHUNK: lines per transfer and hands back the
+// original frame once every piece is there. Chunks may arrive out of order.
+// One assembler per sending connection, since transfer ids are only unique per sender.
+// A transfer that gets no chunk for STALL_TIMEOUT_MS is dropped: its sender lost the stream it was on
+// (see StripedSender) and sends the frame again another way, so the rest will never come.
+public class ChunkAssembler {
+
+    private static final int MAX_OPEN_TRANSFERS = 32;
+    public static final long STALL_TIMEOUT_MS = 60_000;
+
+    private static final class Transfer {
+        final TreeMap<Integer, String> pieces = new TreeMap<>();
+        int lastIndex = -1;
+        long length = 0;
+        long lastChunkMs;
+    }
+
+    // Insertion order, so the oldest half-finished transfer is dropped first when a sender misbehaves
+    private final LinkedHashMap<String, Transfer> open = new LinkedHashMap<>();
+    private final LongSupplier clockMs;
+
+    public ChunkAssembler() {
+        this(System::currentTimeMillis);
+    }
+
+    public ChunkAssembler(LongSupplier clockMs) {
+        this.clockMs = clockMs;
+    }
+
+    public static boolean isChunk(String line) {
+        return line.startsWith("CHUNK:");
+    }
+
+    // Returns the reassembled frame when this chunk completes a transfer, otherwise null
+    public synchronized String accept(String line) {
+        String[] parts = line.split(":", 5);
+        if (parts.length != 5) return null;
+
+        int index;
+        boolean last;
+        try {
+            index = Integer.parseInt(parts[2]);
+            last = "1".equals(parts[3]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        long now = clockMs.getAsLong();
+        expireStalled(now);
+
+        String id = parts[1];
+        Transfer transfer = open.get(id);
+        if (transfer == null) {
+            transfer = new Transfer();
+            open.put(id, transfer);
+            evictIfNeeded();
+        }
+        transfer.lastChunkMs = now;
+        if (transfer.pieces.put(index, parts[4]) == null) transfer.length += parts[4].length();
+        if (last) transfer.lastIndex = index;
+
+        if (transfer.lastIndex < 0 || transfer.pieces.size() != transfer.lastIndex + 1) return null;
+
+        open.remove(id);
+        StringBuilder frame = new StringBuilder((int) transfer.length);
+        for (String piece : transfer.pieces.values()) frame.append(piece);
+        return frame.toString();
+    }
+
+    public synchronized int getOpenTransfers() {
+        return open.size();
+    }
+
+    private void expireStalled(long now) {
+        open.values().removeIf(transfer -> now - transfer.lastChunkMs >= STALL_TIMEOUT_MS);
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Transfer>> it = open.entrySet().iterator();
+        while (open.size() > MAX_OPEN_TRANSFERS && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.chitchatapp.db;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LiveData;
+import androidx.room.InvalidationTracker;
+import androidx.room.RoomDatabase;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+// LiveData over a Room query that re-runs the query at most once per coalescing window.
+// Room's own LiveData re-queries on every single write; during a burst of incoming messages or
+// likes this only queries (and lets the adapter diff) once per window, always ending on the latest state.
+public class CoalescedQueryLiveData<T> extends LiveData<T> {
+
+    private static final String TAG = "CoalescedQueryLiveData";
+
+    // One background thread per query so refreshes of the same query never overlap
+    private final ScheduledExecutorService refreshExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    private final RoomDatabase database;
+    private final Callable<T> query;
+    private final InvalidationCoalescer coalescer;
+    private final InvalidationTracker.Observer observer;
+
+    public CoalescedQueryLiveData(RoomDatabase database, String[] tables, Callable<T> query,
+                                  long windowMs, long maxStalenessMs) {
+        this.database = database;
+        this.query = query;
+        this.coalescer = new InvalidationCoalescer(refreshExecutor, this::runQuery, windowMs, maxStalenessMs);
+        this.observer = new InvalidationTracker.Observer(tables) {
+            @Override
+            public void onInvalidated(@NonNull Set<String> invalidated) {
+                coalescer.invalidate();
+            }
+        };
+    }
+
+    public void configure(long windowMs, long maxStalenessMs) {
+        coalescer.configure(windowMs, maxStalenessMs);
+    }
+
+    // Forces a re-query outside the normal invalidation flow
+    public void refresh() {
+        coalescer.refreshNow();
+    }
+
+    @Override
+    protected void onActive() {
+        database.getInvalidationTracker().addObserver(observer);
+        coalescer.refreshNow();
+    }
+
+    @Override
+    protected void onInactive() {
+        database.getInvalidationTracker().removeObserver(observer);
+        coalescer.cancel();
+    }
+
+    private void runQuery() {
+        try {
+            postValue(query.call());
+        } catch (Exception e) {
+            Log.e(TAG, "Coalesced query failed", e);
+        }
+    }
+
+    // --- Counters ---
+
+    public long getInvalidationCount() {
+        return coalescer.getInvalidationCount();
+    }
+
+    public long getQueryCount() {
+        return coalescer.getRefreshCount();
+    }
+
+    public long getQueriesAvoided() {
+        return coalescer.getRefreshesAvoided();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.chitchatapp.network;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Edits and deletes for many messages in one frame, from a multi-select in the chat:
+//   BATCH:<command>\t<command>...
+// each command a plain EDIT:<uniqueId>:<text> or DELETE:<uniqueId>. Every peer applies a batch in one
+// database transaction, so the message list refreshes once however many messages it touches. A batch of
+// one goes out as the command itself, which older peers understand.
+public final class CommandBatch {
+
+    public static final String PREFIX = "BATCH:";
+    private static final String SEPARATOR = "\t";
+
+    // What one batch does, in the order it was selected
+    public final List<String> deletedIds = new ArrayList<>();
+    public final Map<String, String> editedTexts = new LinkedHashMap<>();
+
+    public static String edit(String uniqueId, String newText) {
+        // A tab would split the batch; the chat never shows one anyway
+        return "EDIT:" + uniqueId + ":" + newText.replace(SEPARATOR, " ");
+    }
+
+    public static String delete(String uniqueId) {
+        return "DELETE:" + uniqueId;
+    }
+
+    public static String encode(List<String> commands) {
+        return commands.size() == 1 ? commands.get(0) : PREFIX + String.join(SEPARATOR, commands);
+    }
+
+    // uniqueId a command, or a batch by its first command, is acked with
+    public static String idOf(String frame) {
+        String first = (frame.startsWith(PREFIX) ? frame.substring(PREFIX.length()) : frame).split(SEPARATOR, 2)[0];
+        return first.substring(first.indexOf(':') + 1).split(":", 2)[0];
+    }
+
+    // BATCH payload -> the commands in it
+    public static List<String> parse(String payload) {
+        List<String> commands = new ArrayList<>();
+        for (String command : payload.split(SEPARATOR)) if (!command.isEmpty()) commands.add(command);
+        return commands;
+    }
+
+    // Commands -> the edits and deletes they carry; anything else in a batch is ignored
+    public static CommandBatch of(List<String> commands) {
+        CommandBatch batch = new CommandBatch();
+        for (String command : commands) {
+            if (command.startsWith("DELETE:")) {
+                batch.deletedIds.add(command.substring(7));
+            } else if (command.startsWith("EDIT:")) {
+                String[] parts = command.substring(5).split(":", 2);
+                if (parts.length == 2) batch.editedTexts.put(parts[0], parts[1]);
+            }
+        }
+        return batch;
+    }
+
+    public boolean isEmpty() {
+        return deletedIds.isEmpty() && editedTexts.isEmpty();
+    }
+}
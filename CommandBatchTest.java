@@ -0,0 +1,50 @@
+package com.example.chitchatapp.network;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Multi-select edits and deletes: one BATCH frame that every peer turns back into the same edits and deletes.
+ */
+public class CommandBatchTest {
+
+    @Test
+    public void batchRoundTrips() {
+        List<String> commands = Arrays.asList(
+                CommandBatch.delete("alice_1"),
+                CommandBatch.edit("alice_2", "fixed: typo"),
+                CommandBatch.delete("alice_3"));
+        String frame = CommandBatch.encode(commands);
+        assertEquals("BATCH:DELETE:alice_1\tEDIT:alice_2:fixed: typo\tDELETE:alice_3", frame);
+
+        CommandBatch batch = CommandBatch.of(CommandBatch.parse(frame.substring(CommandBatch.PREFIX.length())));
+        assertEquals(Arrays.asList("alice_1", "alice_3"), batch.deletedIds);
+        assertEquals(Collections.singletonMap("alice_2", "fixed: typo"), batch.editedTexts);
+        assertEquals("alice_1", CommandBatch.idOf(frame)); // What the host acks it with
+        assertEquals("alice_2", CommandBatch.idOf(CommandBatch.edit("alice_2", "x")));
+    }
+
+    @Test
+    public void singleCommandGoesOutAsItself() {
+        assertEquals("DELETE:alice_1", CommandBatch.encode(Collections.singletonList(CommandBatch.delete("alice_1"))));
+    }
+
+    @Test
+    public void tabInAnEditCantSplitTheBatch() {
+        String frame = CommandBatch.encode(Arrays.asList(CommandBatch.edit("alice_1", "a\tb"), CommandBatch.delete("alice_2")));
+        List<String> commands = CommandBatch.parse(frame.substring(CommandBatch.PREFIX.length()));
+        assertEquals(2, commands.size());
+        assertEquals("a b", CommandBatch.of(commands).editedTexts.get("alice_1"));
+    }
+
+    @Test
+    public void otherFramesInABatchAreIgnored() {
+        CommandBatch batch = CommandBatch.of(Arrays.asList("LIKE:alice_1:t1:bob", "EDIT:broken", "ORIGREQ:alice_2"));
+        assertTrue(batch.isEmpty());
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.chitchatapp.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+// A host announcing its room to the LAN, so nobody has to type its IP. Every INTERVAL_MS one UDP broadcast:
+//   CHITCHAT:<protocolVersion>:<roomId>:<chatPort>:<load>:<roomName>
+// load is how many clients are connected. The sender's address comes from the datagram itself, so the
+// beacon stays right when the host's IP changes. See RoomBrowser for the listening side.
+public class DiscoveryBeacon implements Closeable {
+
+    public static final int PORT = 12348;
+    public static final int PROTOCOL_VERSION = 1;
+    public static final long INTERVAL_MS = 1000;
+    static final String PREFIX = "CHITCHAT:";
+
+    public interface LoadGauge {
+        int currentLoad();
+    }
+
+    private final DatagramSocket socket;
+    private final InetSocketAddress target;
+    private final String roomId;
+    private final String roomName;
+    private final int chatPort;
+    private final LoadGauge load;
+
+    public DiscoveryBeacon(String roomId, String roomName, int chatPort, LoadGauge load) throws IOException {
+        this(roomId, roomName, chatPort, load, InetAddress.getByName("255.255.255.255"), PORT);
+    }
+
+    // Aimed somewhere else than the LAN broadcast address, e.g. a RoomBrowser on loopback
+    public DiscoveryBeacon(String roomId, String roomName, int chatPort, LoadGauge load,
+                           InetAddress target, int targetPort) throws IOException {
+        this.roomId = roomId;
+        this.roomName = roomName;
+        this.chatPort = chatPort;
+        this.load = load;
+        this.target = new InetSocketAddress(target, targetPort);
+        this.socket = new DatagramSocket();
+        socket.setBroadcast(true);
+    }
+
+    // Sends one beacon with the current load; false if it couldn't go out (no network right now)
+    public boolean announce() {
+        byte[] bytes = encode(PROTOCOL_VERSION, roomId, chatPort, load.currentLoad(), roomName)
+                .getBytes(StandardCharsets.UTF_8);
+        try {
+            socket.send(new DatagramPacket(bytes, bytes.length, target));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static String encode(int version, String roomId, int chatPort, int load, String roomName) {
+        return PREFIX + version + ":" + roomId + ":" + chatPort + ":" + load + ":" + roomName;
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.chitchatapp.network;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+// One frame serialised to UTF-8 once and then shared, read-only, by every connection it is queued on, so a
+// broadcast costs one encoding however many clients get it. A CHUNK: line of a large frame is a view over the
+// same bytes behind its own small header (each connection numbers its transfers itself), not a copy.
+public final class EncodedFrame {
+
+    private static final byte[] NO_HEAD = new byte[0];
+
+    private final String text; // null for a chunk until someone asks
+    private final byte[] head;
+    private final byte[] body;
+    private final int offset;
+    private final int length;
+
+    private EncodedFrame(String text, byte[] head, byte[] body, int offset, int length) {
+        this.text = text;
+        this.head = head;
+        this.body = body;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public static EncodedFrame of(String frame) {
+        byte[] bytes = frame.getBytes(StandardCharsets.UTF_8);
+        return new EncodedFrame(frame, NO_HEAD, bytes, 0, bytes.length);
+    }
+
+    // The frame as text, for routing decisions; free for whole frames, decoded for chunks (logging only)
+    public String text() {
+        if (text != null) return text;
+        return new String(head, StandardCharsets.US_ASCII) + new String(body, offset, length, StandardCharsets.UTF_8);
+    }
+
+    // Encoded size in bytes, without the line break
+    public int size() {
+        return head.length + length;
+    }
+
+    // Bytes [start, end) of this whole frame as CHUNK:<transferId>:<index>:<last 0|1>:<data>
+    public EncodedFrame chunk(String transferId, int index, int start, int end) {
+        if (head.length > 0) throw new IllegalStateException("Chunks are cut from whole frames");
+        String header = "CHUNK:" + transferId + ":" + index + ":" + (end == length ? 1 : 0) + ":";
+        return new EncodedFrame(null, header.getBytes(StandardCharsets.US_ASCII), body, offset + start, end - start);
+    }
+
+    // Where a chunk that would end at end has to end so it doesn't split a UTF-8 sequence; ChunkAssembler
+    // decodes every chunk on its own
+    public int chunkEnd(int start, int maxBytes) {
+        int end = Math.min(length, start + maxBytes);
+        while (end < length && end > start + 1 && (body[offset + end] & 0xC0) == 0x80) end--;
+        return end;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        if (head.length > 0) out.write(head);
+        out.write(body, offset, length);
+    }
+
+    @Override
+    public String toString() {
+        return text();
+    }
+}
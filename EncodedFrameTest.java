@@ -0,0 +1,81 @@
+package com.example.chitchatapp.network;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Encode-once fan-out: one EncodedFrame queued on many LaneWriters comes out intact on every connection,
+ * and large frames are chunked from the shared bytes without splitting a character.
+ */
+public class EncodedFrameTest {
+
+    // What a LaneWriter has written so far, once it has written at least the given number of bytes
+    private static String awaitOutput(ByteArrayOutputStream out, int bytes) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (out.size() < bytes && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void oneEncodingReachesEveryClient() throws Exception {
+        EncodedFrame frame = EncodedFrame.of("CH:général:bob: MSG:bob_1:1:héllo 👋");
+        List<ByteArrayOutputStream> outs = new ArrayList<>();
+        List<LaneWriter> writers = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            outs.add(out);
+            LaneWriter writer = new LaneWriter(out, "client-" + i, null);
+            writers.add(writer);
+            assertTrue(writer.send(frame));
+        }
+        for (ByteArrayOutputStream out : outs)
+            assertEquals(frame.text() + "\n", awaitOutput(out, frame.size() + 1));
+        for (LaneWriter writer : writers) writer.close();
+        assertEquals(frame.text().getBytes(StandardCharsets.UTF_8).length, frame.size());
+    }
+
+    @Test
+    public void chunksCutFromSharedBytesKeepCharactersWhole() throws Exception {
+        StringBuilder sb = new StringBuilder("DOC:alice_1:1:notes.txt:0:");
+        while (sb.length() < 40_000) sb.append("é👋a");
+        String text = sb.toString();
+        EncodedFrame frame = EncodedFrame.of(text);
+
+        // An odd chunk size, so most cuts would land inside a character
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LaneWriter writer = new LaneWriter(out, "test", 1001, null);
+        writer.send(frame, LaneWriter.Lane.BULK);
+
+        String reassembled = null;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (reassembled == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+            ChunkAssembler assembler = new ChunkAssembler();
+            String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+            for (String line : lines) {
+                if (!ChunkAssembler.isChunk(line)) continue;
+                String whole = assembler.accept(line);
+                if (whole != null) reassembled = whole;
+            }
+        }
+        writer.close();
+
+        assertEquals(text, reassembled);
+        assertFalse(new String(out.toByteArray(), StandardCharsets.UTF_8).contains("�"));
+    }
+
+    @Test
+    public void chunkEndBacksOffToACharacterBoundary() {
+        EncodedFrame frame = EncodedFrame.of("ab👋"); // a, b, then four bytes
+        assertEquals(2, frame.chunkEnd(0, 3));
+        assertEquals(6, frame.chunkEnd(2, 4));
+        assertEquals("CHUNK:7:0:0:ab", frame.chunk("7", 0, 0, 2).text());
+        assertEquals("CHUNK:7:1:1:👋", frame.chunk("7", 1, 2, 6).text());
+    }
+}
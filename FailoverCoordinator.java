@@ -0,0 +1,144 @@
+package com.example.chitchatapp.network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+// Keeps the room alive when its host leaves. The host sends every client the ranked member list
+//   MEMBERS:<id>@<address>@<name>\t<id>@<address>@<name>...
+// host first, then clients in the order they joined. When the host connection drops, every client first
+// keeps dialling the host for hostGraceMs: a blip on one client's link (roaming, a dozing radio) must not
+// have it start a rival host while the others still reach the old one. After that every client walks the
+// same list (minus the lost host) and so reaches the same answer without talking to anyone: the first
+// member still reachable is the new host. If that is us we start hosting; otherwise we keep dialling it
+// for up to candidateTimeoutMs before moving on to the next member.
+public class FailoverCoordinator {
+
+    public static final long DEFAULT_CANDIDATE_TIMEOUT_MS = 5000;
+    public static final long DEFAULT_HOST_GRACE_MS = 3000;
+    public static final long RETRY_INTERVAL_MS = 100;
+    private static final String SEPARATOR = "\t";
+
+    public static final class Member {
+        public final String id;
+        public final String address;
+        public final String name;
+
+        public Member(String id, String address, String name) {
+            this.id = id;
+            this.address = address;
+            this.name = name;
+        }
+    }
+
+    public interface Actions {
+        // We won: start accepting the others
+        void becomeHost();
+        // One connection attempt to the host we lost, where we reached it before; true once we are back
+        boolean reconnect();
+        // One connection attempt to a candidate; true once we are in
+        boolean connect(String address);
+    }
+
+    private final String selfId;
+    private volatile long candidateTimeoutMs;
+    private volatile long hostGraceMs;
+    private volatile List<Member> members = Collections.emptyList();
+    private volatile long lastFailoverMs = -1;
+
+    public FailoverCoordinator(String selfId) {
+        this(selfId, DEFAULT_CANDIDATE_TIMEOUT_MS, DEFAULT_HOST_GRACE_MS);
+    }
+
+    public FailoverCoordinator(String selfId, long candidateTimeoutMs, long hostGraceMs) {
+        this.selfId = selfId;
+        this.candidateTimeoutMs = candidateTimeoutMs;
+        this.hostGraceMs = hostGraceMs;
+    }
+
+    // Takes effect at the next election
+    public void setTimeouts(long candidateTimeoutMs, long hostGraceMs) {
+        this.candidateTimeoutMs = candidateTimeoutMs;
+        this.hostGraceMs = hostGraceMs;
+    }
+
+    public String getSelfId() {
+        return selfId;
+    }
+
+    public void updateMembers(List<Member> ranked) {
+        members = Collections.unmodifiableList(new ArrayList<>(ranked));
+    }
+
+    public List<Member> getMembers() {
+        return members;
+    }
+
+    // id of the host we are (or were) connected to, null before the first MEMBERS
+    public String getHostId() {
+        List<Member> current = members;
+        return current.isEmpty() ? null : current.get(0).id;
+    }
+
+    // Blocks until we are back with the old host, connected to the new one or have become it. Returns that
+    // host (possibly us), or null when nobody on the list could be reached.
+    public Member elect(Actions actions) {
+        long started = System.currentTimeMillis();
+        List<Member> candidates = new ArrayList<>(members);
+        Member lost = candidates.isEmpty() ? null : candidates.remove(0);
+        try {
+            if (lost != null && keepTrying(actions::reconnect, started + hostGraceMs)) {
+                lastFailoverMs = System.currentTimeMillis() - started;
+                return lost;
+            }
+            for (Member candidate : candidates) {
+                if (candidate.id.equals(selfId)) {
+                    actions.becomeHost();
+                    lastFailoverMs = System.currentTimeMillis() - started;
+                    return candidate;
+                }
+                if (keepTrying(() -> actions.connect(candidate.address), System.currentTimeMillis() + candidateTimeoutMs)) {
+                    lastFailoverMs = System.currentTimeMillis() - started;
+                    return candidate;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    // One attempt every RETRY_INTERVAL_MS until one succeeds or the deadline passes
+    private static boolean keepTrying(BooleanSupplier attempt, long deadline) throws InterruptedException {
+        while (System.currentTimeMillis() < deadline) {
+            if (attempt.getAsBoolean()) return true;
+            Thread.sleep(RETRY_INTERVAL_MS);
+        }
+        return false;
+    }
+
+    // Host loss to reconnected (or hosting) for the last successful election, -1 if there was none
+    public long getLastFailoverMs() {
+        return lastFailoverMs;
+    }
+
+    // ---- WIRE FORMAT ----
+
+    public static String encode(List<Member> ranked) {
+        List<String> entries = new ArrayList<>();
+        for (Member m : ranked) entries.add(m.id + "@" + m.address + "@" + m.name);
+        return "MEMBERS:" + String.join(SEPARATOR, entries);
+    }
+
+    // MEMBERS payload -> ranked members; malformed entries are skipped
+    public static List<Member> parse(String payload) {
+        List<Member> ranked = new ArrayList<>();
+        for (String entry : payload.split(SEPARATOR)) {
+            String[] parts = entry.split("@", 3);
+            if (parts.length == 3 && !parts[0].isEmpty() && !parts[1].isEmpty())
+                ranked.add(new Member(parts[0], parts[1], parts[2]));
+        }
+        return ranked;
+    }
+}
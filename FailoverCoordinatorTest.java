@@ -0,0 +1,144 @@
+package com.example.chitchatapp.network;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Host loss in a room of NetworkManagers over LoopbackTransport: the clients wait out the grace period, then
+ * all elect the same successor, and a host that comes back within the grace period keeps its room.
+ */
+public class FailoverCoordinatorTest {
+
+    private static final String HOST_IP = "10.0.0.1";
+    private static final long CANDIDATE_TIMEOUT_MS = 400;
+    private static final long HOST_GRACE_MS = 300;
+
+    private final LoopbackTransport.Network network = new LoopbackTransport.Network();
+    private final List<NetworkManager> managers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (NetworkManager manager : managers) manager.stop();
+    }
+
+    private NetworkManager start(String ip, long hostGraceMs) throws Exception {
+        File cacheDir = Files.createTempDirectory("failover-" + ip).toFile();
+        NetworkManager manager = new NetworkManager(new NetworkManagerTest.Device(), new LoopbackTransport(network, ip),
+                NetworkPlatform.headless(ip, cacheDir));
+        manager.getFailover().setTimeouts(CANDIDATE_TIMEOUT_MS, hostGraceMs);
+        managers.add(manager);
+        return manager;
+    }
+
+    private static void await(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("Timed out waiting for " + what);
+            Thread.sleep(2);
+        }
+    }
+
+    // A host and its clients, joined in order, with every client holding the full member list
+    private List<NetworkManager> startRoom(int size, long hostGraceMs) throws Exception {
+        NetworkManager host = start(HOST_IP, hostGraceMs);
+        host.startHost("p0");
+        await("the host to listen", host::isHost);
+        List<NetworkManager> room = new ArrayList<>();
+        room.add(host);
+        for (int i = 1; i < size; i++) {
+            NetworkManager client = start("10.0.0." + (i + 1), hostGraceMs);
+            client.startClient(HOST_IP, "p" + i);
+            // One at a time, so the join order (and with it the ranking) is the order here
+            int members = i + 1;
+            await("p" + i + " on the member list", () -> client.getFailover().getMembers().size() == members);
+            room.add(client);
+        }
+        for (NetworkManager client : room.subList(1, size)) {
+            await("the full member list", () -> client.getFailover().getMembers().size() == size);
+        }
+        return room;
+    }
+
+    // Every client connected to newHost, and told so by its member list
+    private static void awaitRoom(NetworkManager newHost, List<NetworkManager> clients) throws InterruptedException {
+        String hostId = newHost.getFailover().getSelfId();
+        await("the new host to listen", newHost::isHost);
+        for (NetworkManager client : clients) {
+            await("the room to come back", () -> client.isConnected() && !client.isHost()
+                    && hostId.equals(client.getFailover().getHostId())
+                    && client.getFailover().getMembers().size() == clients.size() + 1);
+        }
+    }
+
+    @Test
+    public void clientsElectTheOldestMemberWhenTheHostLeaves() throws Exception {
+        List<NetworkManager> room = startRoom(6, HOST_GRACE_MS);
+        long lostAt = System.nanoTime();
+        room.get(0).stop();
+
+        NetworkManager successor = room.get(1);
+        awaitRoom(successor, room.subList(2, 6));
+        long failoverMs = (System.nanoTime() - lostAt) / 1_000_000;
+
+        // Nobody moves on before the grace period is out, and then the room is back quickly
+        assertTrue("failover took " + failoverMs + " ms", failoverMs >= HOST_GRACE_MS);
+        assertTrue("failover took " + failoverMs + " ms", failoverMs < HOST_GRACE_MS + 2000);
+        for (NetworkManager client : room.subList(2, 6)) assertFalse(client.isHost());
+    }
+
+    @Test
+    public void electionSkipsASuccessorThatLeftWithTheHost() throws Exception {
+        List<NetworkManager> room = startRoom(4, HOST_GRACE_MS);
+        long lostAt = System.nanoTime();
+        room.get(0).stop();
+        // Once the others have lost the host it can't tell them p1 left too; p1 goes during the grace period
+        for (NetworkManager client : room.subList(2, 4)) await("the host to be gone", () -> !client.isConnected());
+        room.get(1).stop();
+
+        NetworkManager successor = room.get(2);
+        awaitRoom(successor, Arrays.asList(room.get(3)));
+        long failoverMs = (System.nanoTime() - lostAt) / 1_000_000;
+
+        assertFalse(room.get(1).isHost());
+        assertTrue("failover took " + failoverMs + " ms", failoverMs >= HOST_GRACE_MS + CANDIDATE_TIMEOUT_MS);
+        assertTrue("failover took " + failoverMs + " ms", failoverMs < HOST_GRACE_MS + CANDIDATE_TIMEOUT_MS + 2000);
+    }
+
+    @Test
+    public void hostBackWithinTheGracePeriodKeepsItsRoom() throws Exception {
+        long graceMs = 3000;
+        List<NetworkManager> room = startRoom(4, graceMs);
+        NetworkManager host = room.get(0);
+        host.stop();
+        await("the host to stop", () -> !host.isHost());
+        for (NetworkManager client : room.subList(1, 4)) await("the host to be gone", () -> !client.isConnected());
+
+        // The same address hosting again (an app restart, a Wi-Fi blip): the clients go back rather than elect
+        NetworkManager restarted = start(HOST_IP, graceMs);
+        restarted.startHost("p0");
+        awaitRoom(restarted, room.subList(1, 4));
+        for (NetworkManager client : room.subList(1, 4)) assertFalse(client.isHost());
+    }
+
+    @Test
+    public void memberListRoundTrips() {
+        List<FailoverCoordinator.Member> ranked = Arrays.asList(
+                new FailoverCoordinator.Member("a1", "192.168.1.10", "Host"),
+                new FailoverCoordinator.Member("b2", "192.168.1.11", "Bob @ work, again"));
+        List<FailoverCoordinator.Member> parsed = FailoverCoordinator.parse(
+                FailoverCoordinator.encode(ranked).substring("MEMBERS:".length()));
+        assertEquals(2, parsed.size());
+        assertEquals("b2", parsed.get(1).id);
+        assertEquals("192.168.1.11", parsed.get(1).address);
+        assertEquals("Bob @ work, again", parsed.get(1).name);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.chitchatapp.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// A late joiner's catch-up as one frame: the host's recent chat lines, gzipped, instead of a replay of
+// hundreds of frames one by one. Chat text repeats itself a lot (sender names, ids, channel prefixes), so
+// it typically shrinks to a fraction before base64.
+//   SNAP:<count>:<base64 of gzip(frame \n frame \n ...)>
+// Frames are the channel-wrapped "<sender>: MSG:..." lines a client would have received live; they never
+// contain a newline, the line protocol already rules that out.
+public final class HistorySnapshot {
+
+    public static final String PREFIX = "SNAP:";
+    // A snapshot that inflates past this is refused rather than read into memory
+    static final int MAX_INFLATED_BYTES = 8 * 1024 * 1024;
+
+    private HistorySnapshot() {
+    }
+
+    public static String encode(List<String> frames) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(String.join("\n", frames).getBytes(StandardCharsets.UTF_8));
+        }
+        return PREFIX + frames.size() + ":" + Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    // The frames, oldest first; IOException if the frame is damaged or doesn't hold count of them
+    public static List<String> decode(String frame) throws IOException {
+        String[] parts = frame.split(":", 3);
+        if (parts.length != 3 || !frame.startsWith(PREFIX)) throw new IOException("Not a snapshot");
+        int count;
+        byte[] compressed;
+        try {
+            count = Integer.parseInt(parts[1]);
+            compressed = Base64.getDecoder().decode(parts[2]);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Bad snapshot header", e);
+        }
+        if (count == 0) return Collections.emptyList();
+
+        ByteArrayOutputStream inflated = new ByteArrayOutputStream(compressed.length * 4);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                if (inflated.size() + n > MAX_INFLATED_BYTES) throw new IOException("Snapshot too large");
+                inflated.write(buffer, 0, n);
+            }
+        }
+        List<String> frames = new ArrayList<>(count);
+        Collections.addAll(frames, new String(inflated.toByteArray(), StandardCharsets.UTF_8).split("\n", -1));
+        if (frames.size() != count) throw new IOException("Snapshot holds " + frames.size() + " frames, expected " + count);
+        return frames;
+    }
+}
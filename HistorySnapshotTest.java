@@ -0,0 +1,68 @@
+package com.example.chitchatapp.network;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The late joiner's history frame: round trip, how much it saves over the frames it replaces, and refusing
+ * damaged input instead of importing half of it.
+ */
+public class HistorySnapshotTest {
+
+    private static List<String> history(int count) {
+        List<String> frames = new ArrayList<>();
+        String[] senders = {"alice", "bob", "carol"};
+        for (int i = 0; i < count; i++) {
+            String sender = senders[i % senders.length];
+            String line = sender + ": MSG:" + sender + "_" + (1_700_000_000_000L + i) + ":" + (7_300_000_000_000_000L + i * 65536L)
+                    + ":message number " + i + " about the meeting: see you at " + (i % 12 + 1) + "pm";
+            frames.add(i % 4 == 0 ? ChannelRouter.wrap("random", line) : line);
+        }
+        return frames;
+    }
+
+    @Test
+    public void roundTripKeepsOrderAndContent() throws IOException {
+        List<String> frames = history(200);
+        frames.set(7, "dave: MSG:dave_1:7300000000000000:ünïcödé 🎉 and a \\t tab");
+        assertEquals(frames, HistorySnapshot.decode(HistorySnapshot.encode(frames)));
+    }
+
+    @Test
+    public void snapshotIsMuchSmallerThanTheFramesItReplaces() throws IOException {
+        List<String> frames = history(200);
+        int plain = 0;
+        for (String f : frames) plain += f.length() + 1;
+        String snapshot = HistorySnapshot.encode(frames);
+        assertTrue(snapshot.length() * 3 < plain);
+        assertTrue(snapshot.startsWith("SNAP:200:"));
+    }
+
+    @Test
+    public void emptyHistory() throws IOException {
+        assertTrue(HistorySnapshot.decode(HistorySnapshot.encode(Collections.emptyList())).isEmpty());
+    }
+
+    @Test
+    public void damagedSnapshotsAreRefused() throws IOException {
+        String good = HistorySnapshot.encode(history(10));
+        assertRefused("SNAP:10:not base64 at all!");
+        assertRefused("SNAP:ten:" + good.substring("SNAP:10:".length()));
+        assertRefused("SNAP:11:" + good.substring("SNAP:10:".length())); // Count doesn't match
+        assertRefused(good.substring(0, good.length() - 12)); // Cut short
+    }
+
+    private static void assertRefused(String frame) {
+        try {
+            HistorySnapshot.decode(frame);
+            fail("Accepted " + frame);
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.chitchatapp.db;
+
+// Hybrid logical clock (physical milliseconds + logical counter) for ordering messages the same way on
+// every device. The sender stamps each message; receivers merge the stamp so anything they send afterwards
+// sorts after what they have seen, even if their wall clock is behind.
+//
+// Packed into one long so it can be stored and indexed as a plain column:
+//   upper 48 bits = wall-clock milliseconds, lower 16 bits = counter for events within the same millisecond.
+public class HybridLogicalClock {
+
+    private static final int LOGICAL_BITS = 16;
+    private static final long LOGICAL_MASK = (1L << LOGICAL_BITS) - 1;
+    // A peer claiming to be further ahead than this is not allowed to drag our clock along
+    static final long MAX_DRIFT_MS = 5 * 60 * 1000;
+    private static final long MIN_PHYSICAL_MS = 1_577_836_800_000L; // 2020-01-01
+
+    public interface WallClock {
+        long currentTimeMillis();
+    }
+
+    private final WallClock wallClock;
+    private long last = 0;
+
+    public HybridLogicalClock() {
+        this(System::currentTimeMillis);
+    }
+
+    public HybridLogicalClock(WallClock wallClock) {
+        this.wallClock = wallClock;
+    }
+
+    // Stamp for a local event (a message this device is about to send)
+    public synchronized long now() {
+        long physical = wallClock.currentTimeMillis();
+        if (physical > physicalOf(last)) {
+            last = pack(physical, 0);
+        } else {
+            last = next(last);
+        }
+        return last;
+    }
+
+    // Merges a stamp received from a peer and returns the local clock's new value
+    public synchronized long update(long remote) {
+        long physical = wallClock.currentTimeMillis();
+        if (remote <= 0 || physicalOf(remote) > physical + MAX_DRIFT_MS) return now();
+
+        long maxPhysical = Math.max(physical, Math.max(physicalOf(last), physicalOf(remote)));
+        long logical;
+        if (maxPhysical == physicalOf(last) && maxPhysical == physicalOf(remote)) {
+            logical = Math.max(logicalOf(last), logicalOf(remote)) + 1;
+        } else if (maxPhysical == physicalOf(last)) {
+            logical = logicalOf(last) + 1;
+        } else if (maxPhysical == physicalOf(remote)) {
+            logical = logicalOf(remote) + 1;
+        } else {
+            logical = 0;
+        }
+        last = logical > LOGICAL_MASK ? pack(maxPhysical + 1, 0) : pack(maxPhysical, logical);
+        return last;
+    }
+
+    public static long physicalOf(long hlc) {
+        return hlc >>> LOGICAL_BITS;
+    }
+
+    public static long logicalOf(long hlc) {
+        return hlc & LOGICAL_MASK;
+    }
+
+    // Earliest stamp of the millisecond `ms` before this one, for asking "what happened since shortly before X"
+    public static long rewind(long hlc, long ms) {
+        return pack(Math.max(0, physicalOf(hlc) - ms), 0);
+    }
+
+    // Frame field -> stamp; 0 when the field is missing, malformed or too small to be a real stamp
+    // (so "MSG:<id>:12:30 works for me" from a peer without clocks is not read as stamp 12)
+    public static long parse(String field) {
+        try {
+            long hlc = Long.parseLong(field);
+            return physicalOf(hlc) >= MIN_PHYSICAL_MS ? hlc : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static long pack(long physical, long logical) {
+        return (physical << LOGICAL_BITS) | logical;
+    }
+
+    // Counter overflow borrows the next millisecond rather than wrapping
+    private static long next(long hlc) {
+        return logicalOf(hlc) == LOGICAL_MASK ? pack(physicalOf(hlc) + 1, 0) : hlc + 1;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.chitchatapp.db;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Stamps from clocks whose wall time is set by hand: ordering across skewed devices, merging stamps from
+ * ahead and behind, the 16-bit counter running out, peers too far ahead, and reading stamps off the wire.
+ */
+public class HybridLogicalClockTest {
+
+    private static final long T = 1_700_000_000_000L;
+
+    private static final class FakeWall implements HybridLogicalClock.WallClock {
+        long now;
+
+        FakeWall(long now) {
+            this.now = now;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    private static long stamp(long physical, long logical) {
+        return (physical << 16) | logical;
+    }
+
+    @Test
+    public void localStampsKeepRisingWhenTheWallClockStallsOrGoesBack() {
+        FakeWall wall = new FakeWall(T);
+        HybridLogicalClock clock = new HybridLogicalClock(wall);
+        assertEquals(stamp(T, 0), clock.now());
+        assertEquals(stamp(T, 1), clock.now());
+        wall.now = T - 5000; // NTP stepped the clock back
+        assertEquals(stamp(T, 2), clock.now());
+        wall.now = T + 1;
+        assertEquals(stamp(T + 1, 0), clock.now());
+    }
+
+    @Test
+    public void replyFromASlowClockStillSortsAfterWhatItAnswers() {
+        FakeWall fastWall = new FakeWall(T);
+        FakeWall slowWall = new FakeWall(T - 10_000); // Ten seconds behind
+        HybridLogicalClock fast = new HybridLogicalClock(fastWall);
+        HybridLogicalClock slow = new HybridLogicalClock(slowWall);
+
+        long question = fast.now();
+        slow.update(question);
+        long answer = slow.now();
+        assertTrue(answer > question);
+        assertEquals(T, HybridLogicalClock.physicalOf(answer));
+
+        // And back: the fast side's next stamp sorts after the answer it merged
+        fast.update(answer);
+        assertTrue(fast.now() > answer);
+    }
+
+    @Test
+    public void remoteStampAheadIsAdoptedWithItsCounterPlusOne() {
+        HybridLogicalClock clock = new HybridLogicalClock(new FakeWall(T));
+        assertEquals(stamp(T + 1000, 6), clock.update(stamp(T + 1000, 5)));
+        // Same millisecond as what we hold: the larger counter wins
+        assertEquals(stamp(T + 1000, 10), clock.update(stamp(T + 1000, 9)));
+        assertEquals(stamp(T + 1000, 11), clock.update(stamp(T + 1000, 3)));
+    }
+
+    @Test
+    public void remoteStampBehindLeavesOurTimeAlone() {
+        FakeWall wall = new FakeWall(T);
+        HybridLogicalClock clock = new HybridLogicalClock(wall);
+        assertEquals(stamp(T, 0), clock.update(stamp(T - 1000, 9)));
+        // Our last stamp is ahead of the wall clock now, so an old remote stamp just moves its counter on
+        clock.update(stamp(T + 500, 0));
+        assertEquals(stamp(T + 500, 2), clock.update(stamp(T - 1000, 9)));
+    }
+
+    @Test
+    public void counterOverflowBorrowsTheNextMillisecond() {
+        HybridLogicalClock clock = new HybridLogicalClock(new FakeWall(T));
+        long last = 0;
+        for (int i = 0; i <= 0xFFFF; i++) last = clock.now();
+        assertEquals(stamp(T, 0xFFFF), last);
+        assertEquals(stamp(T + 1, 0), clock.now());
+
+        HybridLogicalClock merging = new HybridLogicalClock(new FakeWall(T));
+        assertEquals(stamp(T + 1, 0), merging.update(stamp(T, 0xFFFF)));
+    }
+
+    @Test
+    public void peerTooFarAheadCannotDragTheClockAlong() {
+        HybridLogicalClock clock = new HybridLogicalClock(new FakeWall(T));
+        assertEquals(stamp(T, 0), clock.update(stamp(T + HybridLogicalClock.MAX_DRIFT_MS + 1, 0)));
+        assertEquals(stamp(T, 1), clock.update(0)); // No stamp at all: just a local event
+        // Right at the limit is still believed
+        assertEquals(stamp(T + HybridLogicalClock.MAX_DRIFT_MS, 1),
+                clock.update(stamp(T + HybridLogicalClock.MAX_DRIFT_MS, 0)));
+    }
+
+    @Test
+    public void parseAcceptsOnlyRealStamps() {
+        long real = stamp(T, 7);
+        assertEquals(real, HybridLogicalClock.parse(Long.toString(real)));
+        assertEquals(0, HybridLogicalClock.parse("12")); // "MSG:<id>:12:30 works for me" from an old peer
+        assertEquals(0, HybridLogicalClock.parse("soon"));
+        assertEquals(0, HybridLogicalClock.parse(""));
+        assertEquals(0, HybridLogicalClock.parse(null));
+        assertEquals(0, HybridLogicalClock.parse(Long.toString(stamp(1_500_000_000_000L, 0)))); // Before 2020
+    }
+}
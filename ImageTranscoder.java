@@ -0,0 +1,180 @@
+package com.example.chitchatapp.media;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+// Picks format, resolution and quality for an outgoing image so that it reaches peers within a
+// target delivery time on the measured link. The original file is never touched; a reduced copy is
+// written next to it and the caller decides what to do with it after sending.
+public class ImageTranscoder {
+
+    private static final String TAG = "ImageTranscoder";
+
+    // Candidate long-edge sizes and qualities, best first
+    private static final int[] DIMENSION_LADDER = {2048, 1600, 1280, 1024, 800, 640, 480, 320};
+    private static final int[] QUALITY_LADDER = {85, 75, 60, 45};
+
+    // Preview frames: tiny, heavily compressed, upscaled (and thereby blurred) by the receiving ImageView
+    private static final int PREVIEW_DIMENSION = 48;
+    private static final int PREVIEW_QUALITY = 40;
+
+    // Base64 inflates the payload by 4/3 on the wire
+    private static final double BASE64_OVERHEAD = 4.0 / 3.0;
+
+    public static final class Profile {
+        public final Bitmap.CompressFormat format;
+        public final int maxDimension;
+        public final int quality;
+
+        Profile(Bitmap.CompressFormat format, int maxDimension, int quality) {
+            this.format = format;
+            this.maxDimension = maxDimension;
+            this.quality = quality;
+        }
+
+        @Override
+        public String toString() {
+            return format + " " + maxDimension + "px q" + quality;
+        }
+    }
+
+    // Returns the file that should go on the wire: the original when it already fits the budget (or the
+    // link speed is unknown), otherwise a reduced copy in the same directory.
+    public static File transcodeForLink(File original, long bytesPerSecond, long targetDeliveryMs) {
+        if (bytesPerSecond <= 0 || targetDeliveryMs <= 0) return original;
+
+        long budget = byteBudget(bytesPerSecond, targetDeliveryMs);
+        if (original.length() <= budget) return original;
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(original.getAbsolutePath(), bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return original;
+
+        Profile profile = choose(budget, bounds.outWidth, bounds.outHeight);
+        File reduced = encode(original, bounds, profile);
+        if (reduced == null) return original;
+
+        Log.d(TAG, "Transcoded " + original.length() + " -> " + reduced.length() + " bytes ("
+                + profile + ", budget " + budget + " at " + bytesPerSecond + " B/s)");
+        return reduced.length() < original.length() ? reduced : discard(reduced, original);
+    }
+
+    // Raw (pre-Base64) byte budget that can be delivered within the target time
+    static long byteBudget(long bytesPerSecond, long targetDeliveryMs) {
+        return (long) (bytesPerSecond * (targetDeliveryMs / 1000.0) / BASE64_OVERHEAD);
+    }
+
+    static Profile choose(long budget, int width, int height) {
+        Bitmap.CompressFormat format = preferredFormat();
+        int longest = Math.max(width, height);
+        int lastTried = -1;
+        for (int dimension : DIMENSION_LADDER) {
+            int effective = Math.min(dimension, longest);
+            if (effective == lastTried) continue;
+            lastTried = effective;
+            for (int quality : QUALITY_LADDER) {
+                if (estimateBytes(format, width, height, effective, quality) <= budget) {
+                    return new Profile(format, effective, quality);
+                }
+            }
+        }
+        // Even the smallest rung is over budget; send the smallest we have
+        return new Profile(format, Math.min(longest, DIMENSION_LADDER[DIMENSION_LADDER.length - 1]),
+                QUALITY_LADDER[QUALITY_LADDER.length - 1]);
+    }
+
+    // Rough compressed size for a photo: bits per pixel fall with quality, WebP saves ~30% over JPEG
+    static long estimateBytes(Bitmap.CompressFormat format, int width, int height, int maxDimension, int quality) {
+        double factor = Math.min(1.0, (double) maxDimension / Math.max(width, height));
+        double pixels = width * factor * height * factor;
+        double bitsPerPixel = quality >= 85 ? 2.0 : quality >= 75 ? 1.5 : quality >= 60 ? 1.1 : 0.8;
+        if (format != Bitmap.CompressFormat.JPEG) bitsPerPixel *= 0.7;
+        return (long) (pixels * bitsPerPixel / 8);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat preferredFormat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY
+                : Bitmap.CompressFormat.WEBP;
+    }
+
+    private static File encode(File original, BitmapFactory.Options bounds, Profile profile) {
+        Bitmap bitmap = null;
+        File out = new File(original.getParentFile(), "send_" + System.currentTimeMillis() + "_" + original.getName());
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = MediaIngestor.sampleFor(bounds.outWidth, bounds.outHeight, profile.maxDimension);
+            bitmap = BitmapFactory.decodeFile(original.getAbsolutePath(), options);
+            if (bitmap == null) return null;
+
+            int longest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+            if (longest > profile.maxDimension) {
+                float factor = (float) profile.maxDimension / longest;
+                Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                        Math.max(1, Math.round(bitmap.getWidth() * factor)),
+                        Math.max(1, Math.round(bitmap.getHeight() * factor)), true);
+                if (scaled != bitmap) bitmap.recycle();
+                bitmap = scaled;
+            }
+
+            try (OutputStream os = new BufferedOutputStream(new FileOutputStream(out), 64 * 1024)) {
+                bitmap.compress(profile.format, profile.quality, os);
+            }
+            return out;
+        } catch (Exception | OutOfMemoryError e) {
+            Log.e(TAG, "Transcode failed, sending original", e);
+            out.delete();
+            return null;
+        } finally {
+            if (bitmap != null) bitmap.recycle();
+        }
+    }
+
+    // A ~1-2 KB JPEG of the image that can go out ahead of the full frame; null if the file can't be decoded
+    public static byte[] encodePreview(File original) {
+        Bitmap bitmap = null;
+        try {
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(original.getAbsolutePath(), bounds);
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = MediaIngestor.sampleFor(bounds.outWidth, bounds.outHeight, PREVIEW_DIMENSION);
+            bitmap = BitmapFactory.decodeFile(original.getAbsolutePath(), options);
+            if (bitmap == null) return null;
+
+            float factor = (float) PREVIEW_DIMENSION / Math.max(bitmap.getWidth(), bitmap.getHeight());
+            if (factor < 1f) {
+                Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                        Math.max(1, Math.round(bitmap.getWidth() * factor)),
+                        Math.max(1, Math.round(bitmap.getHeight() * factor)), true);
+                if (scaled != bitmap) bitmap.recycle();
+                bitmap = scaled;
+            }
+
+            java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream(2048);
+            bitmap.compress(Bitmap.CompressFormat.JPEG, PREVIEW_QUALITY, out);
+            return out.toByteArray();
+        } catch (Exception | OutOfMemoryError e) {
+            Log.e(TAG, "Preview encode failed", e);
+            return null;
+        } finally {
+            if (bitmap != null) bitmap.recycle();
+        }
+    }
+
+    private static File discard(File reduced, File original) {
+        reduced.delete();
+        return original;
+    }
+}
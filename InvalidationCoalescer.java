@@ -0,0 +1,110 @@
+package com.example.chitchatapp.db;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Folds bursts of table invalidations into a single refresh.
+// Each invalidation pushes the refresh out by windowMs (trailing edge), but never further than
+// maxStalenessMs after the first invalidation of the burst, so a steady stream of writes still
+// delivers fresh state at a bounded interval. The refresh always runs after the last invalidation
+// it covers, so observers end up with the latest state.
+public class InvalidationCoalescer {
+
+    private final ScheduledExecutorService scheduler;
+    private final Runnable refresh;
+    private final LongSupplier clockMs;
+
+    private volatile long windowMs;
+    private volatile long maxStalenessMs;
+
+    private ScheduledFuture<?> pending;
+    private long burstStartedAt;
+    private long scheduledFor;
+
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+
+    public InvalidationCoalescer(ScheduledExecutorService scheduler, Runnable refresh,
+                                 long windowMs, long maxStalenessMs) {
+        this(scheduler, refresh, windowMs, maxStalenessMs,
+                () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+    }
+
+    // clockMs must tick with the scheduler's delays; tests pass a manual clock and scheduler together
+    InvalidationCoalescer(ScheduledExecutorService scheduler, Runnable refresh,
+                          long windowMs, long maxStalenessMs, LongSupplier clockMs) {
+        this.scheduler = scheduler;
+        this.refresh = refresh;
+        this.clockMs = clockMs;
+        configure(windowMs, maxStalenessMs);
+    }
+
+    public void configure(long windowMs, long maxStalenessMs) {
+        this.windowMs = Math.max(0, windowMs);
+        this.maxStalenessMs = Math.max(this.windowMs, maxStalenessMs);
+    }
+
+    public synchronized void invalidate() {
+        invalidations.incrementAndGet();
+        long now = nowMs();
+
+        if (pending == null) {
+            burstStartedAt = now;
+            schedule(now, now + windowMs);
+            return;
+        }
+
+        long deadline = Math.min(now + windowMs, burstStartedAt + maxStalenessMs);
+        // Only move the refresh if it hasn't started yet; a running refresh picks up the next burst itself
+        if (deadline > scheduledFor && pending.cancel(false)) {
+            schedule(now, deadline);
+        }
+    }
+
+    // Runs a refresh right away (e.g. when an observer becomes active), dropping any pending one
+    public synchronized void refreshNow() {
+        if (pending != null) pending.cancel(false);
+        burstStartedAt = nowMs();
+        schedule(burstStartedAt, burstStartedAt);
+    }
+
+    public synchronized void cancel() {
+        if (pending != null) pending.cancel(false);
+        pending = null;
+    }
+
+    private void schedule(long now, long at) {
+        scheduledFor = at;
+        pending = scheduler.schedule(this::runRefresh, Math.max(0, at - now), TimeUnit.MILLISECONDS);
+    }
+
+    private void runRefresh() {
+        synchronized (this) {
+            // Invalidations arriving from here on start a new burst
+            pending = null;
+        }
+        refreshes.incrementAndGet();
+        refresh.run();
+    }
+
+    private long nowMs() {
+        return clockMs.getAsLong();
+    }
+
+    // --- Counters ---
+
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    public long getRefreshesAvoided() {
+        return Math.max(0, invalidations.get() - refreshes.get());
+    }
+}
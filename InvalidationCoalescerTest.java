@@ -0,0 +1,153 @@
+package com.example.chitchatapp.db;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Write bursts against the message list query (see CoalescedQueryLiveData): one refresh per window, never staler
+ * than the cap, and the invalidation, refresh and refreshes-avoided counts. Time is a manual clock; scheduled
+ * refreshes run when it is advanced past them.
+ */
+public class InvalidationCoalescerTest {
+
+    private static final long WINDOW_MS = 100;
+    private static final long MAX_STALENESS_MS = 300;
+
+    private long now = 0;
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final List<Long> refreshedAt = new ArrayList<>();
+    private final InvalidationCoalescer coalescer = new InvalidationCoalescer(scheduler,
+            () -> refreshedAt.add(now), WINDOW_MS, MAX_STALENESS_MS, () -> now);
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    // Only what InvalidationCoalescer uses: one-shot schedule() and cancel(), run by advanceTo()
+    private final class ManualScheduler extends ScheduledThreadPoolExecutor {
+        private final List<Task> tasks = new ArrayList<>();
+
+        ManualScheduler() {
+            super(1);
+        }
+
+        private final class Task extends FutureTask<Void> implements ScheduledFuture<Void> {
+            final long dueAt;
+
+            Task(Runnable command, long dueAt) {
+                super(command, null);
+                this.dueAt = dueAt;
+            }
+
+            @Override
+            public long getDelay(TimeUnit unit) {
+                return unit.convert(dueAt - now, TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            public int compareTo(Delayed other) {
+                return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+            }
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            Task task = new Task(command, now + unit.toMillis(delay));
+            tasks.add(task);
+            return task;
+        }
+
+        // Runs whatever falls due up to time, in order, with the clock at each task's due time
+        void advanceTo(long time) {
+            while (true) {
+                Task next = null;
+                for (Task task : tasks) if (task.dueAt <= time && (next == null || task.dueAt < next.dueAt)) next = task;
+                if (next == null) break;
+                tasks.remove(next);
+                now = next.dueAt;
+                next.run(); // A cancelled task does nothing
+            }
+            now = time;
+        }
+    }
+
+    @Test
+    public void burstInsideTheWindowIsOneRefresh() {
+        for (long t = 0; t < WINDOW_MS; t += 10) {
+            scheduler.advanceTo(t);
+            coalescer.invalidate();
+        }
+        // Trailing edge: a window after the last write, not the first
+        scheduler.advanceTo(90 + WINDOW_MS - 1);
+        assertTrue(refreshedAt.isEmpty());
+        scheduler.advanceTo(90 + WINDOW_MS);
+        assertEquals(Collections.singletonList(90 + WINDOW_MS), refreshedAt);
+
+        assertEquals(10, coalescer.getInvalidationCount());
+        assertEquals(1, coalescer.getRefreshCount());
+        assertEquals(9, coalescer.getRefreshesAvoided());
+    }
+
+    @Test
+    public void steadyWritesStillRefreshAtTheStalenessCap() {
+        // A write every half window never lets the window close on its own
+        for (long t = 0; t <= 1000; t += WINDOW_MS / 2) {
+            scheduler.advanceTo(t);
+            coalescer.invalidate();
+        }
+        scheduler.advanceTo(2000);
+        // Each burst refreshes MAX_STALENESS_MS after it began; the last one a window after the final write
+        assertEquals(Arrays.asList(300L, 600L, 900L, 1000 + WINDOW_MS), refreshedAt);
+        assertEquals(21, coalescer.getInvalidationCount());
+        assertEquals(17, coalescer.getRefreshesAvoided());
+    }
+
+    @Test
+    public void writesAfterARefreshStartANewBurst() {
+        coalescer.invalidate();
+        scheduler.advanceTo(WINDOW_MS);
+        assertEquals(1, refreshedAt.size());
+
+        scheduler.advanceTo(500);
+        coalescer.invalidate();
+        scheduler.advanceTo(500 + WINDOW_MS);
+        assertEquals(Arrays.asList(WINDOW_MS, 500 + WINDOW_MS), refreshedAt);
+        assertEquals(0, coalescer.getRefreshesAvoided());
+    }
+
+    @Test
+    public void refreshNowReplacesThePendingRefresh() {
+        coalescer.invalidate();
+        scheduler.advanceTo(10);
+        coalescer.refreshNow(); // An observer became active
+        scheduler.advanceTo(10);
+        assertEquals(Collections.singletonList(10L), refreshedAt);
+
+        scheduler.advanceTo(1000);
+        assertEquals(1, refreshedAt.size());
+        assertEquals(1, coalescer.getRefreshCount());
+    }
+
+    @Test
+    public void cancelDropsThePendingRefresh() {
+        coalescer.invalidate();
+        coalescer.invalidate();
+        coalescer.cancel(); // The last observer went away
+        scheduler.advanceTo(1000);
+        assertTrue(refreshedAt.isEmpty());
+        assertEquals(2, coalescer.getRefreshesAvoided());
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.chitchatapp.network;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Multiplexes three priority lanes over one connection so a big media frame never holds up chat.
+// A dedicated writer thread always drains CONTROL first, then TEXT, and only then writes one chunk of
+// the oldest BULK transfer (round-robin across transfers). Bulk frames are cut into CHUNK: lines, so a
+// small frame queued during a transfer waits for at most one chunk write. Frames are queued as EncodedFrame
+// bytes, so one broadcast frame is shared by every client's writer; chunks are cut from those bytes.
+//
+// Chunk line: CHUNK:<transferId>:<index>:<last 0|1>:<data>   (reassembled by ChunkAssembler)
+public class LaneWriter implements Closeable {
+
+    public enum Lane { CONTROL, TEXT, BULK }
+
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+    private static final int SAMPLE_BYTES = 64 * 1024; // Bulk bytes accumulated per throughput sample
+    // For writers outside a NetworkManager (tests, tools); NetworkManager passes its counted factory
+    private static final ThreadFactory DEFAULT_THREADS = NetworkExecutors.named("lane-writer");
+
+    private final OutputStream out;
+    private final int chunkSize;
+    private final Runnable onFailure;
+    private final Thread writerThread;
+    private final ThroughputEstimator estimator = new ThroughputEstimator();
+    private final AtomicLong nextTransferId = new AtomicLong();
+
+    private final Object lock = new Object();
+    private final ArrayDeque<EncodedFrame> controlQueue = new ArrayDeque<>();
+    private final ArrayDeque<EncodedFrame> textQueue = new ArrayDeque<>();
+    private final ArrayDeque<BulkTransfer> bulkQueue = new ArrayDeque<>();
+    private boolean closed = false;
+
+    private long sampleBytes = 0;
+    private long sampleNanos = 0;
+
+    private static final class BulkTransfer {
+        final EncodedFrame frame;
+        final long id;
+        int offset = 0; // In bytes
+        int index = 0;
+
+        BulkTransfer(EncodedFrame frame, long id) {
+            this.frame = frame;
+            this.id = id;
+        }
+    }
+
+    public LaneWriter(OutputStream stream, String name, Runnable onFailure) {
+        this(stream, name, DEFAULT_CHUNK_SIZE, onFailure);
+    }
+
+    public LaneWriter(OutputStream stream, String name, int chunkSize, Runnable onFailure) {
+        this(stream, name, chunkSize, DEFAULT_THREADS, onFailure);
+    }
+
+    public LaneWriter(OutputStream stream, String name, ThreadFactory threads, Runnable onFailure) {
+        this(stream, name, DEFAULT_CHUNK_SIZE, threads, onFailure);
+    }
+
+    public LaneWriter(OutputStream stream, String name, int chunkSize, ThreadFactory threads, Runnable onFailure) {
+        this.out = new BufferedOutputStream(stream, 32 * 1024);
+        this.chunkSize = chunkSize;
+        this.onFailure = onFailure;
+        this.writerThread = threads.newThread(this::drain);
+        this.writerThread.setName("lane-writer-" + name);
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    // Frames that refer to nothing still queued go first, then chat, then media; anything oversized is treated
+    // as media. Edits, deletes, likes and META stay on TEXT with the chat lines: CONTROL overtakes TEXT, and a
+    // command that reached a peer ahead of its MSG would find no message to apply to.
+    public static Lane classify(String frame) {
+        if (frame.startsWith("CH:")) frame = ChannelRouter.unwrap(frame)[1]; // channel traffic ranks like its content
+        if (frame.startsWith("IMG:") || frame.startsWith("DOC:") || frame.startsWith("ORIG:")) return Lane.BULK;
+        if (frame.startsWith("ORIGREQ:") || frame.startsWith("FETCH:") || frame.startsWith("ACK:") || frame.startsWith("ACKS:")
+                || frame.startsWith("JOIN:") || frame.startsWith("LEAVE:") || frame.startsWith("MEMBERS:")) return Lane.CONTROL;
+        return frame.length() > DEFAULT_CHUNK_SIZE ? Lane.BULK : Lane.TEXT;
+    }
+
+    public boolean send(String frame) {
+        return send(EncodedFrame.of(frame));
+    }
+
+    public boolean send(String frame, Lane lane) {
+        return send(EncodedFrame.of(frame), lane);
+    }
+
+    public boolean send(EncodedFrame frame) {
+        return send(frame, classify(frame.text()));
+    }
+
+    // Queues a frame; returns false if the connection is already closed
+    public boolean send(EncodedFrame frame, Lane lane) {
+        synchronized (lock) {
+            if (closed) return false;
+            switch (lane) {
+                case CONTROL: controlQueue.add(frame); break;
+                case TEXT: textQueue.add(frame); break;
+                default: bulkQueue.add(new BulkTransfer(frame, nextTransferId.incrementAndGet())); break;
+            }
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    public ThroughputEstimator getEstimator() {
+        return estimator;
+    }
+
+    public boolean isClosed() {
+        synchronized (lock) {
+            return closed;
+        }
+    }
+
+    public int getQueuedBulkTransfers() {
+        synchronized (lock) {
+            return bulkQueue.size();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) return;
+            closed = true;
+            controlQueue.clear();
+            textQueue.clear();
+            bulkQueue.clear();
+            lock.notifyAll();
+        }
+        writerThread.interrupt();
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                EncodedFrame line;
+                boolean bulk = false;
+                synchronized (lock) {
+                    while (!closed && controlQueue.isEmpty() && textQueue.isEmpty() && bulkQueue.isEmpty()) {
+                        lock.wait();
+                    }
+                    if (closed) return;
+
+                    if (!controlQueue.isEmpty()) {
+                        line = controlQueue.poll();
+                    } else if (!textQueue.isEmpty()) {
+                        line = textQueue.poll();
+                    } else {
+                        line = nextChunk();
+                        bulk = true;
+                    }
+                }
+                writeLine(line, bulk);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            boolean wasClosed;
+            synchronized (lock) {
+                wasClosed = closed;
+            }
+            close();
+            if (!wasClosed && onFailure != null) onFailure.run();
+        }
+    }
+
+    // Called with the lock held and bulkQueue non-empty
+    private EncodedFrame nextChunk() {
+        BulkTransfer transfer = bulkQueue.poll();
+        if (transfer.index == 0 && transfer.frame.size() <= chunkSize) return transfer.frame;
+
+        int start = transfer.offset;
+        int end = transfer.frame.chunkEnd(start, chunkSize);
+        boolean last = end == transfer.frame.size();
+
+        EncodedFrame chunk = transfer.frame.chunk(Long.toString(transfer.id), transfer.index, start, end);
+        transfer.offset = end;
+        transfer.index++;
+        // Round-robin: an unfinished transfer goes to the back so concurrent transfers interleave
+        if (!last) bulkQueue.add(transfer);
+        return chunk;
+    }
+
+    private void writeLine(EncodedFrame line, boolean bulk) throws IOException {
+        long start = System.nanoTime();
+        line.writeTo(out);
+        out.write('\n');
+        out.flush();
+        if (!bulk) return;
+
+        sampleBytes += line.size() + 1;
+        sampleNanos += System.nanoTime() - start;
+        if (sampleBytes >= SAMPLE_BYTES) {
+            estimator.record(sampleBytes, sampleNanos);
+            sampleBytes = 0;
+            sampleNanos = 0;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.chitchatapp.network;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that chat frames are not head-of-line blocked behind bulk media on a saturated link.
+ */
+public class LaneWriterTest {
+
+    // Link that accepts bytes at a fixed rate and records every completed line
+    private static class ThrottledLink extends OutputStream {
+        final List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        private final long bytesPerSecond;
+        private final java.io.ByteArrayOutputStream pending = new java.io.ByteArrayOutputStream();
+        final CountDownLatch done = new CountDownLatch(1);
+        private final Predicate<String> isLastLine;
+
+        ThrottledLink(long bytesPerSecond, Predicate<String> isLastLine) {
+            this.bytesPerSecond = bytesPerSecond;
+            this.isLastLine = isLastLine;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                Thread.sleep(len * 1000L / bytesPerSecond);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    String line = new String(pending.toByteArray(), StandardCharsets.UTF_8);
+                    pending.reset();
+                    lines.add(line);
+                    if (isLastLine.test(line)) done.countDown();
+                } else {
+                    pending.write(b[i]);
+                }
+            }
+        }
+    }
+
+    private static Predicate<String> lastChunkOf(int transferId) {
+        return line -> line.startsWith("CHUNK:" + transferId + ":") && "1".equals(line.split(":", 5)[3]);
+    }
+
+    private static String bulkFrame(int payloadBytes) {
+        StringBuilder sb = new StringBuilder("IMG:alice_1:caption:");
+        for (int i = 0; i < payloadBytes; i++) sb.append((char) ('A' + i % 26));
+        return sb.toString();
+    }
+
+    @Test
+    public void textFrameOvertakesBulkTransferOnSaturatedLink() throws Exception {
+        // 1 MB of media over a 2 MB/s link keeps the socket busy for ~500 ms
+        String media = bulkFrame(1024 * 1024);
+        ThrottledLink link = new ThrottledLink(2 * 1024 * 1024, lastChunkOf(1));
+        LaneWriter writer = new LaneWriter(link, "test", null);
+
+        writer.send(media);
+        Thread.sleep(50); // transfer is well underway
+        writer.send("bob: MSG:bob_2:hello");
+        writer.send("ACKS:MSG:alice_0");
+
+        assertTrue("bulk transfer did not finish", link.done.await(5, TimeUnit.SECONDS));
+        writer.close();
+
+        int textIndex = link.lines.indexOf("bob: MSG:bob_2:hello");
+        int ackIndex = link.lines.indexOf("ACKS:MSG:alice_0");
+        assertTrue("text frame never written", textIndex >= 0);
+        assertTrue("control frame goes before text", ackIndex >= 0 && ackIndex < textIndex);
+        // Ordering, not timing: the text line goes out between chunks, ahead of the transfer's last one
+        int lastChunkIndex = -1;
+        for (int i = 0; i < link.lines.size(); i++) if (lastChunkOf(1).test(link.lines.get(i))) lastChunkIndex = i;
+        assertTrue("text frame waited for the whole transfer", textIndex < lastChunkIndex);
+
+        // The interleaved chunks still reassemble into the original frame
+        ChunkAssembler assembler = new ChunkAssembler();
+        String reassembled = null;
+        for (String line : link.lines) {
+            if (ChunkAssembler.isChunk(line)) {
+                String frame = assembler.accept(line);
+                if (frame != null) reassembled = frame;
+            }
+        }
+        assertEquals(media, reassembled);
+    }
+
+    @Test
+    public void editNeverOvertakesTheMessageItChanges() throws Exception {
+        // Media keeps the link busy so the message and its edit are both still queued when the edit comes
+        ThrottledLink link = new ThrottledLink(2 * 1024 * 1024, line -> line.equals("CH:random:EDIT:bob_3:hello"));
+        LaneWriter writer = new LaneWriter(link, "test", null);
+        writer.send(bulkFrame(256 * 1024));
+        Thread.sleep(20);
+        writer.send("CH:random:bob: MSG:bob_3:1:helo");
+        writer.send("CH:random:EDIT:bob_3:hello");
+        writer.send("LIKE:bob_3:t1:alice");
+
+        assertTrue("edit never written", link.done.await(5, TimeUnit.SECONDS));
+        writer.close();
+        int msgIndex = link.lines.indexOf("CH:random:bob: MSG:bob_3:1:helo");
+        int editIndex = link.lines.indexOf("CH:random:EDIT:bob_3:hello");
+        assertTrue("edit overtook its message", msgIndex >= 0 && msgIndex < editIndex);
+        assertEquals(LaneWriter.Lane.TEXT, LaneWriter.classify("DELETE:bob_3"));
+        assertEquals(LaneWriter.Lane.TEXT, LaneWriter.classify("REACTS:LIKE:bob_3:t1:alice"));
+    }
+
+    @Test
+    public void concurrentBulkTransfersInterleave() throws Exception {
+        ThrottledLink link = new ThrottledLink(8 * 1024 * 1024, lastChunkOf(2));
+        LaneWriter writer = new LaneWriter(link, "test", 4096, null);
+
+        writer.send("DOC:a_1:a.pdf:100:" + "a".repeat(64 * 1024));
+        writer.send("DOC:b_1:b.pdf:100:" + "b".repeat(64 * 1024));
+
+        assertTrue(link.done.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        writer.close();
+
+        // B finishing means A was not allowed to monopolise the link until it was done
+        int lastA = -1, firstB = -1;
+        for (int i = 0; i < link.lines.size(); i++) {
+            String line = link.lines.get(i);
+            if (line.startsWith("CHUNK:1:")) lastA = i;
+            if (line.startsWith("CHUNK:2:") && firstB < 0) firstB = i;
+        }
+        assertTrue("transfers did not interleave", firstB >= 0 && firstB < lastA);
+    }
+
+    @Test
+    public void smallBulkFrameIsNotChunked() throws Exception {
+        ThrottledLink link = new ThrottledLink(64 * 1024 * 1024, line -> line.endsWith("tiny"));
+        LaneWriter writer = new LaneWriter(link, "test", null);
+        writer.send("IMG:a_1::tiny");
+        assertTrue(link.done.await(2, TimeUnit.SECONDS));
+        writer.close();
+        assertEquals("IMG:a_1::tiny", link.lines.get(0));
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.chitchatapp.network;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Fixed-bucket histogram of round-trip times in milliseconds. Recording is lock-free so it can sit on the
+// ack path; percentiles are reported as the upper bound of the bucket they fall in.
+public class LatencyHistogram {
+
+    // Upper bounds (inclusive) of each bucket; anything slower lands in the last, open-ended one
+    private static final long[] BOUNDS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS_MS.length + 1);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sumMs = new AtomicLong();
+    private final AtomicLong maxMs = new AtomicLong();
+
+    public void record(long latencyMs) {
+        if (latencyMs < 0) latencyMs = 0;
+        counts.incrementAndGet(bucketOf(latencyMs));
+        total.incrementAndGet();
+        sumMs.addAndGet(latencyMs);
+        long max;
+        while (latencyMs > (max = maxMs.get()) && !maxMs.compareAndSet(max, latencyMs)) {
+            // retry
+        }
+    }
+
+    public long getCount() {
+        return total.get();
+    }
+
+    public long getMeanMs() {
+        long n = total.get();
+        return n == 0 ? 0 : sumMs.get() / n;
+    }
+
+    public long getMaxMs() {
+        return maxMs.get();
+    }
+
+    // e.g. percentile(0.99); 0 when nothing has been recorded
+    public long percentile(double fraction) {
+        long n = total.get();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return i < BOUNDS_MS.length ? Math.min(BOUNDS_MS[i], maxMs.get()) : maxMs.get();
+        }
+        return maxMs.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) counts.set(i, 0);
+        total.set(0);
+        sumMs.set(0);
+        maxMs.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + getCount() + " mean=" + getMeanMs() + "ms p50<=" + percentile(0.5) + "ms p95<="
+                + percentile(0.95) + "ms p99<=" + percentile(0.99) + "ms max=" + getMaxMs() + "ms";
+    }
+
+    private static int bucketOf(long latencyMs) {
+        for (int i = 0; i < BOUNDS_MS.length; i++) {
+            if (latencyMs <= BOUNDS_MS[i]) return i;
+        }
+        return BOUNDS_MS.length;
+    }
+}
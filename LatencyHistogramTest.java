@@ -0,0 +1,71 @@
+package com.example.chitchatapp.network;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Delivery round trips: percentiles are the upper bound of the bucket they land in, capped by the slowest
+ * sample, and the open-ended last bucket reports the maximum.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(0.5));
+        assertEquals(0, histogram.getMeanMs());
+        assertEquals(0, histogram.getMaxMs());
+    }
+
+    @Test
+    public void percentileIsTheUpperBoundOfItsBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) histogram.record(15);   // 10 < t <= 20
+        for (int i = 0; i < 9; i++) histogram.record(150);   // 100 < t <= 200
+        histogram.record(700);                               // 500 < t <= 1000
+        assertEquals(100, histogram.getCount());
+
+        assertEquals(20, histogram.percentile(0.5));
+        assertEquals(20, histogram.percentile(0.9));
+        assertEquals(200, histogram.percentile(0.91));
+        assertEquals(200, histogram.percentile(0.99));
+        // The bucket bound would say 1000, but nothing took longer than 700
+        assertEquals(700, histogram.percentile(1.0));
+        assertEquals(700, histogram.getMaxMs());
+        assertEquals((90 * 15 + 9 * 150 + 700) / 100, histogram.getMeanMs());
+    }
+
+    @Test
+    public void bucketBoundsAreInclusive() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.record(11);
+        assertEquals(10, histogram.percentile(0.5)); // 10 is in the <= 10 bucket, not the next one
+        assertEquals(11, histogram.percentile(1.0)); // Capped by the max rather than reported as 20
+    }
+
+    @Test
+    public void slowerThanTheLastBoundReportsTheMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(45_000);
+        histogram.record(120_000);
+        assertEquals(120_000, histogram.percentile(0.5));
+        assertEquals(120_000, histogram.percentile(0.99));
+    }
+
+    @Test
+    public void negativeSamplesCountAsZeroAndResetClearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5); // A clock step between send and ack
+        assertEquals(0, histogram.percentile(1.0));
+        assertEquals(0, histogram.getMaxMs());
+
+        histogram.record(300);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.percentile(0.99));
+        histogram.record(3);
+        assertEquals(3, histogram.percentile(0.5));
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.chitchatapp.network;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Host-side store for media frames in lazy mode. Instead of pushing every IMG:/DOC: line to every
+// client, the host keeps the frame on disk and hands it out only to clients that send FETCH:.
+// Total size on disk is bounded; the least recently fetched frames are evicted first.
+public class LazyMediaStore {
+
+    private static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    private final File directory;
+    private final long maxBytes;
+    // uniqueId -> frame size, in access order for eviction
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    public LazyMediaStore(File directory) {
+        this(directory, DEFAULT_MAX_BYTES);
+    }
+
+    public LazyMediaStore(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if (!directory.exists()) directory.mkdirs();
+    }
+
+    public synchronized void put(String uniqueId, String frame) throws IOException {
+        File file = fileFor(uniqueId);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 64 * 1024)) {
+            out.write(frame);
+        }
+        Long previous = index.put(uniqueId, file.length());
+        totalBytes += file.length() - (previous != null ? previous : 0);
+        evictIfNeeded();
+    }
+
+    // The stored frame, or null if it was never stored or has been evicted. index.get, not containsKey:
+    // only get counts as an access, and a fetch is what keeps a frame from being evicted
+    public synchronized String get(String uniqueId) throws IOException {
+        if (index.get(uniqueId) == null) return null;
+        File file = fileFor(uniqueId);
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 64 * 1024)) {
+            return in.readLine();
+        }
+    }
+
+    public synchronized boolean contains(String uniqueId) {
+        return index.containsKey(uniqueId);
+    }
+
+    public synchronized void clear() {
+        for (String uniqueId : index.keySet()) fileFor(uniqueId).delete();
+        index.clear();
+        totalBytes = 0;
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            fileFor(eldest.getKey()).delete();
+            totalBytes -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    private File fileFor(String uniqueId) {
+        // uniqueIds are "<sender>_<timestamp>"; keep only filesystem-safe characters
+        return new File(directory, uniqueId.replaceAll("[^A-Za-z0-9_.-]", "_") + ".frame");
+    }
+
+    // Hex SHA-256 of a frame payload, sent in metadata so clients can verify what they fetch
+    public static String hashOf(String payload) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(payload.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (Exception e) {
+            return "";
+        }
+    }
+}
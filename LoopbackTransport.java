@@ -0,0 +1,267 @@
+package com.example.chitchatapp.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// In-memory transport for load tests and simulations: no sockets, no Wi-Fi, no OS limits on ports. Every
+// simulated device gets its own LoopbackTransport with its own address on a shared Network, so several
+// hosts can all listen on the chat port. Each direction of a connection is a bounded pipe, so a slow reader
+// pushes back on its writer the way a full TCP window does.
+public class LoopbackTransport implements Transport {
+
+    public static final int DEFAULT_PIPE_CAPACITY = 256 * 1024;
+
+    // The "LAN": who is listening on which address:port
+    public static final class Network {
+        private final Map<String, LoopbackServer> servers = new ConcurrentHashMap<>();
+        private final AtomicInteger nextEphemeralPort = new AtomicInteger(49152);
+        private final int pipeCapacity;
+
+        public Network() {
+            this(DEFAULT_PIPE_CAPACITY);
+        }
+
+        public Network(int pipeCapacity) {
+            this.pipeCapacity = pipeCapacity;
+        }
+
+        public int getListenerCount() {
+            return servers.size();
+        }
+    }
+
+    private final Network network;
+    private final String address;
+
+    public LoopbackTransport(Network network, String address) {
+        this.network = network;
+        this.address = address;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    @Override
+    public Server listen(int port, int bufferSize) throws BindException {
+        if (port == 0) port = network.nextEphemeralPort.getAndIncrement();
+        LoopbackServer server = new LoopbackServer(address + ":" + port, port);
+        if (network.servers.putIfAbsent(server.key, server) != null)
+            throw new BindException("Address already in use: " + server.key);
+        return server;
+    }
+
+    @Override
+    public Connection connect(String remoteAddress, int port, int timeoutMs, int bufferSize) throws IOException {
+        LoopbackServer server = network.servers.get(remoteAddress + ":" + port);
+        if (server == null) throw new ConnectException("Connection refused: " + remoteAddress + ":" + port);
+
+        Pipe toServer = new Pipe(network.pipeCapacity);
+        Pipe toClient = new Pipe(network.pipeCapacity);
+        LoopbackConnection client = new LoopbackConnection(remoteAddress, toClient, toServer);
+        if (!server.enqueue(new LoopbackConnection(address, toServer, toClient)))
+            throw new ConnectException("Connection refused: " + remoteAddress + ":" + port);
+        return client;
+    }
+
+    private final class LoopbackServer implements Server {
+        final String key;
+        private final int port;
+        private final ArrayDeque<LoopbackConnection> pending = new ArrayDeque<>();
+        private boolean closed;
+
+        LoopbackServer(String key, int port) {
+            this.key = key;
+            this.port = port;
+        }
+
+        synchronized boolean enqueue(LoopbackConnection connection) {
+            if (closed) return false;
+            pending.add(connection);
+            notifyAll();
+            return true;
+        }
+
+        @Override
+        public synchronized Connection accept() throws IOException {
+            while (pending.isEmpty() && !closed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("accept interrupted");
+                }
+            }
+            if (closed) throw new IOException("Server closed");
+            return pending.poll();
+        }
+
+        @Override
+        public int getLocalPort() {
+            return port;
+        }
+
+        @Override
+        public synchronized boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+                // Connections nobody accepted are refused, as a closed listen socket resets them
+                for (LoopbackConnection c : pending) c.close();
+                pending.clear();
+                notifyAll();
+            }
+            network.servers.remove(key, this);
+        }
+    }
+
+    private static final class LoopbackConnection implements Connection {
+        private final String remoteAddress;
+        private final Pipe in;
+        private final Pipe out;
+        private final InputStream inStream;
+        private final OutputStream outStream;
+
+        LoopbackConnection(String remoteAddress, Pipe in, Pipe out) {
+            this.remoteAddress = remoteAddress;
+            this.in = in;
+            this.out = out;
+            this.inStream = new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    byte[] one = new byte[1];
+                    return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return LoopbackConnection.this.in.read(b, off, len);
+                }
+
+                @Override
+                public int available() {
+                    return LoopbackConnection.this.in.available();
+                }
+
+                @Override
+                public void close() {
+                    LoopbackConnection.this.close();
+                }
+            };
+            this.outStream = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    LoopbackConnection.this.out.write(b, off, len);
+                }
+
+                @Override
+                public void close() {
+                    LoopbackConnection.this.close();
+                }
+            };
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return inStream;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return outStream;
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        @Override
+        public void close() {
+            out.closeWriter(); // The other end drains what we wrote, then reads EOF
+            in.closeReader();  // and its further writes fail
+        }
+    }
+
+    // One direction of a connection: a fixed ring buffer, writers block while it is full
+    private static final class Pipe {
+        private final byte[] buffer;
+        private int head;
+        private int count;
+        private boolean writerClosed;
+        private boolean readerClosed;
+
+        Pipe(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        synchronized void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                while (count == buffer.length && !writerClosed && !readerClosed) await();
+                if (writerClosed || readerClosed) throw new IOException("Connection closed");
+                int tail = (head + count) % buffer.length;
+                int n = Math.min(len, Math.min(buffer.length - count, buffer.length - tail));
+                System.arraycopy(b, off, buffer, tail, n);
+                count += n;
+                off += n;
+                len -= n;
+                notifyAll();
+            }
+        }
+
+        synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (count == 0 && !writerClosed && !readerClosed) await();
+            if (readerClosed) throw new IOException("Connection closed");
+            if (count == 0) return -1;
+            int n = Math.min(len, Math.min(count, buffer.length - head));
+            System.arraycopy(buffer, head, b, off, n);
+            head = (head + n) % buffer.length;
+            count -= n;
+            notifyAll();
+            return n;
+        }
+
+        synchronized int available() {
+            return count;
+        }
+
+        synchronized void closeWriter() {
+            writerClosed = true;
+            notifyAll();
+        }
+
+        synchronized void closeReader() {
+            readerClosed = true;
+            count = 0;
+            notifyAll();
+        }
+
+        private void await() throws InterruptedIOException {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+}
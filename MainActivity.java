@@ -12,12 +12,19 @@ import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.appcompat.app.AlertDialog;
+
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.app.AppCompatDelegate;
 import androidx.lifecycle.ViewModelProvider;
 
+import com.example.chitchatapp.network.NetworkManager;
+import com.example.chitchatapp.network.RoomBrowser;
 import com.example.chitchatapp.viewmodel.ChatViewModel;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class MainActivity extends AppCompatActivity {
 
     private ChatViewModel chatViewModel;
@@ -29,6 +36,10 @@ public class MainActivity extends AppCompatActivity {
     // Flag to prevent double navigation
     private boolean isNavigating = false;
 
+    // Rooms heard on the LAN (see RoomBrowser); an empty IP joins the least loaded one
+    private List<RoomBrowser.Room> nearbyRooms = new ArrayList<>();
+    private CharSequence defaultIpHint;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -56,6 +67,7 @@ public class MainActivity extends AppCompatActivity {
         ipInput = findViewById(R.id.edit_text_ip);
         hostButton = findViewById(R.id.button_host);
         joinButton = findViewById(R.id.button_join);
+        defaultIpHint = ipInput.getHint();
 
         chatViewModel = new ViewModelProvider(this).get(ChatViewModel.class);
 
@@ -71,17 +83,72 @@ public class MainActivity extends AppCompatActivity {
         joinButton.setOnClickListener(v -> {
             String name = nameInput.getText().toString().trim();
             String hostIp = ipInput.getText().toString().trim();
+            if (hostIp.isEmpty()) {
+                RoomBrowser.Room best = chatViewModel.getBestRoom();
+                if (best != null) {
+                    hostIp = best.address;
+                    ipInput.setText(hostIp); // The chat screen reads HOST_IP from here
+                }
+            }
             if (validateName(name) && validateIp(hostIp)) {
                 showLoading("Joining chat...");
                 chatViewModel.setUsername(name);
-                chatViewModel.joinChat(hostIp);
+                chatViewModel.joinChat(hostIp, portFor(hostIp));
             }
         });
 
+        // Long press: pick a room from the ones on the LAN
+        joinButton.setOnLongClickListener(v -> {
+            showRoomPicker();
+            return true;
+        });
+
         observeViewModel();
     }
 
+    private void showRoomPicker() {
+        if (nearbyRooms.isEmpty()) {
+            Toast.makeText(this, "No rooms found on this network yet", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        List<RoomBrowser.Room> rooms = new ArrayList<>(nearbyRooms);
+        String[] labels = new String[rooms.size()];
+        for (int i = 0; i < rooms.size(); i++) labels[i] = describeRoom(rooms.get(i));
+        new AlertDialog.Builder(this)
+                .setTitle("Rooms nearby")
+                .setItems(labels, (dialog, which) -> {
+                    RoomBrowser.Room room = rooms.get(which);
+                    if (!room.isCompatible()) {
+                        Toast.makeText(this, "That host runs another version of the app", Toast.LENGTH_LONG).show();
+                        return;
+                    }
+                    ipInput.setText(room.address);
+                    joinButton.performClick();
+                })
+                .show();
+    }
+
+    // The port the room at this address advertised; a typed IP no beacon matches gets the default
+    private int portFor(String hostIp) {
+        for (RoomBrowser.Room room : nearbyRooms) {
+            if (room.address.equals(hostIp) && room.isCompatible()) return room.port;
+        }
+        return NetworkManager.PORT;
+    }
+
+    private static String describeRoom(RoomBrowser.Room room) {
+        String label = room.name + "'s room · " + room.load + (room.load == 1 ? " person" : " people");
+        return room.isCompatible() ? label : label + " (needs update)";
+    }
+
     private void observeViewModel() {
+        // Rooms on the LAN: the IP field says where an empty Join goes
+        chatViewModel.getNearbyRooms().observe(this, rooms -> {
+            nearbyRooms = rooms != null ? rooms : new ArrayList<>();
+            RoomBrowser.Room best = chatViewModel.getBestRoom();
+            ipInput.setHint(best != null ? "Empty joins " + best.name + "'s room (" + best.address + ")" : defaultIpHint);
+        });
+
         // Observer for HOST
         chatViewModel.getHostIpAddress().observe(this, hostIp -> {
             if (hostIp != null && !hostIp.isEmpty()) {
@@ -161,6 +228,13 @@ public class MainActivity extends AppCompatActivity {
         // Reset state on return to this screen
         isNavigating = false;
         hideLoading();
+        chatViewModel.startRoomDiscovery();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        chatViewModel.stopRoomDiscovery();
     }
 }
 
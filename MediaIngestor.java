@@ -0,0 +1,264 @@
+package com.example.chitchatapp.media;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Copies picked images and documents into app storage off the main thread.
+// Images are subsampled while decoding (never decoded at full resolution), scaled to a max dimension
+// and re-encoded; documents are streamed through a large direct buffer. Progress and completion are
+// delivered on the main thread, and every task can be cancelled.
+public class MediaIngestor {
+
+    private static final String TAG = "MediaIngestor";
+    public static final int DEFAULT_MAX_IMAGE_DIMENSION = 2048;
+    private static final int JPEG_QUALITY = 85;
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    public interface Callback {
+        void onProgress(int percent);
+        void onComplete(File file);
+        void onError(String reason);
+    }
+
+    // Handle for a running ingest; cancel() stops it at the next checkpoint and deletes partial output
+    public static final class Task {
+        private volatile boolean cancelled = false;
+        private Future<?> future;
+
+        public void cancel() {
+            cancelled = true;
+            if (future != null) future.cancel(true);
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private static class CancelledException extends IOException {
+        CancelledException() {
+            super("Ingest cancelled");
+        }
+    }
+
+    private final Context context;
+    private final ContentResolver resolver;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile int maxImageDimension = DEFAULT_MAX_IMAGE_DIMENSION;
+
+    public MediaIngestor(Context context) {
+        this.context = context.getApplicationContext();
+        this.resolver = this.context.getContentResolver();
+    }
+
+    public void setMaxImageDimension(int maxImageDimension) {
+        this.maxImageDimension = Math.max(64, maxImageDimension);
+    }
+
+    // ---------------- IMAGES ----------------
+
+    public Task ingestImage(Uri imageUri, Callback callback) {
+        Task task = new Task();
+        task.future = executor.submit(() -> {
+            File imagesDir = new File(context.getFilesDir(), "images");
+            if (!imagesDir.exists()) imagesDir.mkdirs();
+            File imageFile = new File(imagesDir, "img_" + System.currentTimeMillis() + ".jpg");
+            try {
+                postProgress(task, callback, 0);
+
+                BitmapFactory.Options bounds = new BitmapFactory.Options();
+                bounds.inJustDecodeBounds = true;
+                try (InputStream in = resolver.openInputStream(imageUri)) {
+                    BitmapFactory.decodeStream(in, null, bounds);
+                }
+                if (bounds.outWidth <= 0 || bounds.outHeight <= 0) throw new IOException("Not a decodable image");
+
+                int orientation;
+                try (InputStream in = resolver.openInputStream(imageUri)) {
+                    orientation = in != null
+                            ? new ExifInterface(in).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)
+                            : ExifInterface.ORIENTATION_NORMAL;
+                }
+                checkCancelled(task);
+                postProgress(task, callback, 15);
+
+                // Subsample during decode so peak memory follows maxImageDimension, not the source
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = sampleFor(bounds.outWidth, bounds.outHeight, maxImageDimension);
+                Bitmap bitmap;
+                try (InputStream in = resolver.openInputStream(imageUri)) {
+                    bitmap = BitmapFactory.decodeStream(in, null, options);
+                }
+                if (bitmap == null) throw new IOException("Image decode failed");
+                checkCancelled(task);
+                postProgress(task, callback, 50);
+
+                bitmap = scaleAndOrient(bitmap, maxImageDimension, orientation);
+                checkCancelled(task);
+                postProgress(task, callback, 75);
+
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(imageFile), WRITE_BUFFER_SIZE)) {
+                    bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+                } finally {
+                    bitmap.recycle();
+                }
+                checkCancelled(task);
+
+                postProgress(task, callback, 100);
+                postComplete(task, callback, imageFile);
+            } catch (Exception | OutOfMemoryError e) {
+                imageFile.delete();
+                handleFailure(task, callback, "Failed to process image", e);
+            }
+        });
+        return task;
+    }
+
+    // Largest power-of-two sample that keeps the longer edge at or above maxDimension
+    static int sampleFor(int width, int height, int maxDimension) {
+        int longest = Math.max(width, height);
+        int sample = 1;
+        while (longest / (sample * 2) >= maxDimension) sample *= 2;
+        return sample;
+    }
+
+    // Finishes the downscale and bakes the EXIF rotation into the pixels, since the re-encoded file
+    // is later decoded by code paths (thumbnails, tiled viewer, receivers) that ignore EXIF
+    private static Bitmap scaleAndOrient(Bitmap source, int maxDimension, int orientation) {
+        Matrix matrix = new Matrix();
+        int longest = Math.max(source.getWidth(), source.getHeight());
+        if (longest > maxDimension) {
+            float factor = (float) maxDimension / longest;
+            matrix.postScale(factor, factor);
+        }
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90: matrix.postRotate(90); break;
+            case ExifInterface.ORIENTATION_ROTATE_180: matrix.postRotate(180); break;
+            case ExifInterface.ORIENTATION_ROTATE_270: matrix.postRotate(270); break;
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL: matrix.postScale(-1, 1); break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL: matrix.postScale(1, -1); break;
+            case ExifInterface.ORIENTATION_TRANSPOSE: matrix.postRotate(90); matrix.postScale(-1, 1); break;
+            case ExifInterface.ORIENTATION_TRANSVERSE: matrix.postRotate(270); matrix.postScale(-1, 1); break;
+            default: break;
+        }
+        if (matrix.isIdentity()) return source;
+
+        Bitmap result = Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, true);
+        if (result != source) source.recycle();
+        return result;
+    }
+
+    // ---------------- DOCUMENTS ----------------
+
+    public Task ingestDocument(Uri documentUri, String fileName, Callback callback) {
+        Task task = new Task();
+        task.future = executor.submit(() -> {
+            File docsDir = new File(context.getFilesDir(), "documents");
+            if (!docsDir.exists()) docsDir.mkdirs();
+            File docFile = new File(docsDir, fileName);
+            try {
+                postProgress(task, callback, 0);
+                long totalSize = querySize(documentUri);
+
+                InputStream in = resolver.openInputStream(documentUri);
+                if (in == null) throw new IOException("Cannot open " + documentUri);
+
+                try (ReadableByteChannel source = Channels.newChannel(in);
+                     FileChannel target = new FileOutputStream(docFile).getChannel()) {
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+                    long copied = 0;
+                    int lastPercent = 0;
+                    while (source.read(buffer) != -1) {
+                        buffer.flip();
+                        while (buffer.hasRemaining()) copied += target.write(buffer);
+                        buffer.clear();
+                        checkCancelled(task);
+
+                        if (totalSize > 0) {
+                            int percent = (int) Math.min(99, copied * 100 / totalSize);
+                            if (percent != lastPercent) {
+                                lastPercent = percent;
+                                postProgress(task, callback, percent);
+                            }
+                        }
+                    }
+                }
+
+                postProgress(task, callback, 100);
+                postComplete(task, callback, docFile);
+            } catch (Exception e) {
+                docFile.delete();
+                handleFailure(task, callback, "Failed to process document", e);
+            }
+        });
+        return task;
+    }
+
+    private long querySize(Uri uri) {
+        if (!"content".equals(uri.getScheme())) return -1;
+        try (Cursor cursor = resolver.query(uri, new String[]{OpenableColumns.SIZE}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) return cursor.getLong(0);
+        } catch (Exception e) {
+            Log.w(TAG, "Size query failed for " + uri, e);
+        }
+        return -1;
+    }
+
+    // ---------------- CALLBACK HELPERS ----------------
+
+    private static void checkCancelled(Task task) throws CancelledException {
+        if (task.isCancelled() || Thread.currentThread().isInterrupted()) throw new CancelledException();
+    }
+
+    private void postProgress(Task task, Callback callback, int percent) {
+        mainHandler.post(() -> {
+            if (!task.isCancelled()) callback.onProgress(percent);
+        });
+    }
+
+    private void postComplete(Task task, Callback callback, File file) {
+        mainHandler.post(() -> {
+            if (task.isCancelled()) {
+                file.delete();
+            } else {
+                callback.onComplete(file);
+            }
+        });
+    }
+
+    private void handleFailure(Task task, Callback callback, String reason, Throwable error) {
+        if (task.isCancelled() || error instanceof CancelledException) {
+            Log.d(TAG, "Ingest cancelled");
+            return;
+        }
+        Log.e(TAG, reason, error);
+        mainHandler.post(() -> callback.onError(reason));
+    }
+}
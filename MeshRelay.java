@@ -0,0 +1,222 @@
+package com.example.chitchatapp.network;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Host-to-host links, so rooms reach further than one host's ServerSocket. A host dials another host's
+// chat port and introduces itself with PEER:<nodeId> instead of a username; from then on both sides
+// exchange
+//   RELAY:<ttl>:<originId>:<frame>
+// originId (<nodeId>-<sequence>) is assigned once, where the frame enters the mesh. Every host delivers a
+// frame the first time it sees its originId and forwards it to its other links with ttl - 1; later copies
+// that arrive over other paths are dropped by a bounded seen-set.
+public class MeshRelay implements Closeable {
+
+    public static final int DEFAULT_TTL = 4;
+    public static final int SEEN_CAPACITY = 16 * 1024;
+    private static final String HANDSHAKE = "PEER:";
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    public interface Listener {
+        // A frame from another host, delivered once; called on that link's reader thread
+        void onMeshFrame(String frame);
+    }
+
+    private static final class Link {
+        final String peerId;
+        final Transport.Connection connection;
+        final LaneWriter writer;
+
+        Link(String peerId, Transport.Connection connection, LaneWriter writer) {
+            this.peerId = peerId;
+            this.connection = connection;
+            this.writer = writer;
+        }
+    }
+
+    private final String nodeId;
+    private final Listener listener;
+    private final Executor ioExecutor;
+    private final ThreadFactory writerThreads;
+    private final Transport transport;
+    private volatile int ttl = DEFAULT_TTL;
+    private final List<Link> links = new CopyOnWriteArrayList<>();
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    // Access order, so ids that keep arriving over redundant paths stay in while old ones age out
+    private final Map<String, Boolean> seen = new LinkedHashMap<String, Boolean>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > SEEN_CAPACITY;
+        }
+    };
+
+    private final AtomicLong framesPublished = new AtomicLong();
+    private final AtomicLong framesDelivered = new AtomicLong();
+    private final AtomicLong framesForwarded = new AtomicLong();
+    private final AtomicLong duplicatesDropped = new AtomicLong();
+    private final AtomicLong expiredDropped = new AtomicLong();
+
+    public MeshRelay(String nodeId, Listener listener, Executor ioExecutor, Transport transport) {
+        this(nodeId, listener, ioExecutor, NetworkExecutors.named("mesh-writer"), transport);
+    }
+
+    public MeshRelay(String nodeId, Listener listener, Executor ioExecutor, ThreadFactory writerThreads, Transport transport) {
+        this.nodeId = nodeId;
+        this.listener = listener;
+        this.ioExecutor = ioExecutor;
+        this.writerThreads = writerThreads;
+        this.transport = transport;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    // Hop limit for frames this host originates; forwarded frames keep whatever they arrived with
+    public void setTtl(int ttl) {
+        this.ttl = Math.max(1, ttl);
+    }
+
+    public static boolean isPeerHandshake(String firstLine) {
+        return firstLine != null && firstLine.startsWith(HANDSHAKE) && firstLine.length() > HANDSHAKE.length();
+    }
+
+    // Dials another host and keeps the link open on the I/O executor
+    public void connect(String host, int port) throws IOException {
+        Transport.Connection connection = transport.connect(host, port, CONNECT_TIMEOUT_MS, 0);
+        LaneWriter writer = new LaneWriter(connection.getOutputStream(), "mesh-out", writerThreads, connection::close);
+        writer.send(HANDSHAKE + nodeId, LaneWriter.Lane.CONTROL); // Nothing queued yet, so this goes first
+        BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()), 64 * 1024);
+        Link link = new Link(host + ":" + port, connection, writer);
+        links.add(link);
+        ioExecutor.execute(() -> readLink(link, reader));
+    }
+
+    // A PEER: handshake arrived on the chat port; reads the link on the calling thread until it closes
+    public void acceptLink(Transport.Connection connection, BufferedReader reader, String handshake) throws IOException {
+        LaneWriter writer = new LaneWriter(connection.getOutputStream(), "mesh-in", writerThreads, connection::close);
+        Link link = new Link(handshake.substring(HANDSHAKE.length()), connection, writer);
+        links.add(link);
+        readLink(link, reader);
+    }
+
+    // Sends a frame that originates here to every link; returns its originId
+    public String publish(String frame) {
+        String originId = nodeId + "-" + nextSequence.incrementAndGet();
+        markSeen(originId);
+        framesPublished.incrementAndGet();
+        forward(null, ttl, originId, frame);
+        return originId;
+    }
+
+    public int getPeerCount() {
+        return links.size();
+    }
+
+    // Node id of each incoming link, host:port of each one we dialled
+    public List<String> getPeers() {
+        List<String> peers = new ArrayList<>();
+        for (Link link : links) peers.add(link.peerId);
+        return peers;
+    }
+
+    // ---- METRICS ----
+
+    public long getFramesPublished() {
+        return framesPublished.get();
+    }
+
+    // Unique frames from other hosts handed to the listener
+    public long getFramesDelivered() {
+        return framesDelivered.get();
+    }
+
+    public long getFramesForwarded() {
+        return framesForwarded.get();
+    }
+
+    // Copies that arrived after the first one, i.e. the cost of redundant paths
+    public long getDuplicatesDropped() {
+        return duplicatesDropped.get();
+    }
+
+    // Frames delivered here whose hop limit ran out, so they were not passed on
+    public long getExpiredDropped() {
+        return expiredDropped.get();
+    }
+
+    @Override
+    public void close() {
+        for (Link link : new ArrayList<>(links)) {
+            link.writer.close();
+            link.connection.close();
+        }
+        links.clear();
+    }
+
+    private void readLink(Link link, BufferedReader reader) {
+        ChunkAssembler assembler = new ChunkAssembler();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (ChunkAssembler.isChunk(line)) {
+                    line = assembler.accept(line);
+                    if (line == null) continue;
+                }
+                if (line.startsWith("RELAY:")) onRelay(link, line);
+            }
+        } catch (IOException e) {
+            // Link went away; the other links carry on
+        } finally {
+            links.remove(link);
+            link.writer.close();
+            link.connection.close();
+        }
+    }
+
+    private void onRelay(Link from, String line) {
+        String[] parts = line.split(":", 4);
+        if (parts.length != 4) return;
+        int hops;
+        try {
+            hops = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (!markSeen(parts[2])) {
+            duplicatesDropped.incrementAndGet();
+            return;
+        }
+        framesDelivered.incrementAndGet();
+        if (hops > 1) forward(from, hops - 1, parts[2], parts[3]);
+        else expiredDropped.incrementAndGet();
+        listener.onMeshFrame(parts[3]);
+    }
+
+    private void forward(Link except, int hops, String originId, String frame) {
+        EncodedFrame line = EncodedFrame.of("RELAY:" + hops + ":" + originId + ":" + frame); // Shared by every link
+        LaneWriter.Lane lane = LaneWriter.classify(frame);
+        for (Link link : links) {
+            if (link == except) continue;
+            if (link.writer.send(line, lane)) framesForwarded.incrementAndGet();
+        }
+    }
+
+    // true the first time an originId is seen
+    private boolean markSeen(String originId) {
+        synchronized (seen) {
+            return seen.put(originId, Boolean.TRUE) == null;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.chitchatapp.network;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Multi-host relay over loopback: exactly-once delivery, hop limits, latency and redundant-copy overhead.
+ */
+public class MeshRelayTest {
+
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+    private final Transport transport = new TcpTransport();
+    private final List<Node> nodes = new ArrayList<>();
+
+    // One host: its relay, listening for PEER: links
+    private final class Node {
+        final MeshRelay relay;
+        final Transport.Server server;
+        // payload -> copies handed to the listener, and when the first one arrived
+        final Map<String, AtomicInteger> received = new ConcurrentHashMap<>();
+        final Map<String, Long> arrivedAtNanos = new ConcurrentHashMap<>();
+
+        Node(String id) throws IOException {
+            relay = new MeshRelay(id, this::onFrame, pool, transport);
+            server = transport.listen(0, 0);
+            acceptPeers(server, relay, pool);
+        }
+
+        private void onFrame(String frame) {
+            arrivedAtNanos.putIfAbsent(frame, System.nanoTime());
+            received.compute(frame, (f, copies) -> {
+                if (copies == null) copies = new AtomicInteger();
+                copies.incrementAndGet();
+                return copies;
+            });
+        }
+
+        void linkTo(Node other) throws IOException {
+            relay.connect("127.0.0.1", other.server.getLocalPort());
+        }
+    }
+
+    // The part of NetworkManager's accept loop that hands PEER: links to the relay, until the server closes
+    static void acceptPeers(Transport.Server server, MeshRelay relay, ExecutorService pool) {
+        pool.execute(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Transport.Connection connection = server.accept();
+                    pool.execute(() -> {
+                        try {
+                            BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+                            String first = reader.readLine();
+                            if (MeshRelay.isPeerHandshake(first)) relay.acceptLink(connection, reader, first);
+                        } catch (IOException ignored) {
+                        }
+                    });
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (Node node : nodes) {
+            node.relay.close();
+            node.server.close();
+        }
+        pool.shutdownNow();
+    }
+
+    private List<Node> startNodes(int count) throws IOException {
+        List<Node> created = new ArrayList<>();
+        for (int i = 0; i < count; i++) created.add(new Node("n" + (nodes.size() + i)));
+        nodes.addAll(created);
+        return created;
+    }
+
+    private static void awaitPeers(List<Node> mesh, int[] expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        for (int i = 0; i < mesh.size(); i++) {
+            while (mesh.get(i).relay.getPeerCount() < expected[i]) {
+                assertTrue("links did not come up", System.currentTimeMillis() < deadline);
+                Thread.sleep(5);
+            }
+        }
+    }
+
+    private static void awaitDelivery(List<Node> receivers, int frames) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        for (Node node : receivers) {
+            while (node.received.size() < frames) {
+                assertTrue("frames missing after 10s", System.currentTimeMillis() < deadline);
+                Thread.sleep(5);
+            }
+        }
+    }
+
+    @Test
+    public void fullMeshDeliversEachFrameOnceAsItGrows() throws Exception {
+        int frames = 200;
+        for (int size : new int[]{2, 3, 5, 8}) {
+            List<Node> mesh = startNodes(size);
+            int[] expected = new int[size];
+            for (int i = 0; i < size; i++) {
+                for (int j = i + 1; j < size; j++) mesh.get(i).linkTo(mesh.get(j));
+                expected[i] = size - 1;
+            }
+            awaitPeers(mesh, expected);
+
+            Node origin = mesh.get(0);
+            for (int f = 0; f < frames; f++) {
+                origin.relay.publish("MSG:alice_" + f + ":" + System.nanoTime() + ":hi");
+            }
+            List<Node> receivers = mesh.subList(1, size);
+            awaitDelivery(receivers, frames);
+
+            LatencyHistogram latency = new LatencyHistogram();
+            long delivered = 0;
+            long duplicates = 0;
+            for (Node node : mesh) duplicates += node.relay.getDuplicatesDropped();
+            for (Node node : receivers) {
+                for (Map.Entry<String, AtomicInteger> entry : node.received.entrySet()) {
+                    assertEquals("delivered more than once: " + entry.getKey(), 1, entry.getValue().get());
+                    long sentAt = Long.parseLong(entry.getKey().split(":")[2]);
+                    latency.record(TimeUnit.NANOSECONDS.toMillis(node.arrivedAtNanos.get(entry.getKey()) - sentAt));
+                    delivered++;
+                }
+            }
+            assertEquals(0, origin.received.size()); // Our own frames never come back to us
+            assertEquals((long) frames * (size - 1), delivered);
+            // Every extra path is a copy the seen-set has to absorb; a pair of hosts has none
+            if (size == 2) assertEquals(0, duplicates);
+            else assertTrue(duplicates > 0);
+            // ...but a frame crosses each link at most once each way, which bounds them at size - 1 per delivery
+            assertTrue(duplicates <= delivered * (size - 1));
+            // A loopback hop takes well under a millisecond; a second would mean frames queued behind each other
+            assertTrue("p99 " + latency.percentile(0.99) + " ms", latency.percentile(0.99) < 1000);
+        }
+    }
+
+    @Test
+    public void ttlLimitsHowFarAFrameTravels() throws Exception {
+        // a - b - c - d - e
+        List<Node> line = startNodes(5);
+        for (int i = 0; i < 4; i++) line.get(i).linkTo(line.get(i + 1));
+        awaitPeers(line, new int[]{1, 2, 2, 2, 1});
+
+        line.get(0).relay.setTtl(2);
+        line.get(0).relay.publish("MSG:bob_1:0:short hop");
+        awaitDelivery(line.subList(1, 3), 1);
+
+        // Two hops: b and c have it, c did not pass it on
+        Thread.sleep(200);
+        assertEquals(0, line.get(3).received.size());
+        assertEquals(0, line.get(4).received.size());
+        assertEquals(1, line.get(2).relay.getExpiredDropped());
+
+        line.get(0).relay.setTtl(MeshRelay.DEFAULT_TTL);
+        line.get(0).relay.publish("MSG:bob_2:0:long hop");
+        awaitDelivery(line.subList(4, 5), 1);
+    }
+
+    @Test
+    public void largeFramesCrossTheMeshInChunks() throws Exception {
+        List<Node> line = startNodes(3);
+        line.get(0).linkTo(line.get(1));
+        line.get(1).linkTo(line.get(2));
+        awaitPeers(line, new int[]{1, 2, 1});
+
+        StringBuilder media = new StringBuilder("IMG:carol_1:0:caption:");
+        for (int i = 0; i < 300 * 1024; i++) media.append((char) ('A' + i % 26));
+        line.get(0).relay.publish(media.toString());
+
+        awaitDelivery(line.subList(2, 3), 1);
+        assertTrue(line.get(2).received.containsKey(media.toString()));
+    }
+}
@@ -2,11 +2,21 @@ package com.example.chitchatapp.db;
 
 import androidx.room.Entity;
 import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
-@Entity(tableName = "messages")
+@Entity(tableName = "messages", indices = {@Index(value = {"channel", "hlc"})})
 public class Message {
 
+    // Delivery of messages this device sent (received messages stay DELIVERY_NONE)
+    public static final int DELIVERY_NONE = 0;
+    public static final int DELIVERY_PENDING = 1;  // In the outbox, not on any connection yet
+    public static final int DELIVERY_SENT = 2;     // Written to the connection to the host
+    public static final int DELIVERY_ACKED = 3;    // Host confirmed it has the message
+
+    // Room everything lands in unless it says otherwise (messages from before channels, peers without them)
+    public static final String DEFAULT_CHANNEL = "general";
+
     @PrimaryKey(autoGenerate = true)
     private int id;
 
@@ -21,9 +31,12 @@ public class Message {
     // New fields for like, edit, delete functionality
     private int likeCount = 0;
     private String likedBy = null; // Comma-separated list of usernames who liked (e.g., "User1,User2")
+    // likeCount and likedBy are derived from this (see ReactionSet, MessageDao.applyReaction)
+    private String reactions = null;
     private boolean isEdited = false;
     private boolean isDeleted = false;
     private String editedText = null;
+    private int editVersion = 0; // Bumped on every edit so cached layouts of the old text are not reused
     
     // Media messaging fields
     private String messageType = "text"; // "text", "image", "document"
@@ -31,6 +44,13 @@ public class Message {
     private String fileName = null; // Original file name
     private long fileSize = 0; // File size in bytes
     private String fileUri = null; // URI for file (for sharing)
+    private boolean previewOnly = false; // filePath is still the low-res preview frame, full image pending
+    private boolean remoteOnly = false; // Lazy media: the body is on the host and is fetched when needed
+
+    // Sender's hybrid logical clock stamp; the list is ordered by this so every device shows the same order
+    private long hlc = 0;
+    private int deliveryState = DELIVERY_NONE;
+    private String channel = DEFAULT_CHANNEL;
 
     // Constructor with unique ID - Room will use this one
     public Message(String senderName, String text, long timestamp, boolean isSentByUser, String uniqueId) {
@@ -113,6 +133,10 @@ public class Message {
         this.text = text;
     }
 
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
     public void setLikeCount(int likeCount) {
         this.likeCount = likeCount;
     }
@@ -129,6 +153,10 @@ public class Message {
         this.editedText = editedText;
     }
 
+    public void setEditVersion(int editVersion) {
+        this.editVersion = editVersion;
+    }
+
     // --- Getters for new fields ---
 
     public int getLikeCount() {
@@ -146,6 +174,10 @@ public class Message {
     public String getEditedText() {
         return editedText;
     }
+
+    public int getEditVersion() {
+        return editVersion;
+    }
     
     public String getUniqueId() {
         return uniqueId;
@@ -162,6 +194,14 @@ public class Message {
     public void setLikedBy(String likedBy) {
         this.likedBy = likedBy;
     }
+
+    public String getReactions() {
+        return reactions;
+    }
+
+    public void setReactions(String reactions) {
+        this.reactions = reactions;
+    }
     
     // Helper to get list of users who liked
     public java.util.List<String> getLikedByList() {
@@ -219,6 +259,46 @@ public class Message {
     public void setFileUri(String fileUri) {
         this.fileUri = fileUri;
     }
+
+    public boolean isPreviewOnly() {
+        return previewOnly;
+    }
+
+    public void setPreviewOnly(boolean previewOnly) {
+        this.previewOnly = previewOnly;
+    }
+
+    public boolean isRemoteOnly() {
+        return remoteOnly;
+    }
+
+    public void setRemoteOnly(boolean remoteOnly) {
+        this.remoteOnly = remoteOnly;
+    }
+
+    public long getHlc() {
+        return hlc;
+    }
+
+    public void setHlc(long hlc) {
+        this.hlc = hlc;
+    }
+
+    public int getDeliveryState() {
+        return deliveryState;
+    }
+
+    public void setDeliveryState(int deliveryState) {
+        this.deliveryState = deliveryState;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public void setChannel(String channel) {
+        this.channel = channel;
+    }
     
     // Helper method to get display text (original or edited)
     public String getDisplayText() {
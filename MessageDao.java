@@ -5,6 +5,11 @@ import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Transaction;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 
 import java.util.List;
 
@@ -14,27 +19,170 @@ public interface MessageDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insertMessage(Message message);
 
-    @Query("SELECT * FROM messages ORDER BY timestamp ASC")
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertMessages(List<Message> messages);
+
+    @Query("SELECT uniqueId FROM messages WHERE uniqueId IN (:uniqueIds)")
+    List<String> getExistingUniqueIds(List<String> uniqueIds);
+
+    // Received messages we don't have yet, by uniqueId, in one transaction: the check and the insert can't be
+    // split by another copy of the same message, and a history snapshot costs one commit instead of one per
+    // row. Keep batches under SQLite's 999 bound parameters. Returns how many were new.
+    @Transaction
+    default int insertMissing(List<Message> messages) {
+        List<String> ids = new ArrayList<>(messages.size());
+        for (Message m : messages) ids.add(m.getUniqueId());
+        Set<String> seen = new HashSet<>(getExistingUniqueIds(ids));
+        List<Message> missing = new ArrayList<>(messages.size());
+        for (Message m : messages) if (seen.add(m.getUniqueId())) missing.add(m);
+        if (!missing.isEmpty()) insertMessages(missing);
+        for (Message m : missing) adoptPendingReactions(m.getUniqueId());
+        return missing.size();
+    }
+
+    // A message from someone else, with any reactions that arrived ahead of it
+    @Transaction
+    default void insertReceived(Message message) {
+        insertMessage(message);
+        adoptPendingReactions(message.getUniqueId());
+    }
+
+    // Sender-assigned HLC stamps, uniqueId breaks ties, so the order is identical on every device
+    @Query("SELECT * FROM messages ORDER BY hlc ASC, uniqueId ASC")
     LiveData<List<Message>> getAllMessages();
 
-    @Query("UPDATE messages SET likeCount = likeCount + 1 WHERE uniqueId = :uniqueId")
-    void incrementLike(String uniqueId);
+    // Same list as getAllMessages(), for callers that manage their own invalidation (see CoalescedQueryLiveData)
+    @Query("SELECT * FROM messages ORDER BY hlc ASC, uniqueId ASC")
+    List<Message> getAllMessagesSync();
 
-    @Query("UPDATE messages SET likeCount = CASE WHEN likeCount > 0 THEN likeCount - 1 ELSE 0 END WHERE uniqueId = :uniqueId")
-    void decrementLike(String uniqueId);
-    
-    @Query("UPDATE messages SET likedBy = :likedBy WHERE uniqueId = :uniqueId")
-    void updateLikedBy(String uniqueId, String likedBy);
-    
-    @Query("SELECT likedBy FROM messages WHERE uniqueId = :uniqueId")
-    String getLikedBy(String uniqueId);
+    // One room's messages, in the same order
+    @Query("SELECT * FROM messages WHERE channel = :channel ORDER BY hlc ASC, uniqueId ASC")
+    List<Message> getMessagesForChannelSync(String channel);
+
+    // One entry per row with that uniqueId (null where nobody reacted yet), empty if the message isn't here
+    @Query("SELECT reactions FROM messages WHERE uniqueId = :uniqueId")
+    List<String> getReactions(String uniqueId);
 
-    @Query("UPDATE messages SET text = :newText, isEdited = 1, editedText = :newText WHERE uniqueId = :uniqueId")
+    @Query("UPDATE messages SET reactions = :reactions, likeCount = :likeCount, likedBy = :likedBy WHERE uniqueId = :uniqueId")
+    void updateReactions(String uniqueId, String reactions, int likeCount, String likedBy);
+
+    // A like (added) or unlike merged into the message's ReactionSet. likeCount and likedBy, which the list
+    // shows, are derived from the set here and nowhere else. Returns the merged set, null if the message
+    // isn't here.
+    @Transaction
+    default ReactionSet applyReaction(String uniqueId, boolean added, String user, List<String> tags) {
+        List<String> rows = getReactions(uniqueId);
+        if (rows.isEmpty()) return null;
+        ReactionSet set = ReactionSet.parse(rows.get(0));
+        if (set.apply(new ReactionSet.Change(uniqueId, added, user, tags))) storeReactions(uniqueId, set);
+        return set;
+    }
+
+    default void storeReactions(String uniqueId, ReactionSet set) {
+        List<String> users = set.getUsers();
+        updateReactions(uniqueId, set.encode(), users.size(), users.isEmpty() ? null : String.join(",", users));
+    }
+
+    // A batch of reactions from the host in one transaction; returns how many hit a message we have. The rest
+    // are parked until their message arrives.
+    @Transaction
+    default int applyReactions(List<ReactionSet.Change> changes) {
+        int applied = 0;
+        for (ReactionSet.Change c : changes) {
+            if (applyReaction(c.uniqueId, c.added, c.user, c.tags) != null) applied++;
+            else parkReaction(c);
+        }
+        return applied;
+    }
+
+    // ---- Reactions ahead of their message (see PendingReactions) ----
+
+    int MAX_PENDING_REACTIONS = 1000;
+
+    @Query("SELECT reactions FROM pending_reactions WHERE uniqueId = :uniqueId")
+    String getPendingReactions(String uniqueId);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertPendingReactions(PendingReactions pending);
+
+    @Query("DELETE FROM pending_reactions WHERE uniqueId = :uniqueId")
+    void deletePendingReactions(String uniqueId);
+
+    // Messages that never come (a channel we left, a deleted message) must not keep their reactions forever
+    @Query("DELETE FROM pending_reactions WHERE uniqueId NOT IN "
+            + "(SELECT uniqueId FROM pending_reactions ORDER BY parkedAt DESC LIMIT :keep)")
+    void trimPendingReactions(int keep);
+
+    default void parkReaction(ReactionSet.Change change) {
+        ReactionSet set = ReactionSet.parse(getPendingReactions(change.uniqueId));
+        if (!set.apply(change)) return;
+        insertPendingReactions(new PendingReactions(change.uniqueId, set.encode(), System.currentTimeMillis()));
+        trimPendingReactions(MAX_PENDING_REACTIONS);
+    }
+
+    // Merges what was parked for a message that has just been stored
+    default void adoptPendingReactions(String uniqueId) {
+        String parked = getPendingReactions(uniqueId);
+        if (parked == null) return;
+        deletePendingReactions(uniqueId);
+        List<String> rows = getReactions(uniqueId);
+        if (rows.isEmpty()) return;
+        ReactionSet set = ReactionSet.parse(rows.get(0));
+        if (set.merge(ReactionSet.parse(parked))) storeReactions(uniqueId, set);
+    }
+
+    @Query("UPDATE messages SET text = :newText, isEdited = 1, editedText = :newText, editVersion = editVersion + 1 WHERE uniqueId = :uniqueId")
     void updateMessage(String uniqueId, String newText);
 
+    // Also clears previewOnly/remoteOnly: whatever replaces the file is at least the full transmitted body
+    @Query("UPDATE messages SET filePath = :filePath, fileName = :fileName, fileSize = :fileSize, previewOnly = 0, remoteOnly = 0 WHERE uniqueId = :uniqueId")
+    void updateMediaFile(String uniqueId, String filePath, String fileName, long fileSize);
+
+    @Query("UPDATE messages SET filePath = :filePath, previewOnly = 1 WHERE uniqueId = :uniqueId AND filePath IS NULL")
+    void updatePreviewFile(String uniqueId, String filePath);
+
+    @Query("UPDATE messages SET remoteOnly = 1, fileSize = :fileSize WHERE uniqueId = :uniqueId AND previewOnly = 1")
+    void markRemoteOnly(String uniqueId, long fileSize);
+
+    // Only moves forward, so a late SENT can't overwrite an ACK that raced ahead of it
+    @Query("UPDATE messages SET deliveryState = :state WHERE uniqueId = :uniqueId AND deliveryState < :state")
+    void advanceDeliveryState(String uniqueId, int state);
+
+    @Query("UPDATE messages SET deliveryState = 1 WHERE deliveryState = 2")
+    void resetUnacknowledgedDelivery();
+
+    // Own messages still pending with nothing in the outbox, e.g. the app died while an image was transcoding.
+    // Not ones deleted before they went out: their rows were dropped on purpose.
+    @Query("SELECT * FROM messages WHERE deliveryState = 1 AND isDeleted = 0 AND uniqueId NOT IN (SELECT uniqueId FROM outbox)")
+    List<Message> getPendingWithoutOutbox();
+
+    // Newest stamp among messages from others: where a reconnecting client asks the host to resume from.
+    // Join notices are stamped on arrival here rather than by a sender, so they don't count.
+    @Query("SELECT COALESCE(MAX(hlc), 0) FROM messages WHERE isSentByUser = 0 AND text != :joinNotice")
+    long getLatestReceivedHlc(String joinNotice);
+
+    // Catch-up for a reconnecting client, oldest first
+    @Query("SELECT * FROM messages WHERE hlc > :afterHlc AND messageType = 'text' AND isDeleted = 0 ORDER BY hlc ASC LIMIT :limit")
+    List<Message> getTextMessagesAfter(long afterHlc, int limit);
+
+    // The newest text messages after afterHlc, at most limit of them, oldest first: a late joiner's snapshot
+    @Query("SELECT * FROM (SELECT * FROM messages WHERE hlc > :afterHlc AND messageType = 'text' AND isDeleted = 0 "
+            + "ORDER BY hlc DESC LIMIT :limit) ORDER BY hlc ASC")
+    List<Message> getRecentTextMessages(long afterHlc, int limit);
+
     @Query("UPDATE messages SET isDeleted = 1 WHERE uniqueId = :uniqueId")
     void deleteMessage(String uniqueId);
 
+    @Query("UPDATE messages SET isDeleted = 1 WHERE uniqueId IN (:uniqueIds)")
+    void deleteMessages(List<String> uniqueIds);
+
+    // A multi-select BATCH: all its edits and deletes in one transaction, so the list refreshes once
+    @Transaction
+    default void applyCommands(List<String> deletedIds, java.util.Map<String, String> editedTexts) {
+        for (java.util.Map.Entry<String, String> e : editedTexts.entrySet()) updateMessage(e.getKey(), e.getValue());
+        if (!deletedIds.isEmpty()) deleteMessages(deletedIds);
+    }
+
     @Query("SELECT * FROM messages WHERE id = :messageId")
     Message getMessageById(int messageId);
     
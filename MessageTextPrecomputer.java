@@ -0,0 +1,132 @@
+package com.example.chitchatapp.adapter;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.TextView;
+
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+
+import com.example.chitchatapp.db.Message;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Measures message text off the main thread so bind() only has to hand a ready layout to the TextView.
+// Results are cached per uniqueId + edit version; short plain-ASCII messages are cheap enough to skip.
+// A row bound before its layout was ready shows plain text until the listener has it rebound.
+public class MessageTextPrecomputer {
+
+    // Called on the main thread once a message's layout is cached
+    public interface Listener {
+        void onTextReady(String uniqueId);
+    }
+
+    private static final String TAG = "MessageTextPrecomputer";
+    private static final int MIN_PRECOMPUTE_LENGTH = 80;
+    private static final int CACHE_SIZE = 300;
+
+    // One thread for every adapter there will ever be (each rotation makes a new one)
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "text-precompute");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LruCache<String, PrecomputedTextCompat> cache = new LruCache<>(CACHE_SIZE);
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final Map<Integer, PrecomputedTextCompat.Params> paramsByViewType = new ConcurrentHashMap<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private volatile List<Message> lastPage;
+    private volatile Listener listener;
+
+    // null while no list shows our rows; queued work for them is then skipped
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Called once per holder type; the params must match the TextView the result is applied to
+    public void registerParams(int viewType, TextView textView) {
+        if (paramsByViewType.containsKey(viewType)) return;
+        paramsByViewType.put(viewType, TextViewCompat.getTextMetricsParams(textView));
+        // The first page usually arrives before any holder exists, so catch up on it now
+        List<Message> page = lastPage;
+        if (page != null) precompute(page);
+    }
+
+    // Queues every long or emoji-heavy message of the page that isn't cached yet
+    public void precompute(List<Message> page) {
+        lastPage = page;
+        if (page == null || paramsByViewType.isEmpty()) return;
+
+        for (Message message : page) {
+            CharSequence text = message.getDisplayText();
+            if (!needsPrecompute(text)) continue;
+
+            PrecomputedTextCompat.Params params = paramsByViewType.get(viewTypeOf(message));
+            if (params == null) continue;
+
+            String key = cacheKey(message);
+            if (cache.get(key) != null || !inFlight.add(key)) continue;
+
+            String uniqueId = message.getUniqueId();
+            EXECUTOR.execute(() -> {
+                try {
+                    if (listener == null) return;
+                    cache.put(key, PrecomputedTextCompat.create(text, params));
+                    mainHandler.post(() -> {
+                        Listener current = listener;
+                        if (current != null) current.onTextReady(uniqueId);
+                    });
+                } catch (Exception e) {
+                    Log.e(TAG, "Text precompute failed for " + key, e);
+                } finally {
+                    inFlight.remove(key);
+                }
+            });
+        }
+    }
+
+    // Returns false when nothing usable is cached and the caller should fall back to setText()
+    public boolean apply(TextView textView, Message message) {
+        if (!needsPrecompute(message.getDisplayText())) return false;
+
+        PrecomputedTextCompat precomputed = cache.get(cacheKey(message));
+        if (precomputed == null) return false;
+
+        try {
+            TextViewCompat.setPrecomputedText(textView, precomputed);
+            return true;
+        } catch (IllegalArgumentException e) {
+            // Text appearance changed since the params were captured (e.g. theme switch)
+            cache.remove(cacheKey(message));
+            return false;
+        }
+    }
+
+    private static int viewTypeOf(Message message) {
+        return message.isSentByUser() ? ChatAdapter.VIEW_TYPE_SENT : ChatAdapter.VIEW_TYPE_RECEIVED;
+    }
+
+    private static String cacheKey(Message message) {
+        return message.getUniqueId() + "#" + message.getEditVersion() + (message.isDeleted() ? "#d" : "")
+                + "#" + viewTypeOf(message);
+    }
+
+    private static boolean needsPrecompute(CharSequence text) {
+        if (text == null) return false;
+        if (text.length() >= MIN_PRECOMPUTE_LENGTH) return true;
+        // Emoji and other supplementary characters go through the slow font-fallback path
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isSurrogate(text.charAt(i))) return true;
+        }
+        return false;
+    }
+}
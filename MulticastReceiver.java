@@ -0,0 +1,245 @@
+package com.example.chitchatapp.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+
+// Client side of the multicast fast path (see MulticastSender). Datagrams can be lost or reordered, so
+// frames are handed on strictly in seq order: anything after a hole waits while the hole is NACKed over
+// TCP, re-NACKed every NACK_RETRY_MS, and skipped after MAX_NACK_ROUNDS so one lost frame can't stall the
+// chat; the listener hears about every skip so the chat lines in it can be caught up on another way.
+// Heartbeats expose holes at the tail. If nothing at all arrives for SILENCE_MS, multicast isn't
+// reaching us (access points often filter it) and the listener is told to fall back to unicast.
+public class MulticastReceiver implements Closeable {
+
+    public static final long NACK_RETRY_MS = 200;
+    public static final int MAX_NACK_ROUNDS = 5;
+    public static final int MAX_NACK_RANGE = 256;
+    public static final long SILENCE_MS = 3000;
+    private static final int MAX_PENDING = 4096;
+    // Placeholder for a frame the host no longer has: counted as delivered, never handed on
+    private static final String SKIPPED = new String("");
+
+    public interface Listener {
+        // A frame, in the host's order; called with the receiver locked
+        void onFrame(String frame);
+        // Ask the host to resend fromSeq..toSeq over TCP
+        void onNack(long fromSeq, long toSeq);
+        // Nothing heard for SILENCE_MS
+        void onSilent();
+        // fromSeq..toSeq are gone for good: given up on after MAX_NACK_ROUNDS, or the host no longer had them.
+        // Called with the receiver locked, before any frame after them is handed on.
+        void onSkipped(long fromSeq, long toSeq);
+    }
+
+    private final String session;
+    private final Listener listener;
+    private volatile MulticastSocket socket;
+
+    private long next = -1;                 // First seq not yet handed on; -1 until start()
+    private long highestSeen = 0;           // From frames and heartbeats
+    private final TreeMap<Long, String> pending = new TreeMap<>();
+    private long nackedAt = 0;              // When the current hole was last NACKed, 0 if not yet
+    private int nackRounds = 0;
+    private long lastHeardMs;
+    private boolean silent = false;
+    private long framesReceived = 0;
+    private long framesRepaired = 0;
+    private long framesSkipped = 0;
+
+    public MulticastReceiver(String session, Listener listener) {
+        this.session = session;
+        this.listener = listener;
+        this.lastHeardMs = System.currentTimeMillis();
+    }
+
+    // Joins the group on the given interface (null: the socket's default, any local address) and reads it on
+    // the executor until close()
+    public void open(InetAddress group, int port, NetworkInterface networkInterface, Executor executor) throws IOException {
+        MulticastSocket s = new MulticastSocket(port);
+        try {
+            s.joinGroup(new InetSocketAddress(group, port),
+                    networkInterface != null ? networkInterface : s.getNetworkInterface());
+            s.setSoTimeout((int) NACK_RETRY_MS); // Wake up for retries and the silence check
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+        socket = s;
+        executor.execute(() -> readLoop(s));
+    }
+
+    // Stops listening. Frames from before the fallback can still come in through onRepair.
+    @Override
+    public void close() {
+        MulticastSocket s = socket;
+        socket = null;
+        if (s != null) s.close();
+    }
+
+    // false after close(), e.g. once we fell back to unicast
+    public boolean isListening() {
+        return socket != null;
+    }
+
+    private void readLoop(MulticastSocket s) {
+        byte[] buffer = new byte[64 * 1024];
+        while (socket == s) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                s.receive(packet);
+                onDatagram(new String(buffer, 0, packet.getLength(), StandardCharsets.UTF_8), System.currentTimeMillis());
+            } catch (SocketTimeoutException e) {
+                // Fall through to tick
+            } catch (IOException e) {
+                return;
+            }
+            tick(System.currentTimeMillis());
+        }
+    }
+
+    // ---- SEQUENCING ----
+
+    // The host's MCAST:FROM answer: frames before fromSeq reached us over TCP
+    public synchronized void start(long fromSeq, long nowMs) {
+        next = fromSeq;
+        pending.headMap(fromSeq).clear();
+        drain(nowMs);
+    }
+
+    // seq of the first frame not handed on yet; what MCAST:OFF asks the host to resend from
+    public synchronized long getNextSeq() {
+        return next;
+    }
+
+    synchronized void onDatagram(String datagram, long nowMs) {
+        String[] parts = datagram.split(":", 4);
+        if (parts.length < 3 || !session.equals(parts[1])) return; // Another room on the same group
+        long seq;
+        try {
+            seq = Long.parseLong(parts[2]);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        lastHeardMs = nowMs;
+        silent = false;
+        if ("H".equals(parts[0])) {
+            highestSeen = Math.max(highestSeen, seq);
+            drain(nowMs);
+        } else if ("M".equals(parts[0]) && parts.length == 4) {
+            framesReceived++;
+            accept(seq, parts[3], nowMs);
+        }
+    }
+
+    // MREPAIR:<seq>:<frame> from the host; a null frame means it no longer has it
+    public synchronized void onRepair(long seq, String frame, long nowMs) {
+        if (seq >= next && !pending.containsKey(seq)) {
+            if (frame != null) framesRepaired++;
+            else framesSkipped++;
+        }
+        accept(seq, frame != null ? frame : SKIPPED, nowMs);
+    }
+
+    synchronized void tick(long nowMs) {
+        if (next > 0 && !silent && nowMs - lastHeardMs >= SILENCE_MS) {
+            silent = true;
+            listener.onSilent();
+        }
+        if (!hasHole() || nowMs - nackedAt < NACK_RETRY_MS) return;
+        if (nackRounds >= MAX_NACK_ROUNDS) {
+            skipHole();
+            drain(nowMs);
+        } else {
+            nack(nowMs);
+        }
+    }
+
+    private void accept(long seq, String frame, long nowMs) {
+        highestSeen = Math.max(highestSeen, seq);
+        if (next < 0) {
+            if (pending.size() < MAX_PENDING) pending.put(seq, frame);
+            return;
+        }
+        if (seq < next || pending.containsKey(seq)) return; // Already handed on, or a second copy
+        pending.put(seq, frame);
+        if (pending.size() > MAX_PENDING) skipHole(); // Too far behind to wait
+        drain(nowMs);
+    }
+
+    private void drain(long nowMs) {
+        if (next < 0) return;
+        boolean progressed = false;
+        long skippedFrom = -1;
+        while (!pending.isEmpty() && pending.firstKey() == next) {
+            String frame = pending.pollFirstEntry().getValue();
+            if (frame == SKIPPED) {
+                // One notice per run of placeholders, ahead of the next real frame
+                if (skippedFrom < 0) skippedFrom = next;
+            } else {
+                if (skippedFrom >= 0) listener.onSkipped(skippedFrom, next - 1);
+                skippedFrom = -1;
+                listener.onFrame(frame);
+            }
+            next++;
+            progressed = true;
+        }
+        if (skippedFrom >= 0) listener.onSkipped(skippedFrom, next - 1);
+        if (progressed || !hasHole()) {
+            nackedAt = 0;
+            nackRounds = 0;
+        }
+        if (hasHole() && nackedAt == 0) nack(nowMs);
+    }
+
+    private boolean hasHole() {
+        return next > 0 && highestSeen >= next;
+    }
+
+    // NACKs the first run of missing seqs
+    private void nack(long nowMs) {
+        long to = pending.isEmpty() ? highestSeen : pending.firstKey() - 1;
+        to = Math.min(to, next + MAX_NACK_RANGE - 1);
+        nackedAt = nowMs;
+        nackRounds++;
+        listener.onNack(next, to);
+    }
+
+    // Gives up on the first hole
+    private void skipHole() {
+        long resume = pending.isEmpty() ? highestSeen + 1 : pending.firstKey();
+        long from = next;
+        framesSkipped += resume - next;
+        next = resume;
+        nackedAt = 0;
+        nackRounds = 0;
+        if (resume > from) listener.onSkipped(from, resume - 1);
+    }
+
+    // ---- METRICS ----
+
+    public synchronized long getFramesReceived() {
+        return framesReceived;
+    }
+
+    public synchronized long getFramesRepaired() {
+        return framesRepaired;
+    }
+
+    // Frames given up on, or that the host no longer had
+    public synchronized long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+}
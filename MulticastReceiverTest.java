@@ -0,0 +1,158 @@
+package com.example.chitchatapp.network;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sequencing on the client side of the multicast fast path: in-order delivery, NACKs, repairs and fallback.
+ * Datagrams are fed in directly with a fake clock, so no multicast-capable network is needed.
+ */
+public class MulticastReceiverTest {
+
+    private static final String SESSION = "abcd1234";
+
+    private final List<String> delivered = new ArrayList<>();
+    private final List<long[]> nacks = new ArrayList<>();
+    private final List<long[]> skips = new ArrayList<>();
+    private int silences = 0;
+
+    private final MulticastReceiver receiver = new MulticastReceiver(SESSION, new MulticastReceiver.Listener() {
+        @Override
+        public void onFrame(String frame) {
+            delivered.add(frame);
+        }
+
+        @Override
+        public void onNack(long fromSeq, long toSeq) {
+            nacks.add(new long[]{fromSeq, toSeq});
+        }
+
+        @Override
+        public void onSilent() {
+            silences++;
+        }
+
+        @Override
+        public void onSkipped(long fromSeq, long toSeq) {
+            skips.add(new long[]{fromSeq, toSeq});
+        }
+    });
+
+    private void frame(long seq, long nowMs) {
+        receiver.onDatagram("M:" + SESSION + ":" + seq + ":bob: MSG:bob_" + seq + ":0:hi " + seq, nowMs);
+    }
+
+    private static String text(long seq) {
+        return "bob: MSG:bob_" + seq + ":0:hi " + seq;
+    }
+
+    @Test
+    public void framesArriveOnceAndInOrder() {
+        receiver.start(1, 1000);
+        frame(2, 1000);
+        frame(1, 1001);
+        frame(2, 1002); // Second copy
+        frame(3, 1003);
+        assertEquals(Arrays.asList(text(1), text(2), text(3)), delivered);
+        assertEquals(1, nacks.size()); // 1 was missing for a moment when 2 came first
+    }
+
+    @Test
+    public void holeIsNackedAndRepairedOverTcp() {
+        receiver.start(1, 1000);
+        frame(1, 1000);
+        frame(4, 1001);
+        frame(5, 1002);
+        assertEquals(Arrays.asList(text(1)), delivered);
+        assertEquals(1, nacks.size());
+        assertArrayEquals(new long[]{2, 3}, nacks.get(0));
+
+        // No answer yet: asked again after the retry interval, not before
+        receiver.tick(1001 + MulticastReceiver.NACK_RETRY_MS / 2);
+        assertEquals(1, nacks.size());
+        receiver.tick(1001 + MulticastReceiver.NACK_RETRY_MS);
+        assertEquals(2, nacks.size());
+
+        receiver.onRepair(3, text(3), 1300);
+        receiver.onRepair(2, text(2), 1301);
+        assertEquals(Arrays.asList(text(1), text(2), text(3), text(4), text(5)), delivered);
+        assertEquals(2, receiver.getFramesRepaired());
+        assertEquals(0, receiver.getPendingCount());
+    }
+
+    @Test
+    public void heartbeatExposesLossAtTheTail() {
+        receiver.start(1, 1000);
+        frame(1, 1000);
+        receiver.onDatagram("H:" + SESSION + ":4", 1500);
+        assertEquals(1, nacks.size());
+        assertArrayEquals(new long[]{2, 4}, nacks.get(0));
+    }
+
+    @Test
+    public void unrepairableHoleIsSkipped() {
+        receiver.start(1, 1000);
+        frame(2, 1000);
+        long now = 1000;
+        for (int round = 0; round < MulticastReceiver.MAX_NACK_ROUNDS; round++) {
+            now += MulticastReceiver.NACK_RETRY_MS;
+            receiver.tick(now);
+        }
+        assertEquals(MulticastReceiver.MAX_NACK_ROUNDS, nacks.size());
+        assertEquals(Arrays.asList(text(2)), delivered);
+        assertEquals(1, receiver.getFramesSkipped());
+        // Reported, so the client can SYNC past it
+        assertEquals(1, skips.size());
+        assertArrayEquals(new long[]{1, 1}, skips.get(0));
+
+        // The host saying it no longer has frames skips them straight away, in one notice
+        frame(5, now);
+        receiver.onRepair(4, null, now);
+        receiver.onRepair(3, null, now);
+        assertEquals(Arrays.asList(text(2), text(5)), delivered);
+        assertEquals(2, skips.size());
+        assertArrayEquals(new long[]{3, 4}, skips.get(1));
+    }
+
+    @Test
+    public void framesFromBeforeTheSwitchAndOtherRoomsAreIgnored() {
+        frame(3, 1000);
+        frame(4, 1000);
+        frame(5, 1000);
+        receiver.onDatagram("M:otherroom:6:alice: MSG:alice_1:0:not ours", 1000);
+        receiver.start(5, 1001); // 3 and 4 were unicast before we switched
+        frame(6, 1002);
+        assertEquals(Arrays.asList(text(5), text(6)), delivered);
+        assertEquals(0, nacks.size());
+        assertEquals(7, receiver.getNextSeq());
+    }
+
+    @Test
+    public void silenceAsksForUnicast() {
+        receiver.start(1, 1000);
+        frame(1, 1000);
+        receiver.tick(1000 + MulticastReceiver.SILENCE_MS - 1);
+        assertEquals(0, silences);
+        receiver.tick(1000 + MulticastReceiver.SILENCE_MS);
+        receiver.tick(1000 + MulticastReceiver.SILENCE_MS + 500);
+        assertEquals(1, silences);
+    }
+
+    @Test
+    public void senderOnlyTakesSmallChatFrames() {
+        assertTrue(MulticastSender.isEligible("bob: MSG:bob_1:0:hi"));
+        assertTrue(MulticastSender.isEligible("CH:random:bob: MSG:bob_1:0:hi"));
+        assertTrue(MulticastSender.isEligible("LIKE:bob_1"));
+        assertTrue(MulticastSender.isEligible("EDIT:bob_1:fixed"));
+        assertFalse(MulticastSender.isEligible("IMG:bob_2:0:caption:AAAA"));
+        assertFalse(MulticastSender.isEligible("bob: has joined the chat."));
+        assertFalse(MulticastSender.isEligible("bob: MSG:bob_3:0:" + "x".repeat(MulticastSender.MAX_FRAME_BYTES)));
+        // Counted in bytes, not chars
+        assertFalse(MulticastSender.isEligible("bob: MSG:bob_4:0:" + "é".repeat(MulticastSender.MAX_FRAME_BYTES / 2)));
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.chitchatapp.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.nio.charset.StandardCharsets;
+
+// Host side of the multicast fast path. Small chat frames (MSG lines, LIKE/UNLIKE/REACTS/EDIT/DELETE) go out once
+// as a UDP datagram to the group instead of once per client over TCP:
+//   M:<session>:<seq>:<frame>     a frame, seq counting up from 1
+//   H:<session>:<lastSeq>         heartbeat, so a client notices it missed the last frames
+// session tells rooms sharing the group apart. The last HISTORY frames are kept, so a client that NACKs a
+// gap over its TCP connection gets them back as MREPAIR:<seq>:<frame> (see MulticastReceiver).
+public class MulticastSender implements Closeable {
+
+    public static final String GROUP = "239.255.42.99";
+    public static final int PORT = 12347;
+    // One datagram that fits a Wi-Fi MTU without IP fragmentation
+    public static final int MAX_FRAME_BYTES = 1200;
+    public static final int HISTORY = 2048;
+    public static final long HEARTBEAT_MS = 500;
+
+    private final MulticastSocket socket;
+    private final InetSocketAddress group;
+    private final String session;
+    private final String[] history = new String[HISTORY];
+    private long lastSeq = 0;
+
+    public MulticastSender(String session) throws IOException {
+        this(session, InetAddress.getByName(GROUP), PORT);
+    }
+
+    public MulticastSender(String session, InetAddress group, int port) throws IOException {
+        this.session = session;
+        this.group = new InetSocketAddress(group, port);
+        this.socket = new MulticastSocket();
+        socket.setTimeToLive(1); // The LAN only
+    }
+
+    public String getSession() {
+        return session;
+    }
+
+    // The offer a client gets on connect: MCAST:<group>:<port>:<session>
+    public String offer() {
+        return "MCAST:" + group.getAddress().getHostAddress() + ":" + group.getPort() + ":" + session;
+    }
+
+    // Chat lines and the commands that follow them, small enough for one datagram. Channel-wrapped frames
+    // count too: every multicast client sees every channel and drops the ones it didn't join.
+    public static boolean isEligible(String frame) {
+        // Never fewer bytes than chars, so long frames are rejected without encoding them
+        return isSmallKind(frame) && frame.length() <= MAX_FRAME_BYTES
+                && frame.getBytes(StandardCharsets.UTF_8).length <= MAX_FRAME_BYTES;
+    }
+
+    // Same test for a frame the host already encoded for its broadcast
+    public static boolean isEligible(EncodedFrame frame) {
+        return frame.size() <= MAX_FRAME_BYTES && isSmallKind(frame.text());
+    }
+
+    private static boolean isSmallKind(String frame) {
+        String inner = ChannelRouter.unwrap(frame)[1];
+        return inner.startsWith("LIKE:") || inner.startsWith("UNLIKE:") || inner.startsWith(ReactionBatcher.PREFIX)
+                || inner.startsWith("EDIT:") || inner.startsWith("DELETE:") || inner.contains(": MSG:");
+    }
+
+    // Sequence number the next frame will get
+    public synchronized long nextSeq() {
+        return lastSeq + 1;
+    }
+
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+
+    // Stamps and sends one frame; false if the datagram could not be sent (the caller unicasts instead)
+    public boolean send(String frame) {
+        return send(EncodedFrame.of(frame));
+    }
+
+    // The frame's bytes go into the datagram behind the header as they are, not encoded again
+    public synchronized boolean send(EncodedFrame frame) {
+        long seq = lastSeq + 1;
+        try {
+            java.io.ByteArrayOutputStream datagram = new java.io.ByteArrayOutputStream(frame.size() + 48);
+            datagram.write(("M:" + session + ":" + seq + ":").getBytes(StandardCharsets.UTF_8));
+            frame.writeTo(datagram);
+            byte[] bytes = datagram.toByteArray();
+            socket.send(new DatagramPacket(bytes, bytes.length, group));
+        } catch (IOException e) {
+            return false;
+        }
+        lastSeq = seq;
+        history[(int) (seq % HISTORY)] = frame.text();
+        return true;
+    }
+
+    public synchronized void heartbeat() {
+        try {
+            transmit("H:" + session + ":" + lastSeq);
+        } catch (IOException ignored) {
+            // The next one may get through; clients that hear nothing fall back to unicast
+        }
+    }
+
+    // A frame for an MREPAIR answer, null once it has aged out of the history
+    public synchronized String repair(long seq) {
+        if (seq <= 0 || seq > lastSeq || seq <= lastSeq - HISTORY) return null;
+        return history[(int) (seq % HISTORY)];
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+    }
+
+    private void transmit(String datagram) throws IOException {
+        byte[] bytes = datagram.getBytes(StandardCharsets.UTF_8);
+        socket.send(new DatagramPacket(bytes, bytes.length, group));
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.chitchatapp.network;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The two pools NetworkManager runs on, replacing one unbounded cached pool.
+//  - I/O: accept loops and one blocking reader per connection. Bounded per client: each holds a chat reader,
+//    and data stream readers only while it moves large media (they open on the first large transfer), so
+//    the cap budgets streams for MAX_STRIPING_CLIENTS at a time. A connection beyond the limit is refused
+//    instead of growing threads. Optionally a virtual thread per connection where the runtime has them.
+//  - Send: short tasks that hand frames to LaneWriters. Two threads and a bounded queue; when the queue is
+//    full the submitting thread runs the task itself, which slows a flood of sends down at its source.
+//  - Timer: one thread for short delayed tasks such as flushing a batch of ACKs.
+//  - Writers: each LaneWriter's drain thread comes from writerThreads(), so they show up in getThreadCount.
+public class NetworkExecutors {
+
+    public static final int MAX_CLIENTS = 256;
+    public static final int DATA_STREAMS_PER_CLIENT = 4;
+    public static final int MAX_STRIPING_CLIENTS = 16;  // Clients with their data streams open at once
+    private static final int RESERVED_IO_THREADS = 8;   // Accept loops, mesh links, discovery
+    public static final int MAX_IO_THREADS = RESERVED_IO_THREADS + MAX_CLIENTS
+            + MAX_STRIPING_CLIENTS * DATA_STREAMS_PER_CLIENT;
+    public static final int SEND_THREADS = 2;
+    public static final int SEND_QUEUE_CAPACITY = 256;
+
+    private volatile ExecutorService ioExecutor;
+    private volatile boolean virtualThreads = false;
+    private final ThreadPoolExecutor sendExecutor;
+    private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, named("net-timer"));
+
+    private final AtomicInteger activeIoTasks = new AtomicInteger();
+    private final AtomicInteger activeWriterThreads = new AtomicInteger();
+    private final ThreadFactory writerThreads = counted(named("lane-writer"), activeWriterThreads);
+    private final AtomicInteger activeSendTasks = new AtomicInteger();
+    private final AtomicLong rejectedIoTasks = new AtomicLong();
+    private final AtomicLong callerRunsSendTasks = new AtomicLong();
+
+    public NetworkExecutors() {
+        ioExecutor = newIoPool();
+        RejectedExecutionHandler backpressure = (task, pool) -> {
+            if (pool.isShutdown()) throw new RejectedExecutionException("send pool shut down");
+            callerRunsSendTasks.incrementAndGet();
+            task.run();
+        };
+        sendExecutor = new ThreadPoolExecutor(SEND_THREADS, SEND_THREADS, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(SEND_QUEUE_CAPACITY), named("net-send"), backpressure);
+    }
+
+    // Runs a long-lived connection task; throws RejectedExecutionException when the I/O pool is full
+    public void executeIo(Runnable task) {
+        try {
+            ioExecutor.execute(counted(task, activeIoTasks));
+        } catch (RejectedExecutionException e) {
+            rejectedIoTasks.incrementAndGet();
+            throw e;
+        }
+    }
+
+    public void executeSend(Runnable task) {
+        sendExecutor.execute(counted(task, activeSendTasks));
+    }
+
+    // For LaneWriter drain threads, which live as long as their connection
+    public ThreadFactory writerThreads() {
+        return writerThreads;
+    }
+
+    // Runs a short task after a delay; dropped silently once the executors are shut down
+    public void schedule(Runnable task, long delayMs) {
+        try {
+            timer.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    // Switches connection handling to one virtual thread per task. Returns false (and stays on the bounded
+    // pool) when the runtime has no virtual threads, e.g. on Android. Running connections are not moved.
+    public synchronized boolean setVirtualThreads(boolean enabled) {
+        if (enabled == virtualThreads) return true;
+        ExecutorService next = enabled ? newVirtualThreadExecutor() : newIoPool();
+        if (next == null) return false;
+        ExecutorService previous = ioExecutor;
+        ioExecutor = next;
+        virtualThreads = enabled;
+        previous.shutdown();
+        return true;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public static boolean virtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    // ---- METRICS ----
+
+    // Platform threads currently alive in all pools (virtual threads are not counted)
+    public int getThreadCount() {
+        ExecutorService io = ioExecutor;
+        int ioThreads = io instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) io).getPoolSize() : 0;
+        return ioThreads + sendExecutor.getPoolSize() + timer.getPoolSize() + activeWriterThreads.get();
+    }
+
+    public int getWriterThreadCount() {
+        return activeWriterThreads.get();
+    }
+
+    public int getActiveIoTasks() {
+        return activeIoTasks.get();
+    }
+
+    public int getActiveSendTasks() {
+        return activeSendTasks.get();
+    }
+
+    public int getQueuedSendTasks() {
+        return sendExecutor.getQueue().size();
+    }
+
+    // Connections refused because the I/O pool was full
+    public long getRejectedIoTasks() {
+        return rejectedIoTasks.get();
+    }
+
+    // Sends that found the queue full and ran on the caller's thread instead
+    public long getCallerRunsSendTasks() {
+        return callerRunsSendTasks.get();
+    }
+
+    public void shutdown() {
+        ioExecutor.shutdownNow();
+        sendExecutor.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    private ExecutorService newIoPool() {
+        return new ThreadPoolExecutor(0, MAX_IO_THREADS, 30, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), named("net-io"));
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Runnable counted(Runnable task, AtomicInteger active) {
+        return () -> {
+            active.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+            }
+        };
+    }
+
+    private static ThreadFactory counted(ThreadFactory factory, AtomicInteger active) {
+        return runnable -> factory.newThread(counted(runnable, active));
+    }
+
+    static ThreadFactory named(String prefix) {
+        AtomicInteger next = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + next.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -1,392 +1,1706 @@
 package com.example.chitchatapp.network;
 
-import android.content.Context;
-import android.net.wifi.WifiManager;
-import android.os.PowerManager;
-import android.text.format.Formatter;
-import android.util.Log;
-import android.widget.Toast;
-
-import androidx.lifecycle.LiveData;
-import androidx.lifecycle.MutableLiveData;
+import com.example.chitchatapp.db.HybridLogicalClock;
+import com.example.chitchatapp.db.ReactionSet;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 public class NetworkManager {
 
     private static final String TAG = "NetworkManager";
-    private static final int PORT = 12345;
+    // Chat port a host listens on; rooms on the LAN advertise theirs in the beacon (see RoomBrowser.Room)
+    public static final int PORT = 12345;
+    private static final int DATA_PORT = PORT + 1;      // Extra streams for striped media transfers, chat port + 1
+    private static final int MAX_DATA_STREAMS = NetworkExecutors.DATA_STREAMS_PER_CLIENT;
+    private static final int DATA_SOCKET_BUFFER = 512 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 3000;
+
+    // Text of the notice the host posts when someone joins; not part of the history a client catches up on
+    public static final String JOIN_NOTICE = "has joined the chat.";
+
+    // This device in the mesh and in the host's member list
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+
+    // Bounded I/O pool for connections, bounded send pool with backpressure (see NetworkExecutors)
+    private final NetworkExecutors executors = new NetworkExecutors();
+    // Sockets, NIO channels or in-memory pipes (see Transport); everything below only sees line streams
+    private final Transport transport;
+    private volatile Transport.Server server;
+    // One LaneWriter per client: control/text frames jump ahead of chunked media (see LaneWriter)
+    private final List<LaneWriter> clientWriters = Collections.synchronizedList(new ArrayList<>());
+
+    // Multi-stream transfers: large media is striped over extra data connections (see StripedSender)
+    private volatile boolean multiStreamEnabled = true;
+    private volatile Transport.Server dataServer;
+    private final Map<String, DataSession> dataSessions = new ConcurrentHashMap<>();   // host: token -> client
+    private final Map<LaneWriter, StripedSender> stripedSenders = new ConcurrentHashMap<>();
+    // Host: the STREAMS offer each client got on connect, repeated once when we first have something large for it
+    private final Map<LaneWriter, String> streamOffers = new ConcurrentHashMap<>();
+    // Host: acknowledgements owed to each client, sent a batch at a time (see AckBatcher)
+    private final Map<LaneWriter, AckBatcher> ackBatchers = new ConcurrentHashMap<>();
+    private volatile StripedSender clientStriped;
+    // Client: the host's data stream offer, taken up on the first large transfer either way
+    private volatile String dataStreamToken;
+    private volatile int dataStreamCount;
+    private volatile ChunkAssembler clientAssembler;
+
+    // Rooms: who is subscribed to what on the host (see ChannelRouter), and the channels this device is in
+    private final ChannelRouter channels = new ChannelRouter();
+    private final Set<String> joinedChannels = ConcurrentHashMap.newKeySet();
+
+    // Host-to-host links: frames from our clients are passed on to other hosts and theirs come back here
+    private final MeshRelay mesh;
 
-    private final ExecutorService executor = Executors.newCachedThreadPool();
-    private ServerSocket serverSocket;
-    private final List<PrintWriter> clientWriters = Collections.synchronizedList(new ArrayList<>());
+    // Host failover: the host ranks its members (join order), clients keep the list and elect a successor
+    // when the host disappears (see FailoverCoordinator)
+    private final FailoverCoordinator failover = new FailoverCoordinator(nodeId);
+    private final Map<LaneWriter, FailoverCoordinator.Member> members =
+            Collections.synchronizedMap(new java.util.LinkedHashMap<>());
+    private volatile String hostAddress;
+    private volatile int hostPort = PORT;                                              // client: where we joined
+    // Set by stop(): a connection that ends because we left is not a reason to elect a new host
+    private volatile boolean stopping = false;
+
+    // Multicast fast path: the host sends small chat frames once to the group and skips unicast for clients
+    // that confirmed they hear it; clients NACK holes over TCP (see MulticastSender, MulticastReceiver)
+    private volatile boolean multicastEnabled = false;
+    private volatile MulticastSender multicastSender;                                  // host
+    private final Set<LaneWriter> multicastClients = ConcurrentHashMap.newKeySet();    // host
+    private volatile MulticastReceiver multicastReceiver;                              // client
+    // Newest chat line handed to the repository, where a SYNC picks up after the receiver skips frames
+    private volatile long lastDeliveredHlc = 0;                                         // client
+
+    // LAN discovery: the host broadcasts a beacon, the join screen lists the rooms it hears (see
+    // DiscoveryBeacon, RoomBrowser)
+    private volatile DiscoveryBeacon beacon;                                           // host
+    private volatile RoomBrowser roomBrowser;                                          // join screen
+
+    // Likes: our own taps are debounced per message before they go out; the host folds everyone's into
+    // REACTS batches per channel (see ReactionDebouncer, ReactionBatcher)
+    private final ReactionDebouncer reactionDebouncer;
+    private final ReactionBatcher reactionBatcher;
+
+    // Fan-out cost (host): every broadcast frame is encoded once and the bytes shared by all its recipients
+    private final java.util.concurrent.atomic.AtomicLong broadcasts = new java.util.concurrent.atomic.AtomicLong();
+    private final java.util.concurrent.atomic.AtomicLong broadcastBytesEncoded = new java.util.concurrent.atomic.AtomicLong();
+
+    // Lazy media mode (host): IMG/DOC bodies stay on the host, clients get META and FETCH what they show
+    private volatile boolean lazyMediaMode = false;
+    private final LazyMediaStore lazyMediaStore;
+
+    // Full-quality originals (host): who asked for each image, so its ORIG goes back to them alone rather than
+    // to the whole channel; requests nobody answers are forgotten oldest first
+    private static final int MAX_ORIGINAL_REQUESTS = 256;
+    private final Map<String, OriginalRequest> originalRequests = Collections.synchronizedMap(
+            new java.util.LinkedHashMap<String, OriginalRequest>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, OriginalRequest> eldest) {
+                    return size() > MAX_ORIGINAL_REQUESTS;
+                }
+            });
 
     private String hostUsername = "Host";
-    private Socket clientSocket;
-    private volatile PrintWriter clientWriter;
+    private Transport.Connection hostConnection;
+    private volatile LaneWriter clientWriter;
     private BufferedReader clientReader;
 
     private final MessageReceiver messageReceiver;
-    private final MutableLiveData<String> hostIpAddress = new MutableLiveData<>();
-    private final MutableLiveData<Boolean> connectionStatus = new MutableLiveData<>();
-    private final Context context;
+    // Wi-Fi address, wake locks and toasts; headless off Android (see NetworkPlatform)
+    private final NetworkPlatform platform;
+
+    // What a data connection needs to act for the client connection it belongs to
+    private static final class DataSession {
+        final String username;
+        final LaneWriter writer;
+        final ChunkAssembler assembler;
+        final StripedSender striped;
 
-    private PowerManager.WakeLock wakeLock;
-    private WifiManager.WifiLock wifiLock;
+        DataSession(String username, LaneWriter writer, ChunkAssembler assembler, StripedSender striped) {
+            this.username = username;
+            this.writer = writer;
+            this.assembler = assembler;
+            this.striped = striped;
+        }
+    }
 
     // ===============================================================
     // Interface for callbacks to ChatRepository
     // ===============================================================
     public interface MessageReceiver {
-        void onMessageReceived(String sender, String text);
-        void onMessageLiked(String uniqueId, boolean isLiked);
+        // channel: the room the message was posted in; only channels this device joined are delivered
+        void onMessageReceived(String channel, String sender, String text);
+        // LIKE/UNLIKE frames, one or a host's batch of them (see ReactionSet)
+        void onReactionsReceived(List<ReactionSet.Change> changes);
         void onMessageEdited(String uniqueId, String newText);
         void onMessageDeleted(String uniqueId);
-        void onImageReceived(String uniqueId, String caption, String base64Data);
-        void onDocumentReceived(String uniqueId, String fileName, long fileSize, String base64Data);
+        // A BATCH of edits and deletes from a multi-select, to be applied together
+        void onCommandsReceived(List<String> deletedIds, Map<String, String> editedTexts);
+        // hlc: the sender's HybridLogicalClock stamp, 0 if the frame had none
+        void onImageReceived(String uniqueId, long hlc, String channel, String caption, String base64Data);
+        void onImagePreviewReceived(String uniqueId, long hlc, String channel, String caption, String base64Data);
+        void onMediaMetadataReceived(String uniqueId, long hlc, String channel, String type, long size, String hash, String name);
+        void onDocumentReceived(String uniqueId, long hlc, String channel, String fileName, long fileSize, String base64Data);
+        void onOriginalRequested(String uniqueId);
+        void onOriginalReceived(String uniqueId, String base64Data);
+        // A connection to the chat (host started, or client joined) is up; time to flush the outbox
+        void onConnected();
+        void onFrameAcknowledged(String frameType, String uniqueId);
+        // Host: our messages stamped after afterHlc, as the frames a client would have received, for a client
+        // catching up after it reconnected
+        List<String> onHistoryRequested(long afterHlc);
+        // Host: recent messages in every channel as the same frames, oldest first; each client is sent the
+        // ones for its channels
+        List<String> onSnapshotRequested();
+        // Client: the host's snapshot, each {channel, sender, text} as onMessageReceived would get it; to be
+        // stored in one go
+        void onHistoryReceived(List<String[]> messages);
     }
 
     // ===============================================================
-    public NetworkManager(Context context, MessageReceiver receiver) {
-        this.context = context.getApplicationContext();
+    // Any transport and platform: TcpTransport + AndroidNetworkPlatform on a phone, LoopbackTransport +
+    // NetworkPlatform.headless() for simulated peers
+    public NetworkManager(MessageReceiver receiver, Transport transport, NetworkPlatform platform) {
         this.messageReceiver = receiver;
-        initializeLocks();
+        this.transport = transport;
+        this.platform = platform;
+        this.mesh = new MeshRelay(nodeId, this::onMeshFrame, executors::executeIo, executors.writerThreads(), transport);
+        this.reactionDebouncer = new ReactionDebouncer(this::sendReaction, executors::schedule);
+        this.reactionBatcher = new ReactionBatcher(this::flushReactions, executors::schedule);
+        this.lazyMediaStore = new LazyMediaStore(new java.io.File(platform.getCacheDir(), "lazy_media"));
+        joinedChannels.add(ChannelRouter.DEFAULT);
+    }
+
+    // Only meaningful on the host; clients follow whatever the host sends them
+    public void setLazyMediaMode(boolean enabled) { this.lazyMediaMode = enabled; }
+    public boolean isLazyMediaMode() { return lazyMediaMode; }
+
+    // Host: offer the multicast fast path to clients. Clients accept any offer and drop back to unicast on
+    // their own when the group doesn't reach them.
+    public void setMulticastEnabled(boolean enabled) {
+        multicastEnabled = enabled;
+        if (!isHost()) return;
+        if (enabled) startMulticast();
+        else stopMulticast();
+    }
+
+    public boolean isMulticastEnabled() { return multicastEnabled; }
+
+    // Frames sent and repair history (host), null when multicast never started
+    public MulticastSender getMulticastSender() { return multicastSender; }
+
+    // Frames received, repaired and skipped (client), null while on unicast only
+    public MulticastReceiver getMulticastReceiver() { return multicastReceiver; }
+
+    // One virtual thread per connection instead of the bounded I/O pool; false if the runtime lacks them
+    public boolean setVirtualThreadConnections(boolean enabled) { return executors.setVirtualThreads(enabled); }
+
+    // Thread count, active/queued tasks, refused connections and sends that hit backpressure
+    public NetworkExecutors getExecutors() { return executors; }
+
+    // Frames broadcast, and bytes serialised for them on average: follows frame size, not client count
+    public long getBroadcasts() { return broadcasts.get(); }
+
+    public long getBytesEncodedPerBroadcast() {
+        long count = broadcasts.get();
+        return count == 0 ? 0 : broadcastBytesEncoded.get() / count;
     }
 
-    private void initializeLocks() {
-        PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
-        wakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "ChitChatApp::CpuWakeLock");
-        WifiManager wm = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
-        wifiLock = wm.createWifiLock(WifiManager.WIFI_MODE_FULL_HIGH_PERF, "ChitChatApp::WifiWakeLock");
+    // ---- CHANNELS ----
+
+    // Joining takes effect on the host right away; a client also re-sends its channels whenever it connects
+    public String joinChannel(String name) {
+        String channel = ChannelRouter.normalize(name);
+        if (channel == null || !joinedChannels.add(channel)) return channel;
+        sendSubscription("JOIN:" + channel);
+        return channel;
     }
 
-    private void acquireLocks() {
-        if (!wakeLock.isHeld()) wakeLock.acquire();
-        if (!wifiLock.isHeld()) wifiLock.acquire();
+    public void leaveChannel(String name) {
+        String channel = ChannelRouter.normalize(name);
+        if (channel == null || !joinedChannels.remove(channel)) return;
+        sendSubscription("LEAVE:" + channel);
     }
 
-    private void releaseLocks() {
-        if (wakeLock.isHeld()) wakeLock.release();
-        if (wifiLock.isHeld()) wifiLock.release();
+    public Set<String> getJoinedChannels() {
+        return new java.util.TreeSet<>(joinedChannels);
     }
 
-    public LiveData<String> getHostIpAddress() { return hostIpAddress; }
-    public LiveData<Boolean> getConnectionStatus() { return connectionStatus; }
+    // ---- MESH ----
+
+    // Links this host to another host's chat port; both rooms then see each other's traffic
+    public void connectPeerHost(String hostIp) {
+        executors.executeSend(() -> {
+            try {
+                mesh.connect(hostIp, PORT);
+                debug("Mesh link to " + hostIp + " up, peers: " + mesh.getPeerCount());
+            } catch (IOException | RejectedExecutionException e) {
+                error("Mesh link to " + hostIp + " failed", e);
+            }
+        });
+    }
+
+    // Peer links, frames forwarded and redundant copies dropped
+    public MeshRelay getMesh() { return mesh; }
+
+    // Ranked member list and how long the last failover took
+    public FailoverCoordinator getFailover() { return failover; }
+
+    // Client: asks the host for messages after afterHlc that we missed while disconnected. Sent on the
+    // handshake lane so it can't overtake the username line.
+    public void requestHistory(long afterHlc) {
+        LaneWriter writer = clientWriter;
+        if (!isHost() && writer != null) writer.send("SYNC:" + afterHlc, LaneWriter.Lane.TEXT);
+    }
+
+    private void sendSubscription(String frame) {
+        LaneWriter writer = clientWriter;
+        if (!isHost() && writer != null) writer.send(frame, LaneWriter.Lane.CONTROL);
+    }
+
+    // Takes effect for connections made after the change
+    public void setMultiStreamEnabled(boolean enabled) { this.multiStreamEnabled = enabled; }
+    public boolean isMultiStreamEnabled() { return multiStreamEnabled; }
+
+    // Bytes/second the next media frame can expect. The host fans out to every client, so its slowest
+    // measured link is the bottleneck. ThroughputEstimator.UNKNOWN until a large frame has been written.
+    public long getEstimatedThroughput() {
+        if (isHost()) {
+            long slowest = ThroughputEstimator.UNKNOWN;
+            synchronized (clientWriters) {
+                for (LaneWriter w : clientWriters) {
+                    long bps = linkThroughput(w, stripedSenders.get(w));
+                    if (bps > 0 && (slowest <= 0 || bps < slowest)) slowest = bps;
+                }
+            }
+            return slowest;
+        }
+        LaneWriter writer = clientWriter;
+        return writer != null ? linkThroughput(writer, clientStriped) : ThroughputEstimator.UNKNOWN;
+    }
+
+    // A peer with data streams can take whichever is faster: the striped streams or the control connection
+    private static long linkThroughput(LaneWriter writer, StripedSender striped) {
+        long bps = writer.getEstimator().getBytesPerSecond();
+        return striped != null ? Math.max(bps, striped.getBytesPerSecond()) : bps;
+    }
 
     // ===============================================================
     // HOST MODE
     // ===============================================================
     public void startHost(String username) {
         this.hostUsername = (username != null && !username.isEmpty()) ? username : "Host";
-        executor.execute(() -> {
+        stopping = false;
+        executors.executeIo(() -> {
             try {
-                String ip = getLocalIpAddress();
+                String ip = platform.getLocalAddress();
                 if (ip == null) throw new IOException("Unable to get Wi-Fi IP address. Are you connected?");
-                acquireLocks();
+                platform.acquireLocks();
 
-                serverSocket = new ServerSocket(PORT);
-                hostIpAddress.postValue("Hosting on: " + ip);
-                connectionStatus.postValue(true);
-                Log.d(TAG, "Server started on IP: " + ip);
+                hostAddress = ip;
+                server = transport.listen(PORT, 0);
+                platform.onHostStatus("Hosting on: " + ip);
+                platform.onConnectionChanged(true);
+                debug("Server started on IP: " + ip);
+                messageReceiver.onConnected();
+                if (multiStreamEnabled) startDataServer();
+                if (multicastEnabled) startMulticast();
+                startBeacon();
 
                 while (!Thread.currentThread().isInterrupted()) {
-                    Socket client = serverSocket.accept();
-                    client.setTcpNoDelay(true);
-                    handleClient(client);
+                    Transport.Connection client = server.accept();
+                    try {
+                        handleClient(client);
+                    } catch (RejectedExecutionException e) {
+                        warn("Connection limit reached, refusing client");
+                        client.close();
+                    }
                 }
             } catch (IOException e) {
-                Log.e(TAG, "Host error", e);
-                hostIpAddress.postValue("Host failed: " + e.getMessage());
-                connectionStatus.postValue(false);
-                releaseLocks();
+                error("Host error", e);
+                platform.onHostStatus("Host failed: " + e.getMessage());
+                platform.onConnectionChanged(false);
+                platform.releaseLocks();
             }
         });
     }
 
-    private void handleClient(Socket clientSocket) {
-        executor.execute(() -> {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                 PrintWriter writer = new PrintWriter(clientSocket.getOutputStream(), true)) {
+    private void handleClient(Transport.Connection connection) {
+        executors.executeIo(() -> {
+            LaneWriter writer = null;
+            String dataToken = null;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
 
                 String username = reader.readLine();
+                // Another host linking up rather than a user joining
+                if (MeshRelay.isPeerHandshake(username)) {
+                    debug("Mesh link from " + username.substring(5));
+                    mesh.acceptLink(connection, reader, username);
+                    return;
+                }
                 if (username == null || username.isEmpty())
                     username = "Guest-" + System.currentTimeMillis() % 1000;
 
+                // A failed write closes the connection, which ends the read loop below and unregisters the writer
+                writer = new LaneWriter(connection.getOutputStream(), username, executors.writerThreads(), connection::close);
                 clientWriters.add(writer);
-                broadcastMessage(username, "has joined the chat.");
-                messageReceiver.onMessageReceived(username, "has joined the chat.");
+                channels.addClient(writer);
+                broadcastMessage(ChannelRouter.DEFAULT, username, JOIN_NOTICE, writer);
+                if (joinedChannels.contains(ChannelRouter.DEFAULT))
+                    messageReceiver.onMessageReceived(ChannelRouter.DEFAULT, username, JOIN_NOTICE);
 
+                // Chunks from this client's data streams land in the same assembler as its own
+                ChunkAssembler assembler = new ChunkAssembler();
+                if (dataServer != null && !dataServer.isClosed()) {
+                    dataToken = UUID.randomUUID().toString();
+                    StripedSender striped = new StripedSender(MAX_DATA_STREAMS);
+                    stripedSenders.put(writer, striped);
+                    dataSessions.put(dataToken, new DataSession(username, writer, assembler, striped));
+                    // Old clients ignore this; new ones open up to MAX_DATA_STREAMS data connections once
+                    // either side has a large frame to move
+                    String offer = "STREAMS:" + dataToken + ":" + MAX_DATA_STREAMS;
+                    streamOffers.put(writer, offer);
+                    writer.send(offer, LaneWriter.Lane.CONTROL);
+                }
+                // Same for the multicast group: old clients ignore it, new ones answer MCAST:ON if they can join
+                MulticastSender sender = multicastSender;
+                if (multicastEnabled && sender != null) writer.send(sender.offer(), LaneWriter.Lane.CONTROL);
                 String line;
                 while ((line = reader.readLine()) != null) {
                     if (line.trim().isEmpty()) continue;
 
-                    Log.d(TAG, "Host received: " +
-                            (line.length() > 120 ? line.substring(0, 120) + "..." : line));
-
-                    if (line.startsWith("LIKE:") || line.startsWith("UNLIKE:")
-                            || line.startsWith("EDIT:") || line.startsWith("DELETE:")) {
-                        broadcastCommand(line);
-                        processCommand(line);
-                        continue;
+                    // Bulk frames arrive in pieces, interleaved with chat; act on them once complete
+                    if (ChunkAssembler.isChunk(line)) {
+                        line = assembler.accept(line);
+                        if (line == null) continue;
                     }
 
-                    // Images (no username prefix)
-                    if (line.startsWith("IMG:")) {
-                        broadcastRaw(line);
-                        String[] parts = line.split(":", 4);
-                        if (parts.length == 4)
-                            messageReceiver.onImageReceived(parts[1], parts[2], parts[3]);
+                    // HELLO:<nodeId> puts the client on the member list it would fail over with. It follows the
+                    // client's JOIN/LEAVE lines, so now we know what history to send it.
+                    if (line.startsWith("HELLO:")) {
+                        boolean first = members.put(writer, new FailoverCoordinator.Member(line.substring(6),
+                                connection.getRemoteAddress(), username)) == null;
+                        broadcastMembers();
+                        LaneWriter joined = writer;
+                        if (first) executors.executeSend(() -> sendSnapshot(joined, null));
                         continue;
                     }
 
-                    // Documents (no username prefix)
-                    if (line.startsWith("DOC:")) {
-                        broadcastRaw(line);
-                        String[] parts = line.split(":", 5);
-                        if (parts.length == 5) {
-                            try {
-                                long size = Long.parseLong(parts[3]);
-                                messageReceiver.onDocumentReceived(parts[1], parts[2], size, parts[4]);
-                            } catch (Exception e) {
-                                Log.e(TAG, "Host DOC parse error", e);
-                            }
-                        }
-                        continue;
+                    handleClientFrame(username, writer, line);
+                }
+
+            } catch (Exception e) {
+                error("Client handler error", e);
+            } finally {
+                if (dataToken != null) dataSessions.remove(dataToken);
+                if (writer != null) {
+                    clientWriters.remove(writer);
+                    channels.removeClient(writer);
+                    if (members.remove(writer) != null) broadcastMembers();
+                    multicastClients.remove(writer);
+                    ackBatchers.remove(writer);
+                    StripedSender striped = stripedSenders.remove(writer);
+                    if (striped != null) striped.close();
+                    streamOffers.remove(writer);
+                    writer.close();
+                }
+                connection.close();
+                debug("Client disconnected");
+            }
+        });
+    }
+
+    private void startDataServer() {
+        Transport.Server data;
+        try {
+            data = transport.listen(DATA_PORT, DATA_SOCKET_BUFFER);
+            dataServer = data;
+        } catch (IOException e) {
+            error("Data port unavailable, media stays on the chat connection", e);
+            return;
+        }
+        executors.executeIo(() -> {
+            try {
+                while (!data.isClosed()) {
+                    Transport.Connection connection = data.accept();
+                    try {
+                        handleDataStream(connection);
+                    } catch (RejectedExecutionException e) {
+                        // The client keeps using its chat connection for media
+                        connection.close();
                     }
+                }
+            } catch (IOException e) {
+                debug("Data server stopped");
+            }
+        });
+    }
 
-                    // Normal chat text
-                    broadcastMessage(username, line);
-                    messageReceiver.onMessageReceived(username, line);
+    // A data connection from a client: first line is DATA:<token>, after that only CHUNK: lines both ways
+    private void handleDataStream(Transport.Connection connection) {
+        executors.executeIo(() -> {
+            DataSession session = null;
+            LaneWriter stream = null;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()), 64 * 1024)) {
+                String hello = reader.readLine();
+                if (hello != null && hello.startsWith("DATA:")) session = dataSessions.get(hello.substring(5));
+                if (session == null) {
+                    warn("Data stream without a known session");
+                    return;
                 }
 
-            } catch (Exception e) {
-                Log.e(TAG, "Client handler error", e);
+                stream = new LaneWriter(connection.getOutputStream(), session.username + "-data",
+                        StripedSender.STREAM_WRITER_CHUNK_SIZE, executors.writerThreads(), connection::close);
+                session.striped.addStream(stream);
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!ChunkAssembler.isChunk(line)) continue;
+                    String frame = session.assembler.accept(line);
+                    if (frame != null) handleClientFrame(session.username, session.writer, frame);
+                }
+            } catch (IOException e) {
+                debug("Data stream closed: " + e.getMessage());
             } finally {
-                Log.d(TAG, "Client disconnected");
+                if (stream != null) {
+                    session.striped.removeStream(stream);
+                    stream.close();
+                }
+                connection.close();
             }
         });
     }
 
+    // One complete frame from a client, whichever connection it came in on
+    private void handleClientFrame(String username, LaneWriter writer, String line) {
+        debug("Host received: " +
+                (line.length() > 120 ? line.substring(0, 120) + "..." : line));
+
+        // Lazy mode: a client wants the body of a media message it is about to show
+        if (line.startsWith("FETCH:")) {
+            serveFetch(writer, line.substring(6));
+            return;
+        }
+
+        // A reconnecting client catching up on what it missed; replayed on the send pool, filtered to its channels
+        if (line.startsWith("SYNC:")) {
+            long afterHlc = HybridLogicalClock.parse(line.substring(5));
+            executors.executeSend(() -> replayHistory(writer, afterHlc));
+            return;
+        }
+
+        // Multicast fast path: the client hears the group, stopped hearing it, or lost frames from it
+        if (line.startsWith("MCAST:") || line.startsWith("NACK:")) {
+            handleMulticastControl(writer, line);
+            return;
+        }
+
+        // Channel subscriptions
+        if (line.startsWith("JOIN:") || line.startsWith("LEAVE:")) {
+            String channel = ChannelRouter.normalize(line.substring(line.indexOf(':') + 1));
+            if (channel == null) return;
+            // A channel joined after the snapshot went out gets one of its own
+            if (line.startsWith("JOIN:")) {
+                if (channels.join(writer, channel) && members.containsKey(writer))
+                    executors.executeSend(() -> sendSnapshot(writer, channel));
+            } else {
+                channels.leave(writer, channel);
+            }
+            debug(username + (line.startsWith("JOIN:") ? " joined #" : " left #") + channel);
+            return;
+        }
+
+        // Likes wait a moment to be folded with others for the same channel
+        if (isReaction(line)) {
+            mesh.publish(line);
+            foldReaction(line);
+            return;
+        }
+
+        // A multi-select edit or delete: split by channel on the way out, one transaction here
+        if (line.startsWith(CommandBatch.PREFIX)) {
+            routeBatch(line, writer);
+            mesh.publish(line);
+            applyBatch(line);
+            // From the client's outbox, like a single edit or delete
+            acknowledge(writer, "BATCH", CommandBatch.idOf(line));
+            return;
+        }
+
+        // Likes, edits, deletes and originals follow the message they target into its channel
+        if (isCommand(line)) {
+            if (line.startsWith("ORIGREQ:")) rememberOriginalRequest(commandTarget(line), writer, false);
+            broadcastCommand(channels.channelOfMessage(commandTarget(line)), line, writer);
+            mesh.publish(line);
+            processCommand(line);
+            // Edits and deletes come from the client's outbox, which keeps them until acked
+            if (line.startsWith("EDIT:") || line.startsWith("DELETE:"))
+                acknowledge(writer, line.substring(0, line.indexOf(':')), commandTarget(line));
+            return;
+        }
+
+        // Full-quality original answering an ORIGREQ (no username prefix), only for whoever asked
+        if (line.startsWith("ORIG:")) {
+            deliverOriginal(line, false);
+            return;
+        }
+
+        // Everything else is posted in a channel: CH:<channel>:<frame>, or the default one when unwrapped
+        String[] routed = ChannelRouter.unwrap(line);
+        String channel = routed[0];
+        line = routed[1];
+        // The host relays and acks every channel, but only keeps the ones it joined itself
+        boolean local = joinedChannels.contains(channel);
+
+        // Low-res preview sent ahead of an IMG frame (no username prefix)
+        if (line.startsWith("IMGP:")) {
+            broadcastRaw(channel, line, writer);
+            mesh.publish(ChannelRouter.wrap(channel, line));
+            String[] parts = line.split(":", 5);
+            if (parts.length == 5) {
+                channels.rememberMessage(parts[1], channel);
+                acknowledge(writer, "IMGP", parts[1]);
+                if (local)
+                    messageReceiver.onImagePreviewReceived(parts[1], HybridLogicalClock.parse(parts[2]), channel, parts[3], parts[4]);
+            }
+            return;
+        }
+
+        // Images (no username prefix)
+        if (line.startsWith("IMG:")) {
+            broadcastMedia(channel, line, writer);
+            mesh.publish(ChannelRouter.wrap(channel, line));
+            String[] parts = line.split(":", 5);
+            if (parts.length == 5) {
+                channels.rememberMessage(parts[1], channel);
+                acknowledge(writer, "IMG", parts[1]);
+                if (local)
+                    messageReceiver.onImageReceived(parts[1], HybridLogicalClock.parse(parts[2]), channel, parts[3], parts[4]);
+            }
+            return;
+        }
+
+        // Documents (no username prefix)
+        if (line.startsWith("DOC:")) {
+            broadcastMedia(channel, line, writer);
+            mesh.publish(ChannelRouter.wrap(channel, line));
+            String[] parts = line.split(":", 6);
+            if (parts.length == 6) {
+                try {
+                    long size = Long.parseLong(parts[4]);
+                    channels.rememberMessage(parts[1], channel);
+                    acknowledge(writer, "DOC", parts[1]);
+                    if (local)
+                        messageReceiver.onDocumentReceived(parts[1], HybridLogicalClock.parse(parts[2]), channel, parts[3], size, parts[5]);
+                } catch (Exception e) {
+                    error("Host DOC parse error", e);
+                }
+            }
+            return;
+        }
+
+        // Normal chat text; the sender already shows it, so it isn't echoed back
+        broadcastMessage(channel, username, line, writer);
+        mesh.publish(ChannelRouter.wrap(channel, username + ": " + line));
+        if (line.startsWith("MSG:")) {
+            String uniqueId = line.substring(4).split(":", 2)[0];
+            channels.rememberMessage(uniqueId, channel);
+            acknowledge(writer, "MSG", uniqueId);
+        }
+        if (local) messageReceiver.onMessageReceived(channel, username, line);
+    }
+
+    private void replayHistory(LaneWriter writer, long afterHlc) {
+        int sent = 0;
+        for (String frame : messageReceiver.onHistoryRequested(afterHlc)) {
+            if (!channels.isSubscribed(writer, ChannelRouter.unwrap(frame)[0])) continue;
+            if (!sendTo(writer, frame)) return;
+            sent++;
+        }
+        debug("Replayed " + sent + " message(s) to a reconnecting client");
+    }
+
+    // Recent history for a client: on its HELLO for the channels it follows, or for one channel it joined
+    // later (channel != null). One compressed frame; big ones go out as BULK chunks (or striped), so live
+    // chat isn't held up behind them. Old clients show nothing for a SNAP frame.
+    private void sendSnapshot(LaneWriter writer, String channel) {
+        List<String> frames = new ArrayList<>();
+        for (String frame : messageReceiver.onSnapshotRequested()) {
+            String in = ChannelRouter.unwrap(frame)[0];
+            if (channel != null ? channel.equals(in) : channels.isSubscribed(writer, in)) frames.add(frame);
+        }
+        if (frames.isEmpty()) return;
+        try {
+            String snapshot = HistorySnapshot.encode(frames);
+            sendTo(writer, snapshot);
+            debug("Snapshot of " + frames.size() + " message(s) sent to a new client, " + snapshot.length() + " chars");
+        } catch (IOException e) {
+            error("Snapshot encoding failed", e);
+        }
+    }
+
+    // Ranked member list: this host first, then clients in the order they joined
+    private void broadcastMembers() {
+        List<FailoverCoordinator.Member> ranked = new ArrayList<>();
+        ranked.add(new FailoverCoordinator.Member(nodeId, hostAddress, hostUsername));
+        // Queued under the lock too, so two joins cannot deliver their lists out of order
+        synchronized (members) {
+            ranked.addAll(members.values());
+            broadcastCommand(null, FailoverCoordinator.encode(ranked));
+        }
+    }
+
+    // Tells a client its frame reached the host (and was relayed), so it can drop it from its outbox.
+    // Queued after the relay; acks for a burst of frames share one ACKS line. A duplicate from an outbox
+    // retry is acked again.
+    private void acknowledge(LaneWriter writer, String frameType, String uniqueId) {
+        ackBatchers.computeIfAbsent(writer, w -> new AckBatcher(w, executors::schedule)).add(frameType, uniqueId);
+    }
+
+    // ---- DISCOVERY (host) ----
+
+    // Announces the room once a second with how many clients it has, so joiners can pick the least loaded
+    private void startBeacon() {
+        try {
+            DiscoveryBeacon b = new DiscoveryBeacon(nodeId, hostUsername, PORT, clientWriters::size);
+            beacon = b;
+            scheduleBeacon(b, 0);
+        } catch (IOException e) {
+            warn("Discovery beacon unavailable, clients need the IP", e);
+        }
+    }
+
+    private void scheduleBeacon(DiscoveryBeacon b, long delayMs) {
+        executors.schedule(() -> {
+            if (beacon != b) return;
+            b.announce();
+            scheduleBeacon(b, DiscoveryBeacon.INTERVAL_MS);
+        }, delayMs);
+    }
+
+    // ---- MULTICAST (host) ----
+
+    // Opens the group socket once per hosting session and offers it to everyone connected
+    private void startMulticast() {
+        executors.executeSend(() -> {
+            MulticastSender sender = multicastSender;
+            if (sender == null) {
+                try {
+                    sender = new MulticastSender(UUID.randomUUID().toString().substring(0, 8));
+                } catch (IOException e) {
+                    warn("Multicast unavailable, staying on unicast", e);
+                    return;
+                }
+                multicastSender = sender;
+                scheduleHeartbeat(sender);
+            }
+            broadcastCommand(null, sender.offer());
+        });
+    }
+
+    // Clients fall back with MCAST:OFF, which also gets them the frames they were still missing
+    private void stopMulticast() {
+        synchronized (clientWriters) {
+            multicastClients.clear();
+        }
+        broadcastCommand(null, "MCAST:STOP");
+    }
+
+    // Runs until the host stops; quiet while multicast is switched off
+    private void scheduleHeartbeat(MulticastSender sender) {
+        executors.schedule(() -> {
+            if (multicastSender != sender) return;
+            if (multicastEnabled) sender.heartbeat();
+            scheduleHeartbeat(sender);
+        }, MulticastSender.HEARTBEAT_MS);
+    }
+
+    // MCAST:ON, MCAST:OFF:<nextSeq> or NACK:<fromSeq>:<toSeq> from a client
+    private void handleMulticastControl(LaneWriter writer, String line) {
+        MulticastSender sender = multicastSender;
+        if (sender == null) return;
+        if (line.equals("MCAST:ON")) {
+            if (!multicastEnabled) return;
+            long from;
+            // Under the broadcast lock, so no frame goes out between picking from and the switch
+            synchronized (clientWriters) {
+                from = sender.nextSeq();
+                multicastClients.add(writer);
+            }
+            writer.send("MCAST:FROM:" + from, LaneWriter.Lane.CONTROL);
+            return;
+        }
+        long fromSeq;
+        long toSeq;
+        try {
+            if (line.startsWith("MCAST:OFF:")) {
+                synchronized (clientWriters) {
+                    multicastClients.remove(writer);
+                    toSeq = sender.getLastSeq();
+                }
+                fromSeq = Long.parseLong(line.substring(10));
+            } else {
+                String[] parts = line.split(":", 3);
+                fromSeq = Long.parseLong(parts[1]);
+                toSeq = Math.min(Long.parseLong(parts[2]), fromSeq + MulticastReceiver.MAX_NACK_RANGE - 1);
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            error("Bad multicast control: " + line, e);
+            return;
+        }
+        // An empty MREPAIR tells the client we no longer have that frame, so it stops waiting for it
+        for (long seq = Math.max(1, fromSeq); fromSeq > 0 && seq <= toSeq; seq++) {
+            String frame = sender.repair(seq);
+            writer.send("MREPAIR:" + seq + ":" + (frame != null ? frame : ""), LaneWriter.Lane.CONTROL);
+        }
+    }
+
     // ===============================================================
     // CLIENT MODE
     // ===============================================================
     public void startClient(String hostIp, String username) {
-        executor.execute(() -> {
-            try {
-                acquireLocks();
-                clientSocket = new Socket(hostIp, PORT);
-                clientSocket.setTcpNoDelay(true);
-                clientWriter = new PrintWriter(clientSocket.getOutputStream(), true);
-                clientReader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-
-                clientWriter.println(username);
-                clientWriter.flush();
-                connectionStatus.postValue(true);
-                Log.d(TAG, "Client connected to host " + hostIp);
+        startClient(hostIp, PORT, username);
+    }
 
-                String line;
-                while ((line = clientReader.readLine()) != null) {
-                    if (line.trim().isEmpty()) continue;
+    // port: the one the room's beacon advertised. A host we fail over to listens on the default.
+    public void startClient(String hostIp, int port, String username) {
+        stopping = false;
+        executors.executeIo(() -> {
+            platform.acquireLocks();
+            if (!connectToHost(hostIp, port, username)) {
+                platform.onConnectionChanged(false);
+                platform.releaseLocks();
+                platform.onConnectFailed(hostIp);
+                return;
+            }
+            while (true) {
+                readFromHost();
+                if (stopping) return;
 
-                    Log.d(TAG, "Client received: " +
-                            (line.length() > 120 ? line.substring(0, 120) + "..." : line));
+                // The host is gone: every client walks the same ranked list, so they all pick the same successor
+                String lostHost = hostConnection.getRemoteAddress();
+                int lostPort = hostPort;
+                FailoverCoordinator.Member successor = failover.elect(new FailoverCoordinator.Actions() {
+                    @Override
+                    public void becomeHost() {
+                        if (stopping) return; // We left mid-election; startHost would undo that
+                        clientWriter = null;
+                        startHost(username);
+                    }
 
-                    if (line.startsWith("LIKE:")) { messageReceiver.onMessageLiked(line.substring(5), true); continue; }
-                    if (line.startsWith("UNLIKE:")) { messageReceiver.onMessageLiked(line.substring(7), false); continue; }
+                    @Override
+                    public boolean reconnect() {
+                        return !stopping && connectToHost(lostHost, lostPort, username);
+                    }
 
-                    if (line.startsWith("EDIT:")) {
-                        String[] parts = line.substring(5).split(":", 2);
-                        if (parts.length == 2) messageReceiver.onMessageEdited(parts[0], parts[1]);
-                        continue;
+                    @Override
+                    public boolean connect(String address) {
+                        return !stopping && connectToHost(address, PORT, username);
                     }
+                });
+                if (successor == null || stopping) {
+                    debug("Host left and no successor could be reached");
+                    platform.onConnectionChanged(false);
+                    platform.releaseLocks();
+                    return;
+                }
+                debug("Failed over to " + successor.name + " in " + failover.getLastFailoverMs() + " ms");
+                if (successor.id.equals(nodeId)) return; // We host the room now
+            }
+        });
+    }
 
-                    if (line.startsWith("DELETE:")) { messageReceiver.onMessageDeleted(line.substring(7)); continue; }
+    // Opens the connection to a host and sends the handshake; false if it can't be reached
+    private boolean connectToHost(String hostIp, int port, String username) {
+        Transport.Connection connection = null;
+        try {
+            connection = transport.connect(hostIp, port, CONNECT_TIMEOUT_MS, 0);
+            hostPort = port;
+            LaneWriter writer = new LaneWriter(connection.getOutputStream(), "client", executors.writerThreads(), connection::close);
+            hostConnection = connection;
+            clientWriter = writer;
+            clientReader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
 
-                    // Image
-                    if (line.startsWith("IMG:")) {
-                        String[] parts = line.split(":", 4);
-                        if (parts.length == 4)
-                            messageReceiver.onImageReceived(parts[1], parts[2], parts[3]);
-                        continue;
-                    }
+            // The handshake line must be first on the wire, and the queue is empty at this point.
+            // Subscriptions follow on the same lane so they can't overtake it; the host starts us in the default channel.
+            // HELLO goes last: the host sends our snapshot on it, for the channels it then knows we are in.
+            writer.send(username, LaneWriter.Lane.TEXT);
+            for (String channel : joinedChannels) {
+                if (!ChannelRouter.DEFAULT.equals(channel)) writer.send("JOIN:" + channel, LaneWriter.Lane.TEXT);
+            }
+            if (!joinedChannels.contains(ChannelRouter.DEFAULT))
+                writer.send("LEAVE:" + ChannelRouter.DEFAULT, LaneWriter.Lane.TEXT);
+            writer.send("HELLO:" + nodeId, LaneWriter.Lane.TEXT);
+            platform.onConnectionChanged(true);
+            debug("Client connected to host " + hostIp);
+            messageReceiver.onConnected();
+            return true;
+        } catch (IOException e) {
+            debug("Could not connect to " + hostIp + ": " + e.getMessage());
+            if (connection != null) connection.close();
+            return false;
+        }
+    }
 
-                    // Document
-                    if (line.startsWith("DOC:")) {
-                        String[] parts = line.split(":", 5);
-                        if (parts.length == 5) {
-                            try {
-                                long size = Long.parseLong(parts[3]);
-                                messageReceiver.onDocumentReceived(parts[1], parts[2], size, parts[4]);
-                            } catch (Exception e) {
-                                Log.e(TAG, "Client DOC parse error", e);
-                            }
-                        }
-                        continue;
-                    }
+    // Reads from the current host connection until it ends
+    private void readFromHost() {
+        LaneWriter writer = clientWriter;
+        try {
+            ChunkAssembler assembler = new ChunkAssembler();
+            clientAssembler = assembler;
+            String line;
+            while ((line = clientReader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+
+                if (ChunkAssembler.isChunk(line)) {
+                    line = assembler.accept(line);
+                    if (line == null) continue;
+                }
+
+                handleHostFrame(line);
+            }
+            debug("Host closed the connection");
+        } catch (IOException e) {
+            error("Connection to host lost", e);
+        } finally {
+            // Frames sent from here on stay in the repository's outbox instead of vanishing into a dead writer
+            writer.close();
+            hostConnection.close();
+            closeMulticastReceiver();
+            StripedSender striped = clientStriped;
+            clientStriped = null;
+            dataStreamToken = null;
+            if (striped != null) striped.close();
+        }
+    }
 
-                    // Regular message
-                    if (line.contains(": ")) {
-                        String[] parts = line.split(": ", 2);
-                        if (parts.length == 2) messageReceiver.onMessageReceived(parts[0], parts[1]);
+    // One complete frame from the host, whichever connection it came in on
+    private void handleHostFrame(String line) {
+        debug("Client received: " +
+                (line.length() > 120 ? line.substring(0, 120) + "..." : line));
+
+        // The host offers extra data connections for large transfers. They cost a thread each on both sides, so
+        // they open on the first large frame: ours (sendToHost), or the host's, which it signals by repeating
+        // the offer.
+        if (line.startsWith("STREAMS:")) {
+            String[] parts = line.split(":", 3);
+            if (parts.length == 3 && multiStreamEnabled) {
+                try {
+                    int count = Math.min(MAX_DATA_STREAMS, Integer.parseInt(parts[2]));
+                    if (parts[1].equals(dataStreamToken)) {
+                        openDataStreams();
+                    } else {
+                        dataStreamCount = count;
+                        dataStreamToken = parts[1];
                     }
+                } catch (NumberFormatException e) {
+                    error("Client STREAMS parse error", e);
                 }
+            }
+            return;
+        }
 
-            } catch (Exception e) {
-                Log.e(TAG, "Client connection error", e);
-                connectionStatus.postValue(false);
-                releaseLocks();
-                new android.os.Handler(context.getMainLooper()).post(() ->
-                        Toast.makeText(context, "Connection failed. Check IP and Wi-Fi.", Toast.LENGTH_LONG).show());
+        // The multicast group on offer, and the host's answers to our NACKs
+        if (line.startsWith("MCAST:") || line.startsWith("MREPAIR:")) {
+            handleMulticastFromHost(line);
+            return;
+        }
+
+        // What was said before we joined, sent once on connect
+        if (line.startsWith(HistorySnapshot.PREFIX)) {
+            importSnapshot(line);
+            return;
+        }
+
+        // Who would take over if the host left
+        if (line.startsWith("MEMBERS:")) {
+            failover.updateMembers(FailoverCoordinator.parse(line.substring(8)));
+            return;
+        }
+
+        // Acks for frames from our outbox: a batch (ACKS), or a single ACK:<frameType>:<uniqueId> from older hosts
+        if (line.startsWith("ACKS:")) {
+            for (String[] ack : AckBatcher.parse(line.substring(5)))
+                messageReceiver.onFrameAcknowledged(ack[0], ack[1]);
+            return;
+        }
+        if (line.startsWith("ACK:")) {
+            String[] parts = line.split(":", 3);
+            if (parts.length == 3) messageReceiver.onFrameAcknowledged(parts[1], parts[2]);
+            return;
+        }
+
+        if (line.startsWith("LIKE:") || line.startsWith("UNLIKE:")) {
+            ReactionSet.Change change = parseReaction(line);
+            if (change != null) messageReceiver.onReactionsReceived(java.util.Collections.singletonList(change));
+            return;
+        }
+        if (line.startsWith(ReactionBatcher.PREFIX)) {
+            List<ReactionSet.Change> changes = parseReactions(ReactionBatcher.parse(line.substring(ReactionBatcher.PREFIX.length())));
+            if (!changes.isEmpty()) messageReceiver.onReactionsReceived(changes);
+            return;
+        }
+
+        if (line.startsWith("EDIT:")) {
+            String[] parts = line.substring(5).split(":", 2);
+            if (parts.length == 2) messageReceiver.onMessageEdited(parts[0], parts[1]);
+            return;
+        }
+
+        if (line.startsWith("DELETE:")) { messageReceiver.onMessageDeleted(line.substring(7)); return; }
+
+        if (line.startsWith(CommandBatch.PREFIX)) { applyBatch(line); return; }
+
+        if (line.startsWith("ORIGREQ:")) { messageReceiver.onOriginalRequested(line.substring(8)); return; }
+
+        if (line.startsWith("ORIG:")) {
+            String[] parts = line.split(":", 3);
+            if (parts.length == 3)
+                messageReceiver.onOriginalReceived(parts[1], parts[2]);
+            return;
+        }
+
+        // Message traffic from here on; the host only forwards our channels, anything else is ignored
+        String[] routed = ChannelRouter.unwrap(line);
+        String channel = routed[0];
+        line = routed[1];
+        if (!joinedChannels.contains(channel)) return;
+
+        // Likes and edits arrive wrapped when the host knows the message's channel
+        if (isCommand(line) || line.startsWith("ORIG:") || line.startsWith(ReactionBatcher.PREFIX)
+                || line.startsWith(CommandBatch.PREFIX)) {
+            handleHostFrame(line);
+            return;
+        }
+
+        // Lazy mode: the host only announced the media, the body comes on FETCH
+        if (line.startsWith("META:")) {
+            String[] parts = line.split(":", 7);
+            if (parts.length == 7) {
+                try {
+                    messageReceiver.onMediaMetadataReceived(parts[1], HybridLogicalClock.parse(parts[2]), channel, parts[3],
+                            Long.parseLong(parts[4]), parts[5], parts[6]);
+                } catch (NumberFormatException e) {
+                    error("Client META parse error", e);
+                }
             }
-        });
+            return;
+        }
+
+        // Image preview, the full IMG frame follows
+        if (line.startsWith("IMGP:")) {
+            String[] parts = line.split(":", 5);
+            if (parts.length == 5)
+                messageReceiver.onImagePreviewReceived(parts[1], HybridLogicalClock.parse(parts[2]), channel, parts[3], parts[4]);
+            return;
+        }
+
+        // Image
+        if (line.startsWith("IMG:")) {
+            String[] parts = line.split(":", 5);
+            if (parts.length == 5)
+                messageReceiver.onImageReceived(parts[1], HybridLogicalClock.parse(parts[2]), channel, parts[3], parts[4]);
+            return;
+        }
+
+        // Document
+        if (line.startsWith("DOC:")) {
+            String[] parts = line.split(":", 6);
+            if (parts.length == 6) {
+                try {
+                    long size = Long.parseLong(parts[4]);
+                    messageReceiver.onDocumentReceived(parts[1], HybridLogicalClock.parse(parts[2]), channel, parts[3], size, parts[5]);
+                } catch (Exception e) {
+                    error("Client DOC parse error", e);
+                }
+            }
+            return;
+        }
+
+        // Regular message
+        if (line.contains(": ")) {
+            String[] parts = line.split(": ", 2);
+            if (parts.length != 2) return;
+            if (parts[1].startsWith("MSG:")) {
+                String[] msg = parts[1].split(":", 4);
+                if (msg.length == 4) lastDeliveredHlc = Math.max(lastDeliveredHlc, HybridLogicalClock.parse(msg[2]));
+            }
+            messageReceiver.onMessageReceived(channel, parts[0], parts[1]);
+        }
+    }
+
+    // Chat lines from the host's snapshot, filtered to our channels like live ones, handed over as one batch,
+    // then the reactions on them
+    private void importSnapshot(String frame) {
+        List<String> frames;
+        try {
+            frames = HistorySnapshot.decode(frame);
+        } catch (IOException e) {
+            error("Unreadable history snapshot", e);
+            return;
+        }
+        List<String[]> messages = new ArrayList<>(frames.size());
+        List<String> reactions = new ArrayList<>();
+        for (String f : frames) {
+            String[] routed = ChannelRouter.unwrap(f);
+            if (!joinedChannels.contains(routed[0])) continue;
+            if (routed[1].startsWith(ReactionBatcher.PREFIX)) {
+                reactions.addAll(ReactionBatcher.parse(routed[1].substring(ReactionBatcher.PREFIX.length())));
+                continue;
+            }
+            if (isReaction(routed[1])) {
+                reactions.add(routed[1]);
+                continue;
+            }
+            String[] parts = routed[1].split(": ", 2);
+            if (parts.length == 2) messages.add(new String[]{routed[0], parts[0], parts[1]});
+        }
+        debug("Snapshot: " + messages.size() + " of " + frames.size() + " message(s) in our channels");
+        if (!messages.isEmpty()) messageReceiver.onHistoryReceived(messages);
+        List<ReactionSet.Change> changes = parseReactions(reactions);
+        if (!changes.isEmpty()) messageReceiver.onReactionsReceived(changes);
+    }
+
+    // A frame another host published: relay it to our clients like one of our own, then take our own copy
+    // through the client-side parser, which also skips channels we are not in
+    private void onMeshFrame(String frame) {
+        String[] routed = ChannelRouter.unwrap(frame);
+        String channel = routed[0];
+        String inner = routed[1];
+        // Applied here when the batch goes out, so not through handleHostFrame
+        if (isReaction(inner)) {
+            foldReaction(inner);
+            return;
+        }
+        if (inner.startsWith(CommandBatch.PREFIX)) {
+            routeBatch(inner, null);
+        } else if (isCommand(inner)) {
+            if (inner.startsWith("ORIGREQ:")) rememberOriginalRequest(commandTarget(inner), null, true);
+            broadcastCommand(channels.channelOfMessage(commandTarget(inner)), inner);
+        } else if (inner.startsWith("ORIG:")) {
+            // Our own copy too, if we asked
+            deliverOriginal(inner, true);
+            return;
+        } else {
+            String uniqueId = contentId(inner);
+            if (uniqueId != null) channels.rememberMessage(uniqueId, channel);
+            if (inner.startsWith("IMG:") || inner.startsWith("DOC:")) broadcastMedia(channel, inner);
+            else broadcastRaw(channel, inner);
+        }
+        handleHostFrame(frame);
+    }
+
+    // uniqueId of a media frame or a "sender: MSG:..." chat line, null for anything else
+    private static String contentId(String frame) {
+        if (frame.startsWith("IMG") || frame.startsWith("DOC:") || frame.startsWith("META:")) {
+            String[] parts = frame.split(":", 3);
+            return parts.length == 3 ? parts[1] : null;
+        }
+        int msg = frame.indexOf(": MSG:");
+        if (msg < 0) return null;
+        String[] parts = frame.substring(msg + 6).split(":", 2);
+        return parts.length == 2 ? parts[0] : null;
+    }
+
+    // ---- MULTICAST (client) ----
+
+    private void handleMulticastFromHost(String line) {
+        MulticastReceiver current = multicastReceiver;
+        try {
+            if (line.startsWith("MREPAIR:")) {
+                String[] parts = line.split(":", 3);
+                if (current != null && parts.length == 3)
+                    current.onRepair(Long.parseLong(parts[1]), parts[2].isEmpty() ? null : parts[2], System.currentTimeMillis());
+                return;
+            }
+            if (line.startsWith("MCAST:FROM:")) {
+                if (current != null) current.start(Long.parseLong(line.substring(11)), System.currentTimeMillis());
+                return;
+            }
+            if (line.equals("MCAST:STOP")) {
+                fallBackToUnicast();
+                return;
+            }
+            // MCAST:<group>:<port>:<session>
+            String[] parts = line.split(":", 4);
+            if (parts.length != 4 || (current != null && current.isListening())) return;
+            MulticastReceiver receiver = new MulticastReceiver(parts[3], new MulticastReceiver.Listener() {
+                @Override
+                public void onFrame(String frame) {
+                    handleHostFrame(frame);
+                }
+
+                @Override
+                public void onNack(long fromSeq, long toSeq) {
+                    LaneWriter writer = clientWriter;
+                    if (writer != null) writer.send("NACK:" + fromSeq + ":" + toSeq, LaneWriter.Lane.CONTROL);
+                }
+
+                @Override
+                public void onSilent() {
+                    warn("Nothing heard on the multicast group, back to unicast");
+                    fallBackToUnicast();
+                }
+
+                // Chat lines among them are still in the host's history; edits and likes are not replayed
+                @Override
+                public void onSkipped(long fromSeq, long toSeq) {
+                    long since = lastDeliveredHlc;
+                    warn("Multicast frames " + fromSeq + ".." + toSeq + " lost, syncing from " + since);
+                    requestHistory(since);
+                }
+            });
+            platform.setMulticastReceive(true);
+            try {
+                receiver.open(java.net.InetAddress.getByName(parts[1]), Integer.parseInt(parts[2]),
+                        localInterface(), executors::executeIo);
+            } catch (IOException | RejectedExecutionException e) {
+                platform.setMulticastReceive(false);
+                warn("Can't join the multicast group, staying on unicast", e);
+                return;
+            }
+            multicastReceiver = receiver;
+            LaneWriter writer = clientWriter;
+            if (writer != null) writer.send("MCAST:ON", LaneWriter.Lane.CONTROL);
+        } catch (NumberFormatException e) {
+            error("Bad multicast frame: " + line, e);
+        }
+    }
+
+    // The interface behind the address we advertise (Wi-Fi on a phone), null if there is none
+    private java.net.NetworkInterface localInterface() {
+        String ip = platform.getLocalAddress();
+        if (ip == null) return null;
+        try {
+            return java.net.NetworkInterface.getByInetAddress(java.net.InetAddress.getByName(ip));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Stops listening and asks the host to unicast from here on, resending what we are still missing.
+    // The receiver stays around to put those repairs in order.
+    private void fallBackToUnicast() {
+        MulticastReceiver receiver = multicastReceiver;
+        if (receiver == null || !receiver.isListening()) return;
+        receiver.close();
+        platform.setMulticastReceive(false);
+        LaneWriter writer = clientWriter;
+        if (writer != null) writer.send("MCAST:OFF:" + receiver.getNextSeq(), LaneWriter.Lane.CONTROL);
+    }
+
+    private void closeMulticastReceiver() {
+        MulticastReceiver receiver = multicastReceiver;
+        multicastReceiver = null;
+        // After a fallback the lock was already let go
+        if (receiver != null && receiver.isListening()) {
+            receiver.close();
+            platform.setMulticastReceive(false);
+        }
+    }
+
+    // Once per connection to the host, and only if it offered them
+    private synchronized void openDataStreams() {
+        Transport.Connection control = hostConnection;
+        ChunkAssembler assembler = clientAssembler;
+        String token = dataStreamToken;
+        int count = dataStreamCount;
+        if (clientStriped != null || token == null || control == null || assembler == null || count <= 0) return;
+
+        StripedSender striped = new StripedSender(count);
+        clientStriped = striped;
+        String host = control.getRemoteAddress();
+        try {
+            for (int i = 0; i < count; i++) {
+                executors.executeIo(() -> runClientDataStream(host, token, striped, assembler));
+            }
+        } catch (RejectedExecutionException e) {
+            warn("I/O pool full, using fewer data streams");
+        }
+    }
+
+    private void runClientDataStream(String host, String token, StripedSender striped, ChunkAssembler assembler) {
+        Transport.Connection connection = null;
+        LaneWriter stream = null;
+        try {
+            connection = transport.connect(host, hostPort + 1, 5000, DATA_SOCKET_BUFFER);
+
+            stream = new LaneWriter(connection.getOutputStream(), "client-data",
+                    StripedSender.STREAM_WRITER_CHUNK_SIZE, executors.writerThreads(), connection::close);
+            stream.send("DATA:" + token, LaneWriter.Lane.CONTROL);
+            striped.addStream(stream);
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()), 64 * 1024);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!ChunkAssembler.isChunk(line)) continue;
+                String frame = assembler.accept(line);
+                if (frame != null) handleHostFrame(frame);
+            }
+        } catch (IOException e) {
+            debug("Data stream closed: " + e.getMessage());
+        } finally {
+            if (stream != null) {
+                striped.removeStream(stream);
+                stream.close();
+            }
+            if (connection != null) connection.close();
+        }
     }
 
     // ===============================================================
     // MESSAGE SENDER
     // ===============================================================
     public void sendMessage(String message) {
-        executor.execute(() -> {
+        executors.executeSend(() -> {
             try {
-                if (serverSocket != null && !serverSocket.isClosed()) {
-                    // 🔥 Important: send images/docs as raw (no "username:")
-                    if (message.startsWith("IMG:") || message.startsWith("DOC:")) {
-                        broadcastRaw(message);
-                    } else {
-                        broadcastMessage(hostUsername, message);
-                    }
-                } else if (clientWriter != null) {
-                    clientWriter.println(message);
-                    clientWriter.flush();
-                }
+                sendFrame(message);
             } catch (Exception e) {
-                Log.e(TAG, "Error sending message", e);
+                error("Error sending message", e);
             }
         });
     }
 
-    public void sendLike(String uniqueId, boolean isLiked) {
-        sendCommand((isLiked ? "LIKE:" : "UNLIKE:") + uniqueId);
+    // Queues a frame on the live connection from the calling thread, so successive calls keep their order.
+    // Returns false when there is no connection to send on (the caller keeps the frame for later).
+    public boolean sendFrame(String message) {
+        if (isHost()) {
+            // EDIT/DELETE from the outbox go out as commands, not as chat lines
+            if (isCommand(message) || message.startsWith(CommandBatch.PREFIX)) {
+                routeCommand(message);
+                return true;
+            }
+            if (message.startsWith("ORIG:")) {
+                deliverOriginal(message, false);
+                return true;
+            }
+            String[] routed = ChannelRouter.unwrap(message);
+            String channel = routed[0];
+            String frame = routed[1];
+            if (frame.startsWith("MSG:") || frame.startsWith("IMG") || frame.startsWith("DOC:"))
+                channels.rememberMessage(frame.split(":", 3)[1], channel);
+            // 🔥 Important: send images/docs as raw (no "username:")
+            if (frame.startsWith("IMG:") || frame.startsWith("DOC:")) {
+                broadcastMedia(channel, frame);
+            } else if (frame.startsWith("IMGP:")) {
+                broadcastRaw(channel, frame);
+            } else {
+                broadcastMessage(channel, hostUsername, frame);
+            }
+            // Other hosts get it in the form our clients do (chat lines carry the sender)
+            boolean chat = !frame.startsWith("IMG") && !frame.startsWith("DOC:");
+            mesh.publish(ChannelRouter.wrap(channel, chat ? hostUsername + ": " + frame : frame));
+            return true;
+        }
+        LaneWriter writer = clientWriter;
+        if (writer == null || writer.isClosed()) return false;
+        return sendToHost(writer, message);
+    }
+
+    public boolean isHost() {
+        Transport.Server current = server;
+        return current != null && !current.isClosed();
     }
 
-    public void sendEdit(String uniqueId, String newText) {
-        sendCommand("EDIT:" + uniqueId + ":" + newText);
+    public boolean isConnected() {
+        LaneWriter writer = clientWriter;
+        return isHost() || (writer != null && !writer.isClosed());
     }
 
-    public void sendDelete(String uniqueId) {
-        sendCommand("DELETE:" + uniqueId);
+    // Our own like or unlike, sent as part of the net change once the debounce window closes
+    public void sendLike(String uniqueId, boolean isLiked, String user, List<String> tags) {
+        if (isLiked) reactionDebouncer.like(uniqueId, user, tags.get(0));
+        else reactionDebouncer.unlike(uniqueId, user, tags);
+    }
+
+    // Taps taken and LIKE/UNLIKE frames they turned into
+    public ReactionDebouncer getReactionDebouncer() { return reactionDebouncer; }
+
+    private void sendReaction(String uniqueId, boolean isLiked, String user, List<String> tags) {
+        sendCommand(ReactionBatcher.frame(new ReactionSet.Change(uniqueId, isLiked, user, tags)));
+    }
+
+    // Lazy mode (client): ask the host for the body of an announced media message
+    public void fetchMedia(String uniqueId) {
+        executors.executeSend(() -> {
+            if (clientWriter != null) clientWriter.send("FETCH:" + uniqueId);
+        });
     }
 
+    // Asks whoever owns the image to send its untranscoded original
+    public void requestOriginal(String uniqueId) {
+        sendCommand("ORIGREQ:" + uniqueId);
+    }
+
+    private static boolean isCommand(String line) {
+        return line.startsWith("LIKE:") || line.startsWith("UNLIKE:")
+                || line.startsWith("EDIT:") || line.startsWith("DELETE:")
+                || line.startsWith("ORIGREQ:");
+    }
+
+    // uniqueId a command refers to
+    private static String commandTarget(String command) {
+        return command.substring(command.indexOf(':') + 1).split(":", 2)[0];
+    }
+
+    private static boolean isReaction(String line) {
+        return line.startsWith("LIKE:") || line.startsWith("UNLIKE:");
+    }
+
+    private ReactionSet.Change parseReaction(String frame) {
+        String[] parts = frame.substring(frame.indexOf(':') + 1).split(":", 3);
+        // Older peers send LIKE:<uniqueId> without who or which tag, which can't be merged
+        if (parts.length != 3 || parts[1].isEmpty()) {
+            warn("Untagged reaction ignored: " + frame);
+            return null;
+        }
+        return new ReactionSet.Change(parts[0], frame.startsWith("LIKE:"), parts[2], java.util.Arrays.asList(parts[1].split(",")));
+    }
+
+    private List<ReactionSet.Change> parseReactions(List<String> frames) {
+        List<ReactionSet.Change> changes = new ArrayList<>(frames.size());
+        for (String frame : frames) {
+            ReactionSet.Change change = isReaction(frame) ? parseReaction(frame) : null;
+            if (change != null) changes.add(change);
+        }
+        return changes;
+    }
+
+    // Host: a reaction from a client, another host or ourselves, into the batch for its message's channel
+    private void foldReaction(String frame) {
+        reactionBatcher.add(channels.channelOfMessage(commandTarget(frame)), frame);
+    }
+
+    // Host: one frame to the channel's clients for the whole batch, and one transaction for our own copy
+    private void flushReactions(String channel, List<String> frames) {
+        broadcastCommand(channel, ReactionBatcher.encode(frames));
+        List<ReactionSet.Change> changes = parseReactions(frames);
+        if (!changes.isEmpty()) messageReceiver.onReactionsReceived(changes);
+    }
+
+    // Host: each channel gets a BATCH of only the commands for its messages, or the plain command if one
+    private void routeBatch(String frame, LaneWriter origin) {
+        Map<String, List<String>> byChannel = new java.util.LinkedHashMap<>();
+        for (String command : CommandBatch.parse(frame.substring(CommandBatch.PREFIX.length()))) {
+            String channel = channels.channelOfMessage(commandTarget(command));
+            List<String> commands = byChannel.get(channel);
+            if (commands == null) {
+                commands = new ArrayList<>();
+                byChannel.put(channel, commands);
+            }
+            commands.add(command);
+        }
+        for (Map.Entry<String, List<String>> e : byChannel.entrySet())
+            broadcastCommand(e.getKey(), CommandBatch.encode(e.getValue()), origin);
+    }
+
+    private void applyBatch(String frame) {
+        CommandBatch batch = CommandBatch.of(CommandBatch.parse(frame.substring(CommandBatch.PREFIX.length())));
+        if (!batch.isEmpty()) messageReceiver.onCommandsReceived(batch.deletedIds, batch.editedTexts);
+    }
+
+    // Queued from the calling thread, like sendFrame: callers already run in per-message order (the stripes,
+    // the debouncer), and a send-pool task per command would let two for the same message swap on the wire.
+    // Nothing here blocks: LaneWriter only queues, and the host's fan-out is the same.
     private void sendCommand(String command) {
-        executor.execute(() -> {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                broadcastCommand(command);
-                processCommand(command);
-            } else if (clientWriter != null) {
-                clientWriter.println(command);
-                clientWriter.flush();
+        if (isHost()) {
+            routeCommand(command);
+            return;
+        }
+        LaneWriter writer = clientWriter;
+        if (writer != null) writer.send(command);
+    }
+
+    // Host: one of our own commands, handled the way one from a client is
+    private void routeCommand(String command) {
+        if (isReaction(command)) {
+            mesh.publish(command);
+            foldReaction(command);
+        } else if (command.startsWith(CommandBatch.PREFIX)) {
+            routeBatch(command, null);
+            mesh.publish(command);
+            applyBatch(command);
+        } else {
+            if (command.startsWith("ORIGREQ:")) rememberOriginalRequest(commandTarget(command), null, false);
+            broadcastCommand(channels.channelOfMessage(commandTarget(command)), command);
+            mesh.publish(command);
+            processCommand(command);
+        }
+    }
+
+    // Who is waiting for one image's original: clients of ours, ourselves, and/or another host's client
+    private static final class OriginalRequest {
+        final Set<LaneWriter> writers = new java.util.HashSet<>();
+        boolean self;
+        boolean mesh;
+    }
+
+    // Host: an ORIGREQ from a client (writer), from another host (fromMesh) or from us (neither)
+    private void rememberOriginalRequest(String uniqueId, LaneWriter writer, boolean fromMesh) {
+        synchronized (originalRequests) {
+            OriginalRequest request = originalRequests.get(uniqueId);
+            if (request == null) {
+                request = new OriginalRequest();
+                originalRequests.put(uniqueId, request);
             }
-        });
+            if (writer != null) request.writers.add(writer);
+            else if (fromMesh) request.mesh = true;
+            else request.self = true;
+        }
+    }
+
+    // Host: an ORIG from the device that owns the image goes to the requesters only, never the channel; one
+    // from the mesh is not published back
+    private void deliverOriginal(String frame, boolean fromMesh) {
+        String[] parts = frame.split(":", 3);
+        if (parts.length != 3) return;
+        OriginalRequest request = originalRequests.remove(parts[1]);
+        if (request == null) {
+            if (!fromMesh) warn("Original for " + parts[1] + " that nobody asked for dropped");
+            return;
+        }
+        for (LaneWriter w : request.writers) sendTo(w, frame);
+        if (request.mesh && !fromMesh) mesh.publish(frame);
+        if (request.self) messageReceiver.onOriginalReceived(parts[1], parts[2]);
     }
 
     // ===============================================================
     // BROADCAST HELPERS
     // ===============================================================
-    private void broadcastMessage(String sender, String message) {
-        synchronized (clientWriters) {
-            for (PrintWriter w : new ArrayList<>(clientWriters)) {
-                try {
-                    w.println(sender + ": " + message);
-                    w.flush();
-                } catch (Exception e) {
-                    clientWriters.remove(w);
-                }
+    // All broadcasts take the channel the frame belongs to: only its subscribers get it, wrapped as
+    // CH:<channel>:<frame> unless it is the default channel. A null channel means everyone, unwrapped.
+    // origin is the client a frame came from: it already has it, so it is skipped rather than left to drop
+    // its own echo. Null for frames from us or another host.
+    private void broadcastMessage(String channel, String sender, String message) {
+        broadcastMessage(channel, sender, message, null);
+    }
+
+    private void broadcastMessage(String channel, String sender, String message, LaneWriter origin) {
+        broadcastRaw(channel, sender + ": " + message, origin);
+    }
+
+    private void broadcastCommand(String channel, String command) {
+        broadcastRaw(channel, command, null);
+    }
+
+    private void broadcastCommand(String channel, String command, LaneWriter origin) {
+        broadcastRaw(channel, command, origin);
+    }
+
+    private void broadcastMedia(String channel, String frame) {
+        broadcastMedia(channel, frame, null);
+    }
+
+    // IMG/DOC fan-out: the full frame to everyone, or in lazy mode only a META line with the frame kept for FETCH
+    private void broadcastMedia(String channel, String frame, LaneWriter origin) {
+        if (!lazyMediaMode) {
+            broadcastRaw(channel, frame, origin);
+            return;
+        }
+        try {
+            String meta = toMetadata(frame);
+            if (meta == null) {
+                broadcastRaw(channel, frame, origin);
+                return;
             }
+            // Stored wrapped, so the FETCH answer lands in the right channel on the client
+            lazyMediaStore.put(frame.split(":", 3)[1], ChannelRouter.wrap(channel, frame));
+            broadcastCommand(channel, meta, origin);
+        } catch (IOException e) {
+            error("Lazy store failed, sending media eagerly", e);
+            broadcastRaw(channel, frame, origin);
         }
     }
 
-    private void broadcastCommand(String command) {
-        synchronized (clientWriters) {
-            for (PrintWriter w : new ArrayList<>(clientWriters)) {
-                try {
-                    w.println(command);
-                    w.flush();
-                } catch (Exception e) {
-                    clientWriters.remove(w);
-                }
+    // META:<uniqueId>:<hlc>:<image|document>:<size>:<sha256 of payload>:<caption or file name>
+    private static String toMetadata(String frame) {
+        if (frame.startsWith("IMG:")) {
+            String[] parts = frame.split(":", 5);
+            if (parts.length != 5) return null;
+            long size = parts[4].length() * 3L / 4;
+            return "META:" + parts[1] + ":" + parts[2] + ":image:" + size + ":" + LazyMediaStore.hashOf(parts[4]) + ":" + parts[3];
+        }
+        if (frame.startsWith("DOC:")) {
+            String[] parts = frame.split(":", 6);
+            if (parts.length != 6) return null;
+            return "META:" + parts[1] + ":" + parts[2] + ":document:" + parts[4] + ":" + LazyMediaStore.hashOf(parts[5]) + ":" + parts[3];
+        }
+        return null;
+    }
+
+    private void serveFetch(LaneWriter writer, String uniqueId) {
+        try {
+            String frame = lazyMediaStore.get(uniqueId);
+            if (frame == null) {
+                warn("FETCH for unknown media " + uniqueId);
+                return;
             }
+            sendTo(writer, frame);
+        } catch (IOException e) {
+            error("Failed to serve FETCH " + uniqueId, e);
         }
     }
 
-    private void broadcastRaw(String message) {
+    private void broadcastRaw(String channel, String message) {
+        broadcastRaw(channel, message, null);
+    }
+
+    private void broadcastRaw(String channel, String message, LaneWriter origin) {
+        // Serialised once here; every client queue, data stream and the datagram share these bytes
+        EncodedFrame frame = EncodedFrame.of(channel == null ? message : ChannelRouter.wrap(channel, message));
+        broadcasts.incrementAndGet();
+        broadcastBytesEncoded.addAndGet(frame.size());
         synchronized (clientWriters) {
-            for (PrintWriter w : new ArrayList<>(clientWriters)) {
-                try {
-                    w.println(message);
-                    w.flush();
-                } catch (Exception e) {
-                    clientWriters.remove(w);
-                }
+            // One datagram reaches every client listening on the group, the origin too (it drops the copy by
+            // uniqueId); only the others get it over TCP
+            MulticastSender sender = multicastSender;
+            boolean multicast = multicastEnabled && sender != null && !multicastClients.isEmpty()
+                    && MulticastSender.isEligible(frame) && sender.send(frame);
+            for (LaneWriter w : new ArrayList<>(clientWriters)) {
+                if (w == origin) continue;
+                if (channel != null && !channels.isSubscribed(w, channel)) continue;
+                if (multicast && multicastClients.contains(w)) continue;
+                if (!sendTo(w, frame)) clientWriters.remove(w);
             }
         }
     }
 
+    private boolean sendTo(LaneWriter writer, String frame) {
+        return sendTo(writer, EncodedFrame.of(frame));
+    }
+
+    // Large frames go over the peer's data streams when it has any, everything else over its LaneWriter
+    private boolean sendTo(LaneWriter writer, EncodedFrame frame) {
+        if (StripedSender.shouldStripe(frame.text())) {
+            StripedSender striped = stripedSenders.get(writer);
+            if (striped != null && striped.send(frame)) return true;
+            // No streams yet: this one goes on the chat connection, and the client opens them for the next
+            String offer = streamOffers.remove(writer);
+            if (offer != null) writer.send(offer, LaneWriter.Lane.CONTROL);
+        }
+        return writer.send(frame);
+    }
+
+    private boolean sendToHost(LaneWriter writer, String frame) {
+        if (StripedSender.shouldStripe(frame)) {
+            StripedSender striped = clientStriped;
+            if (striped != null && striped.send(frame)) return true;
+            if (striped == null) openDataStreams(); // For the next one; this one goes on the chat connection
+        }
+        return writer.send(frame);
+    }
+
     private void processCommand(String cmd) {
         try {
-            if (cmd.startsWith("LIKE:"))
-                messageReceiver.onMessageLiked(cmd.substring(5), true);
-            else if (cmd.startsWith("UNLIKE:"))
-                messageReceiver.onMessageLiked(cmd.substring(7), false);
-            else if (cmd.startsWith("EDIT:")) {
+            if (cmd.startsWith("EDIT:")) {
                 String[] parts = cmd.substring(5).split(":", 2);
                 if (parts.length == 2) messageReceiver.onMessageEdited(parts[0], parts[1]);
             } else if (cmd.startsWith("DELETE:"))
                 messageReceiver.onMessageDeleted(cmd.substring(7));
+            else if (cmd.startsWith("ORIGREQ:"))
+                messageReceiver.onOriginalRequested(cmd.substring(8));
         } catch (Exception e) {
-            Log.e(TAG, "Command parse failed: " + cmd, e);
+            error("Command parse failed: " + cmd, e);
+        }
+    }
+
+    // ===============================================================
+    // DISCOVERY (join screen)
+    // ===============================================================
+    // Listens for room beacons until stopDiscovery(); the list lands in getNearbyRooms()
+    public synchronized void startDiscovery() {
+        if (roomBrowser != null) return;
+        RoomBrowser browser;
+        try {
+            browser = new RoomBrowser(platform::onNearbyRooms); // Only binds, fine on the main thread
+        } catch (IOException e) {
+            warn("Can't listen for rooms, the IP has to be typed in", e);
+            return;
         }
+        roomBrowser = browser;
+        platform.setMulticastReceive(true); // Android filters broadcasts with the same switch
+        executors.executeIo(browser);
+    }
+
+    public synchronized void stopDiscovery() {
+        RoomBrowser browser = roomBrowser;
+        if (browser == null) return;
+        roomBrowser = null;
+        browser.close();
+        platform.setMulticastReceive(false);
+    }
+
+    // The least loaded compatible room heard, null if none (or discovery isn't running)
+    public RoomBrowser.Room getBestRoom() {
+        RoomBrowser browser = roomBrowser;
+        return browser != null ? browser.bestRoom() : null;
     }
 
     // ===============================================================
-    // STOP & IP
+    // STOP
     // ===============================================================
     public void stop() {
-        executor.execute(() -> {
+        stopping = true;
+        reactionDebouncer.flushAll(); // Best effort: queued ahead of the close below
+        executors.executeSend(() -> {
             try {
-                if (serverSocket != null) serverSocket.close();
-                if (clientSocket != null) clientSocket.close();
-                for (PrintWriter w : clientWriters) w.close();
-                clientWriters.clear();
+                if (server != null) server.close();
+                if (dataServer != null) dataServer.close();
+                for (StripedSender striped : stripedSenders.values()) striped.close();
+                stripedSenders.clear();
+                streamOffers.clear();
+                ackBatchers.clear();
+                members.clear();
+                multicastClients.clear();
+                if (multicastSender != null) multicastSender.close();
+                multicastSender = null;
+                closeMulticastReceiver();
+                if (beacon != null) beacon.close();
+                beacon = null;
+                channels.clear();
+                mesh.close();
+                dataSessions.clear();
+                if (clientStriped != null) clientStriped.close();
+                if (hostConnection != null) hostConnection.close();
+                synchronized (clientWriters) {
+                    for (LaneWriter w : clientWriters) w.close();
+                    clientWriters.clear();
+                }
+                lazyMediaStore.clear();
                 if (clientWriter != null) clientWriter.close();
                 if (clientReader != null) clientReader.close();
             } catch (Exception e) {
-                Log.e(TAG, "Error closing sockets", e);
+                error("Error closing sockets", e);
             } finally {
-                releaseLocks();
+                platform.releaseLocks();
             }
         });
     }
 
-    private String getLocalIpAddress() {
-        try {
-            WifiManager wm = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
-            if (wm != null) {
-                int ip = wm.getConnectionInfo().getIpAddress();
-                if (ip == 0) return null;
-                return Formatter.formatIpAddress(ip);
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "IP fetch error", e);
-        }
-        return null;
+    // ---- LOGGING ----
+    // Through the platform (logcat on a phone), so nothing here needs Android
+    private void debug(String message) {
+        platform.log(NetworkPlatform.DEBUG, TAG, message, null);
+    }
+
+    private void warn(String message) {
+        platform.log(NetworkPlatform.WARN, TAG, message, null);
+    }
+
+    private void warn(String message, Throwable error) {
+        platform.log(NetworkPlatform.WARN, TAG, message, error);
+    }
+
+    private void error(String message, Throwable error) {
+        platform.log(NetworkPlatform.ERROR, TAG, message, error);
     }
 }
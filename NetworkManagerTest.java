@@ -0,0 +1,204 @@
+package com.example.chitchatapp.network;
+
+import com.example.chitchatapp.db.ReactionSet;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * A whole room on a plain JVM: one NetworkManager hosting and several joining it over LoopbackTransport, with
+ * the headless platform in place of a phone.
+ */
+public class NetworkManagerTest {
+
+    private static final String HOST_IP = "10.0.0.1";
+
+    private final LoopbackTransport.Network network = new LoopbackTransport.Network();
+    private final List<NetworkManager> managers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (NetworkManager manager : managers) manager.stop();
+    }
+
+    // What one device's repository would have been told: chat lines by uniqueId, who joined, and the acks it
+    // got; as a host it offers history as its snapshot
+    static final class Device implements NetworkManager.MessageReceiver {
+        final Map<String, String> sendersById = new ConcurrentHashMap<>();
+        final Set<String> joined = ConcurrentHashMap.newKeySet();
+        final Set<String> acked = ConcurrentHashMap.newKeySet();
+        final List<String> history = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onMessageReceived(String channel, String sender, String text) {
+            if (NetworkManager.JOIN_NOTICE.equals(text)) joined.add(sender);
+            else if (ChannelRouter.DEFAULT.equals(channel) && text.startsWith("MSG:"))
+                sendersById.put(text.substring(4).split(":", 2)[0], sender);
+        }
+
+        @Override
+        public void onFrameAcknowledged(String frameType, String uniqueId) {
+            acked.add(frameType + ":" + uniqueId);
+        }
+
+        @Override public void onReactionsReceived(List<ReactionSet.Change> changes) { }
+        @Override public void onMessageEdited(String uniqueId, String newText) { }
+        @Override public void onMessageDeleted(String uniqueId) { }
+        @Override public void onCommandsReceived(List<String> deletedIds, Map<String, String> editedTexts) { }
+        @Override public void onImageReceived(String uniqueId, long hlc, String channel, String caption, String base64Data) { }
+        @Override public void onImagePreviewReceived(String uniqueId, long hlc, String channel, String caption, String base64Data) { }
+        @Override public void onMediaMetadataReceived(String uniqueId, long hlc, String channel, String type, long size, String hash, String name) { }
+        @Override public void onDocumentReceived(String uniqueId, long hlc, String channel, String fileName, long fileSize, String base64Data) { }
+        @Override public void onOriginalRequested(String uniqueId) { }
+        @Override public void onOriginalReceived(String uniqueId, String base64Data) { }
+        @Override public void onConnected() { }
+        @Override public List<String> onHistoryRequested(long afterHlc) { return Collections.emptyList(); }
+        @Override public List<String> onSnapshotRequested() { return history; }
+        @Override public void onHistoryReceived(List<String[]> messages) { }
+    }
+
+    private NetworkManager start(Device device, String ip) throws Exception {
+        File cacheDir = Files.createTempDirectory("nm-" + ip).toFile();
+        NetworkManager manager = new NetworkManager(device, new LoopbackTransport(network, ip),
+                NetworkPlatform.headless(ip, cacheDir));
+        managers.add(manager);
+        return manager;
+    }
+
+    private static void await(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("Timed out waiting for " + what);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void hostRelaysBetweenClientsAndAcksTheSender() throws Exception {
+        Device hostDevice = new Device();
+        NetworkManager host = start(hostDevice, HOST_IP);
+        host.startHost("host");
+        await("the host to listen", host::isHost);
+
+        int count = 4;
+        List<Device> devices = new ArrayList<>();
+        List<NetworkManager> clients = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Device device = new Device();
+            NetworkManager client = start(device, "10.0.0." + (i + 2));
+            client.startClient(HOST_IP, "c" + i);
+            devices.add(device);
+            clients.add(client);
+        }
+        // Clients are connected once the host has taken them on, which it announces
+        await("every client to join", () -> hostDevice.joined.size() == count);
+
+        // Every client says something; the host and every other client hear it, the sender gets its ack
+        for (int i = 0; i < count; i++) assertTrue(clients.get(i).sendFrame("MSG:c" + i + "_1:1:hello from " + i));
+        assertTrue(host.sendFrame("MSG:host_1:1:welcome"));
+
+        for (int i = 0; i < count; i++) {
+            String id = "c" + i + "_1";
+            await("the host to get " + id, () -> hostDevice.sendersById.containsKey(id));
+            assertEquals("c" + i, hostDevice.sendersById.get(id));
+            Device sender = devices.get(i);
+            await(id + " to be acked", () -> sender.acked.contains("MSG:" + id));
+            for (int j = 0; j < count; j++) {
+                if (j == i) continue; // The sender already shows it and gets no echo
+                Device other = devices.get(j);
+                await("client " + j + " to get " + id, () -> other.sendersById.containsKey(id));
+                assertEquals("c" + i, other.sendersById.get(id));
+            }
+        }
+        for (Device device : devices) {
+            await("the host's message", () -> device.sendersById.containsKey("host_1"));
+            assertEquals("host", device.sendersById.get("host_1"));
+        }
+    }
+
+    @Test
+    public void hundredsOfClientsShareOneHost() throws Exception {
+        Device hostDevice = new Device();
+        NetworkManager host = start(hostDevice, HOST_IP);
+        host.startHost("host");
+        await("the host to listen", host::isHost);
+
+        int count = 200;
+        List<Device> devices = new ArrayList<>();
+        List<NetworkManager> clients = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Device device = new Device();
+            NetworkManager client = start(device, "10.0." + (1 + (i + 1) / 250) + "." + ((i + 1) % 250 + 1));
+            client.startClient(HOST_IP, "c" + i);
+            devices.add(device);
+            clients.add(client);
+        }
+        await("every client to join", () -> hostDevice.joined.size() == count);
+
+        for (int i = 0; i < count; i++) assertTrue(clients.get(i).sendFrame("MSG:c" + i + "_1:1:hello from " + i));
+        await("the host to get every message", () -> hostDevice.sendersById.size() == count);
+        for (int i = 0; i < count; i++) {
+            String id = "c" + i + "_1";
+            assertEquals("c" + i, hostDevice.sendersById.get(id));
+            Device sender = devices.get(i);
+            await(id + " to be acked", () -> sender.acked.contains("MSG:" + id));
+        }
+        // Everyone hears everyone else, and nothing more
+        for (Device device : devices) {
+            await("every other client's message", () -> device.sendersById.size() == count - 1);
+        }
+    }
+
+    @Test
+    public void snapshotCarriesOnlyTheChannelsTheClientFollows() throws Exception {
+        Device hostDevice = new Device();
+        hostDevice.history.add("alice: MSG:alice_1:1:morning");
+        hostDevice.history.add("CH:random:bob: MSG:bob_1:2:cat pictures");
+        hostDevice.history.add("CH:ops:carol: MSG:carol_1:3:deploy at 5");
+        NetworkManager host = start(hostDevice, HOST_IP);
+        host.startHost("host");
+        await("the host to listen", host::isHost);
+
+        // A client on the wire: it follows #random besides the default channel; its HELLO ends the subscriptions
+        Transport.Connection connection = new LoopbackTransport(network, "10.0.0.2")
+                .connect(HOST_IP, NetworkManager.PORT, 1000, 0);
+        OutputStream out = connection.getOutputStream();
+        BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+        out.write("dave\nJOIN:random\nHELLO:dave1\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        assertEquals(Arrays.asList("alice: MSG:alice_1:1:morning", "CH:random:bob: MSG:bob_1:2:cat pictures"),
+                HistorySnapshot.decode(nextSnapshot(in)));
+
+        // Joining a channel later brings that channel's history, and only that
+        out.write("JOIN:ops\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        assertEquals(Collections.singletonList("CH:ops:carol: MSG:carol_1:3:deploy at 5"),
+                HistorySnapshot.decode(nextSnapshot(in)));
+        connection.close();
+    }
+
+    private static String nextSnapshot(BufferedReader in) throws Exception {
+        String line;
+        while ((line = in.readLine()) != null) if (line.startsWith(HistorySnapshot.PREFIX)) return line;
+        fail("Connection closed before a snapshot");
+        return null;
+    }
+}
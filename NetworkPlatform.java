@@ -0,0 +1,92 @@
+package com.example.chitchatapp.network;
+
+import java.io.File;
+import java.util.List;
+
+// What NetworkManager needs from the device it runs on, kept apart from the chat logic: the address other
+// devices reach us on, keeping the CPU and radio awake while connected, letting multicast in, telling the
+// user how the connection is doing, and logging. AndroidNetworkPlatform is the real one; headless() is
+// enough for a plain JVM.
+public interface NetworkPlatform {
+
+    // Log priorities, the same values as android.util.Log's
+    int DEBUG = 3;
+    int WARN = 5;
+    int ERROR = 6;
+
+    // Address to advertise while hosting, null if we are not on a network
+    String getLocalAddress();
+
+    // Scratch space for lazy media bodies
+    File getCacheDir();
+
+    void acquireLocks();
+
+    void releaseLocks();
+
+    // Whether multicast and broadcast datagrams should reach us; Android drops them unless asked (see
+    // MulticastReceiver, RoomBrowser). Calls pair up: every true is matched by one false.
+    void setMulticastReceive(boolean enabled);
+
+    // startClient() could not reach the host
+    void onConnectFailed(String hostAddress);
+
+    // "Hosting on: <ip>" once the host is up, or why it failed
+    void onHostStatus(String status);
+
+    // In a chat (hosting, or connected to a host) or not; called from network threads
+    void onConnectionChanged(boolean connected);
+
+    // Rooms heard on the LAN while discovery runs, least loaded first
+    void onNearbyRooms(List<RoomBrowser.Room> rooms);
+
+    // error may be null
+    void log(int priority, String tag, String message, Throwable error);
+
+    // A fixed address and nothing to lock: simulated peers, benchmarks, tests
+    static NetworkPlatform headless(String localAddress, File cacheDir) {
+        return new NetworkPlatform() {
+            @Override
+            public String getLocalAddress() {
+                return localAddress;
+            }
+
+            @Override
+            public File getCacheDir() {
+                return cacheDir;
+            }
+
+            @Override
+            public void acquireLocks() {
+            }
+
+            @Override
+            public void releaseLocks() {
+            }
+
+            @Override
+            public void setMulticastReceive(boolean enabled) {
+            }
+
+            @Override
+            public void onConnectFailed(String hostAddress) {
+            }
+
+            @Override
+            public void onHostStatus(String status) {
+            }
+
+            @Override
+            public void onConnectionChanged(boolean connected) {
+            }
+
+            @Override
+            public void onNearbyRooms(List<RoomBrowser.Room> rooms) {
+            }
+
+            @Override
+            public void log(int priority, String tag, String message, Throwable error) {
+            }
+        };
+    }
+}
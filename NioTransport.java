@@ -0,0 +1,154 @@
+package com.example.chitchatapp.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+// The same blocking thread-per-connection model as TcpTransport, but over NIO channels: reads and writes go
+// straight to SocketChannel.read/write instead of through the socket stream layer. Interchangeable with
+// TcpTransport, so the two can be compared under the same load.
+public class NioTransport implements Transport {
+
+    @Override
+    public Server listen(int port, int bufferSize) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        try {
+            server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            if (bufferSize > 0) server.setOption(StandardSocketOptions.SO_RCVBUF, bufferSize);
+            server.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        return new NioServer(server);
+    }
+
+    @Override
+    public Connection connect(String address, int port, int timeoutMs, int bufferSize) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            if (bufferSize > 0) {
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, bufferSize);
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, bufferSize);
+            }
+            // The socket adaptor is the only blocking connect that takes a timeout
+            channel.socket().connect(new InetSocketAddress(address, port), timeoutMs);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            return new NioConnection(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static final class NioServer implements Server {
+        private final ServerSocketChannel server;
+
+        NioServer(ServerSocketChannel server) {
+            this.server = server;
+        }
+
+        @Override
+        public Connection accept() throws IOException {
+            SocketChannel channel = server.accept();
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            return new NioConnection(channel);
+        }
+
+        @Override
+        public int getLocalPort() {
+            return server.socket().getLocalPort();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return !server.isOpen();
+        }
+
+        @Override
+        public void close() {
+            try {
+                server.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static final class NioConnection implements Connection {
+        private final SocketChannel channel;
+        private final InputStream in;
+        private final OutputStream out;
+
+        NioConnection(SocketChannel channel) {
+            this.channel = channel;
+            // Not Channels.newInputStream/newOutputStream: those share one lock, so a blocked read would stall writes
+            this.in = new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    byte[] one = new byte[1];
+                    return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (len == 0) return 0;
+                    int n;
+                    do {
+                        n = channel.read(ByteBuffer.wrap(b, off, len));
+                    } while (n == 0);
+                    return n;
+                }
+
+                @Override
+                public void close() {
+                    NioConnection.this.close();
+                }
+            };
+            this.out = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                    while (buffer.hasRemaining()) channel.write(buffer);
+                }
+
+                @Override
+                public void close() {
+                    NioConnection.this.close();
+                }
+            };
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return in;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return out;
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            return channel.socket().getInetAddress().getHostAddress();
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
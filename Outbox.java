@@ -0,0 +1,223 @@
+package com.example.chitchatapp.repository;
+
+import android.util.Log;
+
+import com.example.chitchatapp.db.OutboxDao;
+import com.example.chitchatapp.db.OutboxEntry;
+import com.example.chitchatapp.network.CommandBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Our outgoing frames until the host has them. A frame is persisted before it is written; a client marks
+// it sent once written, deletes it on the host's ACK and makes it pending again after a reconnect. Edits
+// and deletes of a message that is still waiting are folded into its rows rather than queued behind them.
+// Not thread-safe: ChatRepository drives it from its single outbox thread.
+class Outbox {
+
+    private static final String TAG = "Outbox";
+
+    static final int BATCH_SIZE = 20;
+    static final int INLINE_LIMIT = 64 * 1024; // Bigger frames go to a file next to the row
+
+    // The connection, as far as the outbox needs it
+    interface Link {
+        boolean isConnected();
+        boolean isHost();
+        // false when there is no connection to write to; the frame stays pending
+        boolean sendFrame(String frame);
+        // For a frame that could not be persisted: one try, no retry
+        void sendOnce(String frame);
+    }
+
+    // What happened to our messages, for their delivery state
+    interface Events {
+        // Our message's MSG frame with new text, or null if the message is gone
+        String messageFrame(String uniqueId, String newText);
+        // Its MSG/IMG/DOC frame was written to the host; the ACK is still to come
+        void onWritten(String uniqueId);
+        // We are the host and relayed it, so there is no one left to acknowledge it
+        void onRelayed(String uniqueId);
+        void onFailed(String uniqueId, Throwable cause);
+    }
+
+    private final OutboxDao dao;
+    private final java.io.File frameDir;
+    private final Link link;
+    private final Events events;
+
+    Outbox(OutboxDao dao, java.io.File frameDir, Link link, Events events) {
+        this.dao = dao;
+        this.frameDir = frameDir;
+        this.link = link;
+        this.events = events;
+    }
+
+    // The preview is a courtesy and EDIT/DELETE come later; the message counts as delivered once its
+    // MSG/IMG/DOC frame is acked
+    static boolean isPrimaryFrame(String frameType) {
+        return "MSG".equals(frameType) || "IMG".equals(frameType) || "DOC".equals(frameType);
+    }
+
+    void enqueue(String uniqueId, String frameType, String frame) {
+        try {
+            String framePath = null;
+            String inlineFrame = frame;
+            if (frame.length() > INLINE_LIMIT) {
+                framePath = writeFrameFile(uniqueId + "_" + frameType, frame).getAbsolutePath();
+                inlineFrame = null;
+            }
+            dao.insert(new OutboxEntry(uniqueId, frameType, inlineFrame, framePath, System.currentTimeMillis()));
+        } catch (java.io.IOException e) {
+            Log.e(TAG, "Could not persist " + frameType + " for " + uniqueId + ", sending without retry", e);
+            link.sendOnce(frame);
+            if (isPrimaryFrame(frameType)) events.onFailed(uniqueId, e);
+            return;
+        }
+        drain();
+    }
+
+    // Writes pending frames oldest first, a batch at a time, until the outbox is empty or the connection goes
+    // away; whatever is left waits for the next reconnect
+    void drain() {
+        if (!link.isConnected()) return;
+        // The host is the hub: once it has relayed a frame there is no one left to acknowledge it
+        boolean host = link.isHost();
+
+        while (true) {
+            List<OutboxEntry> batch = dao.getPending(BATCH_SIZE);
+            if (batch.isEmpty()) return;
+            for (OutboxEntry entry : batch) {
+                String frame = readFrame(entry);
+                if (frame == null) {
+                    Log.e(TAG, "Outbox frame missing for " + entry.getUniqueId() + ", dropping it");
+                    discard(entry);
+                    if (isPrimaryFrame(entry.getFrameType()))
+                        events.onFailed(entry.getUniqueId(), new java.io.IOException("Outbox frame missing"));
+                    continue;
+                }
+                if (!link.sendFrame(frame)) return;
+
+                if (host) {
+                    discard(entry);
+                    if (isPrimaryFrame(entry.getFrameType())) events.onRelayed(entry.getUniqueId());
+                } else {
+                    dao.markSent(entry.getId());
+                    if (isPrimaryFrame(entry.getFrameType())) events.onWritten(entry.getUniqueId());
+                }
+            }
+            Log.d(TAG, "Outbox: flushed " + batch.size() + " frame(s)");
+        }
+    }
+
+    // After a reconnect nothing written to the old connection can be trusted to have arrived; returns how
+    // many frames will go out again on the next drain()
+    int resetUnacknowledged() {
+        return dao.resetUnacknowledged();
+    }
+
+    // The host has the frame; false if it was not (or no longer) ours to clear
+    boolean acknowledge(String frameType, String uniqueId) {
+        OutboxEntry entry = dao.find(uniqueId, frameType);
+        if (entry == null) return false;
+        discard(entry);
+        return true;
+    }
+
+    // Our edit, behind the message's own frames. A MSG still waiting is rewritten in place and, if nothing was
+    // written yet, that is all; otherwise an EDIT is queued behind it (or a waiting EDIT rewritten), so it
+    // survives being offline and never overtakes the MSG.
+    void edit(String uniqueId, String newText) {
+        String frame = foldEdit(uniqueId, newText);
+        if (frame != null) enqueue(uniqueId, "EDIT", frame);
+    }
+
+    // Our delete. Whatever of the message is still in the outbox is dropped; a DELETE is only queued if some
+    // of it may have reached the host already.
+    void delete(String uniqueId) {
+        String frame = foldDelete(uniqueId);
+        if (frame != null) enqueue(uniqueId, "DELETE", frame);
+    }
+
+    // The same for a multi-select: what still has to go out goes as one BATCH, acked by its first command's
+    // uniqueId, or as the plain command if only one is left
+    void batch(List<String> deletedIds, Map<String, String> editedTexts) {
+        List<String> commands = new ArrayList<>();
+        for (Map.Entry<String, String> e : editedTexts.entrySet()) {
+            String frame = foldEdit(e.getKey(), e.getValue());
+            if (frame != null) commands.add(frame);
+        }
+        for (String uniqueId : deletedIds) {
+            String frame = foldDelete(uniqueId);
+            if (frame != null) commands.add(frame);
+        }
+        if (commands.isEmpty()) return;
+        String first = commands.get(0);
+        String frameType = commands.size() == 1 ? first.substring(0, first.indexOf(':')) : "BATCH";
+        enqueue(CommandBatch.idOf(first), frameType, CommandBatch.encode(commands));
+    }
+
+    // Rewrites the message's own MSG row for an edit. Returns the EDIT still to queue, or null if nothing was
+    // written yet (the rewritten MSG says it all) or a waiting EDIT was rewritten instead.
+    private String foldEdit(String uniqueId, String newText) {
+        OutboxEntry msg = dao.find(uniqueId, "MSG");
+        if (msg != null) {
+            String rewritten = events.messageFrame(uniqueId, newText);
+            if (rewritten != null) {
+                if (msg.getFramePath() != null) new java.io.File(msg.getFramePath()).delete();
+                dao.rewrite(msg.getId(), rewritten);
+                if (msg.getState() == OutboxEntry.STATE_PENDING) return null;
+            }
+        }
+        String frame = CommandBatch.edit(uniqueId, newText);
+        OutboxEntry waiting = dao.findPending(uniqueId, "EDIT");
+        if (waiting != null) {
+            dao.rewrite(waiting.getId(), frame);
+            return null;
+        }
+        return frame;
+    }
+
+    // Drops the message's rows for a delete. Returns the DELETE still to queue, or null if none of it had
+    // been written.
+    private String foldDelete(String uniqueId) {
+        List<OutboxEntry> entries = dao.getFor(uniqueId);
+        boolean written = false;
+        for (OutboxEntry entry : entries) {
+            written |= entry.getState() == OutboxEntry.STATE_SENT;
+            discard(entry);
+        }
+        if (!entries.isEmpty() && !written) {
+            events.onFailed(uniqueId, new java.util.concurrent.CancellationException("Deleted before it was sent"));
+            return null;
+        }
+        return CommandBatch.delete(uniqueId);
+    }
+
+    private void discard(OutboxEntry entry) {
+        dao.delete(entry.getId());
+        if (entry.getFramePath() != null) new java.io.File(entry.getFramePath()).delete();
+    }
+
+    private java.io.File writeFrameFile(String name, String frame) throws java.io.IOException {
+        if (!frameDir.exists()) frameDir.mkdirs();
+        java.io.File file = new java.io.File(frameDir, name.replaceAll("[^A-Za-z0-9_.-]", "_") + ".frame");
+        try (java.io.Writer out = new java.io.OutputStreamWriter(new java.io.FileOutputStream(file),
+                java.nio.charset.StandardCharsets.UTF_8)) {
+            out.write(frame);
+        }
+        return file;
+    }
+
+    private String readFrame(OutboxEntry entry) {
+        if (entry.getFramePath() == null) return entry.getFrame();
+        java.io.File file = new java.io.File(entry.getFramePath());
+        try (java.io.BufferedReader in = new java.io.BufferedReader(new java.io.InputStreamReader(
+                new java.io.FileInputStream(file), java.nio.charset.StandardCharsets.UTF_8), 64 * 1024)) {
+            return in.readLine();
+        } catch (java.io.IOException e) {
+            return null;
+        }
+    }
+}
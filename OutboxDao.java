@@ -0,0 +1,42 @@
+package com.example.chitchatapp.db;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface OutboxDao {
+
+    @Insert
+    long insert(OutboxEntry entry);
+
+    // Oldest first: the outbox is flushed in the order messages were written
+    @Query("SELECT * FROM outbox WHERE state = 0 ORDER BY id ASC LIMIT :limit")
+    List<OutboxEntry> getPending(int limit);
+
+    @Query("UPDATE outbox SET state = 1, attempts = attempts + 1 WHERE id = :id")
+    void markSent(long id);
+
+    // After a reconnect nothing written to the old connection can be trusted to have arrived
+    @Query("UPDATE outbox SET state = 0 WHERE state = 1")
+    int resetUnacknowledged();
+
+    // Oldest first, so an ACK clears the copy that went out first
+    @Query("SELECT * FROM outbox WHERE uniqueId = :uniqueId AND frameType = :frameType ORDER BY id ASC LIMIT 1")
+    OutboxEntry find(String uniqueId, String frameType);
+
+    @Query("SELECT * FROM outbox WHERE uniqueId = :uniqueId AND frameType = :frameType AND state = 0 ORDER BY id ASC LIMIT 1")
+    OutboxEntry findPending(String uniqueId, String frameType);
+
+    @Query("SELECT * FROM outbox WHERE uniqueId = :uniqueId ORDER BY id ASC")
+    List<OutboxEntry> getFor(String uniqueId);
+
+    // An edit made while the frame was still waiting; always inline, edited text is small
+    @Query("UPDATE outbox SET frame = :frame, framePath = NULL WHERE id = :id")
+    void rewrite(long id, String frame);
+
+    @Query("DELETE FROM outbox WHERE id = :id")
+    void delete(long id);
+}
@@ -0,0 +1,77 @@
+package com.example.chitchatapp.db;
+
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+// One outgoing frame that has not been acknowledged by the host yet. Rows are flushed in id order and
+// deleted on ACK, so anything still here after a disconnect or a restart is sent again.
+@Entity(tableName = "outbox", indices = {@Index(value = {"uniqueId", "frameType"})})
+public class OutboxEntry {
+
+    public static final int STATE_PENDING = 0; // Not written to a connection yet (or the connection dropped)
+    public static final int STATE_SENT = 1;    // Queued on the connection to the host, waiting for ACK
+
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+
+    private String uniqueId;
+    private String frameType;   // MSG, IMGP, IMG, DOC, EDIT, DELETE or BATCH, echoed back in the ACK
+    private String frame;       // Small frames inline
+    private String framePath;   // Media frames live in a file; SQLite rows that big can't be read back
+    private int state = STATE_PENDING;
+    private int attempts = 0;
+    private long createdAt;
+
+    public OutboxEntry(String uniqueId, String frameType, String frame, String framePath, long createdAt) {
+        this.uniqueId = uniqueId;
+        this.frameType = frameType;
+        this.frame = frame;
+        this.framePath = framePath;
+        this.createdAt = createdAt;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getUniqueId() {
+        return uniqueId;
+    }
+
+    public String getFrameType() {
+        return frameType;
+    }
+
+    public String getFrame() {
+        return frame;
+    }
+
+    public String getFramePath() {
+        return framePath;
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    public void setState(int state) {
+        this.state = state;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.chitchatapp.repository;
+
+import com.example.chitchatapp.db.OutboxDao;
+import com.example.chitchatapp.db.OutboxEntry;
+import com.example.chitchatapp.network.CommandBatch;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Our outgoing frames through going offline, edits and deletes of messages still waiting, reconnects and the
+ * host's ACKs, with a list standing in for the outbox table and a flag for the connection.
+ */
+public class OutboxTest {
+
+    // The outbox table: rows in id order, with the queries OutboxDao runs on it
+    private static final class TableDao implements OutboxDao {
+        final List<OutboxEntry> rows = new ArrayList<>();
+        private long nextId = 1;
+
+        @Override
+        public long insert(OutboxEntry entry) {
+            entry.setId(nextId++);
+            rows.add(entry);
+            return entry.getId();
+        }
+
+        @Override
+        public List<OutboxEntry> getPending(int limit) {
+            List<OutboxEntry> pending = new ArrayList<>();
+            for (OutboxEntry e : rows) if (e.getState() == OutboxEntry.STATE_PENDING && pending.size() < limit) pending.add(e);
+            return pending;
+        }
+
+        @Override
+        public void markSent(long id) {
+            OutboxEntry e = byId(id);
+            e.setState(OutboxEntry.STATE_SENT);
+            e.setAttempts(e.getAttempts() + 1);
+        }
+
+        @Override
+        public int resetUnacknowledged() {
+            int reset = 0;
+            for (OutboxEntry e : rows) {
+                if (e.getState() != OutboxEntry.STATE_SENT) continue;
+                e.setState(OutboxEntry.STATE_PENDING);
+                reset++;
+            }
+            return reset;
+        }
+
+        @Override
+        public OutboxEntry find(String uniqueId, String frameType) {
+            for (OutboxEntry e : rows) if (e.getUniqueId().equals(uniqueId) && e.getFrameType().equals(frameType)) return e;
+            return null;
+        }
+
+        @Override
+        public OutboxEntry findPending(String uniqueId, String frameType) {
+            OutboxEntry e = find(uniqueId, frameType);
+            return e != null && e.getState() == OutboxEntry.STATE_PENDING ? e : null;
+        }
+
+        @Override
+        public List<OutboxEntry> getFor(String uniqueId) {
+            List<OutboxEntry> found = new ArrayList<>();
+            for (OutboxEntry e : rows) if (e.getUniqueId().equals(uniqueId)) found.add(e);
+            return found;
+        }
+
+        @Override
+        public void rewrite(long id, String frame) {
+            OutboxEntry old = byId(id);
+            OutboxEntry row = new OutboxEntry(old.getUniqueId(), old.getFrameType(), frame, null, old.getCreatedAt());
+            row.setId(id);
+            row.setState(old.getState());
+            row.setAttempts(old.getAttempts());
+            rows.set(rows.indexOf(old), row);
+        }
+
+        @Override
+        public void delete(long id) {
+            rows.remove(byId(id));
+        }
+
+        private OutboxEntry byId(long id) {
+            for (OutboxEntry e : rows) if (e.getId() == id) return e;
+            throw new AssertionError("No outbox row " + id);
+        }
+    }
+
+    private final TableDao dao = new TableDao();
+    private boolean connected = true;
+    private boolean host = false;
+    private final List<String> wire = new ArrayList<>();
+    private final Map<String, Integer> written = new HashMap<>();
+    private final List<String> relayed = new ArrayList<>();
+    private final Map<String, Throwable> failed = new HashMap<>();
+
+    private final Outbox outbox = new Outbox(dao, tempDir(), new Outbox.Link() {
+        @Override public boolean isConnected() { return connected; }
+        @Override public boolean isHost() { return host; }
+
+        @Override
+        public boolean sendFrame(String frame) {
+            if (!connected) return false;
+            wire.add(frame);
+            return true;
+        }
+
+        @Override public void sendOnce(String frame) { sendFrame(frame); }
+    }, new Outbox.Events() {
+        @Override
+        public String messageFrame(String uniqueId, String newText) {
+            return "MSG:" + uniqueId + ":1:" + newText;
+        }
+
+        @Override public void onWritten(String uniqueId) { written.merge(uniqueId, 1, Integer::sum); }
+        @Override public void onRelayed(String uniqueId) { relayed.add(uniqueId); }
+        @Override public void onFailed(String uniqueId, Throwable cause) { failed.put(uniqueId, cause); }
+    });
+
+    private static File tempDir() {
+        try {
+            return Files.createTempDirectory("outbox").toFile();
+        } catch (java.io.IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private void send(String uniqueId, String text) {
+        outbox.enqueue(uniqueId, "MSG", "MSG:" + uniqueId + ":1:" + text);
+    }
+
+    // What ChatRepository.onConnected does with the outbox
+    private void reconnect() {
+        connected = true;
+        outbox.resetUnacknowledged();
+        outbox.drain();
+    }
+
+    @Test
+    public void framesWaitOfflineAndGoOutInOrderOnConnect() {
+        connected = false;
+        send("a_1", "one");
+        send("a_2", "two");
+        assertTrue(wire.isEmpty());
+
+        reconnect();
+        assertEquals(Arrays.asList("MSG:a_1:1:one", "MSG:a_2:1:two"), wire);
+        assertEquals(Integer.valueOf(1), written.get("a_1"));
+        assertEquals(2, dao.rows.size()); // Kept until the host acks them
+    }
+
+    @Test
+    public void offlineEditRewritesTheWaitingMessage() {
+        connected = false;
+        send("a_1", "helo");
+        outbox.edit("a_1", "hello");
+        outbox.edit("a_1", "hello!");
+        assertEquals(1, dao.rows.size()); // No EDIT: the MSG has not gone anywhere yet
+
+        reconnect();
+        assertEquals(Collections.singletonList("MSG:a_1:1:hello!"), wire);
+    }
+
+    @Test
+    public void editAfterSendQueuesOneEditBehindTheMessage() {
+        send("a_1", "helo");
+        connected = false;
+        outbox.edit("a_1", "hello");
+        outbox.edit("a_1", "hello!"); // Rewrites the EDIT still waiting instead of queuing another
+
+        reconnect();
+        // The unacked MSG goes again, already with the new text, and the EDIT follows it
+        assertEquals(Arrays.asList("MSG:a_1:1:helo", "MSG:a_1:1:hello!", CommandBatch.edit("a_1", "hello!")), wire);
+    }
+
+    @Test
+    public void deleteBeforeSendDropsTheMessageWithoutADelete() {
+        connected = false;
+        send("a_1", "oops");
+        outbox.delete("a_1");
+        assertTrue(dao.rows.isEmpty());
+        assertTrue(failed.get("a_1") instanceof CancellationException);
+
+        reconnect();
+        assertTrue(wire.isEmpty());
+    }
+
+    @Test
+    public void deleteAfterSendIsSentAsADelete() {
+        send("a_1", "oops");
+        outbox.delete("a_1");
+        assertEquals(Arrays.asList("MSG:a_1:1:oops", CommandBatch.delete("a_1")), wire);
+        assertFalse(failed.containsKey("a_1"));
+        assertNull(dao.find("a_1", "MSG")); // The DELETE supersedes it
+        assertNotNull(dao.find("a_1", "DELETE"));
+    }
+
+    @Test
+    public void reconnectResendsOnlyWhatWasNotAcked() {
+        send("a_1", "one");
+        send("a_2", "two");
+        assertTrue(outbox.acknowledge("MSG", "a_1"));
+        assertFalse(outbox.acknowledge("MSG", "a_1")); // A duplicate ack finds nothing left
+
+        connected = false;
+        wire.clear();
+        reconnect();
+        assertEquals(Collections.singletonList("MSG:a_2:1:two"), wire);
+        assertEquals(Integer.valueOf(2), written.get("a_2")); // Its round trip starts over
+
+        assertTrue(outbox.acknowledge("MSG", "a_2"));
+        assertTrue(dao.rows.isEmpty());
+        reconnect();
+        assertEquals(1, wire.size());
+    }
+
+    @Test
+    public void theHostRelaysWithoutWaitingForAnAck() {
+        host = true;
+        send("h_1", "welcome");
+        assertEquals(Collections.singletonList("h_1"), relayed);
+        assertTrue(written.isEmpty());
+        assertTrue(dao.rows.isEmpty());
+    }
+
+    @Test
+    public void batchFoldsIntoWaitingRowsAndSendsTheRest() {
+        send("a_1", "one");
+        send("a_2", "two");
+        connected = false;
+        send("a_3", "three");
+
+        Map<String, String> edits = new LinkedHashMap<>();
+        edits.put("a_1", "one!");
+        outbox.batch(Arrays.asList("a_2", "a_3"), edits);
+        // a_3 never left: dropped here with no DELETE; what the host has gets one BATCH, acked by its first command
+        assertTrue(failed.get("a_3") instanceof CancellationException);
+        assertTrue(dao.getFor("a_3").isEmpty());
+        String batch = CommandBatch.encode(Arrays.asList(CommandBatch.edit("a_1", "one!"), CommandBatch.delete("a_2")));
+        assertNotNull(dao.find("a_1", "BATCH"));
+
+        wire.clear();
+        reconnect();
+        assertEquals(Arrays.asList("MSG:a_1:1:one!", batch), wire);
+        assertTrue(outbox.acknowledge("BATCH", CommandBatch.idOf(batch)));
+    }
+
+    @Test
+    public void aBatchWithOneCommandLeftIsThePlainCommand() {
+        send("a_1", "one");
+        connected = false;
+        send("a_2", "two");
+        outbox.batch(Arrays.asList("a_1", "a_2"), Collections.emptyMap());
+        assertNotNull(dao.find("a_1", "DELETE"));
+        assertNull(dao.find("a_1", "BATCH"));
+    }
+
+    @Test
+    public void largeFramesLiveInAFileUntilAcked() {
+        connected = false;
+        StringBuilder data = new StringBuilder("IMG:a_1:1::");
+        while (data.length() <= Outbox.INLINE_LIMIT) data.append("QUJD");
+        outbox.enqueue("a_1", "IMG", data.toString());
+        OutboxEntry row = dao.find("a_1", "IMG");
+        assertNull(row.getFrame());
+        File file = new File(row.getFramePath());
+        assertTrue(file.exists());
+
+        reconnect();
+        assertEquals(Collections.singletonList(data.toString()), wire);
+        outbox.acknowledge("IMG", "a_1");
+        assertFalse(file.exists());
+    }
+}
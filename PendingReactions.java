@@ -0,0 +1,38 @@
+package com.example.chitchatapp.db;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+// Reactions for a message that hasn't reached this device yet (a LIKE overtook its MSG, or the message is
+// still on its way in a snapshot), kept as an encoded ReactionSet and merged into the message when it is
+// stored (see MessageDao.adoptPendingReactions).
+@Entity(tableName = "pending_reactions")
+public class PendingReactions {
+
+    @PrimaryKey
+    @NonNull
+    private String uniqueId;
+
+    private String reactions;
+    private long parkedAt;
+
+    public PendingReactions(@NonNull String uniqueId, String reactions, long parkedAt) {
+        this.uniqueId = uniqueId;
+        this.reactions = reactions;
+        this.parkedAt = parkedAt;
+    }
+
+    @NonNull
+    public String getUniqueId() {
+        return uniqueId;
+    }
+
+    public String getReactions() {
+        return reactions;
+    }
+
+    public long getParkedAt() {
+        return parkedAt;
+    }
+}
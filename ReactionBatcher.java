@@ -0,0 +1,77 @@
+package com.example.chitchatapp.network;
+
+import com.example.chitchatapp.db.ReactionSet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Host side of reaction fan-out: LIKE/UNLIKE frames for the same channel that arrive within FLUSH_DELAY_MS
+// of each other go to the clients as one frame,
+//   REACTS:<frame>\t<frame>...
+// which a peer applies in one database transaction. A lone reaction still goes out as itself. Same shape
+// as AckBatcher, one batch per channel (null for messages whose channel the host doesn't know).
+public class ReactionBatcher {
+
+    public static final long FLUSH_DELAY_MS = 50;
+    public static final int MAX_BATCH = 64;
+    public static final String PREFIX = "REACTS:";
+    private static final String SEPARATOR = "\t"; // Can't appear in a frame
+
+    public interface Sink {
+        void flush(String channel, List<String> frames);
+    }
+
+    private final Sink sink;
+    private final AckBatcher.Scheduler scheduler;
+    private final Map<String, List<String>> pending = new HashMap<>();
+
+    public ReactionBatcher(Sink sink, AckBatcher.Scheduler scheduler) {
+        this.sink = sink;
+        this.scheduler = scheduler;
+    }
+
+    public void add(String channel, String frame) {
+        List<String> full = null;
+        boolean schedule = false;
+        synchronized (pending) {
+            List<String> batch = pending.get(channel);
+            if (batch == null) {
+                batch = new ArrayList<>();
+                pending.put(channel, batch);
+                schedule = true;
+            }
+            batch.add(frame);
+            if (batch.size() >= MAX_BATCH) full = pending.remove(channel);
+        }
+        if (full != null) sink.flush(channel, full);
+        else if (schedule) scheduler.schedule(() -> flush(channel), FLUSH_DELAY_MS);
+    }
+
+    public void flush(String channel) {
+        List<String> batch;
+        synchronized (pending) {
+            batch = pending.remove(channel);
+        }
+        if (batch != null && !batch.isEmpty()) sink.flush(channel, batch);
+    }
+
+    // LIKE:<uniqueId>:<tag>:<user> or UNLIKE:<uniqueId>:<tag>[,<tag>...]:<user>; the user goes last since
+    // names may contain ':'
+    public static String frame(ReactionSet.Change change) {
+        return (change.added ? "LIKE:" : "UNLIKE:") + change.uniqueId + ":" + String.join(",", change.tags) + ":" + change.user;
+    }
+
+    // One frame for the batch; a single reaction stays a plain LIKE/UNLIKE
+    public static String encode(List<String> frames) {
+        return frames.size() == 1 ? frames.get(0) : PREFIX + String.join(SEPARATOR, frames);
+    }
+
+    // REACTS payload -> the frames in it
+    public static List<String> parse(String payload) {
+        List<String> frames = new ArrayList<>();
+        for (String frame : payload.split(SEPARATOR)) if (!frame.isEmpty()) frames.add(frame);
+        return frames;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.chitchatapp.network;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+// Holds this device's likes and unlikes back for WINDOW_MS per message and then sends only the net change,
+// so a run of double-taps costs at most one UNLIKE and one LIKE instead of a frame per tap. With likes as
+// an observed-remove set (see ReactionSet) that is exact: a like undone inside the window was never seen by
+// anyone, so its tag is just dropped, and the UNLIKE only has to carry tags that went out before the window.
+// The window opens with the first tap and isn't extended by later ones, so a change is never held longer.
+public class ReactionDebouncer {
+
+    public static final long WINDOW_MS = 300;
+
+    public interface Sink {
+        void send(String uniqueId, boolean isLiked, String user, List<String> tags);
+    }
+
+    private static final class Pending {
+        final String uniqueId;
+        final String user;
+        final LinkedHashSet<String> added = new LinkedHashSet<>();
+        final LinkedHashSet<String> removed = new LinkedHashSet<>();
+
+        Pending(String uniqueId, String user) {
+            this.uniqueId = uniqueId;
+            this.user = user;
+        }
+    }
+
+    private final Sink sink;
+    private final AckBatcher.Scheduler scheduler;
+    private final Map<String, Pending> pending = new HashMap<>();
+    private long changes = 0;
+    private long framesSent = 0;
+
+    public ReactionDebouncer(Sink sink, AckBatcher.Scheduler scheduler) {
+        this.sink = sink;
+        this.scheduler = scheduler;
+    }
+
+    public void like(String uniqueId, String user, String tag) {
+        String key = uniqueId + "\t" + user;
+        boolean opened;
+        synchronized (this) {
+            opened = !pending.containsKey(key);
+            open(key, uniqueId, user).added.add(tag);
+        }
+        if (opened) scheduler.schedule(() -> flush(key), WINDOW_MS);
+    }
+
+    public void unlike(String uniqueId, String user, List<String> tags) {
+        String key = uniqueId + "\t" + user;
+        boolean opened;
+        synchronized (this) {
+            opened = !pending.containsKey(key);
+            Pending p = open(key, uniqueId, user);
+            for (String tag : tags) {
+                if (!p.added.remove(tag)) p.removed.add(tag);
+            }
+        }
+        if (opened) scheduler.schedule(() -> flush(key), WINDOW_MS);
+    }
+
+    // Sends whatever is held for every message, e.g. before the connection goes away
+    public void flushAll() {
+        List<String> keys;
+        synchronized (this) {
+            keys = new ArrayList<>(pending.keySet());
+        }
+        for (String key : keys) flush(key);
+    }
+
+    // Taps taken, and frames they turned into
+    public synchronized long getChanges() {
+        return changes;
+    }
+
+    public synchronized long getFramesSent() {
+        return framesSent;
+    }
+
+    private Pending open(String key, String uniqueId, String user) {
+        changes++;
+        Pending p = pending.get(key);
+        if (p == null) {
+            p = new Pending(uniqueId, user);
+            pending.put(key, p);
+        }
+        return p;
+    }
+
+    private void flush(String key) {
+        Pending p;
+        List<String> removed;
+        List<String> added;
+        synchronized (this) {
+            p = pending.remove(key);
+            if (p == null) return;
+            removed = new ArrayList<>(p.removed);
+            added = new ArrayList<>(p.added);
+            framesSent += (removed.isEmpty() ? 0 : 1) + added.size();
+        }
+        if (!removed.isEmpty()) sink.send(p.uniqueId, false, p.user, removed);
+        for (String tag : added) sink.send(p.uniqueId, true, p.user, java.util.Collections.singletonList(tag));
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.chitchatapp.network;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Like storms: the sender only sends the net change per message, and the host folds what is left into one
+ * frame per channel. Scheduled flushes are run by hand.
+ */
+public class ReactionDebouncerTest {
+
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final List<String> sent = new ArrayList<>();
+
+    private final ReactionDebouncer debouncer = new ReactionDebouncer(
+            (uniqueId, isLiked, user, tags) -> sent.add((isLiked ? "LIKE:" : "UNLIKE:") + uniqueId + ":" + String.join(",", tags) + ":" + user),
+            (task, delayMs) -> scheduled.add(task));
+
+    private void runScheduled() {
+        List<Runnable> due = new ArrayList<>(scheduled);
+        scheduled.clear();
+        for (Runnable task : due) task.run();
+    }
+
+    @Test
+    public void doubleTapStormSendsOnlyTheNetChange() {
+        // Liked before the window; nine more taps leave it liked with the last tag
+        debouncer.unlike("bob_1", "alice", Collections.singletonList("t0"));
+        for (int tap = 1; tap <= 9; tap++) {
+            String tag = "t" + tap;
+            if (tap % 2 == 1) debouncer.like("bob_1", "alice", tag);
+            else debouncer.unlike("bob_1", "alice", Collections.singletonList("t" + (tap - 1)));
+        }
+        assertTrue(sent.isEmpty());
+        assertEquals(1, scheduled.size()); // The window isn't restarted by every tap
+
+        runScheduled();
+        assertEquals(Arrays.asList("UNLIKE:bob_1:t0:alice", "LIKE:bob_1:t9:alice"), sent);
+        assertEquals(10, debouncer.getChanges());
+        assertEquals(2, debouncer.getFramesSent());
+    }
+
+    @Test
+    public void likeUndoneInsideTheWindowSendsNothing() {
+        debouncer.like("bob_1", "alice", "t1");
+        debouncer.unlike("bob_1", "alice", Collections.singletonList("t1"));
+        runScheduled();
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    public void messagesAreDebouncedSeparately() {
+        debouncer.like("bob_1", "alice", "t1");
+        debouncer.like("bob_2", "alice", "t2");
+        assertEquals(2, scheduled.size());
+        debouncer.flushAll();
+        assertEquals(2, sent.size());
+        runScheduled(); // Windows already flushed
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void hostFoldsReactionsPerChannel() {
+        List<String> out = new ArrayList<>();
+        ReactionBatcher batcher = new ReactionBatcher((channel, frames) -> out.add(channel + "|" + ReactionBatcher.encode(frames)),
+                (task, delayMs) -> scheduled.add(task));
+
+        batcher.add("general", "LIKE:bob_1:t1:alice");
+        batcher.add("general", "UNLIKE:bob_1:t0:carol");
+        batcher.add("random", "LIKE:dave_1:t2:alice");
+        batcher.add("general", "LIKE:bob_2:t3:erin");
+        runScheduled();
+
+        assertEquals(2, out.size());
+        assertTrue(out.contains("general|REACTS:LIKE:bob_1:t1:alice\tUNLIKE:bob_1:t0:carol\tLIKE:bob_2:t3:erin"));
+        assertTrue(out.contains("random|LIKE:dave_1:t2:alice")); // Alone, so sent as itself
+        assertEquals(Arrays.asList("LIKE:bob_1:t1:alice", "UNLIKE:bob_1:t0:carol", "LIKE:bob_2:t3:erin"),
+                ReactionBatcher.parse("LIKE:bob_1:t1:alice\tUNLIKE:bob_1:t0:carol\tLIKE:bob_2:t3:erin"));
+    }
+
+    @Test
+    public void fullBatchGoesOutWithoutWaiting() {
+        List<Integer> sizes = new ArrayList<>();
+        ReactionBatcher batcher = new ReactionBatcher((channel, frames) -> sizes.add(frames.size()),
+                (task, delayMs) -> scheduled.add(task));
+        for (int i = 0; i < ReactionBatcher.MAX_BATCH + 3; i++) batcher.add(null, "LIKE:bob_" + i + ":t:alice");
+        assertEquals(Collections.singletonList(ReactionBatcher.MAX_BATCH), sizes);
+        runScheduled();
+        assertEquals(Arrays.asList(ReactionBatcher.MAX_BATCH, 3), sizes);
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.chitchatapp.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Who liked one message, as an observed-remove set, so every device ends up with the same answer whatever
+// order LIKE and UNLIKE frames arrive in and however often they are replayed. A like adds the user with a
+// fresh tag; an unlike removes the tags its device had seen for that user. A user counts while they hold a
+// tag nobody removed, so a like racing an unlike it wasn't seen by survives it. Applying an add or a remove
+// is a union either way: commutative and idempotent.
+//
+// Stored in Message.reactions, one line per user: <liveTags>\t<removedTags>\t<user>, tags comma-separated.
+// A removed tag only keeps its tombstone, so a replayed LIKE stays removed.
+public final class ReactionSet {
+
+    private static final class Tags {
+        final TreeSet<String> live = new TreeSet<>();
+        final TreeSet<String> removed = new TreeSet<>();
+    }
+
+    private final TreeMap<String, Tags> users = new TreeMap<>();
+
+    // One LIKE (added, with its tag) or UNLIKE (the tags it removes) as received
+    public static final class Change {
+        public final String uniqueId;
+        public final boolean added;
+        public final String user;
+        public final List<String> tags;
+
+        public Change(String uniqueId, boolean added, String user, List<String> tags) {
+            this.uniqueId = uniqueId;
+            this.added = added;
+            this.user = user;
+            this.tags = tags;
+        }
+    }
+
+    // A tag for a new like: the liking device's HLC stamp, unique per device and compact in base 36
+    public static String newTag(long hlc) {
+        return Long.toString(hlc, 36);
+    }
+
+    public static ReactionSet parse(String encoded) {
+        ReactionSet set = new ReactionSet();
+        if (encoded == null || encoded.isEmpty()) return set;
+        for (String line : encoded.split("\n")) {
+            String[] parts = line.split("\t", 3);
+            if (parts.length != 3) continue;
+            Tags tags = set.tagsOf(parts[2]);
+            addAll(tags.live, parts[0]);
+            addAll(tags.removed, parts[1]);
+            tags.live.removeAll(tags.removed);
+        }
+        return set;
+    }
+
+    // null once nobody ever reacted
+    public String encode() {
+        if (users.isEmpty()) return null;
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Tags> e : users.entrySet()) {
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(String.join(",", e.getValue().live)).append('\t')
+                    .append(String.join(",", e.getValue().removed)).append('\t')
+                    .append(e.getKey());
+        }
+        return sb.toString();
+    }
+
+    // false if nothing changed (a replay, or the tag was already removed)
+    public boolean add(String user, String tag) {
+        Tags tags = tagsOf(user);
+        return !tags.removed.contains(tag) && tags.live.add(tag);
+    }
+
+    // Tombstones the given tags, including ones whose add hasn't arrived yet; false if nothing changed
+    public boolean remove(String user, Collection<String> removedTags) {
+        Tags tags = tagsOf(user);
+        boolean changed = false;
+        for (String tag : removedTags) {
+            if (tag.isEmpty()) continue;
+            changed |= tags.removed.add(tag);
+            tags.live.remove(tag);
+        }
+        return changed;
+    }
+
+    // A received LIKE (one tag) or UNLIKE; false if nothing changed
+    public boolean apply(Change change) {
+        return change.added ? change.tags.size() == 1 && add(change.user, change.tags.get(0)) : remove(change.user, change.tags);
+    }
+
+    // Union with another replica of the same message's set; false if nothing changed
+    public boolean merge(ReactionSet other) {
+        boolean changed = false;
+        for (Map.Entry<String, Tags> e : other.users.entrySet()) {
+            changed |= remove(e.getKey(), e.getValue().removed);
+            for (String tag : e.getValue().live) changed |= add(e.getKey(), tag);
+        }
+        return changed;
+    }
+
+    // The set as the changes that rebuild it on a peer that missed them: one LIKE per live tag and one UNLIKE
+    // with each user's tombstones. Replaying them where they already arrived changes nothing.
+    public List<Change> toChanges(String uniqueId) {
+        List<Change> changes = new ArrayList<>();
+        for (Map.Entry<String, Tags> e : users.entrySet()) {
+            for (String tag : e.getValue().live)
+                changes.add(new Change(uniqueId, true, e.getKey(), java.util.Collections.singletonList(tag)));
+            if (!e.getValue().removed.isEmpty())
+                changes.add(new Change(uniqueId, false, e.getKey(), new ArrayList<>(e.getValue().removed)));
+        }
+        return changes;
+    }
+
+    // The tags an unlike from this device has to remove
+    public List<String> observedTags(String user) {
+        Tags tags = users.get(user);
+        return tags != null ? new ArrayList<>(tags.live) : new ArrayList<>();
+    }
+
+    public boolean contains(String user) {
+        Tags tags = users.get(user);
+        return tags != null && !tags.live.isEmpty();
+    }
+
+    // Users who currently like the message, in name order
+    public List<String> getUsers() {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, Tags> e : users.entrySet()) if (!e.getValue().live.isEmpty()) result.add(e.getKey());
+        return result;
+    }
+
+    public int size() {
+        int count = 0;
+        for (Tags tags : users.values()) if (!tags.live.isEmpty()) count++;
+        return count;
+    }
+
+    private Tags tagsOf(String user) {
+        Tags tags = users.get(user);
+        if (tags == null) {
+            tags = new Tags();
+            users.put(user, tags);
+        }
+        return tags;
+    }
+
+    private static void addAll(TreeSet<String> into, String csv) {
+        for (String tag : csv.split(",")) if (!tag.isEmpty()) into.add(tag);
+    }
+}
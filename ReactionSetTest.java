@@ -0,0 +1,121 @@
+package com.example.chitchatapp.db;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Likes as an observed-remove set: devices that apply the same LIKE/UNLIKE frames in any order, with
+ * duplicates, end up with the same set.
+ */
+public class ReactionSetTest {
+
+    // A LIKE or UNLIKE frame as a device receives it
+    private static final class Op {
+        final boolean added;
+        final String user;
+        final List<String> tags;
+
+        Op(boolean added, String user, String... tags) {
+            this.added = added;
+            this.user = user;
+            this.tags = Arrays.asList(tags);
+        }
+
+        // Through the stored encoding every time, like applyReaction does against the row
+        String applyTo(String encoded) {
+            ReactionSet set = ReactionSet.parse(encoded);
+            if (added) set.add(user, tags.get(0));
+            else set.remove(user, tags);
+            return set.encode();
+        }
+    }
+
+    private static String applyAll(List<Op> ops) {
+        String encoded = null;
+        for (Op op : ops) encoded = op.applyTo(encoded);
+        return encoded;
+    }
+
+    @Test
+    public void anyOrderAndAnyDuplicatesConverge() {
+        List<Op> ops = Arrays.asList(
+                new Op(true, "alice", "a1"),
+                new Op(false, "alice", "a1"),
+                new Op(true, "alice", "a2"),  // Liked again
+                new Op(true, "bob", "b1"),
+                new Op(true, "bob", "b2"),    // From bob's second device, concurrent with...
+                new Op(false, "bob", "b1"),   // ...an unlike that only saw b1
+                new Op(true, "carol", "c1"),
+                new Op(false, "carol", "c1"));
+
+        String expected = applyAll(ops);
+        ReactionSet set = ReactionSet.parse(expected);
+        assertEquals(Arrays.asList("alice", "bob"), set.getUsers());
+        assertEquals(2, set.size());
+
+        Random random = new Random(42);
+        for (int run = 0; run < 500; run++) {
+            List<Op> delivered = new ArrayList<>(ops);
+            for (int i = 0; i < 4; i++) delivered.add(ops.get(random.nextInt(ops.size()))); // Replays
+            Collections.shuffle(delivered, random);
+            assertEquals("Order: run " + run, expected, applyAll(delivered));
+        }
+    }
+
+    @Test
+    public void unlikeBeforeItsLikeStillWins() {
+        String encoded = new Op(false, "alice", "a1").applyTo(null);
+        encoded = new Op(true, "alice", "a1").applyTo(encoded);
+        assertFalse(ReactionSet.parse(encoded).contains("alice"));
+        assertEquals(0, ReactionSet.parse(encoded).size());
+    }
+
+    @Test
+    public void replaysReportNoChange() {
+        ReactionSet set = new ReactionSet();
+        assertTrue(set.add("alice", "a1"));
+        assertFalse(set.add("alice", "a1"));
+        assertTrue(set.remove("alice", set.observedTags("alice")));
+        assertFalse(set.remove("alice", Collections.singletonList("a1")));
+        assertFalse(set.add("alice", "a1"));
+    }
+
+    @Test
+    public void encodingIsCompactAndKeepsOddNames() {
+        ReactionSet set = new ReactionSet();
+        set.add("dave: the, great", ReactionSet.newTag(7_300_000_000_000_000L));
+        set.add("erin", ReactionSet.newTag(7_300_000_000_000_001L));
+        String encoded = set.encode();
+        assertEquals(Arrays.asList("dave: the, great", "erin"), ReactionSet.parse(encoded).getUsers());
+        assertTrue(encoded.length() < 60);
+        assertNull(new ReactionSet().encode());
+        assertEquals(0, ReactionSet.parse(null).size());
+    }
+
+    @Test
+    public void changesRebuildTheSetOnAPeerThatMissedThem() {
+        ReactionSet host = new ReactionSet();
+        host.add("alice", "a1");
+        host.add("bob", "b1");
+        host.remove("bob", Collections.singletonList("b1"));
+        host.add("carol", "c1");
+
+        // A late joiner replays the changes from its snapshot, then merges a LIKE it had parked for the message;
+        // the tombstone it just got already covers it
+        ReactionSet joiner = new ReactionSet();
+        for (ReactionSet.Change change : host.toChanges("alice_1")) joiner.apply(change);
+        ReactionSet parked = new ReactionSet();
+        parked.add("bob", "b1");
+        assertFalse(joiner.merge(parked));
+        assertEquals(host.encode(), joiner.encode());
+        assertFalse(joiner.merge(host));
+        assertEquals(Arrays.asList("alice", "carol"), joiner.getUsers());
+    }
+}
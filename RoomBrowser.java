@@ -0,0 +1,163 @@
+package com.example.chitchatapp.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Listens for DiscoveryBeacon broadcasts and keeps the list of rooms on the LAN, least loaded first. A room
+// that misses three beacons in a row is dropped. The listener hears about every change (a room appearing,
+// leaving, or its load moving), so a join screen can show the list live.
+public class RoomBrowser implements Closeable, Runnable {
+
+    public static final long EXPIRY_MS = 3 * DiscoveryBeacon.INTERVAL_MS + 500;
+    private static final int RECEIVE_TIMEOUT_MS = 500;
+
+    public static final class Room {
+        public final String id;
+        public final String name;
+        public final String address;
+        public final int port;
+        public final int load;
+        public final int version;
+        final long lastSeenMs;
+
+        Room(String id, String name, String address, int port, int load, int version, long lastSeenMs) {
+            this.id = id;
+            this.name = name;
+            this.address = address;
+            this.port = port;
+            this.load = load;
+            this.version = version;
+            this.lastSeenMs = lastSeenMs;
+        }
+
+        // A host on another protocol version is listed but never picked
+        public boolean isCompatible() {
+            return version == DiscoveryBeacon.PROTOCOL_VERSION;
+        }
+
+        boolean sameAs(Room other) {
+            return other != null && name.equals(other.name) && address.equals(other.address)
+                    && port == other.port && load == other.load && version == other.version;
+        }
+    }
+
+    public interface Listener {
+        void onRoomsChanged(List<Room> rooms);
+    }
+
+    private final DatagramSocket socket;
+    private final Listener listener;
+    private final Map<String, Room> rooms = new LinkedHashMap<>();
+    private volatile boolean closed = false;
+
+    public RoomBrowser(Listener listener) throws IOException {
+        this(DiscoveryBeacon.PORT, listener);
+    }
+
+    // port 0 picks a free one (tests aim their beacons at getLocalPort())
+    public RoomBrowser(int port, Listener listener) throws IOException {
+        this.listener = listener;
+        DatagramSocket s = new DatagramSocket(null);
+        try {
+            s.setReuseAddress(true); // Another app instance may be browsing too
+            s.bind(new InetSocketAddress(port));
+            s.setSoTimeout(RECEIVE_TIMEOUT_MS);
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+        this.socket = s;
+    }
+
+    public int getLocalPort() {
+        return socket.getLocalPort();
+    }
+
+    // Reads beacons until close(); run it on an I/O thread
+    @Override
+    public void run() {
+        byte[] buffer = new byte[2048];
+        while (!closed) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+                onBeacon(new String(buffer, 0, packet.getLength(), StandardCharsets.UTF_8),
+                        packet.getAddress().getHostAddress(), System.currentTimeMillis());
+            } catch (SocketTimeoutException e) {
+                // Fall through to expire
+            } catch (IOException e) {
+                return; // Closed
+            }
+            expire(System.currentTimeMillis());
+        }
+    }
+
+    // Least loaded first, then by name
+    public List<Room> getRooms() {
+        List<Room> sorted;
+        synchronized (rooms) {
+            sorted = new ArrayList<>(rooms.values());
+        }
+        Collections.sort(sorted, (a, b) -> a.load != b.load ? Integer.compare(a.load, b.load) : a.name.compareTo(b.name));
+        return sorted;
+    }
+
+    // Where to go when the user just taps Join: the least loaded room we can talk to, null if none
+    public Room bestRoom() {
+        for (Room room : getRooms()) if (room.isCompatible()) return room;
+        return null;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        socket.close();
+    }
+
+    void onBeacon(String datagram, String sourceAddress, long nowMs) {
+        Room room = parse(datagram, sourceAddress, nowMs);
+        if (room == null) return;
+        boolean changed;
+        synchronized (rooms) {
+            changed = !room.sameAs(rooms.put(room.id, room));
+        }
+        if (changed) listener.onRoomsChanged(getRooms());
+    }
+
+    void expire(long nowMs) {
+        boolean changed = false;
+        synchronized (rooms) {
+            for (Iterator<Room> it = rooms.values().iterator(); it.hasNext(); ) {
+                if (nowMs - it.next().lastSeenMs > EXPIRY_MS) {
+                    it.remove();
+                    changed = true;
+                }
+            }
+        }
+        if (changed) listener.onRoomsChanged(getRooms());
+    }
+
+    // A beacon -> Room, null for anything else on the port
+    static Room parse(String datagram, String sourceAddress, long nowMs) {
+        if (!datagram.startsWith(DiscoveryBeacon.PREFIX)) return null;
+        String[] parts = datagram.substring(DiscoveryBeacon.PREFIX.length()).split(":", 5);
+        if (parts.length != 5 || parts[1].isEmpty()) return null;
+        try {
+            return new Room(parts[1], parts[4], sourceAddress, Integer.parseInt(parts[2]),
+                    Integer.parseInt(parts[3]), Integer.parseInt(parts[0]), nowMs);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
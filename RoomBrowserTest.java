@@ -0,0 +1,132 @@
+package com.example.chitchatapp.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.*;
+
+/**
+ * LAN discovery over loopback: real DiscoveryBeacons aimed at a RoomBrowser on 127.0.0.1 instead of the
+ * broadcast address, so it runs without a network.
+ */
+public class RoomBrowserTest {
+
+    private static final int CHAT_PORT = 12345;
+
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+    private final List<DiscoveryBeacon> beacons = new ArrayList<>();
+    private volatile List<RoomBrowser.Room> latest = new ArrayList<>();
+    private RoomBrowser browser;
+
+    @Before
+    public void setUp() throws Exception {
+        browser = new RoomBrowser(0, rooms -> latest = rooms);
+        pool.execute(browser);
+    }
+
+    @After
+    public void tearDown() {
+        browser.close();
+        for (DiscoveryBeacon b : beacons) b.close();
+        pool.shutdownNow();
+    }
+
+    private DiscoveryBeacon beacon(String id, String name, DiscoveryBeacon.LoadGauge load) throws Exception {
+        DiscoveryBeacon b = new DiscoveryBeacon(id, name, CHAT_PORT, load,
+                InetAddress.getLoopbackAddress(), browser.getLocalPort());
+        beacons.add(b);
+        return b;
+    }
+
+    private List<RoomBrowser.Room> awaitRooms(Predicate<List<RoomBrowser.Room>> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!condition.test(latest)) {
+            if (System.currentTimeMillis() > deadline) fail("Rooms never matched, last seen: " + latest.size());
+            Thread.sleep(5);
+        }
+        return latest;
+    }
+
+    @Test
+    public void leastLoadedRoomIsBest() throws Exception {
+        AtomicInteger aliceLoad = new AtomicInteger(5);
+        DiscoveryBeacon alice = beacon("node-a", "alice", aliceLoad::get);
+        DiscoveryBeacon bob = beacon("node-b", "bob", () -> 1);
+        DiscoveryBeacon carol = beacon("node-c", "carol", () -> 3);
+
+        alice.announce();
+        bob.announce();
+        carol.announce();
+        List<RoomBrowser.Room> rooms = awaitRooms(r -> r.size() == 3);
+
+        assertEquals("bob", rooms.get(0).name);
+        assertEquals("carol", rooms.get(1).name);
+        assertEquals("alice", rooms.get(2).name);
+        assertEquals("127.0.0.1", rooms.get(0).address); // Taken from the datagram
+        assertEquals(CHAT_PORT, rooms.get(0).port);
+        assertEquals("bob", browser.bestRoom().name);
+
+        // Load moves with the next beacon
+        aliceLoad.set(0);
+        alice.announce();
+        awaitRooms(r -> r.get(0).name.equals("alice"));
+        assertEquals("alice", browser.bestRoom().name);
+        assertEquals(3, browser.getRooms().size()); // Same room, not a second entry
+    }
+
+    @Test
+    public void otherProtocolVersionsAreListedButNotPicked() throws Exception {
+        try (DatagramSocket raw = new DatagramSocket()) {
+            byte[] bytes = DiscoveryBeacon.encode(DiscoveryBeacon.PROTOCOL_VERSION + 1, "node-new", CHAT_PORT, 0, "dave")
+                    .getBytes(StandardCharsets.UTF_8);
+            raw.send(new DatagramPacket(bytes, bytes.length, InetAddress.getLoopbackAddress(), browser.getLocalPort()));
+            byte[] junk = "hello?".getBytes(StandardCharsets.UTF_8);
+            raw.send(new DatagramPacket(junk, junk.length, InetAddress.getLoopbackAddress(), browser.getLocalPort()));
+        }
+        awaitRooms(r -> r.size() == 1);
+        assertFalse(browser.getRooms().get(0).isCompatible());
+        assertNull(browser.bestRoom());
+
+        beacon("node-b", "bob", () -> 7).announce();
+        awaitRooms(r -> r.size() == 2);
+        assertEquals("dave", browser.getRooms().get(0).name); // Less loaded, but incompatible
+        assertEquals("bob", browser.bestRoom().name);
+    }
+
+    @Test
+    public void roomThatStopsAnnouncingExpires() throws Exception {
+        beacon("node-a", "alice", () -> 2).announce();
+        awaitRooms(r -> r.size() == 1);
+
+        long now = System.currentTimeMillis();
+        browser.expire(now + RoomBrowser.EXPIRY_MS / 2);
+        assertEquals(1, browser.getRooms().size());
+        browser.expire(now + RoomBrowser.EXPIRY_MS + 1000);
+        assertTrue(browser.getRooms().isEmpty());
+        assertTrue(latest.isEmpty()); // The listener heard it go
+        assertNull(browser.bestRoom());
+    }
+
+    @Test
+    public void roomNamesMayContainColons() {
+        RoomBrowser.Room room = RoomBrowser.parse(
+                DiscoveryBeacon.encode(DiscoveryBeacon.PROTOCOL_VERSION, "node-a", 12345, 4, "team: ops"), "10.0.0.7", 0);
+        assertEquals("team: ops", room.name);
+        assertEquals(4, room.load);
+        assertEquals("10.0.0.7", room.address);
+        assertNull(RoomBrowser.parse("CHITCHAT:1:node-a:notaport:4:x", "10.0.0.7", 0));
+        assertNull(RoomBrowser.parse("CHITCHAT:1::12345:4:x", "10.0.0.7", 0));
+    }
+}
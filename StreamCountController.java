@@ -0,0 +1,79 @@
+package com.example.chitchatapp.network;
+
+// Picks how many parallel data streams a striped transfer should use.
+// Hill-climbs on observed aggregate throughput: keep adding streams while each one buys a real gain,
+// back off when it starts to hurt (Wi-Fi Direct airtime is shared, so more streams is not always better),
+// and every few transfers probe one step away in case the link has changed.
+public class StreamCountController {
+
+    private static final double GAIN = 1.10;  // An extra stream must bring at least 10% more throughput
+    private static final double LOSS = 0.90;
+    private static final int PROBE_EVERY = 8; // Transfers between probes once the count has settled
+
+    private final int minStreams;
+    private final int maxStreams;
+    private int current;
+    private int direction = 1;
+    private long lastBps = ThroughputEstimator.UNKNOWN;
+    private int stableSamples = 0;
+    private boolean settling = false; // Just stepped back; the next sample is the new baseline
+
+    public StreamCountController(int minStreams, int maxStreams, int initial) {
+        this.minStreams = Math.max(1, minStreams);
+        this.maxStreams = Math.max(this.minStreams, maxStreams);
+        this.current = clamp(initial);
+    }
+
+    public synchronized int getStreamCount() {
+        return current;
+    }
+
+    // Aggregate bytes/second measured while `streams` streams were carrying the last transfers
+    public synchronized void record(int streams, long bytesPerSecond) {
+        if (bytesPerSecond <= 0 || streams != current) return;
+
+        if (lastBps <= 0) {
+            lastBps = bytesPerSecond;
+            step();
+            return;
+        }
+        if (settling) {
+            settling = false;
+            lastBps = bytesPerSecond;
+            return;
+        }
+
+        if (bytesPerSecond >= lastBps * GAIN) {
+            // The last move paid off, keep going the same way
+            stableSamples = 0;
+            lastBps = bytesPerSecond;
+            step();
+        } else if (bytesPerSecond <= lastBps * LOSS) {
+            // The last move hurt, undo it and settle there
+            direction = -direction;
+            stableSamples = 0;
+            settling = true;
+            step();
+        } else {
+            lastBps = bytesPerSecond;
+            if (++stableSamples >= PROBE_EVERY) {
+                stableSamples = 0;
+                step();
+            }
+        }
+    }
+
+    private void step() {
+        int next = clamp(current + direction);
+        if (next == current) {
+            // Hit a bound, the next probe goes the other way
+            direction = -direction;
+            next = clamp(current + direction);
+        }
+        current = next;
+    }
+
+    private int clamp(int streams) {
+        return Math.max(minStreams, Math.min(maxStreams, streams));
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.chitchatapp.network;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The stream-count hill climb: more streams while each one pays, a step back when one hurts, and a probe
+ * away from a settled count every PROBE_EVERY transfers.
+ */
+public class StreamCountControllerTest {
+
+    private final StreamCountController controller = new StreamCountController(1, 4, 2);
+
+    private void record(long bytesPerSecond) {
+        controller.record(controller.getStreamCount(), bytesPerSecond);
+    }
+
+    @Test
+    public void climbsWhileExtraStreamsPay() {
+        record(100); // First sample: the baseline, then one step up
+        assertEquals(3, controller.getStreamCount());
+        record(120);
+        assertEquals(4, controller.getStreamCount());
+        // At the top a further gain turns the next step around
+        record(140);
+        assertEquals(3, controller.getStreamCount());
+    }
+
+    @Test
+    public void backsOffWhenAStreamHurtsAndSettles() {
+        record(100);
+        record(80); // Three streams were worse than two
+        assertEquals(2, controller.getStreamCount());
+        record(100); // The new baseline, no step
+        assertEquals(2, controller.getStreamCount());
+        record(104); // Within 10% either way: stable
+        assertEquals(2, controller.getStreamCount());
+    }
+
+    @Test
+    public void probesAwayFromASettledCount() {
+        record(100);
+        record(80);
+        record(100);
+        for (int i = 0; i < 7; i++) {
+            record(100);
+            assertEquals(2, controller.getStreamCount());
+        }
+        record(100); // The eighth stable transfer probes further down, the way the last move went
+        assertEquals(1, controller.getStreamCount());
+        record(60); // One stream hurts: back to two
+        assertEquals(2, controller.getStreamCount());
+    }
+
+    @Test
+    public void ignoresSamplesFromAnotherCountOrWithoutAMeasurement() {
+        controller.record(3, 1_000_000);
+        controller.record(2, ThroughputEstimator.UNKNOWN);
+        controller.record(2, 0);
+        assertEquals(2, controller.getStreamCount());
+        record(100);
+        assertEquals(3, controller.getStreamCount());
+    }
+
+    @Test
+    public void staysWithinItsBounds() {
+        StreamCountController single = new StreamCountController(1, 1, 3);
+        assertEquals(1, single.getStreamCount());
+        single.record(1, 100);
+        single.record(1, 1000);
+        assertEquals(1, single.getStreamCount());
+    }
+}
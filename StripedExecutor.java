@@ -0,0 +1,132 @@
+package com.example.chitchatapp.db;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+// Runs tasks that share a key one after another, in submission order, while tasks for other keys run in
+// parallel on the backing pool. Keys are hashed onto a fixed number of stripes; each stripe is a queue
+// that occupies at most one pool thread at a time and gives it back after a short batch, so a busy
+// message cannot hold a thread other messages are waiting for.
+//
+// executeAll() runs one task in order with several keys at once: it waits for everything queued before it
+// on each of their stripes, and what is queued after it waits for the task. A stripe that gets there first
+// parks without a thread, so a task spanning more stripes than the pool has threads can't deadlock.
+public class StripedExecutor {
+
+    private static final int TASKS_PER_TURN = 16;
+
+    private final Executor backing;
+    private final Stripe[] stripes;
+
+    private final class Stripe implements Runnable {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private boolean scheduled = false;
+
+        void add(Runnable task) {
+            synchronized (this) {
+                tasks.add(task);
+                if (scheduled) return;
+                scheduled = true;
+            }
+            try {
+                backing.execute(this);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    scheduled = false;
+                    tasks.clear();
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int done = 0; ; done++) {
+                Runnable task;
+                synchronized (this) {
+                    if (tasks.isEmpty()) {
+                        scheduled = false;
+                        return;
+                    }
+                    if (done == TASKS_PER_TURN) break;
+                    task = tasks.poll();
+                }
+                // Parked: stays scheduled, so nothing else starts it; the last stripe in resumes it
+                if (task instanceof Gate && !((Gate) task).arrive(this)) return;
+                try {
+                    task.run();
+                } catch (RuntimeException | Error e) {
+                    // Fail the way a plain pool task would, but hand what is queued behind it to another thread first
+                    backing.execute(this);
+                    throw e;
+                }
+            }
+            // Still scheduled: go to the back of the pool's queue so other stripes get a turn
+            backing.execute(this);
+        }
+    }
+
+    public StripedExecutor(Executor backing, int stripeCount) {
+        this.backing = backing;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) stripes[i] = new Stripe();
+    }
+
+    // The place a multi-key task holds on each of its stripes
+    private final class Gate implements Runnable {
+        private final Runnable task;
+        private final List<Stripe> parked = new ArrayList<>();
+        private int waiting;
+
+        Gate(Runnable task, int stripes) {
+            this.task = task;
+            this.waiting = stripes;
+        }
+
+        // false: park this stripe until the task has run; true: this is the last stripe, run the task here
+        boolean arrive(Stripe stripe) {
+            synchronized (this) {
+                if (--waiting > 0) {
+                    parked.add(stripe);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                for (Stripe stripe : parked) backing.execute(stripe);
+            }
+        }
+    }
+
+    public void execute(Object key, Runnable task) {
+        stripeFor(key).add(task);
+    }
+
+    // Runs task once, after everything already queued for any of the keys and before anything queued after.
+    // Synchronized so two of them queue their gates in the same order on every stripe they share.
+    public synchronized void executeAll(Collection<?> keys, Runnable task) {
+        Set<Stripe> touched = new LinkedHashSet<>();
+        for (Object key : keys) touched.add(stripeFor(key));
+        if (touched.isEmpty()) return;
+        Gate gate = new Gate(task, touched.size());
+        for (Stripe stripe : touched) stripe.add(gate);
+    }
+
+    private Stripe stripeFor(Object key) {
+        int h = key != null ? key.hashCode() : 0;
+        h ^= (h >>> 16); // uniqueIds share long prefixes; mix the high bits in
+        return stripes[(h & 0x7fffffff) % stripes.length];
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.chitchatapp.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Stress tests for per-message ordering of repository commands.
+ */
+public class StripedExecutorTest {
+
+    private ExecutorService pool;
+    private StripedExecutor executor;
+
+    @Before
+    public void setUp() {
+        // Same shape as AppDatabase.databaseWriteExecutor
+        pool = Executors.newFixedThreadPool(4);
+        executor = new StripedExecutor(pool, 64);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    // Stand-in for a message row: read-modify-write with no locking, like onMessageLiked against Room
+    private static final class Row {
+        int likes;
+        String likedBy;
+    }
+
+    @Test
+    public void likeUnlikeBurstsEndInTheSameStateEveryRun() throws Exception {
+        int messages = 50;
+        int togglesPerMessage = 401; // odd: every message must end up liked exactly once
+        Map<String, Row> table = new HashMap<>();
+        for (int m = 0; m < messages; m++) table.put("alice_" + m, new Row());
+
+        CountDownLatch done = new CountDownLatch(messages * togglesPerMessage);
+        for (int t = 0; t < togglesPerMessage; t++) {
+            boolean like = t % 2 == 0;
+            for (int m = 0; m < messages; m++) {
+                String uniqueId = "alice_" + m;
+                executor.execute(uniqueId, () -> {
+                    Row row = table.get(uniqueId);
+                    boolean liked = row.likedBy != null;
+                    Thread.yield(); // widen the window between read and write
+                    if (like && !liked) {
+                        row.likes++;
+                        row.likedBy = "bob";
+                    } else if (!like && liked) {
+                        row.likes--;
+                        row.likedBy = null;
+                    }
+                    done.countDown();
+                });
+            }
+        }
+
+        assertTrue("commands did not finish", done.await(20, TimeUnit.SECONDS));
+        for (Map.Entry<String, Row> entry : table.entrySet()) {
+            assertEquals(entry.getKey(), 1, entry.getValue().likes);
+            assertEquals(entry.getKey(), "bob", entry.getValue().likedBy);
+        }
+    }
+
+    @Test
+    public void sameKeyRunsInSubmissionOrder() throws Exception {
+        int keys = 32;
+        int perKey = 1000;
+        List<List<Integer>> seen = new ArrayList<>();
+        for (int k = 0; k < keys; k++) seen.add(new ArrayList<>());
+
+        CountDownLatch done = new CountDownLatch(keys * perKey);
+        for (int i = 0; i < perKey; i++) {
+            for (int k = 0; k < keys; k++) {
+                List<Integer> list = seen.get(k);
+                int seq = i;
+                executor.execute("bob_" + k, () -> {
+                    list.add(seq);
+                    done.countDown();
+                });
+            }
+        }
+
+        assertTrue(done.await(20, TimeUnit.SECONDS));
+        for (int k = 0; k < keys; k++) {
+            List<Integer> list = seen.get(k);
+            assertEquals(perKey, list.size());
+            for (int i = 0; i < perKey; i++) assertEquals("bob_" + k, i, (int) list.get(i));
+        }
+    }
+
+    @Test
+    public void differentKeysRunInParallel() throws Exception {
+        // Each task waits for the other; this only completes if they run at the same time
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        CountDownLatch done = new CountDownLatch(2);
+        for (String key : new String[]{"a", "b"}) {
+            executor.execute(key, () -> {
+                bothRunning.countDown();
+                try {
+                    if (bothRunning.await(2, TimeUnit.SECONDS)) done.countDown();
+                } catch (InterruptedException ignored) {
+                }
+            });
+        }
+        assertTrue("messages were serialised behind each other", done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void batchKeepsItsPlaceOnEveryMessage() throws Exception {
+        // A multi-select edit between two single edits of each message it touches
+        List<String> keys = new ArrayList<>();
+        for (int k = 0; k < 20; k++) keys.add("dave_" + k);
+        Map<String, List<String>> seen = new HashMap<>();
+        for (String key : keys) seen.put(key, Collections.synchronizedList(new ArrayList<>()));
+
+        CountDownLatch done = new CountDownLatch(keys.size() * 2 + 1);
+        for (String key : keys) {
+            executor.execute(key, () -> {
+                Thread.yield();
+                seen.get(key).add("before");
+                done.countDown();
+            });
+        }
+        executor.executeAll(keys, () -> {
+            for (String key : keys) seen.get(key).add("batch");
+            done.countDown();
+        });
+        for (String key : keys) {
+            executor.execute(key, () -> {
+                seen.get(key).add("after");
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (String key : keys) assertEquals(key, Arrays.asList("before", "batch", "after"), seen.get(key));
+    }
+
+    @Test
+    public void overlappingBatchesWiderThanThePoolFinish() throws Exception {
+        // Every batch spans far more stripes than the pool has threads, and each shares stripes with the others
+        int batches = 200;
+        CountDownLatch done = new CountDownLatch(batches);
+        ExecutorService submitters = Executors.newFixedThreadPool(4);
+        try {
+            for (int b = 0; b < batches; b++) {
+                List<String> keys = new ArrayList<>();
+                for (int k = 0; k < 30; k++) keys.add("erin_" + ((b * 7 + k * 13) % 100));
+                submitters.execute(() -> executor.executeAll(keys, done::countDown));
+            }
+            assertTrue("batches deadlocked", done.await(10, TimeUnit.SECONDS));
+        } finally {
+            submitters.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failingCommandDoesNotStallItsMessage() throws Exception {
+        CountDownLatch next = new CountDownLatch(1);
+        executor.execute("carol_1", () -> {
+            throw new IllegalStateException("boom");
+        });
+        executor.execute("carol_1", next::countDown);
+        assertTrue(next.await(2, TimeUnit.SECONDS));
+    }
+}
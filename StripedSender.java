@@ -0,0 +1,109 @@
+package com.example.chitchatapp.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Spreads one large frame across several extra data connections to the same peer.
+// The frame's bytes are cut into CHUNK: lines (same format as LaneWriter) and dealt round-robin to the first N
+// streams, where N comes from a StreamCountController fed with the streams' combined throughput.
+// The receiver pushes chunks from every stream into one ChunkAssembler, which restores the order.
+// A stream that turns out closed mid-transfer is replaced by a spare one or dropped, and its chunk goes to
+// the next; only when no stream is left does send() fail. The caller then sends the frame another way and
+// the receiver lets the partial transfer expire.
+public class StripedSender {
+
+    public static final int STRIPE_THRESHOLD = 512 * 1024; // Smaller frames are not worth striping
+    public static final int STRIPE_CHUNK_SIZE = 32 * 1024;
+    // Data stream LaneWriters must not re-chunk our chunks
+    public static final int STREAM_WRITER_CHUNK_SIZE = 2 * STRIPE_CHUNK_SIZE;
+
+    private final List<LaneWriter> streams = new CopyOnWriteArrayList<>();
+    private final StreamCountController controller;
+    private final AtomicLong nextTransferId = new AtomicLong();
+    private volatile int lastStreamCount = 0;
+
+    public StripedSender(int maxStreams) {
+        this.controller = new StreamCountController(1, maxStreams, Math.min(2, maxStreams));
+    }
+
+    public void addStream(LaneWriter stream) {
+        streams.add(stream);
+    }
+
+    public void removeStream(LaneWriter stream) {
+        streams.remove(stream);
+    }
+
+    public int getStreamCount() {
+        return streams.size();
+    }
+
+    public static boolean shouldStripe(String frame) {
+        return frame.length() >= STRIPE_THRESHOLD;
+    }
+
+    public boolean send(String frame) {
+        return send(EncodedFrame.of(frame));
+    }
+
+    // Returns false if there is no open data stream; the caller then sends the frame normally
+    public boolean send(EncodedFrame frame) {
+        List<LaneWriter> open = new ArrayList<>();
+        for (LaneWriter stream : streams) {
+            if (stream.isClosed()) streams.remove(stream);
+            else open.add(stream);
+        }
+        if (open.isEmpty()) return false;
+
+        // Score the previous stream count on what its streams achieved, then pick the count for this one
+        if (lastStreamCount > 0) controller.record(lastStreamCount, getBytesPerSecond());
+        int count = Math.min(controller.getStreamCount(), open.size());
+        lastStreamCount = count;
+
+        List<LaneWriter> active = new ArrayList<>(open.subList(0, count));
+        List<LaneWriter> spare = new ArrayList<>(open.subList(count, open.size()));
+
+        // "S" keeps these ids apart from the control connection's own LaneWriter transfer ids
+        String id = "S" + nextTransferId.incrementAndGet();
+        int index = 0;
+        int offset = 0;
+        while (offset < frame.size()) {
+            int end = frame.chunkEnd(offset, STRIPE_CHUNK_SIZE);
+            EncodedFrame chunk = frame.chunk(id, index, offset, end);
+            while (true) {
+                LaneWriter stream = active.get(index % active.size());
+                if (stream.send(chunk, LaneWriter.Lane.BULK)) break;
+                streams.remove(stream);
+                active.remove(stream);
+                if (!spare.isEmpty()) active.add(spare.remove(0));
+                if (active.isEmpty()) return false;
+            }
+            offset = end;
+            index++;
+        }
+        return true;
+    }
+
+    // Combined throughput of the streams used by the last striped transfer
+    public long getBytesPerSecond() {
+        List<LaneWriter> snapshot = new ArrayList<>(streams);
+        int count = Math.min(lastStreamCount, snapshot.size());
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            long bps = snapshot.get(i).getEstimator().getBytesPerSecond();
+            if (bps > 0) total += bps;
+        }
+        return total > 0 ? total : ThroughputEstimator.UNKNOWN;
+    }
+
+    public int getCurrentStreamCount() {
+        return controller.getStreamCount();
+    }
+
+    public void close() {
+        for (LaneWriter stream : streams) stream.close();
+        streams.clear();
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.chitchatapp.network;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * One large frame dealt over several data streams and put back together by one ChunkAssembler, including
+ * streams that close mid-transfer and the partial transfer left behind when they all do.
+ */
+public class StripedSenderTest {
+
+    private final List<LaneWriter> writers = new ArrayList<>();
+    private final List<ByteArrayOutputStream> outputs = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (LaneWriter writer : writers) writer.close();
+    }
+
+    // A data stream whose connection refuses everything after acceptedChunks chunks, as a closed one does
+    private LaneWriter stream(int acceptedChunks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        outputs.add(out);
+        LaneWriter writer = new LaneWriter(out, "data-" + writers.size(), StripedSender.STREAM_WRITER_CHUNK_SIZE, null) {
+            private int accepted = 0;
+
+            @Override
+            public boolean send(EncodedFrame frame, Lane lane) {
+                return accepted++ < acceptedChunks && super.send(frame, lane);
+            }
+        };
+        writers.add(writer);
+        return writer;
+    }
+
+    private static String largeFrame() {
+        StringBuilder sb = new StringBuilder("DOC:alice_1:1:report.pdf:0:");
+        while (sb.length() < StripedSender.STRIPE_THRESHOLD + 100_000) sb.append("0123456789abcdef");
+        return sb.toString();
+    }
+
+    // Every stream's output through one assembler, as the receiver does, until the frame is complete
+    private String awaitReassembled(String expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            ChunkAssembler assembler = new ChunkAssembler();
+            for (ByteArrayOutputStream out : outputs) {
+                for (String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+                    String frame = ChunkAssembler.isChunk(line) ? assembler.accept(line) : null;
+                    if (frame != null) return frame;
+                }
+            }
+            Thread.sleep(5);
+        }
+        fail("Frame of " + expected.length() + " chars never completed");
+        return null;
+    }
+
+    private int streamsUsed() {
+        int used = 0;
+        for (ByteArrayOutputStream out : outputs) if (out.size() > 0) used++;
+        return used;
+    }
+
+    @Test
+    public void frameIsDealtOverTheControllersStreamCount() throws Exception {
+        StripedSender sender = new StripedSender(4);
+        for (int i = 0; i < 3; i++) sender.addStream(stream(Integer.MAX_VALUE));
+        String frame = largeFrame();
+        assertTrue(StripedSender.shouldStripe(frame));
+        assertFalse(StripedSender.shouldStripe("MSG:alice_2:2:hi"));
+
+        assertTrue(sender.send(frame));
+        assertEquals(frame, awaitReassembled(frame));
+        assertEquals(sender.getCurrentStreamCount(), streamsUsed());
+    }
+
+    @Test
+    public void streamClosingMidTransferHandsItsChunksToTheOthers() throws Exception {
+        StripedSender sender = new StripedSender(4);
+        sender.addStream(stream(3));
+        sender.addStream(stream(Integer.MAX_VALUE));
+        sender.addStream(stream(Integer.MAX_VALUE)); // The spare takes the closed stream's place
+        String frame = largeFrame();
+
+        assertTrue(sender.send(frame));
+        assertEquals(frame, awaitReassembled(frame));
+        assertEquals(2, sender.getStreamCount());
+        assertEquals(3, streamsUsed());
+    }
+
+    @Test
+    public void transferFailsOnlyWhenNoStreamIsLeft() {
+        StripedSender sender = new StripedSender(4);
+        assertFalse(sender.send(largeFrame())); // No streams yet
+        sender.addStream(stream(2));
+        sender.addStream(stream(3));
+        assertFalse(sender.send(largeFrame()));
+        assertEquals(0, sender.getStreamCount());
+    }
+
+    @Test
+    public void partialTransferExpiresOnceItStalls() {
+        long[] now = {0};
+        ChunkAssembler assembler = new ChunkAssembler(() -> now[0]);
+        assertNull(assembler.accept("CHUNK:S1:0:0:first half, "));
+        assertEquals(1, assembler.getOpenTransfers());
+
+        // Still waiting just before the timeout; a transfer that keeps moving is never cut off
+        now[0] = ChunkAssembler.STALL_TIMEOUT_MS - 1;
+        assertNull(assembler.accept("CHUNK:S2:0:0:one"));
+        assertEquals(2, assembler.getOpenTransfers());
+        now[0] = ChunkAssembler.STALL_TIMEOUT_MS;
+        assertNull(assembler.accept("CHUNK:S2:1:0:two"));
+        assertEquals(1, assembler.getOpenTransfers());
+        assertEquals("onetwothree", assembler.accept("CHUNK:S2:2:1:three"));
+        assertEquals(0, assembler.getOpenTransfers());
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.chitchatapp.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+// Plain java.net sockets, one blocking stream pair per connection. What the app uses on Wi-Fi.
+public class TcpTransport implements Transport {
+
+    @Override
+    public Server listen(int port, int bufferSize) throws IOException {
+        ServerSocket server = new ServerSocket();
+        // Set before bind so accepted sockets negotiate a large receive window
+        if (bufferSize > 0) server.setReceiveBufferSize(bufferSize);
+        server.setReuseAddress(true);
+        try {
+            server.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        return new TcpServer(server);
+    }
+
+    @Override
+    public Connection connect(String address, int port, int timeoutMs, int bufferSize) throws IOException {
+        Socket socket = new Socket();
+        try {
+            // Buffers must be set before connect for the window size to be negotiated
+            if (bufferSize > 0) {
+                socket.setReceiveBufferSize(bufferSize);
+                socket.setSendBufferSize(bufferSize);
+            }
+            socket.connect(new InetSocketAddress(address, port), timeoutMs);
+            socket.setTcpNoDelay(true);
+            return new TcpConnection(socket);
+        } catch (IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    private static final class TcpServer implements Server {
+        private final ServerSocket server;
+
+        TcpServer(ServerSocket server) {
+            this.server = server;
+        }
+
+        @Override
+        public Connection accept() throws IOException {
+            Socket socket = server.accept();
+            socket.setTcpNoDelay(true);
+            return new TcpConnection(socket);
+        }
+
+        @Override
+        public int getLocalPort() {
+            return server.getLocalPort();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return server.isClosed();
+        }
+
+        @Override
+        public void close() {
+            try {
+                server.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static final class TcpConnection implements Connection {
+        private final Socket socket;
+
+        TcpConnection(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return socket.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return socket.getOutputStream();
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            return socket.getInetAddress().getHostAddress();
+        }
+
+        @Override
+        public void close() {
+            closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.chitchatapp.network;
+
+// Exponentially weighted estimate of a connection's write throughput in bytes per second.
+// Only writes big enough to outrun the socket send buffer say anything about the link, so small
+// frames (chat lines, commands) are ignored.
+public class ThroughputEstimator {
+
+    public static final long UNKNOWN = -1;
+
+    private static final int MIN_SAMPLE_BYTES = 32 * 1024;
+    private static final double ALPHA = 0.3; // Weight of the newest sample
+
+    private double bytesPerSecond = UNKNOWN;
+    private long samples = 0;
+
+    public synchronized void record(long bytes, long elapsedNanos) {
+        if (bytes < MIN_SAMPLE_BYTES || elapsedNanos <= 0) return;
+        double sample = bytes * 1_000_000_000.0 / elapsedNanos;
+        bytesPerSecond = samples == 0 ? sample : ALPHA * sample + (1 - ALPHA) * bytesPerSecond;
+        samples++;
+    }
+
+    public synchronized long getBytesPerSecond() {
+        return samples == 0 ? UNKNOWN : (long) bytesPerSecond;
+    }
+
+    public synchronized long getSampleCount() {
+        return samples;
+    }
+}
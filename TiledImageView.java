@@ -0,0 +1,328 @@
+package com.example.chitchatapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Full-screen zoomable image view that never decodes the original at full resolution.
+// A screen-sized subsample is decoded first; when zoomed past its resolution, only the visible part
+// is decoded in fixed-size tiles with BitmapRegionDecoder. Tiles live in a byte-bounded LRU, so memory
+// stays flat regardless of how many megapixels the source has.
+public class TiledImageView extends View {
+
+    private static final String TAG = "TiledImageView";
+    private static final int TILE_SIZE = 512; // Decoded tile edge in pixels
+    private static final float MAX_ZOOM = 2f; // Screen pixels per source pixel at full zoom
+    private static final int MAX_TILE_CACHE_BYTES = 24 * 1024 * 1024;
+
+    private final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final RectF drawRect = new RectF();
+
+    private final LruCache<String, Bitmap> tileCache;
+    private final Set<String> pendingTiles = Collections.synchronizedSet(new HashSet<>());
+
+    private String filePath;
+    private int sourceWidth, sourceHeight;
+    private Bitmap baseBitmap;
+    private int baseSample = 1;
+    private BitmapRegionDecoder regionDecoder;
+    private boolean loadStarted = false;
+
+    // Source-to-screen transform: screen = source * scale + translation
+    private float scale = 1f, minScale = 1f;
+    private float transX = 0f, transY = 0f;
+
+    // Visible state as of the last draw, used to drop stale tile requests during fast pans
+    private volatile int visibleSample = 0;
+    private final Rect visibleSource = new Rect();
+
+    private final ScaleGestureDetector scaleDetector;
+    private final GestureDetector gestureDetector;
+    private OnClickListener tapListener;
+
+    public TiledImageView(Context context) {
+        super(context);
+        int cacheBytes = (int) Math.min(MAX_TILE_CACHE_BYTES, Runtime.getRuntime().maxMemory() / 8);
+        tileCache = new LruCache<String, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(@NonNull String key, @NonNull Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+        scaleDetector = new ScaleGestureDetector(context, new ScaleListener());
+        gestureDetector = new GestureDetector(context, new PanListener());
+    }
+
+    public void setImageFile(String path) {
+        this.filePath = path;
+        this.loadStarted = false;
+        if (getWidth() > 0 && getHeight() > 0) startLoad();
+    }
+
+    public void setOnTapListener(OnClickListener listener) {
+        this.tapListener = listener;
+    }
+
+    // Must be called when the viewer goes away; drops every decoded pixel and the region decoder
+    public void release() {
+        decodeExecutor.shutdownNow();
+        tileCache.evictAll();
+        pendingTiles.clear();
+        final BitmapRegionDecoder decoder = regionDecoder;
+        if (decoder != null) {
+            // Wait for an in-flight tile decode instead of pulling the decoder out from under it
+            synchronized (decoder) {
+                decoder.recycle();
+            }
+        }
+        regionDecoder = null;
+        baseBitmap = null;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (baseBitmap != null) {
+            fitToScreen();
+        } else if (filePath != null && w > 0 && h > 0) {
+            startLoad();
+        }
+    }
+
+    private void startLoad() {
+        if (loadStarted) return;
+        loadStarted = true;
+        final String path = filePath;
+        final int viewWidth = getWidth();
+        final int viewHeight = getHeight();
+
+        decodeExecutor.execute(() -> {
+            try {
+                BitmapFactory.Options bounds = new BitmapFactory.Options();
+                bounds.inJustDecodeBounds = true;
+                BitmapFactory.decodeFile(path, bounds);
+                if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return;
+
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = sampleToFit(bounds.outWidth, bounds.outHeight, viewWidth, viewHeight);
+                options.inPreferredConfig = Bitmap.Config.RGB_565;
+                Bitmap base = BitmapFactory.decodeFile(path, options);
+
+                BitmapRegionDecoder decoder = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                        ? BitmapRegionDecoder.newInstance(path)
+                        : BitmapRegionDecoder.newInstance(path, false);
+
+                mainHandler.post(() -> {
+                    if (decodeExecutor.isShutdown()) {
+                        if (decoder != null) decoder.recycle();
+                        return;
+                    }
+                    sourceWidth = bounds.outWidth;
+                    sourceHeight = bounds.outHeight;
+                    baseSample = options.inSampleSize;
+                    baseBitmap = base;
+                    regionDecoder = decoder;
+                    fitToScreen();
+                });
+            } catch (Exception | OutOfMemoryError e) {
+                Log.e(TAG, "Failed to open image " + path, e);
+            }
+        });
+    }
+
+    // Largest power-of-two sample that still has full resolution at fit-to-screen scale
+    private static int sampleToFit(int width, int height, int viewWidth, int viewHeight) {
+        float fitScale = Math.min((float) viewWidth / width, (float) viewHeight / height);
+        return sampleForScale(fitScale);
+    }
+
+    private void fitToScreen() {
+        if (sourceWidth == 0 || sourceHeight == 0) return;
+        minScale = Math.min((float) getWidth() / sourceWidth, (float) getHeight() / sourceHeight);
+        scale = minScale;
+        clampTranslation();
+        invalidate();
+    }
+
+    private void clampTranslation() {
+        float scaledWidth = sourceWidth * scale;
+        float scaledHeight = sourceHeight * scale;
+        transX = scaledWidth <= getWidth()
+                ? (getWidth() - scaledWidth) / 2f
+                : Math.max(getWidth() - scaledWidth, Math.min(0f, transX));
+        transY = scaledHeight <= getHeight()
+                ? (getHeight() - scaledHeight) / 2f
+                : Math.max(getHeight() - scaledHeight, Math.min(0f, transY));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (baseBitmap == null) return;
+
+        canvas.save();
+        canvas.translate(transX, transY);
+        canvas.scale(scale, scale);
+
+        drawRect.set(0, 0, sourceWidth, sourceHeight);
+        canvas.drawBitmap(baseBitmap, null, drawRect, paint);
+
+        int sample = sampleForScale(scale);
+        if (regionDecoder != null && sample < baseSample) {
+            drawTiles(canvas, sample);
+        } else {
+            visibleSample = 0;
+        }
+        canvas.restore();
+    }
+
+    // Power-of-two sample whose resolution is at least what the current zoom can show
+    private static int sampleForScale(float scale) {
+        int sample = 1;
+        while (sample * 2 * scale <= 1f) sample *= 2;
+        return sample;
+    }
+
+    private void drawTiles(Canvas canvas, int sample) {
+        int left = Math.max(0, (int) (-transX / scale));
+        int top = Math.max(0, (int) (-transY / scale));
+        int right = Math.min(sourceWidth, (int) Math.ceil((getWidth() - transX) / scale));
+        int bottom = Math.min(sourceHeight, (int) Math.ceil((getHeight() - transY) / scale));
+
+        synchronized (visibleSource) {
+            visibleSource.set(left, top, right, bottom);
+        }
+        visibleSample = sample;
+
+        int tileSource = TILE_SIZE * sample;
+        for (int row = top / tileSource; row * tileSource < bottom; row++) {
+            for (int col = left / tileSource; col * tileSource < right; col++) {
+                String key = sample + ":" + col + ":" + row;
+                Bitmap tile = tileCache.get(key);
+                if (tile != null) {
+                    drawRect.set(col * tileSource, row * tileSource,
+                            Math.min(sourceWidth, (col + 1) * tileSource),
+                            Math.min(sourceHeight, (row + 1) * tileSource));
+                    canvas.drawBitmap(tile, null, drawRect, paint);
+                } else {
+                    requestTile(key, sample, col, row);
+                }
+            }
+        }
+    }
+
+    private void requestTile(String key, int sample, int col, int row) {
+        if (!pendingTiles.add(key) || decodeExecutor.isShutdown()) return;
+        final BitmapRegionDecoder decoder = regionDecoder;
+        int tileSource = TILE_SIZE * sample;
+        Rect region = new Rect(col * tileSource, row * tileSource,
+                Math.min(sourceWidth, (col + 1) * tileSource),
+                Math.min(sourceHeight, (row + 1) * tileSource));
+
+        decodeExecutor.execute(() -> {
+            try {
+                if (!isStillVisible(sample, region)) return;
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = sample;
+                options.inPreferredConfig = Bitmap.Config.RGB_565;
+                Bitmap tile;
+                synchronized (decoder) {
+                    if (decoder.isRecycled()) return;
+                    tile = decoder.decodeRegion(region, options);
+                }
+                if (tile != null) {
+                    tileCache.put(key, tile);
+                    postInvalidate();
+                }
+            } catch (Exception | OutOfMemoryError e) {
+                Log.e(TAG, "Tile decode failed: " + key, e);
+            } finally {
+                pendingTiles.remove(key);
+            }
+        });
+    }
+
+    private boolean isStillVisible(int sample, Rect region) {
+        if (visibleSample != sample) return false;
+        synchronized (visibleSource) {
+            return Rect.intersects(visibleSource, region);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = scaleDetector.onTouchEvent(event);
+        handled |= gestureDetector.onTouchEvent(event);
+        return handled || super.onTouchEvent(event);
+    }
+
+    private void zoomTo(float newScale, float focusX, float focusY) {
+        newScale = Math.max(minScale, Math.min(Math.max(minScale, MAX_ZOOM), newScale));
+        float ratio = newScale / scale;
+        transX = focusX - (focusX - transX) * ratio;
+        transY = focusY - (focusY - transY) * ratio;
+        scale = newScale;
+        clampTranslation();
+        invalidate();
+    }
+
+    private class ScaleListener extends ScaleGestureDetector.SimpleOnScaleGestureListener {
+        @Override
+        public boolean onScale(ScaleGestureDetector detector) {
+            zoomTo(scale * detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+            return true;
+        }
+    }
+
+    private class PanListener extends GestureDetector.SimpleOnGestureListener {
+        @Override
+        public boolean onDown(MotionEvent e) {
+            return true;
+        }
+
+        @Override
+        public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+            transX -= distanceX;
+            transY -= distanceY;
+            clampTranslation();
+            invalidate();
+            return true;
+        }
+
+        @Override
+        public boolean onDoubleTap(MotionEvent e) {
+            zoomTo(scale > minScale * 1.01f ? minScale : MAX_ZOOM / 2f, e.getX(), e.getY());
+            return true;
+        }
+
+        @Override
+        public boolean onSingleTapConfirmed(MotionEvent e) {
+            if (tapListener != null) tapListener.onClick(TiledImageView.this);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.chitchatapp.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// How NetworkManager and MeshRelay reach other devices. Everything above this is line frames over a pair of
+// streams, so the same chat logic runs on real sockets (TcpTransport, NioTransport) or entirely in memory
+// (LoopbackTransport), e.g. hundreds of simulated peers in one JVM.
+public interface Transport {
+
+    // One established, bidirectional byte stream. One thread may read while another writes.
+    interface Connection extends Closeable {
+        InputStream getInputStream() throws IOException;
+        OutputStream getOutputStream() throws IOException;
+        // Address of the other end as a connect() argument would take it
+        String getRemoteAddress();
+        // Ends both directions: our reads and writes fail, the other end reads EOF. Never throws.
+        @Override
+        void close();
+    }
+
+    interface Server extends Closeable {
+        // Blocks for the next incoming connection; throws once the server is closed
+        Connection accept() throws IOException;
+        int getLocalPort();
+        boolean isClosed();
+        // Unblocks accept(). Never throws.
+        @Override
+        void close();
+    }
+
+    // port 0 picks a free one. bufferSize > 0 asks for that much socket buffering on accepted connections
+    // (bulk data streams); 0 keeps the platform default.
+    Server listen(int port, int bufferSize) throws IOException;
+
+    Connection connect(String address, int port, int timeoutMs, int bufferSize) throws IOException;
+}
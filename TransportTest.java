@@ -0,0 +1,211 @@
+package com.example.chitchatapp.network;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * The three transports carry the same line traffic, and the loopback one runs a mesh of simulated hosts in-process.
+ */
+public class TransportTest {
+
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+    private final List<Transport.Server> servers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (Transport.Server server : servers) server.close();
+        pool.shutdownNow();
+    }
+
+    // Echoes every line back until the client hangs up
+    private Transport.Server startEcho(Transport transport) throws IOException {
+        Transport.Server server = transport.listen(0, 0);
+        servers.add(server);
+        pool.execute(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Transport.Connection connection = server.accept();
+                    pool.execute(() -> {
+                        try (BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
+                            OutputStream out = connection.getOutputStream();
+                            String line;
+                            while ((line = in.readLine()) != null)
+                                out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+                        } catch (IOException ignored) {
+                        } finally {
+                            connection.close();
+                        }
+                    });
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        return server;
+    }
+
+    private void roundTrip(Transport transport, String address) throws Exception {
+        Transport.Server server = startEcho(transport);
+        Transport.Connection connection = transport.connect(address, server.getLocalPort(), 2000, 0);
+        BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+
+        // Written from another thread while this one reads, as LaneWriter and the read loops do
+        int lines = 2000;
+        String big = "x".repeat(64 * 1024);
+        pool.execute(() -> {
+            PrintWriter out = new PrintWriter(new java.io.OutputStreamWriter(
+                    getOutput(connection), StandardCharsets.UTF_8));
+            for (int i = 0; i < lines; i++) out.print("MSG:u_" + i + ":0:" + (i % 500 == 0 ? big : "hi") + "\n");
+            out.flush();
+        });
+        for (int i = 0; i < lines; i++) {
+            String line = in.readLine();
+            assertNotNull(transport.getClass().getSimpleName() + " lost line " + i, line);
+            assertTrue(line.startsWith("MSG:u_" + i + ":"));
+        }
+        connection.close();
+    }
+
+    private static OutputStream getOutput(Transport.Connection connection) {
+        try {
+            return connection.getOutputStream();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    public void everyTransportCarriesTheSameTraffic() throws Exception {
+        roundTrip(new TcpTransport(), "127.0.0.1");
+        roundTrip(new NioTransport(), "127.0.0.1");
+        LoopbackTransport.Network network = new LoopbackTransport.Network();
+        roundTrip(new LoopbackTransport(network, "10.0.0.1"), "10.0.0.1");
+    }
+
+    @Test
+    public void loopbackBehavesLikeALan() throws Exception {
+        LoopbackTransport.Network network = new LoopbackTransport.Network(1024);
+        LoopbackTransport host = new LoopbackTransport(network, "10.0.0.1");
+        LoopbackTransport client = new LoopbackTransport(network, "10.0.0.2");
+
+        try {
+            client.connect("10.0.0.1", 12345, 1000, 0);
+            fail("nobody is listening yet");
+        } catch (ConnectException expected) {
+        }
+
+        // Two hosts can use the same port; the same host can't twice
+        Transport.Server server = host.listen(12345, 0);
+        servers.add(server);
+        servers.add(client.listen(12345, 0));
+        try {
+            host.listen(12345, 0);
+            fail("port taken");
+        } catch (java.net.BindException expected) {
+        }
+
+        Transport.Connection outgoing = client.connect("10.0.0.1", 12345, 1000, 0);
+        Transport.Connection incoming = server.accept();
+        assertEquals("10.0.0.2", incoming.getRemoteAddress());
+        assertEquals("10.0.0.1", outgoing.getRemoteAddress());
+
+        // A full pipe blocks the writer until the reader catches up, like a full TCP window
+        byte[] payload = new byte[8 * 1024];
+        AtomicInteger written = new AtomicInteger();
+        pool.execute(() -> {
+            try {
+                outgoing.getOutputStream().write(payload);
+                written.set(payload.length);
+            } catch (IOException ignored) {
+            }
+        });
+        Thread.sleep(100);
+        assertEquals(0, written.get());
+        byte[] sink = new byte[payload.length];
+        int total = 0;
+        while (total < payload.length) total += incoming.getInputStream().read(sink, total, payload.length - total);
+        long deadline = System.currentTimeMillis() + 1000;
+        while (written.get() == 0) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(2);
+        }
+
+        // Hanging up: the other end reads EOF, and can no longer write to us
+        outgoing.close();
+        assertEquals(-1, incoming.getInputStream().read());
+        try {
+            incoming.getOutputStream().write(1);
+            fail("wrote to a closed connection");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void hundredsOfHostsRelayInOneProcess() throws Exception {
+        int hosts = 128;
+        int frames = 20;
+        LoopbackTransport.Network network = new LoopbackTransport.Network(64 * 1024);
+        List<MeshRelay> relays = new ArrayList<>();
+        Map<String, Integer> copies = new ConcurrentHashMap<>();
+
+        for (int i = 0; i < hosts; i++) {
+            LoopbackTransport transport = new LoopbackTransport(network, "10.0." + (i / 250) + "." + (i % 250 + 1));
+            String id = "h" + i;
+            MeshRelay relay = new MeshRelay(id, frame -> copies.merge(id + "|" + frame, 1, Integer::sum), pool, transport);
+            relay.setTtl(hosts);
+            relays.add(relay);
+            Transport.Server server = transport.listen(12345, 0);
+            servers.add(server);
+            MeshRelayTest.acceptPeers(server, relay, pool);
+        }
+
+        // A ring with shortcuts, so frames take many paths and the seen-sets have work to do
+        for (int i = 0; i < hosts; i++) {
+            for (int step : new int[]{1, 16}) {
+                int j = (i + step) % hosts;
+                relays.get(i).connect("10.0." + (j / 250) + "." + (j % 250 + 1), 12345);
+            }
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        for (MeshRelay relay : relays) {
+            while (relay.getPeerCount() < 4) {
+                assertTrue("links did not come up", System.currentTimeMillis() < deadline);
+                Thread.sleep(2);
+            }
+        }
+
+        for (int f = 0; f < frames; f++) relays.get(f * 7 % hosts).publish("MSG:u_" + f + ":0:hello");
+        int expected = frames * (hosts - 1);
+        deadline = System.currentTimeMillis() + 20000;
+        while (copies.size() < expected) {
+            assertTrue("delivered " + copies.size() + " of " + expected, System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+
+        long duplicates = 0;
+        for (MeshRelay relay : relays) duplicates += relay.getDuplicatesDropped();
+        for (Map.Entry<String, Integer> entry : copies.entrySet())
+            assertEquals("delivered twice: " + entry.getKey(), 1, (int) entry.getValue());
+        // Every frame reaches most hosts over more than one path; the seen-sets absorbed the extra copies
+        assertTrue(duplicates > 0);
+
+        for (MeshRelay relay : relays) relay.close();
+    }
+}